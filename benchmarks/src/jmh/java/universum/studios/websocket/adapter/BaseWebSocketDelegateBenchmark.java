@@ -0,0 +1,91 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of dispatching received frames and connection events to listeners registered upon
+ * {@link BaseWebSocketDelegate}.
+ *
+ * @author Martin Albedinsky
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BaseWebSocketDelegateBenchmark {
+
+	/**
+	 * Count of registered listeners.
+	 */
+	@Param({"1", "4", "16"})
+	public int listenerCount;
+
+	/**
+	 * Delegate under benchmark.
+	 */
+	private LoopbackWebSocketDelegate delegate;
+
+	/**
+	 * Frame being dispatched.
+	 */
+	private WebSocketFrame frame;
+
+	@Setup(Level.Trial) public void setUp(final Blackhole blackhole) {
+		this.delegate = new LoopbackWebSocketDelegate();
+		for (int i = 0; i < listenerCount; i++) {
+			this.delegate.registerOnIncomingFrameListener(blackhole::consume);
+			this.delegate.registerOnConnectionListener(new WebSocketDelegate.OnConnectionListener() {
+
+				@Override public void onConnected() {
+					blackhole.consume(true);
+				}
+
+				@Override public void onDisconnected() {
+					blackhole.consume(false);
+				}
+			});
+		}
+		this.frame = new WebSocketFrame.Builder().payload(new byte[64]).build();
+	}
+
+	@Benchmark public void notifyFrameReceived() {
+		this.delegate.notifyFrameReceived(frame);
+	}
+
+	@Benchmark @Threads(4) public void notifyFrameReceivedConcurrently() {
+		this.delegate.notifyFrameReceived(frame);
+	}
+
+	@Benchmark public void notifyConnected() {
+		this.delegate.notifyConnected();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,120 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+
+/**
+ * An in-memory {@link WebSocketDelegate} which delivers every sent frame back to its registered
+ * {@link OnIncomingFrameListener OnIncomingFrameListeners}, so the adapter can be benchmarked
+ * without any network involved.
+ * <p>
+ * Payload of each sent frame is copied before it is delivered back, as required by the contract
+ * of {@link #sendFrame(Frame)}, which is also the work a real delegate does when it writes the
+ * payload into its socket.
+ *
+ * @author Martin Albedinsky
+ */
+class LoopbackWebSocketDelegate extends BaseWebSocketDelegate {
+
+	/*
+	 * Constants ===================================================================================
+	 */
+
+	/**
+	 * Log TAG.
+	 */
+	// private static final String TAG = "LoopbackWebSocketDelegate";
+
+	/*
+	 * Interface ===================================================================================
+	 */
+
+	/*
+	 * Static members ==============================================================================
+	 */
+
+	/*
+	 * Members =====================================================================================
+	 */
+
+	/**
+	 * Boolean flag indicating whether this delegate is connected.
+	 */
+	private volatile boolean connected;
+
+	/**
+	 * Boolean flag indicating whether this delegate is closed.
+	 */
+	private volatile boolean closed;
+
+	/*
+	 * Constructors ================================================================================
+	 */
+
+	/*
+	 * Methods =====================================================================================
+	 */
+
+	/**
+	 */
+	@Override public boolean isConnected() {
+		return connected;
+	}
+
+	/**
+	 */
+	@Override public void connect(@Nonnull final SocketAddress remoteAddress, final int timeout) throws IOException {
+		this.connected = true;
+		notifyConnected();
+	}
+
+	/**
+	 */
+	@Override public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 */
+	@Override public void sendFrame(@Nonnull final Frame frame) throws IOException {
+		final byte[] payload = frame.getPayload();
+		notifyFrameReceived(new WebSocketFrame.Builder()
+				.payload(Arrays.copyOf(payload, payload.length))
+				.isFinal(frame.isFinal())
+				.build()
+		);
+	}
+
+	/**
+	 */
+	@Override public void close() throws IOException {
+		this.connected = false;
+		this.closed = true;
+		notifyDisconnected();
+	}
+
+	/*
+	 * Inner classes ===============================================================================
+	 */
+}
\ No newline at end of file
@@ -0,0 +1,127 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of reading received messages via {@link WebSocketInputStream}, both byte by byte
+ * and in bulk, and of reassembling messages received in multiple fragments.
+ *
+ * @author Martin Albedinsky
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WebSocketInputStreamBenchmark {
+
+	/**
+	 * Size of each received message in bytes.
+	 */
+	@Param({"16", "1024", "65536"})
+	public int messageSize;
+
+	/**
+	 * Count of fragments into which is each received message split.
+	 */
+	@Param({"1", "4", "16"})
+	public int fragmentCount;
+
+	/**
+	 * Delegate delivering the prepared frames.
+	 */
+	private LoopbackWebSocketDelegate delegate;
+
+	/**
+	 * Stream under benchmark.
+	 */
+	private WebSocketInputStream stream;
+
+	/**
+	 * Frames of a single message.
+	 */
+	private WebSocketFrame[] frames;
+
+	/**
+	 * Buffer into which are the messages read in bulk.
+	 */
+	private byte[] readBuffer;
+
+	@Setup(Level.Trial) public void setUp() {
+		this.delegate = new LoopbackWebSocketDelegate();
+		this.stream = new WebSocketInputStream(() -> {}, delegate);
+		final byte[] payload = new byte[messageSize];
+		for (int i = 0; i < payload.length; i++) {
+			payload[i] = (byte) i;
+		}
+		this.frames = new WebSocketFrame[fragmentCount];
+		final int fragmentSize = (messageSize + fragmentCount - 1) / fragmentCount;
+		for (int i = 0; i < fragmentCount; i++) {
+			final int offset = Math.min(i * fragmentSize, messageSize);
+			final int length = Math.min(fragmentSize, messageSize - offset);
+			this.frames[i] = new WebSocketFrame.Builder()
+					.payload(payload, offset, length)
+					.isFinal(i == fragmentCount - 1)
+					.build();
+		}
+		this.readBuffer = new byte[messageSize];
+	}
+
+	@TearDown(Level.Trial) public void tearDown() {
+		this.stream.destroy();
+	}
+
+	/**
+	 * Delivers all frames of a single message into the stream.
+	 */
+	private void receiveMessage() {
+		for (final WebSocketFrame frame : frames) {
+			this.stream.onFrameReceived(frame);
+		}
+	}
+
+	@Benchmark public void readSingleByte(final Blackhole blackhole) throws IOException {
+		receiveMessage();
+		for (int i = 0; i < messageSize; i++) {
+			blackhole.consume(stream.read());
+		}
+	}
+
+	@Benchmark public int readBulk() throws IOException {
+		receiveMessage();
+		int count = 0;
+		while (count < messageSize) {
+			count += stream.read(readBuffer, count, messageSize - count);
+		}
+		return count;
+	}
+}
\ No newline at end of file
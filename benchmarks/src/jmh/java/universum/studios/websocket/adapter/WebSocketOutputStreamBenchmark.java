@@ -0,0 +1,138 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of writing and flushing messages via {@link WebSocketOutputStream} and of a full
+ * round trip through {@link LoopbackWebSocketDelegate} into {@link WebSocketInputStream}.
+ *
+ * @author Martin Albedinsky
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class WebSocketOutputStreamBenchmark {
+
+	/**
+	 * Size of each written message in bytes.
+	 */
+	@Param({"16", "1024", "65536"})
+	public int messageSize;
+
+	/**
+	 * Size of chunks in which is each message written.
+	 */
+	@Param({"1", "256", "65536"})
+	public int writeSize;
+
+	/**
+	 * Stream sending frames into a delegate which only consumes them.
+	 */
+	private WebSocketOutputStream stream;
+
+	/**
+	 * Stream sending frames into the loopback delegate.
+	 */
+	private WebSocketOutputStream loopbackOutput;
+
+	/**
+	 * Stream receiving frames from the loopback delegate.
+	 */
+	private WebSocketInputStream loopbackInput;
+
+	/**
+	 * Data of a single message.
+	 */
+	private byte[] message;
+
+	/**
+	 * Buffer into which are the looped back messages read.
+	 */
+	private byte[] readBuffer;
+
+	/**
+	 * Blackhole consuming sent frames.
+	 */
+	private Blackhole blackhole;
+
+	@Setup(Level.Trial) public void setUp(final Blackhole blackhole) {
+		this.blackhole = blackhole;
+		this.stream = new WebSocketOutputStream(() -> {}, new LoopbackWebSocketDelegate() {
+
+			@Override public void sendFrame(final Frame frame) {
+				WebSocketOutputStreamBenchmark.this.blackhole.consume(frame.getPayloadBuffer());
+			}
+		});
+		final LoopbackWebSocketDelegate loopback = new LoopbackWebSocketDelegate();
+		this.loopbackOutput = new WebSocketOutputStream(() -> {}, loopback);
+		this.loopbackInput = new WebSocketInputStream(() -> {}, loopback);
+		this.message = new byte[messageSize];
+		this.readBuffer = new byte[messageSize];
+	}
+
+	@TearDown(Level.Trial) public void tearDown() {
+		this.stream.destroy();
+		this.loopbackOutput.destroy();
+		this.loopbackInput.destroy();
+	}
+
+	/**
+	 * Writes a single message into the specified <var>output</var> in chunks of {@link #writeSize}.
+	 */
+	private void writeMessage(final WebSocketOutputStream output) throws IOException {
+		if (writeSize == 1) {
+			for (int i = 0; i < messageSize; i++) {
+				output.write(message[i]);
+			}
+		} else {
+			for (int offset = 0; offset < messageSize; offset += writeSize) {
+				output.write(message, offset, Math.min(writeSize, messageSize - offset));
+			}
+		}
+		output.flush();
+	}
+
+	@Benchmark public void writeAndFlush() throws IOException {
+		writeMessage(stream);
+	}
+
+	@Benchmark public int roundTrip() throws IOException {
+		writeMessage(loopbackOutput);
+		int count = 0;
+		while (count < messageSize) {
+			count += loopbackInput.read(readBuffer, count, messageSize - count);
+		}
+		return count;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,117 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of {@link WebSocketTimer}. The <b>overhead</b> is measured as throughput of
+ * scheduling and canceling a task while the timer already holds a count of pending tasks, as it
+ * does when many connections have their keep alive and flush timeouts armed, and compared against
+ * a {@link ScheduledThreadPoolExecutor}. The <b>accuracy</b> is measured as sampled time of
+ * waiting for a scheduled task to run; the lateness of the timer is the sampled time minus the
+ * requested delay.
+ *
+ * @author Martin Albedinsky
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WebSocketTimerBenchmark {
+
+	/**
+	 * Count of tasks pending on the timer while benchmarking.
+	 */
+	@Param({"0", "10000", "100000"})
+	public int pendingCount;
+
+	/**
+	 * Timer under benchmark.
+	 */
+	private WebSocketTimer timer;
+
+	/**
+	 * Executor used as a baseline.
+	 */
+	private ScheduledThreadPoolExecutor executor;
+
+	/**
+	 * Task which does nothing.
+	 */
+	private final Runnable task = () -> {};
+
+	@Setup(Level.Trial) public void setUp() {
+		this.timer = new WebSocketTimer(WebSocketTimer.DEFAULT_TICK_DURATION, TimeUnit.NANOSECONDS, WebSocketTimer.DEFAULT_WHEEL_SIZE);
+		this.executor = new ScheduledThreadPoolExecutor(1);
+		this.executor.setRemoveOnCancelPolicy(true);
+		for (int i = 0; i < pendingCount; i++) {
+			this.timer.schedule(task, 1, TimeUnit.HOURS);
+			this.executor.schedule(task, 1, TimeUnit.HOURS);
+		}
+	}
+
+	@TearDown(Level.Trial) public void tearDown() {
+		this.timer.stop();
+		this.executor.shutdownNow();
+	}
+
+	@Benchmark public void scheduleAndCancel() {
+		this.timer.schedule(task, 30, TimeUnit.SECONDS).cancel();
+	}
+
+	@Benchmark @Threads(4) public void scheduleAndCancelConcurrently() {
+		this.timer.schedule(task, 30, TimeUnit.SECONDS).cancel();
+	}
+
+	@Benchmark public void scheduleAndCancelOnExecutor() {
+		this.executor.schedule(task, 30, TimeUnit.SECONDS).cancel(false);
+	}
+
+	@Benchmark @Threads(4) public void scheduleAndCancelOnExecutorConcurrently() {
+		this.executor.schedule(task, 30, TimeUnit.SECONDS).cancel(false);
+	}
+
+	@Benchmark @BenchmarkMode(Mode.SampleTime) @OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public void scheduleOneMillisecond() throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		this.timer.schedule(latch::countDown, 1, TimeUnit.MILLISECONDS);
+		latch.await();
+	}
+
+	@Benchmark @BenchmarkMode(Mode.SampleTime) @OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public void scheduleOneMillisecondOnExecutor() throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		this.executor.schedule(latch::countDown, 1, TimeUnit.MILLISECONDS);
+		latch.await();
+	}
+}
\ No newline at end of file
@@ -18,10 +18,17 @@
  */
 package universum.studios.websocket.adapter;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * A {@link WebSocketDelegate} implementation which is recommended to be used as base for all
@@ -30,6 +37,14 @@ import javax.annotation.Nonnull;
  * This base class implements mainly logic for registration and un-registration of
  * {@link OnConnectionListener OnConnectionListenera} and {@link OnIncomingFrameListener OnIncomingFrameListeners}.
  *
+ * <h3>Asynchronous dispatch</h3>
+ * By default, received frames are dispatched to the incoming frame listeners inline on the thread
+ * which calls {@link #notifyFrameReceived(Frame)}, which is usually the I/O thread of the adapted
+ * WebSocket. If a dispatch executor is specified via {@link #setDispatchExecutor(Executor)}, each
+ * listener receives frames via its own serial queue drained on that executor, so the order of
+ * frames is preserved for each listener while the I/O thread returns immediately. When a queue of
+ * some listener is full, {@link #notifyFrameReceived(Frame)} blocks until that listener catches up.
+ *
  * @author Martin Albedinsky
  * @since 1.0
  */
@@ -44,6 +59,13 @@ public abstract class BaseWebSocketDelegate implements WebSocketDelegate {
 	 */
 	// private static final String TAG = "BaseWebSocketDelegate";
 
+	/**
+	 * Default capacity of the queue of frames waiting to be dispatched to a single listener.
+	 *
+	 * @see #setDispatchQueueCapacity(int)
+	 */
+	public static final int DEFAULT_DISPATCH_QUEUE_CAPACITY = 256;
+
     /*
 	 * Interface ===================================================================================
 	 */
@@ -57,16 +79,48 @@ public abstract class BaseWebSocketDelegate implements WebSocketDelegate {
 	 */
 
 	/**
-	 * List containing all {@link OnConnectionListener} that has been registered via
-	 * {@link #registerOnConnectionListener(OnConnectionListener)}.
+	 * Lock guarding modifications of the listener arrays. Dispatch of events does not take this
+	 * lock, it iterates over the array snapshot that is current at that time.
+	 */
+	private final Object mListenersLock = new Object();
+
+	/**
+	 * Immutable snapshot of all {@link OnConnectionListener} that has been registered via
+	 * {@link #registerOnConnectionListener(OnConnectionListener)}. Replaced by a new array whenever
+	 * a listener is registered or unregistered.
+	 */
+	private volatile OnConnectionListener[] mConnectionListeners = new OnConnectionListener[0];
+
+	/**
+	 * Immutable snapshot of all {@link OnIncomingFrameListener} that has been registered via
+	 * {@link #registerOnIncomingFrameListener(OnIncomingFrameListener)}. Replaced by a new array
+	 * whenever a listener is registered or unregistered.
+	 */
+	private volatile OnIncomingFrameListener[] mIncomingFrameListeners = new OnIncomingFrameListener[0];
+
+	/**
+	 * Immutable snapshot of all {@link OnControlFrameListener} that has been registered via
+	 * {@link #registerOnControlFrameListener(OnControlFrameListener)}. Replaced by a new array
+	 * whenever a listener is registered or unregistered.
+	 */
+	private volatile OnControlFrameListener[] mControlFrameListeners = new OnControlFrameListener[0];
+
+	/**
+	 * Executor on which are received frames dispatched to the incoming frame listeners. May be
+	 * {@code null} to dispatch them inline.
+	 */
+	private volatile Executor mDispatchExecutor;
+
+	/**
+	 * Capacity of the queue of frames waiting to be dispatched to a single listener.
 	 */
-	private final List<OnConnectionListener> mConnectionListeners = new ArrayList<>(1);
+	private int mDispatchQueueCapacity = DEFAULT_DISPATCH_QUEUE_CAPACITY;
 
 	/**
-	 * List containing all {@link OnIncomingFrameListener} that has been registered via
-	 * {@link #registerOnIncomingFrameListener(OnIncomingFrameListener)}.
+	 * Metrics into which to record time spent by listeners processing received frames. May be
+	 * {@code null}.
 	 */
-	private final List<OnIncomingFrameListener> mIncomingFrameListeners = new ArrayList<>(1);
+	volatile WebSocketMetrics mMetrics;
 	 
 	/*
 	 * Constructors ================================================================================
@@ -76,11 +130,63 @@ public abstract class BaseWebSocketDelegate implements WebSocketDelegate {
 	 * Methods =====================================================================================
 	 */
 
+	/**
+	 * Returns a copy of the given <var>listeners</var> array with the specified <var>listener</var>
+	 * added at its end, or the same array if it already contains that listener.
+	 *
+	 * @param listeners The current listeners.
+	 * @param listener  The listener to be added.
+	 * @return Array with the listener added.
+	 */
+	private static <L> L[] addListener(final L[] listeners, final L listener) {
+		if (indexOfListener(listeners, listener) != -1) {
+			return listeners;
+		}
+		final L[] newListeners = Arrays.copyOf(listeners, listeners.length + 1);
+		newListeners[listeners.length] = listener;
+		return newListeners;
+	}
+
+	/**
+	 * Returns a copy of the given <var>listeners</var> array with the specified <var>listener</var>
+	 * removed, or the same array if it does not contain that listener.
+	 *
+	 * @param listeners The current listeners.
+	 * @param listener  The listener to be removed.
+	 * @return Array with the listener removed.
+	 */
+	private static <L> L[] removeListener(final L[] listeners, final L listener) {
+		final int index = indexOfListener(listeners, listener);
+		if (index == -1) {
+			return listeners;
+		}
+		final L[] newListeners = Arrays.copyOf(listeners, listeners.length - 1);
+		System.arraycopy(listeners, index + 1, newListeners, index, listeners.length - index - 1);
+		return newListeners;
+	}
+
+	/**
+	 * Returns index of the specified <var>listener</var> in the given <var>listeners</var> array.
+	 *
+	 * @param listeners The listeners to search.
+	 * @param listener  The listener to find.
+	 * @return Index of the listener or {@code -1} if the array does not contain it.
+	 */
+	private static int indexOfListener(final Object[] listeners, final Object listener) {
+		for (int i = 0; i < listeners.length; i++) {
+			final Object registered = listeners[i] instanceof SerialFrameDispatcher ? ((SerialFrameDispatcher) listeners[i]).listener : listeners[i];
+			if (registered.equals(listener)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
 	/**
 	 */
 	@Override public void registerOnConnectionListener(@Nonnull final OnConnectionListener listener) {
-		synchronized (mConnectionListeners) {
-			if (!mConnectionListeners.contains(listener)) mConnectionListeners.add(listener);
+		synchronized (mListenersLock) {
+			this.mConnectionListeners = addListener(mConnectionListeners, listener);
 		}
 	}
 
@@ -89,12 +195,8 @@ public abstract class BaseWebSocketDelegate implements WebSocketDelegate {
 	 * WebSocket has been connected.
 	 */
 	protected void notifyConnected() {
-		synchronized (mConnectionListeners) {
-			if (!mConnectionListeners.isEmpty()) {
-				for (final OnConnectionListener listener : mConnectionListeners) {
-					listener.onConnected();
-				}
-			}
+		for (final OnConnectionListener listener : mConnectionListeners) {
+			listener.onConnected();
 		}
 	}
 
@@ -103,56 +205,427 @@ public abstract class BaseWebSocketDelegate implements WebSocketDelegate {
 	 * WebSocket has been disconnected.
 	 */
 	protected void notifyDisconnected() {
-		synchronized (mConnectionListeners) {
-			if (!mConnectionListeners.isEmpty()) {
-				for (final OnConnectionListener listener : mConnectionListeners) {
-					listener.onDisconnected();
-				}
-			}
+		for (final OnConnectionListener listener : mConnectionListeners) {
+			listener.onDisconnected();
 		}
 	}
 
 	/**
 	 */
 	@Override public void unregisterOnConnectionListener(@Nonnull final OnConnectionListener listener) {
-		synchronized (mConnectionListeners) {
-			mConnectionListeners.remove(listener);
+		synchronized (mListenersLock) {
+			this.mConnectionListeners = removeListener(mConnectionListeners, listener);
+		}
+	}
+
+	/**
+	 * Specifies an executor on which should be received frames dispatched to the registered
+	 * {@link OnIncomingFrameListener OnIncomingFrameListeners}. Each listener receives frames in
+	 * order via its own serial queue, so the executor may be shared by multiple listeners and
+	 * delegates. If the executor rejects a task, the frames are dispatched on the calling thread.
+	 * <p>
+	 * The executor should be specified before the adapted WebSocket starts receiving frames,
+	 * as frames that are already queued for the previous executor may be delivered out of order
+	 * with respect to those dispatched via the new one.
+	 * <p>
+	 * Default value: {@code null}
+	 *
+	 * @param executor The desired executor. May be {@code null} to dispatch frames inline on the
+	 *                 thread calling {@link #notifyFrameReceived(Frame)}.
+	 *
+	 * @see #setDispatchQueueCapacity(int)
+	 */
+	public void setDispatchExecutor(@Nullable final Executor executor) {
+		synchronized (mListenersLock) {
+			this.mDispatchExecutor = executor;
+			final OnIncomingFrameListener[] listeners = mIncomingFrameListeners.clone();
+			for (int i = 0; i < listeners.length; i++) {
+				final OnIncomingFrameListener listener = listeners[i] instanceof SerialFrameDispatcher ?
+						((SerialFrameDispatcher) listeners[i]).listener :
+						listeners[i];
+				listeners[i] = createDispatchListener(listener);
+			}
+			this.mIncomingFrameListeners = listeners;
+		}
+	}
+
+	/**
+	 * Returns the executor on which are received frames dispatched to the listeners.
+	 *
+	 * @return The dispatch executor or {@code null} if frames are dispatched inline.
+	 *
+	 * @see #setDispatchExecutor(Executor)
+	 */
+	@Nullable public Executor getDispatchExecutor() {
+		return mDispatchExecutor;
+	}
+
+	/**
+	 * Specifies a maximum count of frames that may wait to be dispatched to a single listener
+	 * when a dispatch executor is specified. The capacity is applied to listeners registered
+	 * after this call.
+	 * <p>
+	 * Default value: {@link #DEFAULT_DISPATCH_QUEUE_CAPACITY}
+	 *
+	 * @param capacity The desired capacity.
+	 * @throws IllegalArgumentException If the specified capacity is not positive.
+	 *
+	 * @see #setDispatchExecutor(Executor)
+	 */
+	public void setDispatchQueueCapacity(final int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Dispatch queue capacity must be positive.");
+		}
+		synchronized (mListenersLock) {
+			this.mDispatchQueueCapacity = capacity;
 		}
 	}
 
+	/**
+	 * Returns the maximum count of frames that may wait to be dispatched to a single listener.
+	 *
+	 * @return Dispatch queue capacity.
+	 *
+	 * @see #setDispatchQueueCapacity(int)
+	 */
+	public int getDispatchQueueCapacity() {
+		synchronized (mListenersLock) {
+			return mDispatchQueueCapacity;
+		}
+	}
+
+	/**
+	 * Creates a listener through which should be frames dispatched to the specified one according
+	 * to the current dispatch executor.
+	 * <p>
+	 * This method should be called only while holding the {@link #mListenersLock}.
+	 *
+	 * @param listener The listener to which should be frames dispatched.
+	 * @return Either the listener itself if there is no executor specified or its dispatcher.
+	 */
+	private OnIncomingFrameListener createDispatchListener(final OnIncomingFrameListener listener) {
+		final Executor executor = mDispatchExecutor;
+		return executor == null ? listener : new SerialFrameDispatcher(this, listener, executor, mDispatchQueueCapacity);
+	}
+
+	/**
+	 * Specifies metrics into which should this delegate record time spent by the registered
+	 * {@link OnIncomingFrameListener OnIncomingFrameListeners} processing received frames. The
+	 * metrics may be the same as those specified for the adapter of this delegate.
+	 *
+	 * @param metrics The desired metrics. May be {@code null} to not record any metrics.
+	 *
+	 * @see WebSocketMetrics#getDispatchNanos()
+	 * @see WebSocketAdapter#setMetrics(WebSocketMetrics)
+	 * @since 1.1
+	 */
+	public void setMetrics(@Nullable final WebSocketMetrics metrics) {
+		this.mMetrics = metrics;
+	}
+
+	/**
+	 * Returns the metrics into which this delegate records time spent by processing received frames.
+	 *
+	 * @return The metrics or {@code null} if no metrics are recorded.
+	 *
+	 * @see #setMetrics(WebSocketMetrics)
+	 * @since 1.1
+	 */
+	@Nullable public WebSocketMetrics getMetrics() {
+		return mMetrics;
+	}
+
 	/**
 	 */
 	@Override public void registerOnIncomingFrameListener(@Nonnull final OnIncomingFrameListener listener) {
-		synchronized (mIncomingFrameListeners) {
-			if (!mIncomingFrameListeners.contains(listener)) mIncomingFrameListeners.add(listener);
+		synchronized (mListenersLock) {
+			if (indexOfListener(mIncomingFrameListeners, listener) == -1) {
+				this.mIncomingFrameListeners = addListener(mIncomingFrameListeners, createDispatchListener(listener));
+			}
 		}
 	}
 
 	/**
 	 * Notifies all registered {@link OnIncomingFrameListener OnIncomingFrameListeners} about received
 	 * <var>frame</var>.
+	 * <p>
+	 * Listeners are notified without holding any lock and without any allocation, so a slow
+	 * listener does not block registration of other listeners. A listener registered or
+	 * unregistered during dispatch is taken into count for the next frame.
+	 * <p>
+	 * If a dispatch executor is specified, the frame is only queued for each listener. Payload of
+	 * a frame which is valid only during this call, like a direct buffer, is copied before it is
+	 * queued and a pooled payload buffer is retained until all listeners have received the frame.
+	 * <p>
+	 * Control frames are not delivered to these listeners, they are passed to
+	 * {@link #notifyControlFrameReceived(Frame)} instead.
 	 *
 	 * @param frame The frame that has been received by the adapted WebSocket.
+	 *
+	 * @see #setDispatchExecutor(Executor)
 	 */
 	protected void notifyFrameReceived(@Nonnull final Frame frame) {
-		synchronized (mIncomingFrameListeners) {
-			if (!mIncomingFrameListeners.isEmpty()) {
-				for (final OnIncomingFrameListener watcher : mIncomingFrameListeners) {
-					watcher.onFrameReceived(frame);
-				}
+		if (frame.isControl()) {
+			notifyControlFrameReceived(frame);
+			return;
+		}
+		final OnIncomingFrameListener[] listeners = mIncomingFrameListeners;
+		if (listeners.length == 0) {
+			return;
+		}
+		final Frame dispatchedFrame = mDispatchExecutor == null ? frame : detachFrame(frame);
+		final WebSocketMetrics metrics = mMetrics;
+		for (final OnIncomingFrameListener listener : listeners) {
+			if (metrics == null || listener instanceof SerialFrameDispatcher) {
+				listener.onFrameReceived(dispatchedFrame);
+			} else {
+				final long startTime = System.nanoTime();
+				listener.onFrameReceived(dispatchedFrame);
+				metrics.dispatchNanos.record(System.nanoTime() - startTime);
 			}
 		}
 	}
 
+	/**
+	 * Ensures that payload of the specified <var>frame</var> remains valid after the delegate
+	 * returns from {@link #notifyFrameReceived(Frame)}.
+	 *
+	 * @param frame The received frame.
+	 * @return Either the same frame if its payload is backed by an array or a pooled buffer or
+	 * a new frame with a copy of the payload.
+	 */
+	private static Frame detachFrame(final Frame frame) {
+		if (frame instanceof WebSocketFrame && ((WebSocketFrame) frame).getPooledBuffer() != null) {
+			return frame;
+		}
+		final ByteBuffer payload = frame.getPayloadBuffer();
+		if (payload.hasArray()) {
+			return frame;
+		}
+		final byte[] copy = new byte[payload.remaining()];
+		payload.get(copy);
+		return new WebSocketFrame.Builder().payload(copy).isFinal(frame.isFinal()).compressed(frame.isCompressed()).opcode(frame.getOpcode()).build();
+	}
+
 	/**
 	 */
 	@Override public void unregisterOnIncomingFrameListener(@Nonnull final OnIncomingFrameListener listener) {
-		synchronized (mIncomingFrameListeners) {
-			mIncomingFrameListeners.remove(listener);
+		synchronized (mListenersLock) {
+			this.mIncomingFrameListeners = removeListener(mIncomingFrameListeners, listener);
+		}
+	}
+
+	/**
+	 */
+	@Override public void registerOnControlFrameListener(@Nonnull final OnControlFrameListener listener) {
+		synchronized (mListenersLock) {
+			this.mControlFrameListeners = addListener(mControlFrameListeners, listener);
+		}
+	}
+
+	/**
+	 * Notifies all registered {@link OnControlFrameListener OnControlFrameListeners} about received
+	 * control <var>frame</var>.
+	 * <p>
+	 * Listeners are notified directly on the calling thread, regardless of the dispatch executor,
+	 * so control frames are never queued behind data frames.
+	 *
+	 * @param frame The control frame that has been received by the adapted WebSocket.
+	 *
+	 * @see #notifyFrameReceived(Frame)
+	 * @since 1.1
+	 */
+	protected void notifyControlFrameReceived(@Nonnull final Frame frame) {
+		for (final OnControlFrameListener listener : mControlFrameListeners) {
+			listener.onControlFrameReceived(frame);
+		}
+	}
+
+	/**
+	 */
+	@Override public void unregisterOnControlFrameListener(@Nonnull final OnControlFrameListener listener) {
+		synchronized (mListenersLock) {
+			this.mControlFrameListeners = removeListener(mControlFrameListeners, listener);
 		}
 	}
 
 	/*
 	 * Inner classes ===============================================================================
 	 */
+
+	/**
+	 * An {@link OnIncomingFrameListener} which queues received frames and dispatches them to the
+	 * wrapped listener, one at a time and in order, on an {@link Executor}.
+	 */
+	private static final class SerialFrameDispatcher implements OnIncomingFrameListener, Runnable {
+
+		/**
+		 * Maximum count of frames dispatched in a single run, so a busy listener does not hold
+		 * a thread of a shared executor for too long.
+		 */
+		private static final int MAX_FRAMES_PER_RUN = 64;
+
+		/**
+		 * Delegate which owns this dispatcher.
+		 */
+		private final BaseWebSocketDelegate delegate;
+
+		/**
+		 * Listener to which are frames dispatched.
+		 */
+		final OnIncomingFrameListener listener;
+
+		/**
+		 * Executor on which are frames dispatched.
+		 */
+		private final Executor executor;
+
+		/**
+		 * Maximum count of frames in the {@link #queue}.
+		 */
+		private final int capacity;
+
+		/**
+		 * Queue of frames waiting to be dispatched.
+		 */
+		private final Deque<Frame> queue = new ArrayDeque<>();
+
+		/**
+		 * Lock guarding the {@link #queue}. An explicit lock is used so the thread delivering
+		 * frames does not pin a virtual thread while waiting for space in the queue.
+		 */
+		private final ReentrantLock lock = new ReentrantLock();
+
+		/**
+		 * Condition signalled whenever a frame is taken from the {@link #queue}.
+		 */
+		private final Condition spaceAvailable = lock.newCondition();
+
+		/**
+		 * Boolean flag indicating whether this dispatcher is scheduled to run on the executor.
+		 */
+		private boolean scheduled;
+
+		/**
+		 * Creates a new instance of SerialFrameDispatcher for the specified <var>listener</var>.
+		 *
+		 * @param delegate The delegate which owns the dispatcher.
+		 * @param listener The listener to which should be frames dispatched.
+		 * @param executor The executor on which should be frames dispatched.
+		 * @param capacity Maximum count of frames waiting to be dispatched.
+		 */
+		SerialFrameDispatcher(final BaseWebSocketDelegate delegate, final OnIncomingFrameListener listener, final Executor executor, final int capacity) {
+			this.delegate = delegate;
+			this.listener = listener;
+			this.executor = executor;
+			this.capacity = capacity;
+		}
+
+		/**
+		 * Queues the specified <var>frame</var> to be dispatched. Blocks while the queue is full.
+		 * If the current thread is interrupted while waiting, the frame is dropped and the
+		 * interrupt flag is restored.
+		 */
+		@Override public void onFrameReceived(@Nonnull final Frame frame) {
+			final BufferPool.Buffer pooledBuffer = frame instanceof WebSocketFrame ? ((WebSocketFrame) frame).getPooledBuffer() : null;
+			if (pooledBuffer != null) {
+				pooledBuffer.retain();
+			}
+			final boolean schedule;
+			lock.lock();
+			try {
+				while (queue.size() >= capacity) {
+					try {
+						this.spaceAvailable.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						if (pooledBuffer != null) {
+							pooledBuffer.release();
+						}
+						return;
+					}
+				}
+				this.queue.addLast(frame);
+				schedule = !scheduled;
+				this.scheduled = true;
+			} finally {
+				lock.unlock();
+			}
+			if (schedule) {
+				schedule();
+			}
+		}
+
+		/**
+		 * Schedules this dispatcher to run on the executor. If the executor rejects it, the queued
+		 * frames are dispatched on the calling thread.
+		 */
+		private void schedule() {
+			try {
+				this.executor.execute(this);
+			} catch (RejectedExecutionException e) {
+				run();
+			}
+		}
+
+		/**
+		 * Dispatches the queued frames to the listener.
+		 */
+		@Override public void run() {
+			boolean completed = false;
+			try {
+				for (int i = 0; i < MAX_FRAMES_PER_RUN; i++) {
+					final Frame frame;
+					lock.lock();
+					try {
+						frame = queue.pollFirst();
+						if (frame == null) {
+							this.scheduled = false;
+							completed = true;
+							return;
+						}
+						this.spaceAvailable.signalAll();
+					} finally {
+						lock.unlock();
+					}
+					final WebSocketMetrics metrics = delegate.mMetrics;
+					final long startTime = metrics == null ? 0 : System.nanoTime();
+					try {
+						this.listener.onFrameReceived(frame);
+						if (metrics != null) {
+							metrics.dispatchNanos.record(System.nanoTime() - startTime);
+						}
+					} finally {
+						final BufferPool.Buffer pooledBuffer = frame instanceof WebSocketFrame ? ((WebSocketFrame) frame).getPooledBuffer() : null;
+						if (pooledBuffer != null) {
+							pooledBuffer.release();
+						}
+					}
+				}
+				completed = true;
+				reschedule();
+			} finally {
+				if (!completed) {
+					// The listener has thrown, continue with the remaining frames in a new run.
+					reschedule();
+				}
+			}
+		}
+
+		/**
+		 * Schedules this dispatcher again if there are some frames left in the queue.
+		 */
+		private void reschedule() {
+			lock.lock();
+			try {
+				if (queue.isEmpty()) {
+					this.scheduled = false;
+					return;
+				}
+			} finally {
+				lock.unlock();
+			}
+			schedule();
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,539 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A pool of reusable byte buffers which may be shared by {@link WebSocketAdapter WebSocketAdapters}
+ * and their delegates in order to avoid allocation of a new payload array for each frame.
+ * <p>
+ * Buffers are organized into size classes with capacities that are powers of two, starting at
+ * the minimum buffer size and ending at the maximum buffer size specified for the pool. Requests
+ * for larger buffers are satisfied by unpooled buffers which are simply dropped when released.
+ * <p>
+ * Each {@link Buffer} acquired via {@link #acquire(int)} is reference counted. It starts with
+ * a single reference owned by the caller who acquired it. Any party that wants to keep the buffer
+ * for later use, like {@link WebSocketAdapter}'s input stream does for received payloads until
+ * they are read, calls {@link Buffer#retain()} and then {@link Buffer#release()} once it is done
+ * with the buffer. The buffer is returned back into the pool when its last reference is released.
+ *
+ * <h3>Leak detection</h3>
+ * When leak detection is enabled via {@link #setLeakDetectionEnabled(boolean)}, which is intended
+ * for debug builds, the pool tracks all acquired buffers along with stack traces of their
+ * acquisition and reports buffers that have been garbage collected without being released via
+ * {@link OnLeakListener}.
+ *
+ * @author Martin Albedinsky
+ * @since 1.1
+ *
+ * @see WebSocketAdapter#setBufferPool(BufferPool)
+ * @see WebSocketFrame.Builder#payload(Buffer, int, int)
+ */
+public final class BufferPool {
+
+	/*
+	 * Constants ===================================================================================
+	 */
+
+	/**
+	 * Log TAG.
+	 */
+	// private static final String TAG = "BufferPool";
+
+	/**
+	 * Default capacity of the smallest buffers in a pool.
+	 */
+	public static final int DEFAULT_MIN_BUFFER_SIZE = 256;
+
+	/**
+	 * Default capacity of the largest buffers in a pool.
+	 */
+	public static final int DEFAULT_MAX_BUFFER_SIZE = 1024 * 1024;
+
+	/**
+	 * Default maximum count of released buffers retained by a pool per size class.
+	 */
+	public static final int DEFAULT_MAX_BUFFERS_PER_CLASS = 64;
+
+	/*
+	 * Interface ===================================================================================
+	 */
+
+	/**
+	 * Listener which may be used to receive reports about leaked buffers.
+	 *
+	 * @author Martin Albedinsky
+	 * @since 1.1
+	 *
+	 * @see #setOnLeakListener(OnLeakListener)
+	 */
+	public interface OnLeakListener {
+
+		/**
+		 * Invoked whenever a buffer that has been garbage collected without being released is
+		 * detected.
+		 *
+		 * @param capacity     Capacity of the leaked buffer.
+		 * @param acquireTrace Stack trace recorded when the buffer has been acquired.
+		 */
+		void onBufferLeaked(int capacity, @Nonnull Throwable acquireTrace);
+	}
+
+	/*
+	 * Static members ==============================================================================
+	 */
+
+	/*
+	 * Members =====================================================================================
+	 */
+
+	/**
+	 * Capacity of the buffers in the smallest size class.
+	 */
+	private final int minBufferSize;
+
+	/**
+	 * Capacity of the buffers in the largest size class.
+	 */
+	private final int maxBufferSize;
+
+	/**
+	 * Size classes of this pool ordered from the smallest capacity.
+	 */
+	private final SizeClass[] sizeClasses;
+
+	/**
+	 * Boolean flag indicating whether leak detection is enabled.
+	 */
+	private volatile boolean leakDetectionEnabled;
+
+	/**
+	 * Listener to be notified about leaked buffers.
+	 */
+	private volatile OnLeakListener leakListener;
+
+	/**
+	 * Queue into which are enqueued trackers of garbage collected buffers.
+	 */
+	private final ReferenceQueue<Buffer> leakQueue = new ReferenceQueue<>();
+
+	/**
+	 * Map of trackers for all buffers that are acquired at this time, if leak detection is enabled.
+	 */
+	private final Map<LeakTracker, Boolean> leakTrackers = new ConcurrentHashMap<>();
+
+	/**
+	 * Count of leaked buffers detected so far.
+	 */
+	private final AtomicLong leakCount = new AtomicLong();
+
+	/*
+	 * Constructors ================================================================================
+	 */
+
+	/**
+	 * Same as {@link #BufferPool(int, int, int)} with default parameters.
+	 */
+	public BufferPool() {
+		this(DEFAULT_MIN_BUFFER_SIZE, DEFAULT_MAX_BUFFER_SIZE, DEFAULT_MAX_BUFFERS_PER_CLASS);
+	}
+
+	/**
+	 * Creates a new instance of BufferPool with the specified size classes.
+	 *
+	 * @param minBufferSize       Capacity of the smallest buffers. Rounded up to power of two.
+	 * @param maxBufferSize       Capacity of the largest pooled buffers. Rounded up to power of two.
+	 * @param maxBuffersPerClass  Maximum count of released buffers retained per size class.
+	 * @throws IllegalArgumentException If some of the parameters is not positive or the minimum
+	 *                                  size is greater than the maximum size.
+	 */
+	public BufferPool(final int minBufferSize, final int maxBufferSize, final int maxBuffersPerClass) {
+		if (minBufferSize <= 0 || maxBufferSize < minBufferSize || maxBuffersPerClass <= 0 || maxBufferSize > (1 << 30)) {
+			throw new IllegalArgumentException("Invalid pool parameters.");
+		}
+		this.minBufferSize = roundUpToPowerOfTwo(minBufferSize);
+		this.maxBufferSize = roundUpToPowerOfTwo(maxBufferSize);
+		final int classesCount = Integer.numberOfTrailingZeros(this.maxBufferSize) - Integer.numberOfTrailingZeros(this.minBufferSize) + 1;
+		this.sizeClasses = new SizeClass[classesCount];
+		for (int i = 0; i < classesCount; i++) {
+			this.sizeClasses[i] = new SizeClass(this.minBufferSize << i, maxBuffersPerClass);
+		}
+	}
+
+	/*
+	 * Methods =====================================================================================
+	 */
+
+	/**
+	 * Rounds up the specified <var>value</var> to the nearest power of two.
+	 *
+	 * @param value The value to be rounded.
+	 * @return Power of two greater than or equal to the value.
+	 */
+	private static int roundUpToPowerOfTwo(final int value) {
+		final int highestBit = Integer.highestOneBit(value);
+		return highestBit == value ? value : highestBit << 1;
+	}
+
+	/**
+	 * Specifies a boolean flag indicating whether this pool should track acquired buffers and
+	 * report those that are garbage collected without being released. Tracking has additional
+	 * overhead, so it should be enabled only for debugging purpose.
+	 *
+	 * @param enabled {@code True} to enable leak detection, {@code false} to disable it.
+	 *
+	 * @see #setOnLeakListener(OnLeakListener)
+	 * @see #getLeakCount()
+	 */
+	public void setLeakDetectionEnabled(final boolean enabled) {
+		this.leakDetectionEnabled = enabled;
+	}
+
+	/**
+	 * Returns boolean flag indicating whether leak detection is enabled for this pool.
+	 *
+	 * @return {@code True} if leak detection is enabled, {@code false} otherwise.
+	 */
+	public boolean isLeakDetectionEnabled() {
+		return leakDetectionEnabled;
+	}
+
+	/**
+	 * Registers a listener to be notified about leaked buffers.
+	 *
+	 * @param listener The desired listener. May be {@code null} to clear the current one.
+	 */
+	public void setOnLeakListener(@Nullable final OnLeakListener listener) {
+		this.leakListener = listener;
+	}
+
+	/**
+	 * Returns the count of leaked buffers detected by this pool so far.
+	 *
+	 * @return Leaked buffers count.
+	 */
+	public long getLeakCount() {
+		detectLeaks();
+		return leakCount.get();
+	}
+
+	/**
+	 * Acquires a buffer with capacity of at least the specified <var>minCapacity</var>.
+	 * <p>
+	 * The returned buffer has a single reference owned by the caller, who is responsible for
+	 * releasing it via {@link Buffer#release()}.
+	 *
+	 * @param minCapacity The desired minimum capacity of the buffer.
+	 * @return Buffer ready to be used. Its content is undefined.
+	 */
+	@Nonnull public Buffer acquire(final int minCapacity) {
+		if (minCapacity < 0) {
+			throw new IllegalArgumentException("Capacity cannot be negative.");
+		}
+		final Buffer buffer;
+		if (minCapacity > maxBufferSize) {
+			buffer = new Buffer(null, minCapacity);
+		} else {
+			final SizeClass sizeClass = sizeClasses[indexOfSizeClass(minCapacity)];
+			final Buffer pooled = sizeClass.poll();
+			buffer = pooled == null ? new Buffer(sizeClass, sizeClass.capacity) : pooled;
+		}
+		buffer.refCount.set(1);
+		if (leakDetectionEnabled) {
+			detectLeaks();
+			final LeakTracker tracker = new LeakTracker(buffer, leakQueue, new Throwable("Buffer acquired here."));
+			this.leakTrackers.put(tracker, Boolean.TRUE);
+			buffer.tracker = tracker;
+		}
+		return buffer;
+	}
+
+	/**
+	 * Returns index of the smallest size class with buffers which can hold the specified capacity.
+	 *
+	 * @param capacity The desired capacity.
+	 * @return Index into {@link #sizeClasses}.
+	 */
+	private int indexOfSizeClass(final int capacity) {
+		if (capacity <= minBufferSize) {
+			return 0;
+		}
+		return Integer.numberOfTrailingZeros(roundUpToPowerOfTwo(capacity)) - Integer.numberOfTrailingZeros(minBufferSize);
+	}
+
+	/**
+	 * Returns the count of released buffers that are retained by this pool at this time.
+	 *
+	 * @return Count of pooled buffers.
+	 */
+	public int getPooledCount() {
+		int count = 0;
+		for (final SizeClass sizeClass : sizeClasses) {
+			count += sizeClass.size();
+		}
+		return count;
+	}
+
+	/**
+	 * Reports all buffers whose trackers have been enqueued by the garbage collector.
+	 */
+	private void detectLeaks() {
+		LeakTracker tracker;
+		while ((tracker = (LeakTracker) leakQueue.poll()) != null) {
+			if (leakTrackers.remove(tracker) != null) {
+				this.leakCount.incrementAndGet();
+				final OnLeakListener listener = leakListener;
+				if (listener != null) {
+					listener.onBufferLeaked(tracker.capacity, tracker.acquireTrace);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Inner classes ===============================================================================
+	 */
+
+	/**
+	 * A reference counted byte buffer acquired from {@link BufferPool}.
+	 *
+	 * @author Martin Albedinsky
+	 * @since 1.1
+	 */
+	public static final class Buffer {
+
+		/**
+		 * Size class to which should be this buffer returned once released. May be {@code null}
+		 * for unpooled buffers.
+		 */
+		final SizeClass sizeClass;
+
+		/**
+		 * Array backing this buffer.
+		 */
+		private final byte[] array;
+
+		/**
+		 * Count of references to this buffer.
+		 */
+		final AtomicInteger refCount = new AtomicInteger();
+
+		/**
+		 * Tracker of this buffer used for leak detection. May be {@code null}.
+		 */
+		LeakTracker tracker;
+
+		/**
+		 * Creates a new instance of Buffer with the specified <var>capacity</var>.
+		 *
+		 * @param sizeClass The size class of the new buffer.
+		 * @param capacity  Capacity of the new buffer.
+		 */
+		Buffer(final SizeClass sizeClass, final int capacity) {
+			this.sizeClass = sizeClass;
+			this.array = new byte[capacity];
+		}
+
+		/**
+		 * Returns the array backing this buffer.
+		 *
+		 * @return The backing array. Must not be accessed once this buffer is released.
+		 */
+		@Nonnull public byte[] array() {
+			return array;
+		}
+
+		/**
+		 * Returns the capacity of this buffer.
+		 *
+		 * @return Buffer's capacity.
+		 */
+		public int capacity() {
+			return array.length;
+		}
+
+		/**
+		 * Returns the current count of references to this buffer.
+		 *
+		 * @return Reference count. {@code 0} if the buffer is already released.
+		 */
+		public int refCount() {
+			return refCount.get();
+		}
+
+		/**
+		 * Adds a new reference to this buffer. Each call must be balanced by a call to {@link #release()}.
+		 *
+		 * @return This buffer to allow methods chaining.
+		 * @throws IllegalStateException If this buffer has been already released.
+		 */
+		@Nonnull public Buffer retain() {
+			int count;
+			do {
+				count = refCount.get();
+				if (count <= 0) {
+					throw new IllegalStateException("Buffer has been already released.");
+				}
+			} while (!refCount.compareAndSet(count, count + 1));
+			return this;
+		}
+
+		/**
+		 * Releases a single reference to this buffer. When the last reference is released, the
+		 * buffer is returned back into its pool.
+		 *
+		 * @return {@code True} if the last reference has been released, {@code false} otherwise.
+		 * @throws IllegalStateException If this buffer has been already released.
+		 */
+		public boolean release() {
+			final int count = refCount.decrementAndGet();
+			if (count > 0) {
+				return false;
+			}
+			if (count < 0) {
+				this.refCount.incrementAndGet();
+				throw new IllegalStateException("Buffer has been already released.");
+			}
+			final LeakTracker leakTracker = tracker;
+			if (leakTracker != null) {
+				this.tracker = null;
+				leakTracker.untrack();
+			}
+			if (sizeClass != null) {
+				this.sizeClass.offer(this);
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * A size class of buffers with the same capacity.
+	 */
+	static final class SizeClass {
+
+		/**
+		 * Capacity of buffers in this size class.
+		 */
+		final int capacity;
+
+		/**
+		 * Stack of released buffers.
+		 */
+		private final Buffer[] buffers;
+
+		/**
+		 * Count of buffers in {@link #buffers}.
+		 */
+		private int count;
+
+		/**
+		 * Creates a new instance of SizeClass.
+		 *
+		 * @param capacity   Capacity of buffers in the new size class.
+		 * @param maxBuffers Maximum count of released buffers to retain.
+		 */
+		SizeClass(final int capacity, final int maxBuffers) {
+			this.capacity = capacity;
+			this.buffers = new Buffer[maxBuffers];
+		}
+
+		/**
+		 * Polls a released buffer from this size class.
+		 *
+		 * @return Released buffer or {@code null} if there is none.
+		 */
+		synchronized Buffer poll() {
+			if (count == 0) {
+				return null;
+			}
+			final Buffer buffer = buffers[--count];
+			this.buffers[count] = null;
+			return buffer;
+		}
+
+		/**
+		 * Offers the specified released <var>buffer</var> into this size class. If this size class
+		 * is already full, the buffer is dropped.
+		 *
+		 * @param buffer The released buffer.
+		 */
+		synchronized void offer(final Buffer buffer) {
+			if (count < buffers.length) {
+				this.buffers[count++] = buffer;
+			}
+		}
+
+		/**
+		 * Returns the count of released buffers retained by this size class.
+		 *
+		 * @return Count of buffers.
+		 */
+		synchronized int size() {
+			return count;
+		}
+	}
+
+	/**
+	 * Weak reference to an acquired buffer used to detect buffers that are garbage collected
+	 * without being released.
+	 */
+	final class LeakTracker extends WeakReference<Buffer> {
+
+		/**
+		 * Capacity of the tracked buffer.
+		 */
+		final int capacity;
+
+		/**
+		 * Stack trace recorded when the tracked buffer has been acquired.
+		 */
+		final Throwable acquireTrace;
+
+		/**
+		 * Creates a new instance of LeakTracker for the specified <var>buffer</var>.
+		 *
+		 * @param buffer       The buffer to be tracked.
+		 * @param queue        Queue into which should be the tracker enqueued once the buffer is
+		 *                     garbage collected.
+		 * @param acquireTrace Stack trace of the buffer's acquisition.
+		 */
+		LeakTracker(final Buffer buffer, final ReferenceQueue<Buffer> queue, final Throwable acquireTrace) {
+			super(buffer, queue);
+			this.capacity = buffer.capacity();
+			this.acquireTrace = acquireTrace;
+		}
+
+		/**
+		 * Stops tracking of the buffer as it has been properly released.
+		 */
+		void untrack() {
+			leakTrackers.remove(this);
+			clear();
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,266 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Accumulator used by {@link WebSocketInputStream} to collect payloads of fragmented messages.
+ * <p>
+ * Received payloads are kept as a chain of chunks and are joined together only once the whole
+ * message has been received, so each byte of the message is copied at most once regardless of
+ * the number of fragments the message has been split into. A message that consists of a single
+ * fragment is not copied at all. Fragments backed by pooled buffers are retained by the accumulator
+ * until the message is drained or cleared.
+ *
+ * @author Martin Albedinsky
+ * @since 1.1
+ */
+final class FragmentAccumulator {
+
+	/*
+	 * Constants ===================================================================================
+	 */
+
+	/**
+	 * Log TAG.
+	 */
+	// private static final String TAG = "FragmentAccumulator";
+
+	/**
+	 * Initial capacity for the array holding accumulated chunks.
+	 */
+	private static final int CHUNKS_INITIAL_CAPACITY = 4;
+
+	/*
+	 * Interface ===================================================================================
+	 */
+
+	/*
+	 * Static members ==============================================================================
+	 */
+
+	/*
+	 * Members =====================================================================================
+	 */
+
+	/**
+	 * Arrays holding payloads of all fragments accumulated so far. Grows geometrically.
+	 */
+	private byte[][] chunks = new byte[CHUNKS_INITIAL_CAPACITY][];
+
+	/**
+	 * Offsets of the payload data within the arrays stored in {@link #chunks}.
+	 */
+	private int[] chunkOffsets = new int[CHUNKS_INITIAL_CAPACITY];
+
+	/**
+	 * Lengths of the payload data within the arrays stored in {@link #chunks}.
+	 */
+	private int[] chunkLengths = new int[CHUNKS_INITIAL_CAPACITY];
+
+	/**
+	 * Pooled buffers owning the arrays stored in {@link #chunks}, if any. This accumulator holds
+	 * a single reference to each of these buffers.
+	 */
+	private BufferPool.Buffer[] chunkBuffers = new BufferPool.Buffer[CHUNKS_INITIAL_CAPACITY];
+
+	/**
+	 * Count of chunks stored in {@link #chunks}.
+	 */
+	private int chunkCount;
+
+	/**
+	 * Total count of bytes accumulated so far.
+	 */
+	private int size;
+
+	/*
+	 * Constructors ================================================================================
+	 */
+
+	/*
+	 * Methods =====================================================================================
+	 */
+
+	/**
+	 * Appends payload of the specified <var>frame</var> into this accumulator. If the frame's
+	 * payload is backed by a pooled buffer, the buffer is retained by this accumulator instead
+	 * of copying its data.
+	 *
+	 * @param frame The received fragment to be appended.
+	 * @throws IllegalStateException If size of the accumulated message would exceed the maximum
+	 *                               size of an array.
+	 *
+	 * @see WebSocketFrame#getPooledBuffer()
+	 */
+	void append(@Nonnull final WebSocketDelegate.Frame frame) {
+		final BufferPool.Buffer pooledBuffer = frame instanceof WebSocketFrame ? ((WebSocketFrame) frame).getPooledBuffer() : null;
+		final ByteBuffer payload = frame.getPayloadBuffer();
+		if (pooledBuffer == null) {
+			append(payload);
+		} else if (payload.hasRemaining()) {
+			appendChunk(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining(), pooledBuffer.retain());
+		}
+	}
+
+	/**
+	 * Appends the specified <var>payload</var> into this accumulator. The payload array is not
+	 * copied, so it must not be modified by the caller afterwards.
+	 *
+	 * @param payload The payload of a received fragment to be appended.
+	 * @throws IllegalStateException If size of the accumulated message would exceed the maximum
+	 *                               size of an array.
+	 */
+	void append(@Nonnull final byte[] payload) {
+		if (payload.length > 0) {
+			appendChunk(payload, 0, payload.length, null);
+		}
+	}
+
+	/**
+	 * Appends the remaining data of the specified <var>payload</var> buffer into this accumulator.
+	 * If the buffer is backed by an accessible array which contains only the payload data, the
+	 * array is appended without copying, otherwise the data are copied into a new chunk.
+	 *
+	 * @param payload The payload of a received fragment to be appended. Its position is not changed.
+	 * @throws IllegalStateException If size of the accumulated message would exceed the maximum
+	 *                               size of an array.
+	 */
+	void append(@Nonnull final ByteBuffer payload) {
+		final int length = payload.remaining();
+		if (payload.hasArray() && payload.arrayOffset() + payload.position() == 0 && length == payload.array().length) {
+			append(payload.array());
+		} else if (length > 0) {
+			final byte[] chunk = new byte[length];
+			payload.duplicate().get(chunk);
+			append(chunk);
+		}
+	}
+
+	/**
+	 * Appends a new chunk into this accumulator.
+	 *
+	 * @param array  The array containing the chunk data.
+	 * @param offset Offset in the array at which the chunk data start.
+	 * @param length Length of the chunk data.
+	 * @param buffer Pooled buffer owning the array, already retained for this accumulator. May
+	 *               be {@code null}.
+	 */
+	private void appendChunk(final byte[] array, final int offset, final int length, final BufferPool.Buffer buffer) {
+		if (size + length < 0) {
+			if (buffer != null) {
+				buffer.release();
+			}
+			throw new IllegalStateException("Message is too large to be accumulated.");
+		}
+		if (chunkCount == chunks.length) {
+			final int capacity = chunks.length << 1;
+			this.chunks = Arrays.copyOf(chunks, capacity);
+			this.chunkOffsets = Arrays.copyOf(chunkOffsets, capacity);
+			this.chunkLengths = Arrays.copyOf(chunkLengths, capacity);
+			this.chunkBuffers = Arrays.copyOf(chunkBuffers, capacity);
+		}
+		this.chunks[chunkCount] = array;
+		this.chunkOffsets[chunkCount] = offset;
+		this.chunkLengths[chunkCount] = length;
+		this.chunkBuffers[chunkCount] = buffer;
+		this.chunkCount++;
+		this.size += length;
+	}
+
+	/**
+	 * Returns the total count of bytes accumulated in this accumulator.
+	 *
+	 * @return Accumulated bytes count.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Checks whether this accumulator has some data accumulated.
+	 *
+	 * @return {@code True} if there are no data accumulated, {@code false} otherwise.
+	 */
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Joins all accumulated chunks into a single message and clears this accumulator.
+	 * <p>
+	 * If there is only one chunk accumulated, the message is backed directly by that chunk and
+	 * takes over the reference to its pooled buffer, if any. Otherwise the chunks are copied into
+	 * a buffer acquired from the specified <var>pool</var> or into a new array if there is no pool.
+	 *
+	 * @param pool The pool from which to acquire a buffer for the joined data. May be {@code null}.
+	 * @return Message containing all the accumulated data.
+	 *
+	 * @see #clear()
+	 */
+	@Nonnull IncomingMessage drain(@Nullable final BufferPool pool) {
+		final IncomingMessage message;
+		switch (chunkCount) {
+			case 0:
+				message = new IncomingMessage(new byte[0]);
+				break;
+			case 1:
+				message = new IncomingMessage(chunks[0], chunkOffsets[0], chunkLengths[0], chunkBuffers[0]);
+				this.chunkBuffers[0] = null;
+				break;
+			default:
+				final BufferPool.Buffer buffer = pool == null ? null : pool.acquire(size);
+				final byte[] data = buffer == null ? new byte[size] : buffer.array();
+				int offset = 0;
+				for (int i = 0; i < chunkCount; i++) {
+					System.arraycopy(chunks[i], chunkOffsets[i], data, offset, chunkLengths[i]);
+					offset += chunkLengths[i];
+				}
+				message = new IncomingMessage(data, 0, size, buffer);
+				break;
+		}
+		clear();
+		return message;
+	}
+
+	/**
+	 * Clears all data accumulated in this accumulator and releases all pooled buffers retained
+	 * by it.
+	 */
+	void clear() {
+		for (int i = 0; i < chunkCount; i++) {
+			if (chunkBuffers[i] != null) {
+				this.chunkBuffers[i].release();
+				this.chunkBuffers[i] = null;
+			}
+		}
+		Arrays.fill(chunks, 0, chunkCount, null);
+		this.chunkCount = 0;
+		this.size = 0;
+	}
+
+	/*
+	 * Inner classes ===============================================================================
+	 */
+}
\ No newline at end of file
@@ -0,0 +1,93 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import java.io.IOException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Interface for stages of a pipeline which transforms frames exchanged between streams of
+ * {@link WebSocketAdapter} and its {@link WebSocketDelegate}, like compression of payloads.
+ * <p>
+ * Transforms are created for each connection via {@link Factory} registered via
+ * {@link WebSocketAdapter#addFrameTransform(Factory)}, so they may keep a per-connection state.
+ * Outgoing frames are passed through the transforms in order in which their factories have been
+ * added, while incoming frames are passed through them in reverse order. All outgoing frames are
+ * passed to a transform one at a time and in order in which they are sent, the same applies for
+ * incoming frames.
+ * <p>
+ * A transformed frame should not share its payload with the original frame, because the original
+ * payload is valid only until the transform method returns.
+ *
+ * @author Martin Albedinsky
+ * @since 1.1
+ *
+ * @see PerMessageDeflate
+ */
+public interface FrameTransform {
+
+	/**
+	 * Factory creating transforms for new connections.
+	 *
+	 * @author Martin Albedinsky
+	 * @since 1.1
+	 */
+	interface Factory {
+
+		/**
+		 * Creates a new transform for the current connection of the specified <var>delegate</var>.
+		 *
+		 * @param delegate The delegate of the connection for which to create the transform. Its
+		 *                 {@link WebSocketDelegate#getNegotiatedExtensions()} may be used to decide
+		 *                 whether the transform should be applied.
+		 * @return The transform or {@code null} if it should not be applied for the connection.
+		 */
+		@Nullable FrameTransform create(@Nonnull WebSocketDelegate delegate);
+	}
+
+	/**
+	 * Transforms the specified <var>frame</var> which is about to be sent to the delegate.
+	 *
+	 * @param frame The outgoing frame to be transformed.
+	 * @return The transformed frame, which may be the same frame if no transformation is needed.
+	 * @throws IOException If the frame cannot be transformed.
+	 */
+	@Nonnull WebSocketDelegate.Frame transformOutgoing(@Nonnull WebSocketDelegate.Frame frame) throws IOException;
+
+	/**
+	 * Transforms the specified <var>frame</var> which has been received by the delegate.
+	 *
+	 * @param frame The incoming frame to be transformed.
+	 * @return The transformed frame, which may be the same frame if no transformation is needed.
+	 * @throws IOException If the frame cannot be transformed, for example if its data are corrupted.
+	 */
+	@Nonnull WebSocketDelegate.Frame transformIncoming(@Nonnull WebSocketDelegate.Frame frame) throws IOException;
+
+	/**
+	 * Releases all resources held by this transform. Invoked once the connection for which has
+	 * been this transform created is closed.
+	 * <p>
+	 * Default implementation does nothing.
+	 */
+	default void release() {
+		// No resources held by default.
+	}
+}
\ No newline at end of file
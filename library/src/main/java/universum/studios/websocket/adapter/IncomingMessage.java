@@ -0,0 +1,231 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import java.nio.ByteBuffer;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A complete message received by {@link WebSocketInputStream} which is waiting to be read.
+ * <p>
+ * The message data may occupy only a part of the backing array, which may be also owned by a
+ * pooled buffer. In such case the message holds a single reference to that buffer which is
+ * released via {@link #release()} once the message has been consumed or discarded.
+ *
+ * @author Martin Albedinsky
+ * @since 1.1
+ */
+final class IncomingMessage {
+
+	/*
+	 * Constants ===================================================================================
+	 */
+
+	/**
+	 * Log TAG.
+	 */
+	// private static final String TAG = "IncomingMessage";
+
+	/*
+	 * Interface ===================================================================================
+	 */
+
+	/*
+	 * Static members ==============================================================================
+	 */
+
+	/*
+	 * Members =====================================================================================
+	 */
+
+	/**
+	 * Array containing data of this message.
+	 */
+	final byte[] data;
+
+	/**
+	 * Offset in the {@link #data} array at which the message data start.
+	 */
+	final int offset;
+
+	/**
+	 * Length of the message data.
+	 */
+	final int length;
+
+	/**
+	 * Pooled buffer owning the {@link #data} array. May be {@code null}.
+	 */
+	private BufferPool.Buffer buffer;
+
+	/**
+	 * Index of the next byte to be read, relative to {@link #offset}.
+	 */
+	private int position;
+
+	/**
+	 * Marked position, relative to {@link #offset}.
+	 */
+	private int mark;
+
+	/*
+	 * Constructors ================================================================================
+	 */
+
+	/**
+	 * Creates a new instance of IncomingMessage backed by the whole specified <var>data</var> array.
+	 *
+	 * @param data The message data.
+	 */
+	IncomingMessage(@Nonnull final byte[] data) {
+		this(data, 0, data.length, null);
+	}
+
+	/**
+	 * Creates a new instance of IncomingMessage backed by a range of the specified <var>data</var>
+	 * array.
+	 *
+	 * @param data   The array containing the message data.
+	 * @param offset Offset in the array at which the message data start.
+	 * @param length Length of the message data.
+	 * @param buffer Pooled buffer owning the array. The new message takes over one reference
+	 *               to this buffer. May be {@code null}.
+	 */
+	IncomingMessage(@Nonnull final byte[] data, final int offset, final int length, @Nullable final BufferPool.Buffer buffer) {
+		this.data = data;
+		this.offset = offset;
+		this.length = length;
+		this.buffer = buffer;
+	}
+
+	/*
+	 * Methods =====================================================================================
+	 */
+
+	/**
+	 * Returns the count of bytes of this message that have not been read yet.
+	 *
+	 * @return Remaining bytes count.
+	 */
+	int remaining() {
+		return length - position;
+	}
+
+	/**
+	 * Reads a single byte of this message.
+	 *
+	 * @return The read byte or {@code -1} if the whole message has been already read.
+	 */
+	int read() {
+		return position < length ? data[offset + position++] & 0xff : -1;
+	}
+
+	/**
+	 * Reads up to the specified <var>count</var> of bytes of this message into the given array.
+	 *
+	 * @param target       The array into which to read the data.
+	 * @param targetOffset Offset in the target array at which to start writing.
+	 * @param count        Maximum count of bytes to read.
+	 * @return Count of bytes actually read.
+	 */
+	int read(@Nonnull final byte[] target, final int targetOffset, final int count) {
+		final int readCount = Math.min(count, length - position);
+		System.arraycopy(data, offset + position, target, targetOffset, readCount);
+		this.position += readCount;
+		return readCount;
+	}
+
+	/**
+	 * Reads as many bytes of this message as fit into the remaining space of the given buffer.
+	 *
+	 * @param target The buffer into which to read the data.
+	 * @return Count of bytes actually read.
+	 */
+	int read(@Nonnull final ByteBuffer target) {
+		final int readCount = Math.min(target.remaining(), length - position);
+		target.put(data, offset + position, readCount);
+		this.position += readCount;
+		return readCount;
+	}
+
+	/**
+	 * Skips up to the specified <var>count</var> of bytes of this message.
+	 *
+	 * @param count Maximum count of bytes to skip.
+	 * @return Count of bytes actually skipped.
+	 */
+	long skip(final long count) {
+		final int skipCount = (int) Math.max(0, Math.min(count, length - position));
+		this.position += skipCount;
+		return skipCount;
+	}
+
+	/**
+	 * Marks the current position in this message.
+	 */
+	void mark() {
+		this.mark = position;
+	}
+
+	/**
+	 * Resets the current position in this message to the marked one.
+	 */
+	void reset() {
+		this.position = mark;
+	}
+
+	/**
+	 * Returns the remaining data of this message as a buffer which is independent of this message.
+	 * The data are wrapped without copying, unless they are owned by a pooled buffer, in which case
+	 * they are copied and the pooled buffer is released.
+	 *
+	 * @return Buffer with the remaining data, positioned at its start.
+	 */
+	@Nonnull ByteBuffer detach() {
+		final int remaining = length - position;
+		final ByteBuffer result;
+		if (buffer == null) {
+			result = ByteBuffer.wrap(data, offset + position, remaining).slice();
+		} else {
+			final byte[] copy = new byte[remaining];
+			System.arraycopy(data, offset + position, copy, 0, remaining);
+			result = ByteBuffer.wrap(copy);
+			release();
+		}
+		this.position = length;
+		return result;
+	}
+
+	/**
+	 * Releases the pooled buffer owning data of this message, if any. The data must not be
+	 * accessed afterwards.
+	 */
+	void release() {
+		if (buffer != null) {
+			this.buffer.release();
+			this.buffer = null;
+		}
+	}
+
+	/*
+	 * Inner classes ===============================================================================
+	 */
+}
\ No newline at end of file
@@ -0,0 +1,274 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A heartbeat used by {@link WebSocketAdapter} to detect dead peers.
+ * <p>
+ * The keep alive sends a ping frame via the adapted delegate at the specified interval and waits
+ * for a pong frame with the same payload before it sends the next one.
+ * The time between sending of the ping and receiving of the matching pong is reported to the
+ * adapter as its round trip time. If the pong is not received within the specified timeout, the
+ * peer is considered to be dead and the adapter is closed, which also wakes up all readers blocked
+ * upon its input stream. An adapter in resilient mode closes only its current connection and
+ * reconnects instead.
+ * <p>
+ * Pings and timeouts of all keep alives are scheduled on the shared {@link WebSocketTimer}, so
+ * keep alive does not require a thread per adapter. As sending of a ping as well as closing of the
+ * adapter may block, both run via the blocking executor of the timer rather than on its worker.
+ * <p>
+ * Pings are sent via the adapted delegate directly, so they do not wait for data frames of the
+ * adapter, which may be blocked by the peer the keep alive is supposed to detect. The delegate
+ * is thus required to support sending of control frames concurrently with data frames, as
+ * described by {@link WebSocketDelegate#sendFrame(WebSocketDelegate.Frame)}.
+ *
+ * @author Martin Albedinsky
+ * @since 1.1
+ */
+final class KeepAlive implements WebSocketDelegate.OnControlFrameListener {
+
+	/*
+	 * Constants ===================================================================================
+	 */
+
+	/**
+	 * Log TAG.
+	 */
+	// private static final String TAG = "KeepAlive";
+
+	/**
+	 * Length of payload of the sent ping frames.
+	 */
+	private static final int PING_PAYLOAD_LENGTH = 8;
+
+	/*
+	 * Interface ===================================================================================
+	 */
+
+	/*
+	 * Static members ==============================================================================
+	 */
+
+	/*
+	 * Members =====================================================================================
+	 */
+
+	/**
+	 * Adapter which is kept alive.
+	 */
+	private final WebSocketAdapter adapter;
+
+	/**
+	 * Delegate via which are pings sent and pongs received.
+	 */
+	private final WebSocketDelegate delegate;
+
+	/**
+	 * Interval between sending of two pings, in nanoseconds.
+	 */
+	private final long intervalNanos;
+
+	/**
+	 * Time within which must be a ping answered, in nanoseconds.
+	 */
+	private final long timeoutNanos;
+
+	/**
+	 * Lock guarding state of this keep alive.
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * Handle of the scheduled ping or pong timeout. May be {@code null}.
+	 */
+	private WebSocketTimer.Timeout scheduledTask;
+
+	/**
+	 * Sequence number of the last sent ping, used as its payload.
+	 */
+	private long pingSequence;
+
+	/**
+	 * Time at which the last ping has been sent, as returned by {@link System#nanoTime()}.
+	 */
+	private long pingSentTime;
+
+	/**
+	 * Boolean flag indicating whether the last sent ping has not been answered yet.
+	 */
+	private boolean awaitingPong;
+
+	/**
+	 * Boolean flag indicating whether this keep alive has been stopped.
+	 */
+	private boolean stopped;
+
+	/*
+	 * Constructors ================================================================================
+	 */
+
+	/**
+	 * Creates a new instance of KeepAlive for the specified <var>adapter</var>.
+	 *
+	 * @param adapter  The adapter to be kept alive.
+	 * @param delegate The delegate via which to send pings. It must report received control
+	 *                 frames, otherwise the adapter is closed once the first ping times out.
+	 * @param interval Interval between sending of two pings.
+	 * @param timeout  Time within which must be a ping answered.
+	 * @param unit     Unit of the interval and timeout.
+	 */
+	KeepAlive(final WebSocketAdapter adapter, final WebSocketDelegate delegate, final long interval, final long timeout, final TimeUnit unit) {
+		this.adapter = adapter;
+		this.delegate = delegate;
+		this.intervalNanos = unit.toNanos(interval);
+		this.timeoutNanos = unit.toNanos(timeout);
+	}
+
+	/*
+	 * Methods =====================================================================================
+	 */
+
+	/**
+	 * Starts this keep alive, so the first ping is sent once the interval elapses.
+	 *
+	 * @see #stop()
+	 */
+	void start() {
+		this.delegate.registerOnControlFrameListener(this);
+		lock.lock();
+		try {
+			if (!stopped) {
+				this.scheduledTask = WebSocketTimer.shared().scheduleBlocking(this::sendPing, intervalNanos, TimeUnit.NANOSECONDS);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Sends a new ping and schedules its timeout.
+	 */
+	private void sendPing() {
+		final byte[] payload = new byte[PING_PAYLOAD_LENGTH];
+		lock.lock();
+		try {
+			if (stopped) {
+				return;
+			}
+			this.pingSequence++;
+			this.pingSentTime = System.nanoTime();
+			this.awaitingPong = true;
+			this.scheduledTask = WebSocketTimer.shared().scheduleBlocking(this::onPongTimeout, timeoutNanos, TimeUnit.NANOSECONDS);
+			ByteBuffer.wrap(payload).putLong(pingSequence);
+		} finally {
+			lock.unlock();
+		}
+		// A failed ping is not handled here, the pong timeout closes the adapter if the connection
+		// does not recover.
+		this.delegate.sendFrameAsync(new WebSocketFrame.Builder()
+				.payload(payload)
+				.opcode(WebSocketDelegate.Frame.OPCODE_PING)
+				.build()
+		);
+	}
+
+	/**
+	 * Handles pong frames answering the last sent ping. Other frames are ignored.
+	 */
+	@Override public void onControlFrameReceived(@Nonnull final WebSocketDelegate.Frame frame) {
+		if (frame.getOpcode() != WebSocketDelegate.Frame.OPCODE_PONG) {
+			return;
+		}
+		final ByteBuffer payload = frame.getPayloadBuffer();
+		if (payload.remaining() != PING_PAYLOAD_LENGTH) {
+			return;
+		}
+		final long roundTripNanos;
+		lock.lock();
+		try {
+			if (stopped || !awaitingPong || payload.getLong(payload.position()) != pingSequence) {
+				return;
+			}
+			final long now = System.nanoTime();
+			roundTripNanos = now - pingSentTime;
+			this.awaitingPong = false;
+			this.scheduledTask.cancel();
+			this.scheduledTask = WebSocketTimer.shared().scheduleBlocking(
+					this::sendPing,
+					Math.max(0, pingSentTime + intervalNanos - now),
+					TimeUnit.NANOSECONDS
+			);
+		} finally {
+			lock.unlock();
+		}
+		this.adapter.onRoundTripMeasured(roundTripNanos);
+	}
+
+	/**
+	 * Closes the adapter as the last sent ping has not been answered in time.
+	 */
+	private void onPongTimeout() {
+		lock.lock();
+		try {
+			if (stopped || !awaitingPong) {
+				return;
+			}
+			this.stopped = true;
+		} finally {
+			lock.unlock();
+		}
+		this.delegate.unregisterOnControlFrameListener(this);
+		try {
+			this.adapter.onKeepAliveTimeout();
+		} catch (IOException ignored) {
+			// The peer is dead anyway.
+		}
+	}
+
+	/**
+	 * Stops this keep alive, so no more pings are sent. This keep alive should not be used
+	 * afterwards.
+	 *
+	 * @see #start()
+	 */
+	void stop() {
+		lock.lock();
+		try {
+			this.stopped = true;
+			if (scheduledTask != null) {
+				this.scheduledTask.cancel();
+				this.scheduledTask = null;
+			}
+		} finally {
+			lock.unlock();
+		}
+		this.delegate.unregisterOnControlFrameListener(this);
+	}
+
+	/*
+	 * Inner classes ===============================================================================
+	 */
+}
\ No newline at end of file
@@ -0,0 +1,542 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link FrameTransform} implementing the <b>permessage-deflate</b> extension as specified by
+ * <a href="https://tools.ietf.org/html/rfc7692">RFC 7692</a> from the client's point of view.
+ * <p>
+ * Each transform keeps a single {@link Deflater} and {@link Inflater} for its connection, so
+ * the compression context may be taken over from one message to another, which considerably
+ * improves compression of small similar messages, like JSON payloads. Context takeover is disabled
+ * for each direction separately if the server negotiated <b>client_no_context_takeover</b> or
+ * <b>server_no_context_takeover</b> respectively.
+ * <p>
+ * Compressed messages are marked via {@link WebSocketDelegate.Frame#isCompressed()} on their
+ * first frame, so the delegate must set the <b>RSV1</b> bit of outgoing frames and report it for
+ * incoming frames accordingly. Incoming messages which are not marked as compressed are passed
+ * through unchanged.
+ * <p>
+ * {@link Deflater} does not allow to limit size of its sliding window, so if the server negotiated
+ * <b>client_max_window_bits</b> lower than {@code 15}, outgoing messages are sent uncompressed,
+ * which is permitted by the specification, while incoming messages are still decompressed.
+ * <p>
+ * Size of a decompressed incoming message is limited, so a small compressed message cannot exhaust
+ * memory of the client. The limit may be specified via {@link Factory#Factory(int, int)}, otherwise
+ * the {@link WebSocketAdapter#getMaxIncomingBytes() incoming bytes limit} of the adapter is used.
+ * When a message exceeds the limit, its connection fails.
+ *
+ * <h3>Usage</h3>
+ * <pre>
+ * adapter.addFrameTransform(new PerMessageDeflate.Factory());
+ * </pre>
+ * The delegate should offer {@link #EXTENSION_NAME} via <b>Sec-WebSocket-Extensions</b> header
+ * in its opening handshake and report the server's response via
+ * {@link WebSocketDelegate#getNegotiatedExtensions()}.
+ *
+ * @author Martin Albedinsky
+ * @since 1.1
+ */
+public final class PerMessageDeflate implements FrameTransform {
+
+	/*
+	 * Constants ===================================================================================
+	 */
+
+	/**
+	 * Log TAG.
+	 */
+	// private static final String TAG = "PerMessageDeflate";
+
+	/**
+	 * Name of the extension as used in the <b>Sec-WebSocket-Extensions</b> header.
+	 */
+	public static final String EXTENSION_NAME = "permessage-deflate";
+
+	/**
+	 * Parameter disabling context takeover for messages sent by the client.
+	 */
+	private static final String CLIENT_NO_CONTEXT_TAKEOVER = "client_no_context_takeover";
+
+	/**
+	 * Parameter disabling context takeover for messages sent by the server.
+	 */
+	private static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+
+	/**
+	 * Parameter limiting size of the sliding window used to compress messages sent by the client.
+	 */
+	private static final String CLIENT_MAX_WINDOW_BITS = "client_max_window_bits";
+
+	/**
+	 * Maximum size of the sliding window supported by {@link Deflater} in bits.
+	 */
+	private static final int MAX_WINDOW_BITS = 15;
+
+	/**
+	 * Trailing bytes of each message compressed with sync flush, which are removed from the sent
+	 * payload and appended to the received one.
+	 */
+	private static final byte[] TAIL = {0x00, 0x00, (byte) 0xff, (byte) 0xff};
+
+	/**
+	 * Initial size of the buffers used for compressed and decompressed data.
+	 */
+	private static final int BUFFER_INITIAL_SIZE = 1024;
+
+	/**
+	 * Maximum size of the buffers that is retained for subsequent frames. Larger buffers are
+	 * released so a single large message does not pin its memory for the whole connection.
+	 */
+	private static final int BUFFER_MAX_RETAINED_SIZE = 64 * 1024;
+
+	/**
+	 * Maximum size of an array which may be allocated.
+	 */
+	private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+	/*
+	 * Interface ===================================================================================
+	 */
+
+	/*
+	 * Static members ==============================================================================
+	 */
+
+	/*
+	 * Members =====================================================================================
+	 */
+
+	/**
+	 * Deflater used to compress all outgoing messages. May be {@code null} if outgoing messages
+	 * are not compressed.
+	 */
+	private final Deflater deflater;
+
+	/**
+	 * Inflater used to decompress all incoming compressed messages.
+	 */
+	private final Inflater inflater;
+
+	/**
+	 * Boolean flag indicating whether the compression context may be taken over from one outgoing
+	 * message to another.
+	 */
+	private final boolean deflaterContextTakeover;
+
+	/**
+	 * Boolean flag indicating whether the compression context may be taken over from one incoming
+	 * message to another.
+	 */
+	private final boolean inflaterContextTakeover;
+
+	/**
+	 * Buffer used to collect compressed data of an outgoing frame. Grows as needed.
+	 */
+	private byte[] deflateBuffer = new byte[BUFFER_INITIAL_SIZE];
+
+	/**
+	 * Buffer used to collect decompressed data of an incoming frame. Grows as needed.
+	 */
+	private byte[] inflateBuffer = new byte[BUFFER_INITIAL_SIZE];
+
+	/**
+	 * Maximum size of a decompressed incoming message or {@code 0} if it has not been specified,
+	 * in which case only the maximum size of an array applies.
+	 */
+	private int maxMessageSize;
+
+	/**
+	 * Count of decompressed bytes of the current incoming message in its already transformed
+	 * frames.
+	 */
+	private long incomingMessageSize;
+
+	/**
+	 * Boolean flag indicating whether some non-final frames of the current outgoing message have
+	 * been already transformed.
+	 */
+	private boolean outgoingFragmented;
+
+	/**
+	 * Boolean flag indicating whether some non-final frames of the current incoming message have
+	 * been already transformed.
+	 */
+	private boolean incomingFragmented;
+
+	/**
+	 * Boolean flag indicating whether the current incoming message is compressed.
+	 */
+	private boolean incomingCompressed;
+
+	/*
+	 * Constructors ================================================================================
+	 */
+
+	/**
+	 * Creates a new instance of PerMessageDeflate with the specified parameters.
+	 *
+	 * @param compressionLevel        Level of compression for outgoing messages.
+	 * @param compress                {@code True} to compress outgoing messages, {@code false}
+	 *                                to send them uncompressed.
+	 * @param deflaterContextTakeover {@code True} to take over the compression context between
+	 *                                outgoing messages, {@code false} otherwise.
+	 * @param inflaterContextTakeover {@code True} if the server takes over the compression context
+	 *                                between incoming messages, {@code false} otherwise.
+	 */
+	PerMessageDeflate(final int compressionLevel, final boolean compress, final boolean deflaterContextTakeover, final boolean inflaterContextTakeover) {
+		this.deflater = compress ? new Deflater(compressionLevel, true) : null;
+		this.inflater = new Inflater(true);
+		this.deflaterContextTakeover = deflaterContextTakeover;
+		this.inflaterContextTakeover = inflaterContextTakeover;
+	}
+
+	/*
+	 * Methods =====================================================================================
+	 */
+
+	/**
+	 * Specifies a maximum size of a decompressed incoming message. When a message exceeds this
+	 * size, {@link #transformIncoming(WebSocketDelegate.Frame)} fails.
+	 *
+	 * @param maxSize The desired maximum size in bytes or {@code 0} to apply only the maximum size
+	 *                of an array.
+	 *
+	 * @see #setDefaultMaxMessageSize(int)
+	 */
+	void setMaxMessageSize(final int maxSize) {
+		this.maxMessageSize = maxSize;
+	}
+
+	/**
+	 * Specifies a maximum size of a decompressed incoming message which should be used if no size
+	 * has been specified via {@link #setMaxMessageSize(int)}.
+	 *
+	 * @param maxSize The desired default maximum size in bytes.
+	 */
+	void setDefaultMaxMessageSize(final int maxSize) {
+		if (maxMessageSize == 0) {
+			this.maxMessageSize = maxSize;
+		}
+	}
+
+	/**
+	 * Returns the maximum size of a decompressed incoming message.
+	 *
+	 * @return Maximum size in bytes or {@code 0} if it has not been specified.
+	 */
+	int getMaxMessageSize() {
+		return maxMessageSize;
+	}
+
+	/**
+	 * Compresses payload of the specified <var>frame</var> unless outgoing messages should not be
+	 * compressed.
+	 */
+	@Override @Nonnull public WebSocketDelegate.Frame transformOutgoing(@Nonnull final WebSocketDelegate.Frame frame) {
+		if (deflater == null) {
+			return frame;
+		}
+		final boolean firstFrame = !outgoingFragmented;
+		this.outgoingFragmented = !frame.isFinal();
+		final ByteBuffer payload = frame.getPayloadBuffer();
+		if (payload.hasArray()) {
+			this.deflater.setInput(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+		} else {
+			final byte[] input = new byte[payload.remaining()];
+			payload.get(input);
+			this.deflater.setInput(input);
+		}
+		int length = 0;
+		do {
+			if (length == deflateBuffer.length) {
+				this.deflateBuffer = Arrays.copyOf(deflateBuffer, deflateBuffer.length << 1);
+			}
+			length += deflater.deflate(deflateBuffer, length, deflateBuffer.length - length, Deflater.SYNC_FLUSH);
+		} while (length == deflateBuffer.length);
+		if (frame.isFinal()) {
+			if (endsWithTail(deflateBuffer, length)) {
+				length -= TAIL.length;
+			}
+			if (!deflaterContextTakeover) {
+				this.deflater.reset();
+			}
+		}
+		final byte[] compressed = Arrays.copyOf(deflateBuffer, length);
+		if (deflateBuffer.length > BUFFER_MAX_RETAINED_SIZE) {
+			this.deflateBuffer = new byte[BUFFER_INITIAL_SIZE];
+		}
+		return new WebSocketFrame.Builder()
+				.payload(compressed)
+				.opcode(frame.getOpcode())
+				.isFinal(frame.isFinal())
+				.compressed(firstFrame)
+				.build();
+	}
+
+	/**
+	 * Checks whether the specified <var>data</var> end with {@link #TAIL}.
+	 *
+	 * @param data   The data to be checked.
+	 * @param length Length of the data.
+	 * @return {@code True} if the data end with the tail, {@code false} otherwise.
+	 */
+	private static boolean endsWithTail(final byte[] data, final int length) {
+		if (length < TAIL.length) {
+			return false;
+		}
+		for (int i = 0; i < TAIL.length; i++) {
+			if (data[length - TAIL.length + i] != TAIL[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Decompresses payload of the specified <var>frame</var> if it belongs to a compressed message.
+	 *
+	 * @throws IOException If the compressed data are corrupted or the decompressed message exceeds
+	 * the maximum message size.
+	 */
+	@Override @Nonnull public WebSocketDelegate.Frame transformIncoming(@Nonnull final WebSocketDelegate.Frame frame) throws IOException {
+		if (!incomingFragmented) {
+			this.incomingCompressed = frame.isCompressed();
+		}
+		this.incomingFragmented = !frame.isFinal();
+		if (!incomingCompressed) {
+			return frame;
+		}
+		final ByteBuffer payload = frame.getPayloadBuffer();
+		int length;
+		if (payload.hasArray()) {
+			length = inflate(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining(), 0);
+		} else {
+			final byte[] input = new byte[payload.remaining()];
+			payload.get(input);
+			length = inflate(input, 0, input.length, 0);
+		}
+		if (frame.isFinal()) {
+			length = inflate(TAIL, 0, TAIL.length, length);
+			if (!inflaterContextTakeover || inflater.finished()) {
+				this.inflater.reset();
+			}
+			this.incomingMessageSize = 0;
+		} else {
+			this.incomingMessageSize += length;
+		}
+		final byte[] decompressed = Arrays.copyOf(inflateBuffer, length);
+		if (inflateBuffer.length > BUFFER_MAX_RETAINED_SIZE) {
+			this.inflateBuffer = new byte[BUFFER_INITIAL_SIZE];
+		}
+		return new WebSocketFrame.Builder()
+				.payload(decompressed)
+				.opcode(frame.getOpcode())
+				.isFinal(frame.isFinal())
+				.build();
+	}
+
+	/**
+	 * Decompresses the specified <var>input</var> data into {@link #inflateBuffer}. The buffer is
+	 * grown as needed, but never beyond the size remaining for the current message.
+	 *
+	 * @param input  The array containing the compressed data.
+	 * @param offset Offset in the array at which the compressed data start.
+	 * @param length Length of the compressed data.
+	 * @param start  Index in the inflate buffer at which to start writing the decompressed data.
+	 * @return Index in the inflate buffer after the last decompressed byte.
+	 * @throws IOException If the compressed data are corrupted or the decompressed message exceeds
+	 *                     the maximum message size.
+	 */
+	private int inflate(final byte[] input, final int offset, final int length, final int start) throws IOException {
+		final long maxLength = Math.min(maxMessageSize == 0 ? MAX_ARRAY_SIZE : maxMessageSize, MAX_ARRAY_SIZE) - incomingMessageSize;
+		this.inflater.setInput(input, offset, length);
+		int end = start;
+		try {
+			while (!inflater.finished()) {
+				if (end == inflateBuffer.length) {
+					growInflateBuffer(maxLength);
+				}
+				final int count = inflater.inflate(inflateBuffer, end, inflateBuffer.length - end);
+				end += count;
+				if (end > maxLength) {
+					throw new IOException("Decompressed message exceeds the maximum size(" + (incomingMessageSize + maxLength) + ").");
+				}
+				if (end < inflateBuffer.length && (count == 0 || inflater.needsInput())) {
+					// All decompressed data of the consumed input have been written.
+					break;
+				}
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Invalid compressed data.", e);
+		}
+		return end;
+	}
+
+	/**
+	 * Grows {@link #inflateBuffer} to twice its size, but at most by one byte over the specified
+	 * <var>maxLength</var>, so exceeding of that length may be detected.
+	 *
+	 * @param maxLength Maximum count of bytes which may be decompressed into the buffer.
+	 * @throws IOException If the buffer cannot be grown any further.
+	 */
+	private void growInflateBuffer(final long maxLength) throws IOException {
+		final int capacity = (int) Math.min(Math.min((long) inflateBuffer.length << 1, maxLength + 1), MAX_ARRAY_SIZE);
+		if (capacity <= inflateBuffer.length) {
+			throw new IOException("Decompressed message exceeds the maximum size(" + (incomingMessageSize + maxLength) + ").");
+		}
+		this.inflateBuffer = Arrays.copyOf(inflateBuffer, capacity);
+	}
+
+	/**
+	 */
+	@Override public void release() {
+		if (deflater != null) {
+			this.deflater.end();
+		}
+		this.inflater.end();
+	}
+
+	/*
+	 * Inner classes ===============================================================================
+	 */
+
+	/**
+	 * A {@link FrameTransform.Factory} creating {@link PerMessageDeflate} transforms for connections
+	 * which negotiated the permessage-deflate extension.
+	 *
+	 * @author Martin Albedinsky
+	 * @since 1.1
+	 */
+	public static final class Factory implements FrameTransform.Factory {
+
+		/**
+		 * Level of compression for outgoing messages.
+		 */
+		private final int compressionLevel;
+
+		/**
+		 * Maximum size of a decompressed incoming message or {@code 0} to use the incoming bytes
+		 * limit of the adapter.
+		 */
+		private final int maxMessageSize;
+
+		/**
+		 * Creates a new instance of Factory with the default compression level.
+		 *
+		 * @see Deflater#DEFAULT_COMPRESSION
+		 */
+		public Factory() {
+			this(Deflater.DEFAULT_COMPRESSION);
+		}
+
+		/**
+		 * Creates a new instance of Factory with the specified compression level.
+		 *
+		 * @param compressionLevel The desired level of compression for outgoing messages, from
+		 *                         {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}
+		 *                         or {@link Deflater#DEFAULT_COMPRESSION}.
+		 * @throws IllegalArgumentException If the specified level is not valid.
+		 */
+		public Factory(final int compressionLevel) {
+			this(compressionLevel, 0);
+		}
+
+		/**
+		 * Creates a new instance of Factory with the specified compression level and maximum size
+		 * of decompressed incoming messages.
+		 *
+		 * @param compressionLevel The desired level of compression for outgoing messages, from
+		 *                         {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}
+		 *                         or {@link Deflater#DEFAULT_COMPRESSION}.
+		 * @param maxMessageSize   The desired maximum size of a decompressed incoming message in
+		 *                         bytes or {@code 0} to use the incoming bytes limit of the adapter.
+		 * @throws IllegalArgumentException If the specified level is not valid or the maximum size
+		 *                                  is negative.
+		 *
+		 * @see WebSocketAdapter#setIncomingBufferLimits(int, int)
+		 */
+		public Factory(final int compressionLevel, final int maxMessageSize) {
+			if (compressionLevel < Deflater.DEFAULT_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION) {
+				throw new IllegalArgumentException("Invalid compression level(" + compressionLevel + ").");
+			}
+			if (maxMessageSize < 0) {
+				throw new IllegalArgumentException("Maximum message size must not be negative.");
+			}
+			this.compressionLevel = compressionLevel;
+			this.maxMessageSize = maxMessageSize;
+		}
+
+		/**
+		 * Creates a new PerMessageDeflate transform if the permessage-deflate extension is listed
+		 * within the extensions negotiated by the specified <var>delegate</var>.
+		 */
+		@Override @Nullable public FrameTransform create(@Nonnull final WebSocketDelegate delegate) {
+			for (final String extension : delegate.getNegotiatedExtensions().split(",")) {
+				final String[] parameters = extension.split(";");
+				if (!EXTENSION_NAME.equalsIgnoreCase(parameters[0].trim())) {
+					continue;
+				}
+				boolean deflaterContextTakeover = true;
+				boolean inflaterContextTakeover = true;
+				boolean compress = true;
+				for (int i = 1; i < parameters.length; i++) {
+					final String[] parameter = parameters[i].split("=", 2);
+					final String name = parameter[0].trim().toLowerCase(Locale.ROOT);
+					if (CLIENT_NO_CONTEXT_TAKEOVER.equals(name)) {
+						deflaterContextTakeover = false;
+					} else if (SERVER_NO_CONTEXT_TAKEOVER.equals(name)) {
+						inflaterContextTakeover = false;
+					} else if (CLIENT_MAX_WINDOW_BITS.equals(name) && parameter.length == 2) {
+						compress = parseWindowBits(parameter[1]) >= MAX_WINDOW_BITS;
+					}
+				}
+				final PerMessageDeflate transform = new PerMessageDeflate(compressionLevel, compress, deflaterContextTakeover, inflaterContextTakeover);
+				transform.setMaxMessageSize(maxMessageSize);
+				return transform;
+			}
+			return null;
+		}
+
+		/**
+		 * Parses the specified value of a window bits parameter.
+		 *
+		 * @param value The value to be parsed, possibly quoted.
+		 * @return Parsed window bits or {@code 0} if the value is not valid.
+		 */
+		private static int parseWindowBits(final String value) {
+			try {
+				return Integer.parseInt(value.trim().replace("\"", ""));
+			} catch (NumberFormatException e) {
+				return 0;
+			}
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,350 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A policy which enables resilient mode of {@link WebSocketAdapter}, see
+ * {@link WebSocketAdapter#setReconnectPolicy(ReconnectPolicy)}, and determines how the adapter
+ * reconnects after its connection is lost and how many outgoing messages it retains in order to
+ * replay them once reconnected.
+ * <p>
+ * Delays between reconnection attempts grow exponentially from the initial delay up to the maximum
+ * delay, and each delay is randomly shortened by up to the jitter fraction, so adapters which have
+ * lost their connections at the same time do not reconnect at the same time.
+ *
+ * @author Martin Albedinsky
+ * @since 1.1
+ */
+public final class ReconnectPolicy {
+
+	/*
+	 * Constants ===================================================================================
+	 */
+
+	/**
+	 * Log TAG.
+	 */
+	// private static final String TAG = "ReconnectPolicy";
+
+	/*
+	 * Interface ===================================================================================
+	 */
+
+	/*
+	 * Static members ==============================================================================
+	 */
+
+	/*
+	 * Members =====================================================================================
+	 */
+
+	/**
+	 * Delay in milliseconds before the first reconnection attempt.
+	 */
+	private final long initialDelay;
+
+	/**
+	 * Maximum delay in milliseconds between two reconnection attempts.
+	 */
+	private final long maxDelay;
+
+	/**
+	 * Multiplier by which is the delay increased after each failed attempt.
+	 */
+	private final double multiplier;
+
+	/**
+	 * Fraction of a delay by which may be the delay randomly shortened.
+	 */
+	private final double jitter;
+
+	/**
+	 * Maximum count of reconnection attempts. {@code 0} means unlimited count.
+	 */
+	private final int maxAttempts;
+
+	/**
+	 * Maximum count of outgoing messages retained for replay.
+	 */
+	private final int maxRetainedMessages;
+
+	/**
+	 * Maximum count of bytes of outgoing messages retained for replay.
+	 */
+	private final int maxRetainedBytes;
+
+	/*
+	 * Constructors ================================================================================
+	 */
+
+	/**
+	 * Creates a new instance of ReconnectPolicy with data provided by the specified <var>builder</var>.
+	 *
+	 * @param builder The builder with data for the new policy.
+	 */
+	ReconnectPolicy(final Builder builder) {
+		this.initialDelay = builder.initialDelay;
+		this.maxDelay = builder.maxDelay;
+		this.multiplier = builder.multiplier;
+		this.jitter = builder.jitter;
+		this.maxAttempts = builder.maxAttempts;
+		this.maxRetainedMessages = builder.maxRetainedMessages;
+		this.maxRetainedBytes = builder.maxRetainedBytes;
+	}
+
+	/*
+	 * Methods =====================================================================================
+	 */
+
+	/**
+	 * Returns the delay before the first reconnection attempt.
+	 *
+	 * @return Initial delay in milliseconds.
+	 *
+	 * @see Builder#backoff(long, long, double)
+	 */
+	public long getInitialDelay() {
+		return initialDelay;
+	}
+
+	/**
+	 * Returns the maximum delay between two reconnection attempts.
+	 *
+	 * @return Maximum delay in milliseconds.
+	 *
+	 * @see Builder#backoff(long, long, double)
+	 */
+	public long getMaxDelay() {
+		return maxDelay;
+	}
+
+	/**
+	 * Returns the multiplier by which is the delay increased after each failed attempt.
+	 *
+	 * @return Backoff multiplier.
+	 *
+	 * @see Builder#backoff(long, long, double)
+	 */
+	public double getMultiplier() {
+		return multiplier;
+	}
+
+	/**
+	 * Returns the fraction of a delay by which may be the delay randomly shortened.
+	 *
+	 * @return Jitter in range {@code [0, 1]}.
+	 *
+	 * @see Builder#jitter(double)
+	 */
+	public double getJitter() {
+		return jitter;
+	}
+
+	/**
+	 * Returns the maximum count of reconnection attempts after which the adapter gives up and
+	 * closes.
+	 *
+	 * @return Maximum attempts or {@code 0} if unlimited.
+	 *
+	 * @see Builder#maxAttempts(int)
+	 */
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * Returns the maximum count of outgoing messages retained for replay.
+	 *
+	 * @return Maximum retained messages.
+	 *
+	 * @see Builder#retransmitBuffer(int, int)
+	 */
+	public int getMaxRetainedMessages() {
+		return maxRetainedMessages;
+	}
+
+	/**
+	 * Returns the maximum count of bytes of outgoing messages retained for replay.
+	 *
+	 * @return Maximum retained bytes.
+	 *
+	 * @see Builder#retransmitBuffer(int, int)
+	 */
+	public int getMaxRetainedBytes() {
+		return maxRetainedBytes;
+	}
+
+	/**
+	 * Computes delay before the reconnection attempt with the specified index.
+	 *
+	 * @param attempt Index of the attempt, starting from {@code 0}.
+	 * @param random  Random used to apply the jitter.
+	 * @return Delay in milliseconds.
+	 */
+	long computeDelay(final int attempt, @Nonnull final Random random) {
+		final double delay = Math.min(maxDelay, initialDelay * Math.pow(multiplier, attempt));
+		return (long) (delay - delay * jitter * random.nextDouble());
+	}
+
+	/*
+	 * Inner classes ===============================================================================
+	 */
+
+	/**
+	 * Builder that may be used to create instances of {@link ReconnectPolicy}. All parameters are
+	 * optional.
+	 *
+	 * @author Martin Albedinsky
+	 * @since 1.1
+	 */
+	public static final class Builder {
+
+		/**
+		 * See {@link ReconnectPolicy#initialDelay}.
+		 */
+		long initialDelay = 500;
+
+		/**
+		 * See {@link ReconnectPolicy#maxDelay}.
+		 */
+		long maxDelay = TimeUnit.SECONDS.toMillis(30);
+
+		/**
+		 * See {@link ReconnectPolicy#multiplier}.
+		 */
+		double multiplier = 2;
+
+		/**
+		 * See {@link ReconnectPolicy#jitter}.
+		 */
+		double jitter = 0.2;
+
+		/**
+		 * See {@link ReconnectPolicy#maxAttempts}.
+		 */
+		int maxAttempts;
+
+		/**
+		 * See {@link ReconnectPolicy#maxRetainedMessages}.
+		 */
+		int maxRetainedMessages = 256;
+
+		/**
+		 * See {@link ReconnectPolicy#maxRetainedBytes}.
+		 */
+		int maxRetainedBytes = 1024 * 1024;
+
+		/**
+		 * Specifies an exponential backoff for reconnection attempts.
+		 * <p>
+		 * Default values: {@code 500 ms, 30 s, 2.0}
+		 *
+		 * @param initialDelay The delay in milliseconds before the first attempt.
+		 * @param maxDelay     The maximum delay in milliseconds between two attempts.
+		 * @param multiplier   The multiplier by which should be the delay increased after each
+		 *                     failed attempt.
+		 * @return This builder to allow methods chaining.
+		 * @throws IllegalArgumentException If the initial delay is negative, the maximum delay is
+		 *                                  smaller than the initial one or the multiplier is
+		 *                                  smaller than {@code 1}.
+		 */
+		public Builder backoff(final long initialDelay, final long maxDelay, final double multiplier) {
+			if (initialDelay < 0 || maxDelay < initialDelay || !(multiplier >= 1)) {
+				throw new IllegalArgumentException("Invalid backoff(" + initialDelay + ", " + maxDelay + ", " + multiplier + ").");
+			}
+			this.initialDelay = initialDelay;
+			this.maxDelay = maxDelay;
+			this.multiplier = multiplier;
+			return this;
+		}
+
+		/**
+		 * Specifies a fraction of each delay by which may be the delay randomly shortened.
+		 * <p>
+		 * Default value: {@code 0.2}
+		 *
+		 * @param jitter The desired jitter. {@code 0} disables jitter.
+		 * @return This builder to allow methods chaining.
+		 * @throws IllegalArgumentException If the jitter is not in range {@code [0, 1]}.
+		 */
+		public Builder jitter(final double jitter) {
+			if (!(jitter >= 0 && jitter <= 1)) {
+				throw new IllegalArgumentException("Invalid jitter(" + jitter + ").");
+			}
+			this.jitter = jitter;
+			return this;
+		}
+
+		/**
+		 * Specifies a maximum count of consecutive failed reconnection attempts after which the
+		 * adapter gives up and closes.
+		 * <p>
+		 * Default value: {@code 0}
+		 *
+		 * @param maxAttempts The desired maximum count. {@code 0} means unlimited count.
+		 * @return This builder to allow methods chaining.
+		 * @throws IllegalArgumentException If the count is negative.
+		 */
+		public Builder maxAttempts(final int maxAttempts) {
+			if (maxAttempts < 0) {
+				throw new IllegalArgumentException("Max attempts cannot be negative.");
+			}
+			this.maxAttempts = maxAttempts;
+			return this;
+		}
+
+		/**
+		 * Specifies limits for the buffer in which are retained outgoing messages that have not
+		 * been acknowledged yet, see {@link WebSocketAdapter#acknowledgeMessages(long)}.
+		 * <p>
+		 * The bytes limit applies also to a message which is still being written, so writers are
+		 * blocked while disconnected once it is reached. A message which alone exceeds the bytes
+		 * limit while connected is no longer retained, so it is not replayed after reconnection.
+		 * <p>
+		 * Default values: {@code 256, 1 MiB}
+		 *
+		 * @param maxMessages The maximum count of retained messages.
+		 * @param maxBytes    The maximum count of bytes of retained messages.
+		 * @return This builder to allow methods chaining.
+		 * @throws IllegalArgumentException If any of the limits is not positive.
+		 */
+		public Builder retransmitBuffer(final int maxMessages, final int maxBytes) {
+			if (maxMessages <= 0 || maxBytes <= 0) {
+				throw new IllegalArgumentException("Retransmit buffer limits must be positive.");
+			}
+			this.maxRetainedMessages = maxMessages;
+			this.maxRetainedBytes = maxBytes;
+			return this;
+		}
+
+		/**
+		 * Builds a new instance of ReconnectPolicy with the data specified for this builder.
+		 *
+		 * @return ReconnectPolicy instance ready to be used.
+		 */
+		@Nonnull public ReconnectPolicy build() {
+			return new ReconnectPolicy(this);
+		}
+	}
+}
\ No newline at end of file
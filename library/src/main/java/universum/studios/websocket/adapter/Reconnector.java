@@ -0,0 +1,252 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Reconnection of {@link WebSocketAdapter} in resilient mode, started once the adapter loses its
+ * connection.
+ * <p>
+ * Attempts are delayed according to the {@link ReconnectPolicy} of the adapter. Delays are
+ * scheduled on the shared {@link WebSocketTimer}, so no thread is occupied while waiting, and
+ * only the connection attempt itself, which blocks, runs on a short lived daemon thread. Once
+ * the adapted delegate becomes connected, the reconnection is finished and the adapter resumes
+ * its streams when notified about the new connection. If the policy's maximum count of attempts
+ * is reached, the adapter is notified via {@link WebSocketAdapter#onReconnectFailed(Reconnector)}.
+ *
+ * @author Martin Albedinsky
+ * @since 1.1
+ */
+final class Reconnector {
+
+	/*
+	 * Constants ===================================================================================
+	 */
+
+	/**
+	 * Log TAG.
+	 */
+	// private static final String TAG = "Reconnector";
+
+	/**
+	 * Name of the threads performing connection attempts.
+	 */
+	private static final String THREAD_NAME = "WebSocketAdapter-Reconnect";
+
+	/*
+	 * Interface ===================================================================================
+	 */
+
+	/*
+	 * Static members ==============================================================================
+	 */
+
+	/*
+	 * Members =====================================================================================
+	 */
+
+	/**
+	 * Adapter which is reconnected.
+	 */
+	private final WebSocketAdapter adapter;
+
+	/**
+	 * Delegate via which to connect.
+	 */
+	private final WebSocketDelegate delegate;
+
+	/**
+	 * Policy determining delays between attempts and their maximum count.
+	 */
+	private final ReconnectPolicy policy;
+
+	/**
+	 * Address to which to connect.
+	 */
+	private final SocketAddress endpoint;
+
+	/**
+	 * Timeout for each connection attempt.
+	 */
+	private final int connectTimeout;
+
+	/**
+	 * Random used to apply jitter to the delays.
+	 */
+	private final Random random = new Random();
+
+	/**
+	 * Lock guarding state of this reconnector.
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * Handle of the scheduled attempt. May be {@code null}.
+	 */
+	private WebSocketTimer.Timeout scheduledAttempt;
+
+	/**
+	 * Count of attempts that have been scheduled.
+	 */
+	private int attempts;
+
+	/**
+	 * Boolean flag indicating whether this reconnector has been stopped or finished.
+	 */
+	private volatile boolean stopped;
+
+	/*
+	 * Constructors ================================================================================
+	 */
+
+	/**
+	 * Creates a new instance of Reconnector for the specified <var>adapter</var>.
+	 *
+	 * @param adapter        The adapter to be reconnected.
+	 * @param delegate       The delegate via which to connect.
+	 * @param policy         Policy determining delays between attempts.
+	 * @param endpoint       The address to which to connect.
+	 * @param connectTimeout The timeout for each connection attempt.
+	 */
+	Reconnector(final WebSocketAdapter adapter, final WebSocketDelegate delegate, final ReconnectPolicy policy, final SocketAddress endpoint, final int connectTimeout) {
+		this.adapter = adapter;
+		this.delegate = delegate;
+		this.policy = policy;
+		this.endpoint = endpoint;
+		this.connectTimeout = connectTimeout;
+	}
+
+	/*
+	 * Methods =====================================================================================
+	 */
+
+	/**
+	 * Starts this reconnector, so the first attempt is performed once the initial delay elapses.
+	 *
+	 * @see #stop()
+	 */
+	void start() {
+		lock.lock();
+		try {
+			if (!stopped) {
+				scheduleAttempt();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Schedules the next attempt.
+	 * <p>
+	 * This method should be called only while holding the {@link #lock}.
+	 */
+	private void scheduleAttempt() {
+		final long delay = policy.computeDelay(attempts++, random);
+		this.scheduledAttempt = WebSocketTimer.shared().schedule(this::startAttempt, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Starts a new thread performing the connection attempt, as the attempt blocks and must not
+	 * run on the timer thread.
+	 */
+	private void startAttempt() {
+		if (stopped) {
+			return;
+		}
+		final Thread thread = new Thread(this::attempt, THREAD_NAME);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Performs a single connection attempt and schedules the next one if it fails.
+	 */
+	private void attempt() {
+		if (stopped) {
+			return;
+		}
+		try {
+			this.delegate.connect(endpoint, connectTimeout);
+		} catch (IOException | RuntimeException ignored) {
+			// Checked via isConnected() below.
+		}
+		final boolean failed;
+		lock.lock();
+		try {
+			if (stopped) {
+				return;
+			}
+			if (delegate.isConnected()) {
+				this.stopped = true;
+				return;
+			}
+			final int maxAttempts = policy.getMaxAttempts();
+			failed = maxAttempts > 0 && attempts >= maxAttempts;
+			if (!failed) {
+				scheduleAttempt();
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (failed) {
+			// Stopped only once the adapter has destroyed its streams, so the adapter is not
+			// reported as closed while its streams are still usable.
+			this.adapter.onReconnectFailed(this);
+			stop();
+		}
+	}
+
+	/**
+	 * Checks whether this reconnector is still trying to reconnect the adapter.
+	 *
+	 * @return {@code True} if reconnecting, {@code false} if stopped or finished.
+	 */
+	boolean isActive() {
+		return !stopped;
+	}
+
+	/**
+	 * Stops this reconnector, so no more attempts are performed. An attempt that is in progress
+	 * is not interrupted. This reconnector should not be used afterwards.
+	 *
+	 * @see #start()
+	 */
+	void stop() {
+		lock.lock();
+		try {
+			this.stopped = true;
+			if (scheduledAttempt != null) {
+				this.scheduledAttempt.cancel();
+				this.scheduledAttempt = null;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * Inner classes ===============================================================================
+	 */
+}
\ No newline at end of file
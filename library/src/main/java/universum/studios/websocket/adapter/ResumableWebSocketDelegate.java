@@ -0,0 +1,673 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A {@link WebSocketDelegate} used by {@link WebSocketAdapter} for its streams while the adapter
+ * is in resilient mode, so the streams outlive a single connection.
+ * <p>
+ * Frames are exchanged with the delegate of the current connection, which is attached via
+ * {@link #resume(WebSocketDelegate)} and detached via {@link #suspend()} whenever the adapter
+ * connects or loses its connection.
+ * A copy of each outgoing data frame is retained until its message is acknowledged via
+ * {@link #acknowledge(long)} and all retained frames are replayed, in order, via the delegate of
+ * a new connection before any other frame is sent through it. Messages are therefore delivered
+ * at least once and the peer may receive a message again if it has been sent, but not yet
+ * acknowledged, before the connection was lost. Frames sent while suspended are only retained.
+ * <p>
+ * Each sent message is assigned a sequence number, starting from {@code 1}, and acknowledgements
+ * are cumulative, that is acknowledging a sequence number acknowledges all messages up to and
+ * including that one. So dropping of retained messages does not affect which messages are
+ * acknowledged.
+ * <p>
+ * Retained messages are bounded by the limits of {@link ReconnectPolicy}. When a limit is reached
+ * while connected, the oldest retained messages are dropped, as they have been already handed
+ * to the connection. While suspended, senders are blocked until the adapter reconnects instead,
+ * so no data written during a reconnection is lost. The bytes limit covers also frames of a message
+ * which is still being sent, so a single large message is not retained in whole either. If such
+ * message alone exceeds the limit while connected, it is dropped, so its remaining frames are sent
+ * only via the same connection and the message is not replayed after reconnection. A single frame
+ * is however always accepted if there are no frames retained.
+ * <p>
+ * Data frames should be sent by a single thread at a time, as the streams of the adapter do, so
+ * they are sent in the same order in which they have been retained.
+ *
+ * @author Martin Albedinsky
+ * @since 1.1
+ */
+final class ResumableWebSocketDelegate implements WebSocketDelegate, WebSocketDelegate.OnIncomingFrameListener {
+
+	/*
+	 * Constants ===================================================================================
+	 */
+
+	/**
+	 * Log TAG.
+	 */
+	// private static final String TAG = "ResumableWebSocketDelegate";
+
+	/*
+	 * Interface ===================================================================================
+	 */
+
+	/*
+	 * Static members ==============================================================================
+	 */
+
+	/*
+	 * Members =====================================================================================
+	 */
+
+	/**
+	 * The adapted delegate.
+	 */
+	private final WebSocketDelegate delegate;
+
+	/**
+	 * Maximum count of retained messages.
+	 */
+	private final int maxRetainedMessages;
+
+	/**
+	 * Maximum count of retained bytes.
+	 */
+	private final int maxRetainedBytes;
+
+	/**
+	 * Lock guarding the retained frames and the current connection. Never held while sending, so
+	 * the connection may be suspended while a frame is being sent through it.
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * Lock held while sending data frames, including replaying of the retained frames, so a newly
+	 * sent frame cannot reach a new connection before the retained ones.
+	 */
+	private final ReentrantLock sendLock = new ReentrantLock();
+
+	/**
+	 * Condition signaled whenever this delegate is resumed or released or retained messages are
+	 * acknowledged.
+	 */
+	private final Condition stateChanged = lock.newCondition();
+
+	/**
+	 * Delegate of the current connection. {@code null} while this delegate is suspended. Changed
+	 * only while holding the {@link #lock}.
+	 */
+	private volatile WebSocketDelegate connection;
+
+	/**
+	 * Count of connections to which has been this delegate attached. Used to detect whether a frame
+	 * has been replayed via a new connection before it could have been sent.
+	 */
+	private long connectionCount;
+
+	/**
+	 * Copies of the retained outgoing frames, in order in which they have been sent.
+	 */
+	private final ArrayDeque<Frame> retainedFrames = new ArrayDeque<>();
+
+	/**
+	 * Count of complete messages among the retained frames.
+	 */
+	private int retainedMessages;
+
+	/**
+	 * Count of payload bytes of the retained frames.
+	 */
+	private int retainedBytes;
+
+	/**
+	 * Sequence number of the last complete message that has been retained or dropped.
+	 */
+	private long messageSequence;
+
+	/**
+	 * Boolean flag indicating whether the message which is currently being sent has been dropped
+	 * because it alone exceeds the bytes limit, so its remaining frames are not retained.
+	 */
+	private boolean messageDropped;
+
+	/**
+	 * Count of connections at the time the current message has been dropped. Remaining frames of
+	 * the dropped message are sent only via that connection.
+	 */
+	private long droppedMessageConnectionCount;
+
+	/**
+	 * Boolean flag indicating whether this delegate has been released.
+	 */
+	private boolean released;
+
+	/**
+	 * Boolean flag indicating whether reading has been paused by the streams, so it is paused also
+	 * for each new connection.
+	 */
+	private volatile boolean readingPaused;
+
+	/**
+	 * List of listeners to which are delivered frames received by the current connection.
+	 */
+	private final List<OnIncomingFrameListener> incomingFrameListeners = new CopyOnWriteArrayList<>();
+
+	/*
+	 * Constructors ================================================================================
+	 */
+
+	/**
+	 * Creates a new instance of ResumableWebSocketDelegate for the specified <var>delegate</var>.
+	 * The new delegate is suspended until {@link #resume(WebSocketDelegate)} is called.
+	 *
+	 * @param delegate The delegate to be adapted.
+	 * @param policy   Policy specifying limits for the retained messages.
+	 */
+	ResumableWebSocketDelegate(final WebSocketDelegate delegate, final ReconnectPolicy policy) {
+		this.delegate = delegate;
+		this.maxRetainedMessages = policy.getMaxRetainedMessages();
+		this.maxRetainedBytes = policy.getMaxRetainedBytes();
+	}
+
+	/*
+	 * Methods =====================================================================================
+	 */
+
+	/**
+	 */
+	@Override public void registerOnConnectionListener(@Nonnull final OnConnectionListener listener) {
+		this.delegate.registerOnConnectionListener(listener);
+	}
+
+	/**
+	 */
+	@Override public void unregisterOnConnectionListener(@Nonnull final OnConnectionListener listener) {
+		this.delegate.unregisterOnConnectionListener(listener);
+	}
+
+	/**
+	 */
+	@Override public void registerOnIncomingFrameListener(@Nonnull final OnIncomingFrameListener listener) {
+		if (!incomingFrameListeners.contains(listener)) {
+			this.incomingFrameListeners.add(listener);
+		}
+	}
+
+	/**
+	 */
+	@Override public void unregisterOnIncomingFrameListener(@Nonnull final OnIncomingFrameListener listener) {
+		this.incomingFrameListeners.remove(listener);
+	}
+
+	/**
+	 */
+	@Override public void registerOnControlFrameListener(@Nonnull final OnControlFrameListener listener) {
+		this.delegate.registerOnControlFrameListener(listener);
+	}
+
+	/**
+	 */
+	@Override public void unregisterOnControlFrameListener(@Nonnull final OnControlFrameListener listener) {
+		this.delegate.unregisterOnControlFrameListener(listener);
+	}
+
+	/**
+	 * Delivers the specified <var>frame</var> received by the current connection to the registered
+	 * listeners.
+	 */
+	@Override public void onFrameReceived(@Nonnull final Frame frame) {
+		for (final OnIncomingFrameListener listener : incomingFrameListeners) {
+			listener.onFrameReceived(frame);
+		}
+	}
+
+	/**
+	 */
+	@Override public void connect(@Nonnull final SocketAddress remoteAddress, final int timeout) throws IOException {
+		this.delegate.connect(remoteAddress, timeout);
+	}
+
+	/**
+	 */
+	@Override public boolean isConnected() {
+		return delegate.isConnected();
+	}
+
+	/**
+	 * Data frames are retained and sent only if connected at this time. If sending fails, the frame
+	 * remains retained and is sent again once reconnected, so no exception is thrown.
+	 *
+	 * @throws InterruptedIOException If the current thread is interrupted while waiting for space
+	 *                                for the frame.
+	 * @throws IOException If this delegate has been already released or a control frame is sent
+	 *                     while not connected.
+	 */
+	@Override public void sendFrame(@Nonnull final Frame frame) throws IOException {
+		if (frame.isControl()) {
+			obtainConnection().sendFrame(frame);
+			return;
+		}
+		final long retainedConnectionCount = retainFrame(frame);
+		sendLock.lock();
+		try {
+			final WebSocketDelegate current = obtainConnectionToSend(retainedConnectionCount);
+			if (current != null) {
+				try {
+					current.sendFrame(frame);
+				} catch (IOException e) {
+					// The frame is retained and will be sent again once reconnected.
+				}
+			}
+		} finally {
+			sendLock.unlock();
+		}
+	}
+
+	/**
+	 * Returned future completes normally also if sending fails, as the frame remains retained and
+	 * is sent again once reconnected. While suspended, an already completed future is returned.
+	 */
+	@Override @Nonnull public CompletableFuture<Void> sendFrameAsync(@Nonnull final Frame frame) {
+		try {
+			if (frame.isControl()) {
+				return obtainConnection().sendFrameAsync(frame);
+			}
+			final long retainedConnectionCount = retainFrame(frame);
+			sendLock.lock();
+			try {
+				final WebSocketDelegate current = obtainConnectionToSend(retainedConnectionCount);
+				if (current == null) {
+					return CompletableFuture.completedFuture(null);
+				}
+				return current.sendFrameAsync(frame).handle((result, error) -> null);
+			} finally {
+				sendLock.unlock();
+			}
+		} catch (IOException e) {
+			final CompletableFuture<Void> future = new CompletableFuture<>();
+			future.completeExceptionally(e);
+			return future;
+		}
+	}
+
+	/**
+	 * Retains a copy of the specified data <var>frame</var>.
+	 *
+	 * @param frame The data frame to be retained.
+	 * @return Count of connections at the time the frame has been retained, which should be passed
+	 * to {@link #obtainConnectionToSend(long)}.
+	 * @throws IOException If this delegate is released or the current thread is interrupted while
+	 *                     waiting for space.
+	 */
+	private long retainFrame(final Frame frame) throws IOException {
+		lock.lock();
+		try {
+			return retain(frame);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the connection via which should be sent a frame retained at the time of the specified
+	 * <var>retainedConnectionCount</var>.
+	 * <p>
+	 * This method should be called only while holding the {@link #sendLock}.
+	 *
+	 * @param retainedConnectionCount Count of connections at the time the frame has been retained.
+	 * @return The current connection or {@code null} if this delegate is suspended or the frame has
+	 * been already replayed via a new connection.
+	 */
+	private WebSocketDelegate obtainConnectionToSend(final long retainedConnectionCount) {
+		lock.lock();
+		try {
+			return connectionCount == retainedConnectionCount ? connection : null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the delegate of the current connection.
+	 *
+	 * @return The current connection.
+	 * @throws IOException If this delegate is suspended or released at this time.
+	 */
+	private WebSocketDelegate obtainConnection() throws IOException {
+		lock.lock();
+		try {
+			if (connection == null) throw new IOException("Not connected.");
+			return connection;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Retains a copy of the specified <var>frame</var>, making space for it first if there is not
+	 * enough of it. A frame is always accepted if there are no frames retained. If the message of
+	 * the frame alone exceeds the bytes limit while connected, the message is dropped instead.
+	 * <p>
+	 * This method should be called only while holding the {@link #lock}.
+	 *
+	 * @param frame The data frame to be retained.
+	 * @return Count of connections via which may be the frame sent.
+	 * @throws IOException If this delegate is released or the current thread is interrupted while
+	 *                     waiting for space.
+	 */
+	private long retain(final Frame frame) throws IOException {
+		if (released) throw new IOException("Already closed.");
+		if (messageDropped) {
+			if (frame.isFinal()) {
+				this.messageDropped = false;
+				this.messageSequence++;
+			}
+			return droppedMessageConnectionCount;
+		}
+		final ByteBuffer payload = frame.getPayloadBuffer();
+		final int length = payload.remaining();
+		while (isFullFor(length)) {
+			if (released) {
+				throw new IOException("Already closed.");
+			} else if (connection != null) {
+				if (retainedMessages == 0) {
+					dropMessage(frame);
+					return connectionCount;
+				}
+				removeOldestMessage();
+			} else {
+				try {
+					this.stateChanged.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting for reconnection.");
+				}
+			}
+		}
+		if (released) throw new IOException("Already closed.");
+		final byte[] data = new byte[length];
+		payload.duplicate().get(data);
+		this.retainedFrames.addLast(new WebSocketFrame.Builder()
+				.payload(data)
+				.opcode(frame.getOpcode())
+				.isFinal(frame.isFinal())
+				.compressed(frame.isCompressed())
+				.build()
+		);
+		this.retainedBytes += length;
+		if (frame.isFinal()) {
+			this.retainedMessages++;
+			this.messageSequence++;
+		}
+		return connectionCount;
+	}
+
+	/**
+	 * Checks whether a frame with the specified <var>length</var> exceeds limits for the retained
+	 * messages.
+	 * <p>
+	 * This method should be called only while holding the {@link #lock}.
+	 *
+	 * @param length Length of the frame to be retained.
+	 * @return {@code True} if there is not enough space for the frame, {@code false} otherwise.
+	 */
+	private boolean isFullFor(final int length) {
+		return !retainedFrames.isEmpty() && (retainedMessages >= maxRetainedMessages || retainedBytes + length > maxRetainedBytes);
+	}
+
+	/**
+	 * Drops the message of the specified <var>frame</var>, which alone exceeds the bytes limit,
+	 * along with its frames that have been already retained, as they have been already handed to
+	 * the current connection.
+	 * <p>
+	 * This method should be called only while holding the {@link #lock} and only if there are
+	 * no complete messages retained.
+	 *
+	 * @param frame The frame of the message to be dropped.
+	 */
+	private void dropMessage(final Frame frame) {
+		this.retainedFrames.clear();
+		this.retainedBytes = 0;
+		if (frame.isFinal()) {
+			this.messageSequence++;
+		} else {
+			this.messageDropped = true;
+			this.droppedMessageConnectionCount = connectionCount;
+		}
+	}
+
+	/**
+	 * Removes frames of the oldest complete retained message.
+	 * <p>
+	 * This method should be called only while holding the {@link #lock}.
+	 */
+	private void removeOldestMessage() {
+		Frame frame;
+		do {
+			frame = retainedFrames.removeFirst();
+			this.retainedBytes -= frame.getPayloadBuffer().remaining();
+		} while (!frame.isFinal());
+		this.retainedMessages--;
+	}
+
+	/**
+	 * Acknowledges all messages up to and including the message with the specified <var>sequence</var>
+	 * number, so they are no longer retained for replay. Messages which have been already dropped
+	 * or acknowledged are ignored.
+	 *
+	 * @param sequence Sequence number of the last message to acknowledge. If greater than sequence
+	 *                 number of the last sent message, all retained messages are acknowledged.
+	 *
+	 * @see #getMessageSequence()
+	 */
+	void acknowledge(final long sequence) {
+		lock.lock();
+		try {
+			final long oldestRetainedSequence = messageSequence - retainedMessages + 1;
+			for (long i = oldestRetainedSequence; i <= sequence && retainedMessages > 0; i++) {
+				removeOldestMessage();
+			}
+			this.stateChanged.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the sequence number of the last complete message that has been sent via this delegate.
+	 *
+	 * @return Message sequence number or {@code 0} if no message has been sent yet.
+	 */
+	long getMessageSequence() {
+		lock.lock();
+		try {
+			return messageSequence;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the count of complete messages retained for replay.
+	 *
+	 * @return Retained messages count.
+	 */
+	int getRetainedMessageCount() {
+		lock.lock();
+		try {
+			return retainedMessages;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Detaches this delegate from the current connection, so frames sent afterwards are only
+	 * retained until {@link #resume(WebSocketDelegate)} is called.
+	 *
+	 * @return Delegate of the detached connection or {@code null} if already suspended.
+	 */
+	WebSocketDelegate suspend() {
+		final WebSocketDelegate detached;
+		lock.lock();
+		try {
+			detached = connection;
+			this.connection = null;
+		} finally {
+			lock.unlock();
+		}
+		if (detached != null) {
+			detached.unregisterOnIncomingFrameListener(this);
+		}
+		return detached;
+	}
+
+	/**
+	 * Attaches this delegate to the specified new <var>connection</var> and replays all retained
+	 * frames via it. If replaying fails, the remaining frames are replayed once reconnected again.
+	 *
+	 * @param connection Delegate of the new connection. Either the adapted delegate or a delegate
+	 *                   wrapping it.
+	 * @return {@code True} if this delegate has been attached to the connection, {@code false} if
+	 * it has been already released.
+	 */
+	boolean resume(@Nonnull final WebSocketDelegate connection) {
+		final Frame[] replayedFrames;
+		sendLock.lock();
+		try {
+			lock.lock();
+			try {
+				if (released) {
+					return false;
+				}
+				connection.registerOnIncomingFrameListener(this);
+				if (readingPaused) {
+					connection.pauseReading();
+				}
+				replayedFrames = retainedFrames.toArray(new Frame[retainedFrames.size()]);
+				this.connection = connection;
+				this.connectionCount++;
+				this.stateChanged.signalAll();
+			} finally {
+				lock.unlock();
+			}
+			for (final Frame frame : replayedFrames) {
+				try {
+					connection.sendFrame(frame);
+				} catch (IOException e) {
+					// The connection is lost again, so the frames will be replayed once reconnected.
+					break;
+				}
+			}
+			return true;
+		} finally {
+			sendLock.unlock();
+		}
+	}
+
+	/**
+	 * Checks whether this delegate is suspended at this time.
+	 *
+	 * @return {@code True} if suspended, {@code false} otherwise.
+	 */
+	boolean isSuspended() {
+		lock.lock();
+		try {
+			return connection == null && !released;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 */
+	@Override public void pauseReading() {
+		this.readingPaused = true;
+		final WebSocketDelegate current = connection;
+		if (current != null) {
+			current.pauseReading();
+		}
+	}
+
+	/**
+	 */
+	@Override public void resumeReading() {
+		this.readingPaused = false;
+		final WebSocketDelegate current = connection;
+		if (current != null) {
+			current.resumeReading();
+		}
+	}
+
+	/**
+	 */
+	@Override @Nonnull public String getNegotiatedExtensions() {
+		return delegate.getNegotiatedExtensions();
+	}
+
+	/**
+	 */
+	@Override public void close() throws IOException {
+		this.delegate.close();
+	}
+
+	/**
+	 */
+	@Override public boolean isClosed() {
+		return delegate.isClosed();
+	}
+
+	/**
+	 * Detaches this delegate from the current connection and drops all retained frames, waking up
+	 * all blocked senders. This delegate should not be used afterwards.
+	 *
+	 * @return Delegate of the detached connection or {@code null} if suspended.
+	 */
+	WebSocketDelegate release() {
+		final WebSocketDelegate detached = suspend();
+		lock.lock();
+		try {
+			this.released = true;
+			this.retainedFrames.clear();
+			this.retainedMessages = 0;
+			this.retainedBytes = 0;
+			this.messageDropped = false;
+			this.stateChanged.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		return detached;
+	}
+
+	/*
+	 * Inner classes ===============================================================================
+	 */
+}
\ No newline at end of file
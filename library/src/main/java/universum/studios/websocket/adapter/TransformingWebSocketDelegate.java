@@ -0,0 +1,300 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A {@link WebSocketDelegate} used by {@link WebSocketAdapter} for its streams in order to pass
+ * all frames exchanged with the adapted delegate through a pipeline of {@link FrameTransform FrameTransforms}.
+ * <p>
+ * Outgoing frames are transformed and sent while holding a lock, so they reach the adapted delegate
+ * in the same order in which they have been transformed. If an incoming frame cannot be transformed,
+ * the adapted delegate is closed, as its connection cannot continue in a consistent state. Control
+ * frames are passed through without being transformed.
+ *
+ * @author Martin Albedinsky
+ * @since 1.1
+ */
+final class TransformingWebSocketDelegate implements WebSocketDelegate, WebSocketDelegate.OnIncomingFrameListener {
+
+	/*
+	 * Constants ===================================================================================
+	 */
+
+	/**
+	 * Log TAG.
+	 */
+	// private static final String TAG = "TransformingWebSocketDelegate";
+
+	/*
+	 * Interface ===================================================================================
+	 */
+
+	/*
+	 * Static members ==============================================================================
+	 */
+
+	/*
+	 * Members =====================================================================================
+	 */
+
+	/**
+	 * The adapted delegate.
+	 */
+	private final WebSocketDelegate delegate;
+
+	/**
+	 * Transforms through which are passed all frames.
+	 */
+	private final FrameTransform[] transforms;
+
+	/**
+	 * Lock guarding transformation and sending of outgoing frames. Together with {@link #receiveLock}
+	 * it guards also the {@link #released} flag.
+	 */
+	private final ReentrantLock sendLock = new ReentrantLock();
+
+	/**
+	 * Lock guarding transformation of incoming frames.
+	 */
+	private final ReentrantLock receiveLock = new ReentrantLock();
+
+	/**
+	 * Boolean flag indicating whether the transforms of this delegate have been already released.
+	 */
+	private boolean released;
+
+	/**
+	 * List of listeners to which are delivered the transformed incoming frames.
+	 */
+	private final List<OnIncomingFrameListener> incomingFrameListeners = new CopyOnWriteArrayList<>();
+
+	/*
+	 * Constructors ================================================================================
+	 */
+
+	/**
+	 * Creates a new instance of TransformingWebSocketDelegate for the specified <var>delegate</var>
+	 * and registers it as incoming frame listener of that delegate.
+	 *
+	 * @param delegate   The delegate to be adapted.
+	 * @param transforms The transforms through which should be passed all frames, in order in
+	 *                   which they should be applied for outgoing frames.
+	 */
+	TransformingWebSocketDelegate(final WebSocketDelegate delegate, final FrameTransform[] transforms) {
+		this.delegate = delegate;
+		this.transforms = transforms;
+		this.delegate.registerOnIncomingFrameListener(this);
+	}
+
+	/*
+	 * Methods =====================================================================================
+	 */
+
+	/**
+	 */
+	@Override public void registerOnConnectionListener(@Nonnull final OnConnectionListener listener) {
+		this.delegate.registerOnConnectionListener(listener);
+	}
+
+	/**
+	 */
+	@Override public void unregisterOnConnectionListener(@Nonnull final OnConnectionListener listener) {
+		this.delegate.unregisterOnConnectionListener(listener);
+	}
+
+	/**
+	 */
+	@Override public void registerOnIncomingFrameListener(@Nonnull final OnIncomingFrameListener listener) {
+		if (!incomingFrameListeners.contains(listener)) {
+			this.incomingFrameListeners.add(listener);
+		}
+	}
+
+	/**
+	 */
+	@Override public void unregisterOnIncomingFrameListener(@Nonnull final OnIncomingFrameListener listener) {
+		this.incomingFrameListeners.remove(listener);
+	}
+
+	/**
+	 */
+	@Override public void registerOnControlFrameListener(@Nonnull final OnControlFrameListener listener) {
+		this.delegate.registerOnControlFrameListener(listener);
+	}
+
+	/**
+	 */
+	@Override public void unregisterOnControlFrameListener(@Nonnull final OnControlFrameListener listener) {
+		this.delegate.unregisterOnControlFrameListener(listener);
+	}
+
+	/**
+	 * Passes the specified <var>frame</var> received by the adapted delegate through all transforms
+	 * in reverse order and delivers the result to the registered listeners.
+	 */
+	@Override public void onFrameReceived(@Nonnull final Frame frame) {
+		Frame transformed = frame;
+		receiveLock.lock();
+		try {
+			if (released) {
+				return;
+			}
+			for (int i = frame.isControl() ? -1 : transforms.length - 1; i >= 0; i--) {
+				transformed = transforms[i].transformIncoming(transformed);
+			}
+		} catch (IOException e) {
+			try {
+				this.delegate.close();
+			} catch (IOException ignored) {
+				// The connection is failed anyway.
+			}
+			return;
+		} finally {
+			receiveLock.unlock();
+		}
+		for (final OnIncomingFrameListener listener : incomingFrameListeners) {
+			listener.onFrameReceived(transformed);
+		}
+	}
+
+	/**
+	 */
+	@Override public void connect(@Nonnull final SocketAddress remoteAddress, final int timeout) throws IOException {
+		this.delegate.connect(remoteAddress, timeout);
+	}
+
+	/**
+	 */
+	@Override public boolean isConnected() {
+		return delegate.isConnected();
+	}
+
+	/**
+	 */
+	@Override public void sendFrame(@Nonnull final Frame frame) throws IOException {
+		sendLock.lock();
+		try {
+			this.delegate.sendFrame(transformOutgoing(frame));
+		} finally {
+			sendLock.unlock();
+		}
+	}
+
+	/**
+	 */
+	@Override @Nonnull public CompletableFuture<Void> sendFrameAsync(@Nonnull final Frame frame) {
+		sendLock.lock();
+		try {
+			return delegate.sendFrameAsync(transformOutgoing(frame));
+		} catch (IOException | RuntimeException e) {
+			final CompletableFuture<Void> future = new CompletableFuture<>();
+			future.completeExceptionally(e);
+			return future;
+		} finally {
+			sendLock.unlock();
+		}
+	}
+
+	/**
+	 * Passes the specified outgoing <var>frame</var> through all transforms.
+	 * <p>
+	 * This method should be called only while holding the {@link #sendLock}.
+	 *
+	 * @param frame The frame to be transformed.
+	 * @return The transformed frame.
+	 * @throws IOException If some of the transforms fails.
+	 */
+	private Frame transformOutgoing(final Frame frame) throws IOException {
+		if (released) {
+			throw new IOException("Already closed.");
+		}
+		if (frame.isControl()) {
+			return frame;
+		}
+		Frame transformed = frame;
+		for (final FrameTransform transform : transforms) {
+			transformed = transform.transformOutgoing(transformed);
+		}
+		return transformed;
+	}
+
+	/**
+	 */
+	@Override public void pauseReading() {
+		this.delegate.pauseReading();
+	}
+
+	/**
+	 */
+	@Override public void resumeReading() {
+		this.delegate.resumeReading();
+	}
+
+	/**
+	 */
+	@Override @Nonnull public String getNegotiatedExtensions() {
+		return delegate.getNegotiatedExtensions();
+	}
+
+	/**
+	 */
+	@Override public void close() throws IOException {
+		this.delegate.close();
+	}
+
+	/**
+	 */
+	@Override public boolean isClosed() {
+		return delegate.isClosed();
+	}
+
+	/**
+	 * Un-registers this delegate from the adapted delegate and releases all its transforms. This
+	 * delegate should not be used afterwards.
+	 */
+	void release() {
+		sendLock.lock();
+		receiveLock.lock();
+		try {
+			if (!released) {
+				this.released = true;
+				this.delegate.unregisterOnIncomingFrameListener(this);
+				for (final FrameTransform transform : transforms) {
+					transform.release();
+				}
+			}
+		} finally {
+			receiveLock.unlock();
+			sendLock.unlock();
+		}
+	}
+
+	/*
+	 * Inner classes ===============================================================================
+	 */
+}
\ No newline at end of file
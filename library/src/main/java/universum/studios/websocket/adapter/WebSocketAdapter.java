@@ -22,10 +22,19 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.net.SocketException;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * A {@link Socket} implementation which may be used in order to adapt an asynchronous nature of
@@ -35,6 +44,16 @@ import javax.annotation.Nonnull;
  * {@link #WebSocketAdapter(WebSocketDelegate)} constructor. The adapter is then delegating all
  * appropriate calls to the delegate instance, like sending of frames, and is also listening for
  * the appropriate callbacks, like receiving frames.
+ * <p>
+ * The adapter and its streams block only via locks of {@code java.util.concurrent.locks} and never
+ * while holding an object monitor, so they are suitable for a thread per connection design based
+ * upon virtual threads, where blocking inside a monitor would pin the virtual thread to its
+ * carrier thread.
+ * <p>
+ * By default, the streams of the adapter are destroyed once its connection is lost. An adapter
+ * with a {@link ReconnectPolicy} specified via {@link #setReconnectPolicy(ReconnectPolicy)} is in
+ * resilient mode instead, in which it reconnects to the last connected endpoint and keeps its
+ * streams alive, so they may be used across connections.
  *
  * @author Martin Albedinsky
  * @since 1.0
@@ -75,6 +94,13 @@ public class WebSocketAdapter extends Socket {
 	@SuppressWarnings("WeakerAccess")
 	final AtomicBoolean connected = new AtomicBoolean(false);
 
+	/**
+	 * Lock guarding state of this adapter. An explicit lock is used instead of the monitor of this
+	 * adapter so threads blocked while holding it, for example while closing the delegate, do not
+	 * pin virtual threads to their carrier threads.
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+
 	/**
 	 * Stream used as store data that are received from the WebSocket.
 	 */
@@ -85,6 +111,123 @@ public class WebSocketAdapter extends Socket {
 	 */
 	private WebSocketOutputStream outputStream;
 
+	/**
+	 * Non-blocking channel view of this socket. Created lazily.
+	 */
+	private WebSocketChannel channel;
+
+	/**
+	 * Maximum count of received messages that may be buffered by the input stream.
+	 */
+	private int maxIncomingMessages = WebSocketInputStream.DEFAULT_MAX_QUEUED_MESSAGES;
+
+	/**
+	 * Maximum count of received bytes that may be buffered by the input stream.
+	 */
+	private int maxIncomingBytes = WebSocketInputStream.DEFAULT_MAX_QUEUED_BYTES;
+
+	/**
+	 * Policy determining how the input stream handles received messages when its buffer is full.
+	 */
+	private OverflowPolicy incomingOverflowPolicy = OverflowPolicy.BLOCK;
+
+	/**
+	 * Timeout in milliseconds for blocking reads of the input stream.
+	 */
+	private int soTimeout;
+
+	/**
+	 * Maximum size of a single frame sent by the output stream.
+	 */
+	private int maxFrameSize;
+
+	/**
+	 * Pool of buffers shared by the input and output stream. May be {@code null}.
+	 */
+	private BufferPool bufferPool;
+
+	/**
+	 * Maximum count of frames sent asynchronously by the output stream which may be in flight.
+	 */
+	private int maxInFlightFrames = WebSocketOutputStream.DEFAULT_MAX_IN_FLIGHT_FRAMES;
+
+	/**
+	 * Delay in milliseconds for which are flushes of the output stream coalesced.
+	 */
+	private long coalescingDelay;
+
+	/**
+	 * Count of buffered bytes at which the output stream sends data on flush immediately.
+	 */
+	private int coalescingThreshold;
+
+	/**
+	 * List of factories creating frame transforms for each connection.
+	 */
+	private final List<FrameTransform.Factory> frameTransformFactories = new ArrayList<>(1);
+
+	/**
+	 * Delegate used by the streams of this adapter. Either the adapted delegate, a delegate passing
+	 * frames through the frame transforms of the current connection or, in resilient mode,
+	 * a {@link ResumableWebSocketDelegate}. Created lazily.
+	 */
+	private WebSocketDelegate streamDelegate;
+
+	/**
+	 * Metrics into which the streams of this adapter record their activity. May be {@code null}.
+	 */
+	private volatile WebSocketMetrics metrics;
+
+	/**
+	 * Interval in milliseconds at which are keep alive pings sent. {@code 0} if keep alive is
+	 * disabled.
+	 */
+	private volatile long keepAliveInterval;
+
+	/**
+	 * Time in milliseconds within which must be a keep alive ping answered.
+	 */
+	private volatile long keepAliveTimeout;
+
+	/**
+	 * Keep alive of the current connection. Holds {@code null} if keep alive is disabled or this
+	 * socket is not connected.
+	 */
+	private final AtomicReference<KeepAlive> keepAlive = new AtomicReference<>();
+
+	/**
+	 * The last round trip time in nanoseconds measured by keep alive or {@code -1} if it has not
+	 * been measured yet.
+	 */
+	private volatile long roundTripNanos = -1;
+
+	/**
+	 * Policy enabling resilient mode of this socket. May be {@code null}.
+	 */
+	private volatile ReconnectPolicy reconnectPolicy;
+
+	/**
+	 * The endpoint to which has been this socket connected the last time and its connection
+	 * timeout. Used in resilient mode for reconnection.
+	 */
+	private volatile SocketAddress endpoint;
+
+	/**
+	 * See {@link #endpoint}.
+	 */
+	private volatile int connectTimeout;
+
+	/**
+	 * Boolean flag indicating whether this socket has been requested to be closed, so it should
+	 * not reconnect.
+	 */
+	private volatile boolean closeRequested;
+
+	/**
+	 * Reconnection in progress. Holds {@code null} if this socket is not reconnecting.
+	 */
+	private final AtomicReference<Reconnector> reconnector = new AtomicReference<>();
+
 	/*
 	 * Constructors ================================================================================
 	 */
@@ -106,13 +249,23 @@ public class WebSocketAdapter extends Socket {
 			 */
 			@Override public void onConnected() {
 				connected.set(true);
+				if (closeRequested && reconnectPolicy != null) {
+					onConnectedAfterClose();
+					return;
+				}
+				// Streams are resumed first, so the socket is not reported as reconnected
+				// before frames of the new connection can be received.
+				resumeStreams();
+				stopReconnecting();
+				restartKeepAlive();
 			}
 
 			/**
 			 */
 			@Override public void onDisconnected() {
 				connected.set(false);
-				destroyStreams();
+				stopKeepAlive();
+				onConnectionLost();
 			}
 		});
 	}
@@ -130,6 +283,9 @@ public class WebSocketAdapter extends Socket {
 	/**
 	 */
 	@Override public void connect(@Nonnull final SocketAddress endpoint, final int timeout) throws IOException {
+		this.endpoint = endpoint;
+		this.connectTimeout = timeout;
+		this.closeRequested = false;
 		this.delegate.connect(endpoint, timeout);
 	}
 
@@ -153,29 +309,972 @@ public class WebSocketAdapter extends Socket {
 	 * @see #isConnected()
 	 */
 	protected final void assertConnectedOrThrowException() throws IOException {
-		if (!isConnected()) throw new IOException("Already disconnected.");
+		if (!isConnected() && !isReconnecting()) throw new IOException("Already disconnected.");
+	}
+
+	/**
+	 * Specifies limits for the buffer in which are stored received messages that have not been
+	 * read from the input stream yet. When any of the limits is reached, the received messages are
+	 * handled according to the policy specified via {@link #setIncomingOverflowPolicy(OverflowPolicy)}.
+	 * <p>
+	 * A single message is always accepted when the buffer is empty, even if it exceeds the bytes
+	 * limit. The bytes limit however also limits size of a decompressed message for
+	 * {@link PerMessageDeflate} transforms created for subsequent connections, unless they specify
+	 * their own limit.
+	 * <p>
+	 * Default values: {@code Integer.MAX_VALUE} messages, {@code 8 MB}
+	 *
+	 * @param maxMessages Maximum count of messages that may be buffered.
+	 * @param maxBytes    Maximum count of bytes that may be buffered.
+	 * @throws IllegalArgumentException If any of the limits is not positive.
+	 */
+	public void setIncomingBufferLimits(final int maxMessages, final int maxBytes) {
+		lock.lock();
+		try {
+			if (maxMessages <= 0 || maxBytes <= 0) {
+				throw new IllegalArgumentException("Buffer limits must be positive.");
+			}
+			this.maxIncomingMessages = maxMessages;
+			this.maxIncomingBytes = maxBytes;
+			if (inputStream != null) {
+				this.inputStream.setBufferLimits(maxMessages, maxBytes);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the maximum count of messages that may be buffered by the input stream.
+	 *
+	 * @return Maximum count of buffered messages.
+	 *
+	 * @see #setIncomingBufferLimits(int, int)
+	 */
+	public int getMaxIncomingMessages() {
+		lock.lock();
+		try {
+			return maxIncomingMessages;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the maximum count of bytes that may be buffered by the input stream.
+	 *
+	 * @return Maximum count of buffered bytes.
+	 *
+	 * @see #setIncomingBufferLimits(int, int)
+	 */
+	public int getMaxIncomingBytes() {
+		lock.lock();
+		try {
+			return maxIncomingBytes;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Specifies a policy determining how to handle received messages when the incoming buffer is
+	 * full.
+	 * <p>
+	 * Default value: {@link OverflowPolicy#BLOCK}
+	 *
+	 * @param policy The desired policy.
+	 *
+	 * @see #setIncomingBufferLimits(int, int)
+	 */
+	public void setIncomingOverflowPolicy(@Nonnull final OverflowPolicy policy) {
+		lock.lock();
+		try {
+			this.incomingOverflowPolicy = policy;
+			if (inputStream != null) {
+				this.inputStream.setOverflowPolicy(policy);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the policy determining how to handle received messages when the incoming buffer is
+	 * full.
+	 *
+	 * @return Overflow policy of the incoming buffer.
+	 *
+	 * @see #setIncomingOverflowPolicy(OverflowPolicy)
+	 */
+	@Nonnull public OverflowPolicy getIncomingOverflowPolicy() {
+		lock.lock();
+		try {
+			return incomingOverflowPolicy;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Specifies a timeout for which may be a read operation of the input stream blocked waiting
+	 * for new data. If the timeout expires, {@link java.net.SocketTimeoutException} is thrown,
+	 * though the adapter remains valid.
+	 *
+	 * @param timeout The desired timeout in milliseconds. {@code 0} is interpreted as infinite
+	 *                timeout.
+	 * @throws SocketException If this socket is already closed.
+	 * @throws IllegalArgumentException If the specified timeout is negative.
+	 */
+	@Override public void setSoTimeout(final int timeout) throws SocketException {
+		lock.lock();
+		try {
+			if (isClosed()) throw new SocketException("Socket is closed");
+			if (timeout < 0) throw new IllegalArgumentException("timeout can't be negative");
+			this.soTimeout = timeout;
+			if (inputStream != null) {
+				this.inputStream.setReadTimeout(timeout);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 */
+	@Override public int getSoTimeout() throws SocketException {
+		lock.lock();
+		try {
+			if (isClosed()) throw new SocketException("Socket is closed");
+			return soTimeout;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 */
+	@Override public final InputStream getInputStream() throws IOException {
+		lock.lock();
+		try {
+			assertOpenedOrThrowException();
+			assertConnectedOrThrowException();
+			if (inputStream == null) {
+				this.inputStream = new WebSocketInputStream(this, obtainStreamDelegate());
+				this.inputStream.setBufferLimits(maxIncomingMessages, maxIncomingBytes);
+				this.inputStream.setOverflowPolicy(incomingOverflowPolicy);
+				this.inputStream.setReadTimeout(soTimeout);
+				this.inputStream.setBufferPool(bufferPool);
+				this.inputStream.setMetrics(metrics);
+			}
+			return inputStream;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns a non-blocking channel view of this socket which may be used instead of its blocking
+	 * streams, so a single thread may serve many sockets.
+	 * <p>
+	 * The channel reads from the same buffer of received messages as the input stream returned by
+	 * {@link #getInputStream()}, so only one of them should be used for reading.
+	 *
+	 * @return The channel of this socket. Its instance remains the same until the socket is
+	 * disconnected.
+	 * @throws IOException If this socket is closed or not connected.
+	 *
+	 * @see WebSocketChannel#setOnReadableListener(WebSocketChannel.OnReadableListener)
+	 */
+	@Nonnull public WebSocketChannel getWebSocketChannel() throws IOException {
+		lock.lock();
+		try {
+			if (channel == null) {
+				final WebSocketInputStream input = (WebSocketInputStream) getInputStream();
+				final WebSocketOutputStream output = (WebSocketOutputStream) getOutputStream();
+				this.channel = new WebSocketChannel(this, input, output);
+			}
+			return channel;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Receives the next whole message of this socket, blocking until a message is received or
+	 * the read timeout expires. This is a message oriented alternative to reading from the input
+	 * stream, which shares the same buffer of received messages, so each message is delivered
+	 * either via this method or via the input stream, but never via both. If the next message has
+	 * been already partly read via the input stream, only its remaining data are returned.
+	 * <p>
+	 * The returned buffer wraps the received payload without copying it, unless the payload is
+	 * held in a buffer of the {@link #setBufferPool(BufferPool) buffer pool}, in which case it is
+	 * copied.
+	 *
+	 * @return Buffer with data of the received message, positioned at its start.
+	 * @throws java.net.SocketTimeoutException If the read timeout expires while waiting.
+	 * @throws java.io.InterruptedIOException If the current thread is interrupted while waiting.
+	 * @throws IOException If this socket is closed or not connected.
+	 *
+	 * @see #pollMessage()
+	 * @see #setSoTimeout(int)
+	 */
+	@Nonnull public ByteBuffer receiveMessage() throws IOException {
+		return ((WebSocketInputStream) getInputStream()).receiveMessage();
+	}
+
+	/**
+	 * Same as {@link #receiveMessage()}, but this method never blocks.
+	 *
+	 * @return Buffer with data of the received message, positioned at its start, or {@code null}
+	 * if there is no message available at this time.
+	 * @throws IOException If this socket is closed or not connected.
+	 */
+	@Nullable public ByteBuffer pollMessage() throws IOException {
+		return ((WebSocketInputStream) getInputStream()).pollMessage();
+	}
+
+	/**
+	 * Specifies metrics into which should this socket record its activity, like count of frames
+	 * and bytes sent and received or time spent by waiting for data. Payload sizes are recorded
+	 * as written into and read from the streams of this socket, that is before outgoing and after
+	 * incoming frame transforms are applied.
+	 * <p>
+	 * Metrics are not recorded by default.
+	 *
+	 * @param metrics The desired metrics. May be {@code null} to not record any metrics.
+	 *
+	 * @see BaseWebSocketDelegate#setMetrics(WebSocketMetrics)
+	 */
+	public void setMetrics(@Nullable final WebSocketMetrics metrics) {
+		lock.lock();
+		try {
+			this.metrics = metrics;
+			if (inputStream != null) {
+				this.inputStream.setMetrics(metrics);
+			}
+			if (outputStream != null) {
+				this.outputStream.setMetrics(metrics);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the metrics into which this socket records its activity.
+	 *
+	 * @return The metrics or {@code null} if no metrics are recorded.
+	 *
+	 * @see #setMetrics(WebSocketMetrics)
+	 */
+	@Nullable public WebSocketMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Adds a factory of frame transforms which should be applied for frames exchanged between the
+	 * streams of this socket and its delegate, like {@link PerMessageDeflate.Factory}. Transforms
+	 * are created via the factory for each connection once its streams are requested, so the
+	 * factory should be added before that.
+	 * <p>
+	 * Outgoing frames are passed through the transforms in order in which their factories have
+	 * been added, incoming frames in reverse order.
+	 *
+	 * @param factory The desired factory to be added.
+	 *
+	 * @see #removeFrameTransform(FrameTransform.Factory)
+	 */
+	public void addFrameTransform(@Nonnull final FrameTransform.Factory factory) {
+		lock.lock();
+		try {
+			if (!frameTransformFactories.contains(factory)) {
+				this.frameTransformFactories.add(factory);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes the specified <var>factory</var> from the added ones. Transforms already created
+	 * via the factory remain applied until the current connection is closed.
+	 *
+	 * @param factory The desired factory to be removed.
+	 *
+	 * @see #addFrameTransform(FrameTransform.Factory)
+	 */
+	public void removeFrameTransform(@Nonnull final FrameTransform.Factory factory) {
+		lock.lock();
+		try {
+			this.frameTransformFactories.remove(factory);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the delegate which should be used by the streams of this adapter, creating the frame
+	 * transforms for the current connection if it has not been obtained yet.
+	 * <p>
+	 * This method should be called only while holding the {@link #lock}.
+	 *
+	 * @return The delegate for the streams.
+	 */
+	private WebSocketDelegate obtainStreamDelegate() {
+		if (streamDelegate == null) {
+			final ReconnectPolicy policy = reconnectPolicy;
+			if (policy == null) {
+				this.streamDelegate = createConnectionDelegate();
+			} else {
+				final ResumableWebSocketDelegate resumableDelegate = new ResumableWebSocketDelegate(delegate, policy);
+				if (isConnected()) {
+					resumableDelegate.resume(createConnectionDelegate());
+				}
+				this.streamDelegate = resumableDelegate;
+			}
+		}
+		return streamDelegate;
+	}
+
+	/**
+	 * Creates a delegate through which should be exchanged frames of the current connection,
+	 * creating the frame transforms for the connection.
+	 * <p>
+	 * This method should be called only while holding the {@link #lock}.
+	 *
+	 * @return Either the adapted delegate or a delegate passing frames through the transforms.
+	 */
+	private WebSocketDelegate createConnectionDelegate() {
+		final List<FrameTransform> transforms = new ArrayList<>(frameTransformFactories.size());
+		for (final FrameTransform.Factory factory : frameTransformFactories) {
+			final FrameTransform transform = factory.create(delegate);
+			if (transform instanceof PerMessageDeflate) {
+				((PerMessageDeflate) transform).setDefaultMaxMessageSize(maxIncomingBytes);
+			}
+			if (transform != null) {
+				transforms.add(transform);
+			}
+		}
+		return transforms.isEmpty() ?
+				delegate :
+				new TransformingWebSocketDelegate(delegate, transforms.toArray(new FrameTransform[transforms.size()]));
+	}
+
+	/**
+	 * Releases the specified connection delegate created via {@link #createConnectionDelegate()}.
+	 *
+	 * @param connectionDelegate The delegate to be released. May be {@code null}.
+	 */
+	private static void releaseConnectionDelegate(final WebSocketDelegate connectionDelegate) {
+		if (connectionDelegate instanceof TransformingWebSocketDelegate) {
+			((TransformingWebSocketDelegate) connectionDelegate).release();
+		}
+	}
+
+	/**
+	 * Specifies a maximum size of a single frame sent by the output stream. Once the data written
+	 * into the output stream reach this size, they are sent as a non-final frame and the final
+	 * frame of the message is sent when the stream is flushed. This bounds memory used to buffer
+	 * a single message and allows the delegate to start sending before the whole message is written.
+	 * Messages written via {@link #getWebSocketChannel()} are fragmented by this size as well.
+	 * <p>
+	 * Default value: {@code 0}
+	 *
+	 * @param maxFrameSize The desired maximum size in bytes. {@code 0} means unlimited size, so
+	 *                     each flushed message is sent as a single frame.
+	 * @throws IllegalArgumentException If the specified size is negative.
+	 */
+	public void setMaxFrameSize(final int maxFrameSize) {
+		lock.lock();
+		try {
+			if (maxFrameSize < 0) {
+				throw new IllegalArgumentException("Max frame size cannot be negative.");
+			}
+			this.maxFrameSize = maxFrameSize;
+			if (outputStream != null) {
+				this.outputStream.setMaxFrameSize(maxFrameSize);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the maximum size of a single frame sent by the output stream.
+	 *
+	 * @return Maximum frame size in bytes or {@code 0} if unlimited.
+	 *
+	 * @see #setMaxFrameSize(int)
+	 */
+	public int getMaxFrameSize() {
+		lock.lock();
+		try {
+			return maxFrameSize;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Specifies a pool of buffers which should be used by the input and output stream of this
+	 * socket. The same pool may be shared by multiple sockets.
+	 * <p>
+	 * With a pool specified, the output stream buffers written data in a pooled buffer and sends
+	 * frames backed by it, see {@link WebSocketFrame#getPooledBuffer()}, and the input stream
+	 * retains pooled payloads of received frames instead of copying them and joins fragmented
+	 * messages into pooled buffers. Each buffer is released as soon as the data it holds have
+	 * been read or sent.
+	 * <p>
+	 * Default value: {@code null}
+	 *
+	 * @param pool The desired pool. May be {@code null} to allocate a new buffer whenever needed.
+	 */
+	public void setBufferPool(@Nullable final BufferPool pool) {
+		lock.lock();
+		try {
+			this.bufferPool = pool;
+			if (inputStream != null) {
+				this.inputStream.setBufferPool(pool);
+			}
+			if (outputStream != null) {
+				this.outputStream.setBufferPool(pool);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the pool of buffers used by the streams of this socket.
+	 *
+	 * @return The buffer pool or {@code null} if there is no pool specified.
+	 *
+	 * @see #setBufferPool(BufferPool)
+	 */
+	@Nullable public BufferPool getBufferPool() {
+		lock.lock();
+		try {
+			return bufferPool;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 */
+	@Override public final OutputStream getOutputStream() throws IOException {
+		lock.lock();
+		try {
+			assertOpenedOrThrowException();
+			assertConnectedOrThrowException();
+			if (outputStream == null) {
+				this.outputStream = new WebSocketOutputStream(this, obtainStreamDelegate());
+				this.outputStream.setMaxFrameSize(maxFrameSize);
+				this.outputStream.setBufferPool(bufferPool);
+				this.outputStream.setMaxInFlightFrames(maxInFlightFrames);
+				this.outputStream.setWriteCoalescing(coalescingDelay, coalescingThreshold);
+				this.outputStream.setMetrics(metrics);
+			}
+			return outputStream;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Specifies a maximum count of messages sent via {@link #flushAsync()} which may be in flight
+	 * at the same time. When the limit is reached, {@link #flushAsync()} blocks until some of the
+	 * sends completes.
+	 * <p>
+	 * Default value: {@code 16}
+	 *
+	 * @param maxFrames The desired maximum count of frames in flight.
+	 * @throws IllegalArgumentException If the specified count is not positive.
+	 */
+	public void setMaxInFlightFrames(final int maxFrames) {
+		lock.lock();
+		try {
+			if (maxFrames <= 0) {
+				throw new IllegalArgumentException("Max in flight frames must be positive.");
+			}
+			this.maxInFlightFrames = maxFrames;
+			if (outputStream != null) {
+				this.outputStream.setMaxInFlightFrames(maxFrames);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the maximum count of messages sent asynchronously which may be in flight.
+	 *
+	 * @return Maximum count of frames in flight.
+	 *
+	 * @see #setMaxInFlightFrames(int)
+	 */
+	public int getMaxInFlightFrames() {
+		lock.lock();
+		try {
+			return maxInFlightFrames;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Enables write coalescing for the output stream of this socket. When enabled, flushing of the
+	 * output stream does not send the written data immediately, unless there is at least
+	 * <var>threshold</var> bytes of them. Instead, the data are sent once the specified
+	 * <var>delay</var> elapses, so data of all flushes requested within that delay are sent in
+	 * a single frame. This reduces count of frames for applications that write many small chunks
+	 * of data, at the cost of latency. The delay is measured by a shared timer with a resolution of
+	 * 10 milliseconds, so the data may be sent up to that much later.
+	 * <p>
+	 * By default, write coalescing is disabled.
+	 *
+	 * @param delay     The delay in milliseconds for which should be flushes coalesced. {@code 0}
+	 *                  disables coalescing.
+	 * @param threshold The count of written bytes at which should be the data sent on flush
+	 *                  immediately. Must be positive when coalescing is enabled.
+	 * @throws IllegalArgumentException If the delay or threshold is negative or if the threshold
+	 *                                  is {@code 0} for enabled coalescing.
+	 *
+	 * @see #flushNow()
+	 */
+	public void setWriteCoalescing(final long delay, final int threshold) {
+		lock.lock();
+		try {
+			if (delay < 0 || threshold < 0) {
+				throw new IllegalArgumentException("Coalescing delay and threshold must not be negative.");
+			}
+			if (delay > 0 && threshold == 0) {
+				throw new IllegalArgumentException("Coalescing threshold must be positive for enabled coalescing.");
+			}
+			this.coalescingDelay = delay;
+			this.coalescingThreshold = threshold;
+			if (outputStream != null) {
+				this.outputStream.setWriteCoalescing(delay, threshold);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the delay for which are flushes of the output stream coalesced.
+	 *
+	 * @return Coalescing delay in milliseconds or {@code 0} if coalescing is disabled.
+	 *
+	 * @see #setWriteCoalescing(long, int)
+	 */
+	public long getWriteCoalescingDelay() {
+		lock.lock();
+		try {
+			return coalescingDelay;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the count of written bytes at which the output stream sends data on flush immediately.
+	 *
+	 * @return Coalescing threshold.
+	 *
+	 * @see #setWriteCoalescing(long, int)
+	 */
+	public int getWriteCoalescingThreshold() {
+		lock.lock();
+		try {
+			return coalescingThreshold;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Enables keep alive for this socket. When enabled, this socket sends a ping frame via its
+	 * delegate at the specified <var>interval</var> and measures time until the matching pong frame
+	 * is received, see {@link #getRoundTripNanos()}. If the pong is not received within the
+	 * specified <var>timeout</var>, the peer is considered to be dead and this socket is closed,
+	 * which also wakes up all threads blocked reading from its input stream.
+	 * <p>
+	 * Keep alive requires a delegate which sends frames with their opcodes and reports received
+	 * control frames, see {@link WebSocketDelegate#registerOnControlFrameListener(WebSocketDelegate.OnControlFrameListener)},
+	 * otherwise this socket is closed once the first ping times out. Pings are sent while data
+	 * may be sent from other threads, so the delegate must also support concurrent sends of control
+	 * frames, see {@link WebSocketDelegate#sendFrame(WebSocketDelegate.Frame)}. Pings of all
+	 * sockets are scheduled on a single shared timer thread.
+	 * <p>
+	 * By default, keep alive is disabled.
+	 *
+	 * @param interval The interval in milliseconds at which to send pings. {@code 0} disables
+	 *                 keep alive.
+	 * @param timeout  The time in milliseconds within which must be a ping answered.
+	 * @throws IllegalArgumentException If the interval is negative or if the timeout is not
+	 *                                  positive while keep alive is enabled.
+	 *
+	 * @see #getKeepAliveInterval()
+	 * @see #getKeepAliveTimeout()
+	 */
+	public void setKeepAlive(final long interval, final long timeout) {
+		lock.lock();
+		try {
+			if (interval < 0 || (interval > 0 && timeout <= 0)) {
+				throw new IllegalArgumentException("Keep alive interval must not be negative and timeout must be positive.");
+			}
+			this.keepAliveInterval = interval;
+			this.keepAliveTimeout = interval == 0 ? 0 : timeout;
+			if (isConnected()) {
+				restartKeepAlive();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the interval at which are keep alive pings sent.
+	 *
+	 * @return Keep alive interval in milliseconds or {@code 0} if keep alive is disabled.
+	 *
+	 * @see #setKeepAlive(long, long)
+	 */
+	public long getKeepAliveInterval() {
+		return keepAliveInterval;
 	}
 
 	/**
+	 * Returns the time within which must be a keep alive ping answered.
+	 *
+	 * @return Keep alive timeout in milliseconds or {@code 0} if keep alive is disabled.
+	 *
+	 * @see #setKeepAlive(long, long)
+	 */
+	public long getKeepAliveTimeout() {
+		return keepAliveTimeout;
+	}
+
+	/**
+	 * Returns the last round trip time measured by keep alive, that is the time between sending
+	 * of a ping and receiving of the matching pong.
+	 *
+	 * @return Round trip time in nanoseconds or {@code -1} if it has not been measured yet.
+	 *
+	 * @see #setKeepAlive(long, long)
+	 * @see WebSocketMetrics#getRoundTripNanos()
+	 */
+	public long getRoundTripNanos() {
+		return roundTripNanos;
+	}
+
+	/**
+	 * Called by {@link KeepAlive} whenever it measures a new round trip time.
+	 *
+	 * @param nanos The measured round trip time in nanoseconds.
 	 */
-	@Override public synchronized final InputStream getInputStream() throws IOException {
-		assertOpenedOrThrowException();
-		assertConnectedOrThrowException();
-		if (inputStream == null) {
-			this.inputStream = new WebSocketInputStream(this, delegate);
+	void onRoundTripMeasured(final long nanos) {
+		this.roundTripNanos = nanos;
+		final WebSocketMetrics currentMetrics = metrics;
+		if (currentMetrics != null) {
+			currentMetrics.roundTripNanos.record(nanos);
 		}
-		return inputStream;
 	}
 
 	/**
+	 * Stops keep alive of the current connection, if any, and starts a new one if keep alive is
+	 * enabled.
 	 */
-	@Override public synchronized final OutputStream getOutputStream() throws IOException {
-		assertOpenedOrThrowException();
-		assertConnectedOrThrowException();
-		if (outputStream == null) {
-			this.outputStream = new WebSocketOutputStream(this, delegate);
+	private void restartKeepAlive() {
+		final long interval = keepAliveInterval;
+		final KeepAlive newKeepAlive = interval == 0 ? null : new KeepAlive(this, delegate, interval, keepAliveTimeout, TimeUnit.MILLISECONDS);
+		final KeepAlive oldKeepAlive = keepAlive.getAndSet(newKeepAlive);
+		if (oldKeepAlive != null) {
+			oldKeepAlive.stop();
+		}
+		if (newKeepAlive != null) {
+			newKeepAlive.start();
 		}
-		return outputStream;
+	}
+
+	/**
+	 * Stops keep alive of the current connection, if any.
+	 */
+	private void stopKeepAlive() {
+		final KeepAlive oldKeepAlive = keepAlive.getAndSet(null);
+		if (oldKeepAlive != null) {
+			oldKeepAlive.stop();
+		}
+	}
+
+	/**
+	 * Specifies a policy which enables resilient mode of this socket. In resilient mode, this socket
+	 * does not destroy its streams once its connection is lost. Instead, it reconnects via its
+	 * delegate to the endpoint specified for the last {@link #connect(SocketAddress, int)} call,
+	 * with exponential backoff and jitter specified by the policy, while its streams remain usable:
+	 * <ul>
+	 * <li>readers remain blocked until data are received via the new connection or the read
+	 * timeout expires, and a message which has been partly received when the connection was lost
+	 * is discarded,</li>
+	 * <li>written messages are retained until they are acknowledged via {@link #acknowledgeMessages(long)}
+	 * and the retained messages are replayed via each new connection before any other data, so
+	 * the peer should tolerate duplicate messages. Writers are blocked while reconnecting only
+	 * when the retransmit buffer is full.</li>
+	 * </ul>
+	 * While reconnecting, this socket is neither connected nor closed. If the maximum count of
+	 * attempts is reached, this socket is closed. Keep alive closes only the current connection
+	 * in resilient mode, so a dead peer is reconnected as well.
+	 * <p>
+	 * The policy should be specified before the streams of this socket are requested, as only
+	 * streams created afterwards may be resumed. By default, resilient mode is disabled.
+	 *
+	 * @param policy The desired policy. May be {@code null} to disable resilient mode.
+	 *
+	 * @see #isReconnecting()
+	 */
+	public void setReconnectPolicy(@Nullable final ReconnectPolicy policy) {
+		lock.lock();
+		try {
+			this.reconnectPolicy = policy;
+			if (policy == null) {
+				stopReconnecting();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the policy which enables resilient mode of this socket.
+	 *
+	 * @return The reconnect policy or {@code null} if resilient mode is disabled.
+	 *
+	 * @see #setReconnectPolicy(ReconnectPolicy)
+	 */
+	@Nullable public ReconnectPolicy getReconnectPolicy() {
+		return reconnectPolicy;
+	}
+
+	/**
+	 * Checks whether this socket is reconnecting at this time after it has lost its connection.
+	 *
+	 * @return {@code True} if reconnecting, {@code false} otherwise.
+	 *
+	 * @see #setReconnectPolicy(ReconnectPolicy)
+	 */
+	public boolean isReconnecting() {
+		final Reconnector current = reconnector.get();
+		return current != null && current.isActive();
+	}
+
+	/**
+	 * Acknowledges all messages written into this socket up to and including the message with the
+	 * specified <var>sequence</var> number, so they are no longer retained for replay after
+	 * reconnection. Messages are numbered from {@code 1} in order in which they are written, see
+	 * {@link #getLastMessageSequence()}, and should be acknowledged once the peer confirms that it
+	 * has received them, for example via a message of the application protocol. Acknowledging of
+	 * an already acknowledged sequence number does nothing. Unacknowledged messages are retained
+	 * only up to the limits of the retransmit buffer, see {@link ReconnectPolicy.Builder#retransmitBuffer(int, int)},
+	 * after which the oldest of them are no longer retained.
+	 * <p>
+	 * This method does nothing if this socket is not in resilient mode or its streams have not
+	 * been requested yet.
+	 *
+	 * @param sequence Sequence number of the last message to acknowledge.
+	 * @throws IllegalArgumentException If the sequence number is negative.
+	 *
+	 * @see #getUnacknowledgedMessageCount()
+	 */
+	public void acknowledgeMessages(final long sequence) {
+		if (sequence < 0) {
+			throw new IllegalArgumentException("Sequence number cannot be negative.");
+		}
+		final ResumableWebSocketDelegate resumableDelegate = obtainResumableDelegate();
+		if (resumableDelegate != null) {
+			resumableDelegate.acknowledge(sequence);
+		}
+	}
+
+	/**
+	 * Returns the sequence number of the last message written into this socket in resilient mode.
+	 *
+	 * @return Sequence number of the last written message or {@code 0} if no message has been
+	 * written yet, this socket is not in resilient mode or its streams have not been requested yet.
+	 *
+	 * @see #acknowledgeMessages(long)
+	 */
+	public long getLastMessageSequence() {
+		final ResumableWebSocketDelegate resumableDelegate = obtainResumableDelegate();
+		return resumableDelegate == null ? 0 : resumableDelegate.getMessageSequence();
+	}
+
+	/**
+	 * Returns the count of messages written into this socket that are retained for replay, as they
+	 * have not been acknowledged yet.
+	 *
+	 * @return Unacknowledged messages count.
+	 *
+	 * @see #acknowledgeMessages(long)
+	 */
+	public int getUnacknowledgedMessageCount() {
+		final ResumableWebSocketDelegate resumableDelegate = obtainResumableDelegate();
+		return resumableDelegate == null ? 0 : resumableDelegate.getRetainedMessageCount();
+	}
+
+	/**
+	 * Returns the resumable delegate used by the streams of this socket, if any.
+	 *
+	 * @return The resumable delegate or {@code null} if this socket is not in resilient mode or
+	 * its streams have not been requested yet.
+	 */
+	private ResumableWebSocketDelegate obtainResumableDelegate() {
+		lock.lock();
+		try {
+			return streamDelegate instanceof ResumableWebSocketDelegate ? (ResumableWebSocketDelegate) streamDelegate : null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Called whenever the connection of this socket is lost. Starts reconnection in resilient mode,
+	 * otherwise destroys the streams.
+	 */
+	private void onConnectionLost() {
+		lock.lock();
+		try {
+			final ReconnectPolicy policy = reconnectPolicy;
+			final SocketAddress lastEndpoint = endpoint;
+			if (policy == null || lastEndpoint == null || closeRequested) {
+				destroyStreams();
+				return;
+			}
+			if (streamDelegate instanceof ResumableWebSocketDelegate) {
+				releaseConnectionDelegate(((ResumableWebSocketDelegate) streamDelegate).suspend());
+				if (inputStream != null) {
+					this.inputStream.discardPartialMessage();
+				}
+			} else {
+				destroyStreams();
+			}
+			final Reconnector newReconnector = new Reconnector(this, delegate, policy, lastEndpoint, connectTimeout);
+			final Reconnector oldReconnector = reconnector.getAndSet(newReconnector);
+			if (oldReconnector != null) {
+				oldReconnector.stop();
+			}
+			newReconnector.start();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Called once a new connection is established. Attaches the streams to the new connection in
+	 * resilient mode.
+	 */
+	private void resumeStreams() {
+		lock.lock();
+		try {
+			if (streamDelegate instanceof ResumableWebSocketDelegate) {
+				final ResumableWebSocketDelegate resumableDelegate = (ResumableWebSocketDelegate) streamDelegate;
+				if (resumableDelegate.isSuspended()) {
+					final WebSocketDelegate connectionDelegate = createConnectionDelegate();
+					if (!resumableDelegate.resume(connectionDelegate)) {
+						releaseConnectionDelegate(connectionDelegate);
+					}
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Called once a connection is established by a reconnection attempt which has been in progress
+	 * while this socket was being closed. Closes the connection.
+	 */
+	private void onConnectedAfterClose() {
+		try {
+			this.delegate.close();
+		} catch (IOException ignored) {
+			// This socket is closed anyway.
+		}
+	}
+
+	/**
+	 * Called by {@link Reconnector} once it reaches the maximum count of attempts. Closes this
+	 * socket.
+	 *
+	 * @param failedReconnector The reconnector which has failed.
+	 */
+	void onReconnectFailed(@Nonnull final Reconnector failedReconnector) {
+		lock.lock();
+		try {
+			if (reconnector.get() == failedReconnector) {
+				this.closeRequested = true;
+				destroyStreams();
+				// Cleared only after the streams are destroyed, so this socket is not reported
+				// as closed while its streams are still usable.
+				this.reconnector.compareAndSet(failedReconnector, null);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Called by {@link KeepAlive} once a ping is not answered in time. Closes this socket or, in
+	 * resilient mode, only its current connection, so it is reconnected.
+	 *
+	 * @throws IOException If closing fails.
+	 */
+	void onKeepAliveTimeout() throws IOException {
+		if (reconnectPolicy != null && !closeRequested) {
+			this.delegate.close();
+		} else {
+			close();
+		}
+	}
+
+	/**
+	 * Stops reconnection of this socket, if any.
+	 */
+	private void stopReconnecting() {
+		final Reconnector oldReconnector = reconnector.getAndSet(null);
+		if (oldReconnector != null) {
+			oldReconnector.stop();
+		}
+	}
+
+	/**
+	 * Sends all data written into the output stream of this socket immediately, regardless of
+	 * write coalescing. Without write coalescing enabled, this is the same as flushing the output
+	 * stream.
+	 *
+	 * @throws IOException If this socket is closed or not connected or if the delegate fails to
+	 *                     send the data.
+	 *
+	 * @see #setWriteCoalescing(long, int)
+	 */
+	public void flushNow() throws IOException {
+		((WebSocketOutputStream) getOutputStream()).flushNow();
+	}
+
+	/**
+	 * Sends all data written into the output stream of this socket as a single message
+	 * asynchronously via {@link WebSocketDelegate#sendFrameAsync(WebSocketDelegate.Frame)}.
+	 * Unlike {@link OutputStream#flush()}, this method does not wait until the message is sent,
+	 * so multiple messages may be in flight at the same time.
+	 *
+	 * @return Future which completes once the message has been sent.
+	 * @throws IOException If this socket is closed or not connected or if the current thread is
+	 *                     interrupted while waiting for a free slot for the message.
+	 *
+	 * @see #setMaxInFlightFrames(int)
+	 */
+	@Nonnull public CompletableFuture<Void> flushAsync() throws IOException {
+		return ((WebSocketOutputStream) getOutputStream()).flushAsync();
 	}
 
 	/**
@@ -191,10 +1290,20 @@ public class WebSocketAdapter extends Socket {
 
 	/**
 	 */
-	@Override public synchronized final void close() throws IOException {
-		if (!isClosed()) {
-			delegate.close();
-			destroyStreams();
+	@Override public final void close() throws IOException {
+		lock.lock();
+		try {
+			if (!isClosed()) {
+				this.closeRequested = true;
+				stopReconnecting();
+				stopKeepAlive();
+				if (!delegate.isClosed()) {
+					delegate.close();
+				}
+				destroyStreams();
+			}
+		} finally {
+			lock.unlock();
 		}
 	}
 
@@ -203,6 +1312,7 @@ public class WebSocketAdapter extends Socket {
 	 */
 	@SuppressWarnings("WeakerAccess")
 	void destroyStreams() {
+		this.channel = null;
 		if (inputStream != null) {
 			this.inputStream.destroy();
 			this.inputStream = null;
@@ -211,20 +1321,58 @@ public class WebSocketAdapter extends Socket {
 			this.outputStream.destroy();
 			this.outputStream = null;
 		}
+		if (streamDelegate instanceof ResumableWebSocketDelegate) {
+			releaseConnectionDelegate(((ResumableWebSocketDelegate) streamDelegate).release());
+		} else {
+			releaseConnectionDelegate(streamDelegate);
+		}
+		this.streamDelegate = null;
 	}
 
 	/**
-	 * Checks whether the adapted WebSocket is closed.
+	 * Checks whether the adapted WebSocket is closed. A socket which is reconnecting is not closed.
 	 *
 	 * @return {@code True} if the WebSocket is already closed, {@code false} otherwise.
 	 *
 	 * @see #isConnected()
+	 * @see #isReconnecting()
 	 */
 	@Override public final boolean isClosed() {
-		return delegate.isClosed();
+		return delegate.isClosed() && !isReconnecting();
 	}
 
 	/*
 	 * Inner classes ===============================================================================
 	 */
+
+	/**
+	 * Defines policies determining how {@link WebSocketAdapter} handles received messages when
+	 * its incoming buffer is full.
+	 *
+	 * @author Martin Albedinsky
+	 * @since 1.1
+	 *
+	 * @see #setIncomingOverflowPolicy(OverflowPolicy)
+	 */
+	public enum OverflowPolicy {
+
+		/**
+		 * Policy that blocks the thread delivering received frames until the reader makes some
+		 * space in the buffer.
+		 */
+		BLOCK,
+
+		/**
+		 * Policy that drops the oldest buffered messages to make space for the received one.
+		 */
+		DROP_OLDEST,
+
+		/**
+		 * Policy that accepts the received message and requests the delegate to pause reading
+		 * via {@link WebSocketDelegate#pauseReading()}. Reading is resumed via
+		 * {@link WebSocketDelegate#resumeReading()} once the buffer is drained below half of its
+		 * limits.
+		 */
+		PAUSE
+	}
 }
\ No newline at end of file
@@ -0,0 +1,956 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A pool of connected {@link WebSocketAdapter WebSocketAdapters} which allows request/response
+ * workloads to skip the WebSocket handshake on their critical path.
+ * <p>
+ * Adapters are leased from the pool via {@link #lease(SocketAddress)} and returned back into it
+ * via {@link #release(WebSocketAdapter)} once no longer needed, or discarded via
+ * {@link #invalidate(WebSocketAdapter)} if they should not be reused. For each endpoint, the pool
+ * keeps at least the minimum count of idle adapters connected in advance, see
+ * {@link Builder#minIdle(int)}, and never holds more than the maximum count of adapters, see
+ * {@link Builder#maxTotal(int)}. A lease which finds no idle adapter connects a new one if the
+ * maximum has not been reached yet, otherwise it waits until some adapter is returned.
+ * <p>
+ * Idle adapters are checked for health whenever they are leased and periodically at the health
+ * check interval, when adapters which are no longer connected are discarded, adapters idle for
+ * longer than the maximum idle time are closed as long as more than the minimum count of them
+ * remain, and missing idle adapters are connected. Adapters are created via {@link Factory}, which
+ * may enable {@link WebSocketAdapter#setKeepAlive(long, long) keep alive} for them, so idle
+ * adapters connected to a dead peer are detected and discarded as well. Health checks are scheduled
+ * on the shared {@link WebSocketTimer} and run via its blocking executor, as closing of evicted
+ * adapters blocks, and adapters are connected in advance on a short lived daemon thread, as
+ * connecting blocks as well.
+ * <p>
+ * The pool does not reset state of returned adapters, so an adapter should be returned only once
+ * its whole response has been read.
+ *
+ * @author Martin Albedinsky
+ * @since 1.1
+ */
+public final class WebSocketAdapterPool implements Closeable {
+
+	/*
+	 * Constants ===================================================================================
+	 */
+
+	/**
+	 * Log TAG.
+	 */
+	// private static final String TAG = "WebSocketAdapterPool";
+
+	/**
+	 * Name of the threads connecting adapters in advance.
+	 */
+	private static final String THREAD_NAME = "WebSocketAdapterPool-WarmUp";
+
+	/*
+	 * Interface ===================================================================================
+	 */
+
+	/**
+	 * Factory which creates new, not yet connected, adapters for a pool.
+	 *
+	 * @author Martin Albedinsky
+	 * @since 1.1
+	 */
+	public interface Factory {
+
+		/**
+		 * Creates a new adapter for the specified <var>endpoint</var>. The pool connects the
+		 * adapter to the endpoint afterwards.
+		 *
+		 * @param endpoint The endpoint to which will be the adapter connected.
+		 * @return The new adapter.
+		 * @throws IOException If the adapter cannot be created.
+		 */
+		@Nonnull WebSocketAdapter createAdapter(@Nonnull SocketAddress endpoint) throws IOException;
+	}
+
+	/*
+	 * Static members ==============================================================================
+	 */
+
+	/*
+	 * Members =====================================================================================
+	 */
+
+	/**
+	 * Factory creating new adapters.
+	 */
+	private final Factory factory;
+
+	/**
+	 * Minimum count of idle adapters kept per endpoint.
+	 */
+	private final int minIdle;
+
+	/**
+	 * Maximum count of adapters per endpoint.
+	 */
+	private final int maxTotal;
+
+	/**
+	 * Time in milliseconds after which may be an idle adapter closed.
+	 */
+	private final long maxIdleTime;
+
+	/**
+	 * Interval in milliseconds at which are idle adapters checked. {@code 0} if disabled.
+	 */
+	private final long healthCheckInterval;
+
+	/**
+	 * Timeout in milliseconds for connecting of adapters.
+	 */
+	private final int connectTimeout;
+
+	/**
+	 * Time in milliseconds for which may a lease wait for an adapter. {@code 0} means infinite time.
+	 */
+	private final long leaseTimeout;
+
+	/**
+	 * Lock guarding state of this pool.
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * Pools of adapters mapped to their endpoints.
+	 */
+	private final Map<SocketAddress, Endpoint> endpoints = new HashMap<>();
+
+	/**
+	 * Endpoint pools of the leased adapters.
+	 */
+	private final Map<WebSocketAdapter, Endpoint> leasedAdapters = new IdentityHashMap<>();
+
+	/**
+	 * Handle of the scheduled health check. May be {@code null}.
+	 */
+	private WebSocketTimer.Timeout scheduledHealthCheck;
+
+	/**
+	 * Boolean flag indicating whether this pool has been closed.
+	 */
+	private boolean closed;
+
+	/*
+	 * Constructors ================================================================================
+	 */
+
+	/**
+	 * Creates a new instance of WebSocketAdapterPool with data provided by the specified <var>builder</var>.
+	 *
+	 * @param builder The builder with data for the new pool.
+	 */
+	WebSocketAdapterPool(final Builder builder) {
+		this.factory = builder.factory;
+		this.minIdle = builder.minIdle;
+		this.maxTotal = builder.maxTotal;
+		this.maxIdleTime = builder.maxIdleTime;
+		this.healthCheckInterval = builder.healthCheckInterval;
+		this.connectTimeout = builder.connectTimeout;
+		this.leaseTimeout = builder.leaseTimeout;
+		if (healthCheckInterval > 0) {
+			this.scheduledHealthCheck = WebSocketTimer.shared().scheduleBlocking(this::onHealthCheck, healthCheckInterval, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/*
+	 * Methods =====================================================================================
+	 */
+
+	/**
+	 * Connects idle adapters for the specified <var>endpoint</var> until there is the minimum
+	 * count of them, blocking until they are connected. Idle adapters are otherwise connected in
+	 * advance only once the endpoint is leased for the first time.
+	 *
+	 * @param endpoint The endpoint for which to connect adapters.
+	 * @throws IOException If this pool is closed or some adapter fails to connect.
+	 */
+	public void warmUp(@Nonnull final SocketAddress endpoint) throws IOException {
+		final Endpoint pool;
+		final int count;
+		lock.lock();
+		try {
+			assertOpenedOrThrowException();
+			pool = obtainEndpoint(endpoint);
+			count = reserveIdleAdapters(pool);
+		} finally {
+			lock.unlock();
+		}
+		for (int i = 0; i < count; i++) {
+			final WebSocketAdapter adapter;
+			try {
+				adapter = connectAdapter(endpoint);
+			} catch (IOException e) {
+				cancelReservations(pool, count - i);
+				throw e;
+			}
+			addIdleAdapter(pool, adapter);
+		}
+	}
+
+	/**
+	 * Leases a connected adapter for the specified <var>endpoint</var>. If there is no idle adapter
+	 * available, a new one is connected or, if the maximum count of adapters for the endpoint has
+	 * been reached, this method blocks until some adapter is returned.
+	 *
+	 * @param endpoint The endpoint to which should be the adapter connected.
+	 * @return The leased adapter. It should be returned via {@link #release(WebSocketAdapter)} or
+	 * discarded via {@link #invalidate(WebSocketAdapter)} once no longer needed.
+	 * @throws SocketTimeoutException If the lease timeout expires while waiting for an adapter.
+	 * @throws InterruptedIOException If the current thread is interrupted while waiting.
+	 * @throws IOException If this pool is closed or a new adapter fails to connect.
+	 *
+	 * @see Builder#leaseTimeout(long)
+	 */
+	@Nonnull public WebSocketAdapter lease(@Nonnull final SocketAddress endpoint) throws IOException {
+		final List<WebSocketAdapter> unhealthyAdapters = new ArrayList<>(0);
+		final Endpoint pool;
+		WebSocketAdapter adapter = null;
+		int warmUpCount = 0;
+		lock.lock();
+		try {
+			assertOpenedOrThrowException();
+			pool = obtainEndpoint(endpoint);
+			long remainingNanos = TimeUnit.MILLISECONDS.toNanos(leaseTimeout);
+			while (adapter == null) {
+				final IdleAdapter idleAdapter = pool.idleAdapters.pollLast();
+				if (idleAdapter != null) {
+					if (isHealthy(idleAdapter.adapter)) {
+						adapter = idleAdapter.adapter;
+						this.leasedAdapters.put(adapter, pool);
+					} else {
+						pool.totalCount--;
+						unhealthyAdapters.add(idleAdapter.adapter);
+					}
+				} else if (pool.totalCount < maxTotal) {
+					pool.totalCount++;
+					break;
+				} else {
+					remainingNanos = awaitAdapter(pool, remainingNanos);
+				}
+			}
+			warmUpCount = reserveIdleAdapters(pool);
+		} finally {
+			lock.unlock();
+			closeAdapters(unhealthyAdapters);
+		}
+		startWarmUp(pool, warmUpCount);
+		if (adapter == null) {
+			try {
+				adapter = connectAdapter(endpoint);
+			} catch (IOException e) {
+				releaseLeaseReservation(pool);
+				throw e;
+			}
+			lock.lock();
+			try {
+				if (!closed) {
+					this.leasedAdapters.put(adapter, pool);
+					return adapter;
+				}
+				pool.totalCount--;
+			} finally {
+				lock.unlock();
+			}
+			closeAdapter(adapter);
+			throw new IOException("Pool has been already closed.");
+		}
+		return adapter;
+	}
+
+	/**
+	 * Waits until an adapter of the specified endpoint <var>pool</var> is returned or discarded.
+	 * <p>
+	 * This method should be called only while holding the {@link #lock}.
+	 *
+	 * @param pool           The pool for which to wait.
+	 * @param remainingNanos Remaining time for which may the lease wait.
+	 * @return Remaining time after waiting.
+	 * @throws IOException If this pool is closed, the lease timeout expires or the current thread
+	 *                     is interrupted.
+	 */
+	private long awaitAdapter(final Endpoint pool, long remainingNanos) throws IOException {
+		try {
+			if (leaseTimeout == 0) {
+				pool.adapterAvailable.await();
+			} else if (remainingNanos <= 0) {
+				throw new SocketTimeoutException("Timed out while waiting for an adapter.");
+			} else {
+				remainingNanos = pool.adapterAvailable.awaitNanos(remainingNanos);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for an adapter.");
+		}
+		assertOpenedOrThrowException();
+		return remainingNanos;
+	}
+
+	/**
+	 * Returns the specified leased <var>adapter</var> back into this pool, so it may be leased again.
+	 * An adapter which is no longer connected or which is returned after this pool has been closed
+	 * is closed instead.
+	 *
+	 * @param adapter The adapter to be returned.
+	 * @throws IllegalArgumentException If the adapter has not been leased from this pool.
+	 */
+	public void release(@Nonnull final WebSocketAdapter adapter) {
+		lock.lock();
+		try {
+			final Endpoint pool = removeLeasedAdapter(adapter);
+			if (!closed && isHealthy(adapter)) {
+				pool.idleAdapters.addLast(new IdleAdapter(adapter, System.nanoTime()));
+				pool.adapterAvailable.signal();
+				return;
+			}
+			pool.totalCount--;
+			pool.adapterAvailable.signal();
+		} finally {
+			lock.unlock();
+		}
+		closeAdapter(adapter);
+	}
+
+	/**
+	 * Discards the specified leased <var>adapter</var>, so it is closed and not leased again. This
+	 * should be used for adapters which are in an inconsistent state, for example after an error
+	 * of the application protocol.
+	 *
+	 * @param adapter The adapter to be discarded.
+	 * @throws IllegalArgumentException If the adapter has not been leased from this pool.
+	 */
+	public void invalidate(@Nonnull final WebSocketAdapter adapter) {
+		lock.lock();
+		try {
+			final Endpoint pool = removeLeasedAdapter(adapter);
+			pool.totalCount--;
+			pool.adapterAvailable.signal();
+		} finally {
+			lock.unlock();
+		}
+		closeAdapter(adapter);
+	}
+
+	/**
+	 * Removes the specified <var>adapter</var> from the leased ones.
+	 * <p>
+	 * This method should be called only while holding the {@link #lock}.
+	 *
+	 * @param adapter The adapter to be removed.
+	 * @return The endpoint pool of the adapter.
+	 * @throws IllegalArgumentException If the adapter has not been leased from this pool.
+	 */
+	private Endpoint removeLeasedAdapter(final WebSocketAdapter adapter) {
+		final Endpoint pool = leasedAdapters.remove(adapter);
+		if (pool == null) {
+			throw new IllegalArgumentException("Adapter has not been leased from this pool.");
+		}
+		return pool;
+	}
+
+	/**
+	 * Returns the count of idle adapters for the specified <var>endpoint</var>.
+	 *
+	 * @param endpoint The endpoint for which to return the count.
+	 * @return Idle adapters count.
+	 */
+	public int getIdleCount(@Nonnull final SocketAddress endpoint) {
+		lock.lock();
+		try {
+			final Endpoint pool = endpoints.get(endpoint);
+			return pool == null ? 0 : pool.idleAdapters.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the count of all adapters for the specified <var>endpoint</var>, that is idle, leased
+	 * and being connected.
+	 *
+	 * @param endpoint The endpoint for which to return the count.
+	 * @return Total adapters count.
+	 */
+	public int getTotalCount(@Nonnull final SocketAddress endpoint) {
+		lock.lock();
+		try {
+			final Endpoint pool = endpoints.get(endpoint);
+			return pool == null ? 0 : pool.totalCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the pool of adapters for the specified <var>endpoint</var>, creating it if it does
+	 * not exist yet.
+	 * <p>
+	 * This method should be called only while holding the {@link #lock}.
+	 *
+	 * @param endpoint The endpoint of the desired pool.
+	 * @return The endpoint pool.
+	 */
+	private Endpoint obtainEndpoint(final SocketAddress endpoint) {
+		Endpoint pool = endpoints.get(endpoint);
+		if (pool == null) {
+			pool = new Endpoint(endpoint, lock.newCondition());
+			this.endpoints.put(endpoint, pool);
+		}
+		return pool;
+	}
+
+	/**
+	 * Reserves space for as many new idle adapters as are missing for the specified endpoint
+	 * <var>pool</var> to have the minimum count of them, within the maximum count of adapters.
+	 * <p>
+	 * This method should be called only while holding the {@link #lock}.
+	 *
+	 * @param pool The endpoint pool.
+	 * @return Count of adapters which should be connected.
+	 */
+	private int reserveIdleAdapters(final Endpoint pool) {
+		final int count = Math.min(minIdle - pool.idleAdapters.size() - pool.warmingCount, maxTotal - pool.totalCount);
+		if (count <= 0) {
+			return 0;
+		}
+		pool.totalCount += count;
+		pool.warmingCount += count;
+		return count;
+	}
+
+	/**
+	 * Cancels the specified <var>count</var> of reservations of the specified endpoint <var>pool</var>
+	 * whose adapters have failed to connect.
+	 *
+	 * @param pool  The endpoint pool.
+	 * @param count Count of the failed reservations.
+	 */
+	private void cancelReservations(final Endpoint pool, final int count) {
+		lock.lock();
+		try {
+			pool.totalCount -= count;
+			pool.warmingCount = Math.max(0, pool.warmingCount - count);
+			pool.adapterAvailable.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Releases space reserved for a leased adapter of the specified endpoint <var>pool</var> which
+	 * has failed to connect. Unlike {@link #cancelReservations(Endpoint, int)}, this does not touch
+	 * the count of adapters being connected as idle.
+	 *
+	 * @param pool The endpoint pool.
+	 */
+	private void releaseLeaseReservation(final Endpoint pool) {
+		lock.lock();
+		try {
+			pool.totalCount--;
+			pool.adapterAvailable.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Adds the specified connected <var>adapter</var> as idle into the specified endpoint <var>pool</var>
+	 * for which it has been reserved via {@link #reserveIdleAdapters(Endpoint)}.
+	 *
+	 * @param pool    The endpoint pool.
+	 * @param adapter The connected adapter.
+	 */
+	private void addIdleAdapter(final Endpoint pool, final WebSocketAdapter adapter) {
+		lock.lock();
+		try {
+			pool.warmingCount = Math.max(0, pool.warmingCount - 1);
+			if (!closed) {
+				pool.idleAdapters.addLast(new IdleAdapter(adapter, System.nanoTime()));
+				pool.adapterAvailable.signal();
+				return;
+			}
+			pool.totalCount--;
+		} finally {
+			lock.unlock();
+		}
+		closeAdapter(adapter);
+	}
+
+	/**
+	 * Starts a new thread connecting the specified <var>count</var> of idle adapters reserved for
+	 * the specified endpoint <var>pool</var>.
+	 *
+	 * @param pool  The endpoint pool.
+	 * @param count Count of the reserved adapters. Does nothing if {@code 0}.
+	 */
+	private void startWarmUp(final Endpoint pool, final int count) {
+		if (count == 0) {
+			return;
+		}
+		final Thread thread = new Thread(() -> {
+			for (int i = 0; i < count; i++) {
+				try {
+					addIdleAdapter(pool, connectAdapter(pool.endpoint));
+				} catch (IOException | RuntimeException e) {
+					// Missing adapters are connected again during the next health check.
+					cancelReservations(pool, count - i);
+					return;
+				}
+			}
+		}, THREAD_NAME);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Creates a new adapter via the factory and connects it to the specified <var>endpoint</var>.
+	 *
+	 * @param endpoint The endpoint to which to connect.
+	 * @return The connected adapter.
+	 * @throws IOException If the adapter fails to connect.
+	 */
+	private WebSocketAdapter connectAdapter(final SocketAddress endpoint) throws IOException {
+		final WebSocketAdapter adapter = factory.createAdapter(endpoint);
+		try {
+			adapter.connect(endpoint, connectTimeout);
+		} catch (IOException | RuntimeException e) {
+			closeAdapter(adapter);
+			throw e;
+		}
+		if (!adapter.isConnected()) {
+			closeAdapter(adapter);
+			throw new IOException("Failed to connect to " + endpoint + ".");
+		}
+		return adapter;
+	}
+
+	/**
+	 * Checks whether the specified <var>adapter</var> may be leased.
+	 *
+	 * @param adapter The adapter to be checked.
+	 * @return {@code True} if the adapter is connected, {@code false} otherwise.
+	 */
+	private static boolean isHealthy(final WebSocketAdapter adapter) {
+		return adapter.isConnected() && !adapter.isClosed() && !adapter.isReconnecting();
+	}
+
+	/**
+	 * Invoked via the blocking executor of the timer at the health check interval, as the check
+	 * closes evicted adapters.
+	 */
+	private void onHealthCheck() {
+		lock.lock();
+		try {
+			if (closed) {
+				return;
+			}
+			this.scheduledHealthCheck = WebSocketTimer.shared().scheduleBlocking(this::onHealthCheck, healthCheckInterval, TimeUnit.MILLISECONDS);
+		} finally {
+			lock.unlock();
+		}
+		checkHealth();
+	}
+
+	/**
+	 * Discards idle adapters which are no longer connected, closes adapters idle for longer than
+	 * the maximum idle time as long as more than the minimum count of idle adapters remains and
+	 * starts connecting of missing idle adapters.
+	 */
+	void checkHealth() {
+		final List<WebSocketAdapter> closedAdapters = new ArrayList<>(0);
+		final List<Endpoint> warmUpPools = new ArrayList<>(0);
+		final List<Integer> warmUpCounts = new ArrayList<>(0);
+		lock.lock();
+		try {
+			if (closed) {
+				return;
+			}
+			final long now = System.nanoTime();
+			final long maxIdleNanos = TimeUnit.MILLISECONDS.toNanos(maxIdleTime);
+			for (final Endpoint pool : endpoints.values()) {
+				final Iterator<IdleAdapter> iterator = pool.idleAdapters.iterator();
+				while (iterator.hasNext()) {
+					final IdleAdapter idleAdapter = iterator.next();
+					final boolean stale = now - idleAdapter.idleSince >= maxIdleNanos && pool.idleAdapters.size() > minIdle;
+					if (stale || !isHealthy(idleAdapter.adapter)) {
+						iterator.remove();
+						pool.totalCount--;
+						closedAdapters.add(idleAdapter.adapter);
+					}
+				}
+				final int count = reserveIdleAdapters(pool);
+				if (count > 0) {
+					warmUpPools.add(pool);
+					warmUpCounts.add(count);
+				}
+				if (!closedAdapters.isEmpty()) {
+					pool.adapterAvailable.signalAll();
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+		closeAdapters(closedAdapters);
+		for (int i = 0; i < warmUpPools.size(); i++) {
+			startWarmUp(warmUpPools.get(i), warmUpCounts.get(i));
+		}
+	}
+
+	/**
+	 * Asserts that this pool is opened. If not an exception is thrown.
+	 * <p>
+	 * This method should be called only while holding the {@link #lock}.
+	 *
+	 * @throws IOException If this pool has been already closed.
+	 */
+	private void assertOpenedOrThrowException() throws IOException {
+		if (closed) throw new IOException("Pool has been already closed.");
+	}
+
+	/**
+	 * Closes this pool along with all its idle adapters. Leased adapters are closed once they are
+	 * returned. Threads waiting for an adapter are woken up with an exception.
+	 */
+	@Override public void close() {
+		final List<WebSocketAdapter> idleAdapters = new ArrayList<>();
+		lock.lock();
+		try {
+			if (closed) {
+				return;
+			}
+			this.closed = true;
+			if (scheduledHealthCheck != null) {
+				this.scheduledHealthCheck.cancel();
+				this.scheduledHealthCheck = null;
+			}
+			for (final Endpoint pool : endpoints.values()) {
+				IdleAdapter idleAdapter;
+				while ((idleAdapter = pool.idleAdapters.pollFirst()) != null) {
+					pool.totalCount--;
+					idleAdapters.add(idleAdapter.adapter);
+				}
+				pool.adapterAvailable.signalAll();
+			}
+		} finally {
+			lock.unlock();
+		}
+		closeAdapters(idleAdapters);
+	}
+
+	/**
+	 * Closes all the specified <var>adapters</var>.
+	 *
+	 * @param adapters The adapters to be closed.
+	 */
+	private static void closeAdapters(final List<WebSocketAdapter> adapters) {
+		for (final WebSocketAdapter adapter : adapters) {
+			closeAdapter(adapter);
+		}
+	}
+
+	/**
+	 * Closes the specified <var>adapter</var>, ignoring any failure.
+	 *
+	 * @param adapter The adapter to be closed.
+	 */
+	private static void closeAdapter(final WebSocketAdapter adapter) {
+		try {
+			adapter.close();
+		} catch (IOException ignored) {
+			// The adapter is discarded anyway.
+		}
+	}
+
+	/*
+	 * Inner classes ===============================================================================
+	 */
+
+	/**
+	 * Builder that may be used to create instances of {@link WebSocketAdapterPool}.
+	 *
+	 * <h3>Required parameters</h3>
+	 * Parameters specified below are required in order to create a new instance of {@link WebSocketAdapterPool}
+	 * via {@link Builder#build()} successfully.
+	 * <ul>
+	 * <li>{@link #Builder(Factory)}</li>
+	 * </ul>
+	 *
+	 * @author Martin Albedinsky
+	 * @since 1.1
+	 */
+	public static final class Builder {
+
+		/**
+		 * See {@link WebSocketAdapterPool#factory}.
+		 */
+		final Factory factory;
+
+		/**
+		 * See {@link WebSocketAdapterPool#minIdle}.
+		 */
+		int minIdle;
+
+		/**
+		 * See {@link WebSocketAdapterPool#maxTotal}.
+		 */
+		int maxTotal = 8;
+
+		/**
+		 * See {@link WebSocketAdapterPool#maxIdleTime}.
+		 */
+		long maxIdleTime = TimeUnit.MINUTES.toMillis(5);
+
+		/**
+		 * See {@link WebSocketAdapterPool#healthCheckInterval}.
+		 */
+		long healthCheckInterval = TimeUnit.SECONDS.toMillis(30);
+
+		/**
+		 * See {@link WebSocketAdapterPool#connectTimeout}.
+		 */
+		int connectTimeout;
+
+		/**
+		 * See {@link WebSocketAdapterPool#leaseTimeout}.
+		 */
+		long leaseTimeout;
+
+		/**
+		 * Creates a new Builder with the specified <var>factory</var>.
+		 *
+		 * @param factory The factory which should create adapters for the new pool.
+		 */
+		public Builder(@Nonnull final Factory factory) {
+			this.factory = factory;
+		}
+
+		/**
+		 * Specifies a minimum count of idle adapters which should be kept connected for each
+		 * endpoint.
+		 * <p>
+		 * Default value: {@code 0}
+		 *
+		 * @param minIdle The desired minimum count.
+		 * @return This builder to allow methods chaining.
+		 * @throws IllegalArgumentException If the count is negative.
+		 */
+		public Builder minIdle(final int minIdle) {
+			if (minIdle < 0) {
+				throw new IllegalArgumentException("Min idle cannot be negative.");
+			}
+			this.minIdle = minIdle;
+			return this;
+		}
+
+		/**
+		 * Specifies a maximum count of adapters, idle and leased, for each endpoint.
+		 * <p>
+		 * Default value: {@code 8}
+		 *
+		 * @param maxTotal The desired maximum count.
+		 * @return This builder to allow methods chaining.
+		 * @throws IllegalArgumentException If the count is not positive.
+		 */
+		public Builder maxTotal(final int maxTotal) {
+			if (maxTotal <= 0) {
+				throw new IllegalArgumentException("Max total must be positive.");
+			}
+			this.maxTotal = maxTotal;
+			return this;
+		}
+
+		/**
+		 * Specifies a time after which may be an idle adapter closed, as long as more than the
+		 * minimum count of idle adapters remains.
+		 * <p>
+		 * Default value: {@code 5 min}
+		 *
+		 * @param maxIdleTime The desired time in milliseconds.
+		 * @return This builder to allow methods chaining.
+		 * @throws IllegalArgumentException If the time is negative.
+		 */
+		public Builder maxIdleTime(final long maxIdleTime) {
+			if (maxIdleTime < 0) {
+				throw new IllegalArgumentException("Max idle time cannot be negative.");
+			}
+			this.maxIdleTime = maxIdleTime;
+			return this;
+		}
+
+		/**
+		 * Specifies an interval at which should be idle adapters checked.
+		 * <p>
+		 * Default value: {@code 30 s}
+		 *
+		 * @param interval The desired interval in milliseconds. {@code 0} disables periodic checks.
+		 * @return This builder to allow methods chaining.
+		 * @throws IllegalArgumentException If the interval is negative.
+		 */
+		public Builder healthCheckInterval(final long interval) {
+			if (interval < 0) {
+				throw new IllegalArgumentException("Health check interval cannot be negative.");
+			}
+			this.healthCheckInterval = interval;
+			return this;
+		}
+
+		/**
+		 * Specifies a timeout for connecting of adapters.
+		 * <p>
+		 * Default value: {@code 0}
+		 *
+		 * @param timeout The desired timeout in milliseconds passed to
+		 *                {@link WebSocketAdapter#connect(SocketAddress, int)}.
+		 * @return This builder to allow methods chaining.
+		 * @throws IllegalArgumentException If the timeout is negative.
+		 */
+		public Builder connectTimeout(final int timeout) {
+			if (timeout < 0) {
+				throw new IllegalArgumentException("Connect timeout cannot be negative.");
+			}
+			this.connectTimeout = timeout;
+			return this;
+		}
+
+		/**
+		 * Specifies a time for which may a lease wait for an adapter to be returned when the
+		 * maximum count of adapters has been reached.
+		 * <p>
+		 * Default value: {@code 0}
+		 *
+		 * @param timeout The desired time in milliseconds. {@code 0} means infinite time.
+		 * @return This builder to allow methods chaining.
+		 * @throws IllegalArgumentException If the time is negative.
+		 */
+		public Builder leaseTimeout(final long timeout) {
+			if (timeout < 0) {
+				throw new IllegalArgumentException("Lease timeout cannot be negative.");
+			}
+			this.leaseTimeout = timeout;
+			return this;
+		}
+
+		/**
+		 * Builds a new instance of WebSocketAdapterPool with the data specified for this builder.
+		 *
+		 * @return WebSocketAdapterPool instance ready to be used.
+		 * @throws IllegalArgumentException If the minimum count of idle adapters is greater than
+		 *                                  the maximum count of adapters.
+		 */
+		@Nonnull public WebSocketAdapterPool build() {
+			if (minIdle > maxTotal) {
+				throw new IllegalArgumentException("Min idle cannot be greater than max total.");
+			}
+			return new WebSocketAdapterPool(this);
+		}
+	}
+
+	/**
+	 * Adapters of a single endpoint.
+	 */
+	private static final class Endpoint {
+
+		/**
+		 * The endpoint to which are the adapters connected.
+		 */
+		final SocketAddress endpoint;
+
+		/**
+		 * Condition signaled whenever an adapter becomes idle or is discarded.
+		 */
+		final Condition adapterAvailable;
+
+		/**
+		 * Idle adapters, the least recently returned first.
+		 */
+		final ArrayDeque<IdleAdapter> idleAdapters = new ArrayDeque<>();
+
+		/**
+		 * Count of all adapters, that is idle, leased and being connected.
+		 */
+		int totalCount;
+
+		/**
+		 * Count of idle adapters which are being connected.
+		 */
+		int warmingCount;
+
+		/**
+		 * Creates a new instance of Endpoint for the specified <var>endpoint</var>.
+		 *
+		 * @param endpoint         The endpoint to which are the adapters connected.
+		 * @param adapterAvailable Condition of the pool's lock.
+		 */
+		Endpoint(final SocketAddress endpoint, final Condition adapterAvailable) {
+			this.endpoint = endpoint;
+			this.adapterAvailable = adapterAvailable;
+		}
+	}
+
+	/**
+	 * An adapter held by a pool while it is not leased.
+	 */
+	private static final class IdleAdapter {
+
+		/**
+		 * The idle adapter.
+		 */
+		final WebSocketAdapter adapter;
+
+		/**
+		 * Time since which is the adapter idle, as returned by {@link System#nanoTime()}.
+		 */
+		final long idleSince;
+
+		/**
+		 * Creates a new instance of IdleAdapter for the specified <var>adapter</var>.
+		 *
+		 * @param adapter   The idle adapter.
+		 * @param idleSince Time since which is the adapter idle.
+		 */
+		IdleAdapter(final WebSocketAdapter adapter, final long idleSince) {
+			this.adapter = adapter;
+			this.idleSince = idleSince;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,229 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A non-blocking {@link ByteChannel} view of {@link WebSocketAdapter} which may be obtained via
+ * {@link WebSocketAdapter#getWebSocketChannel()}.
+ * <p>
+ * The channel reads from the same buffer of received messages as the adapter's input stream,
+ * but {@link #read(ByteBuffer)} never blocks. It returns {@code 0} when there are no data available
+ * at this time, so a single thread may serve many channels. In order to be notified when a
+ * channel has some data to be read, register {@link OnReadableListener} via
+ * {@link #setOnReadableListener(OnReadableListener)}. The notification is edge-triggered, so
+ * the channel should be read until it returns {@code 0} or {@code -1} before the notification
+ * is considered handled.
+ * <p>
+ * Each {@link #write(ByteBuffer)} sends the remaining data of the given buffer as a single message
+ * directly to the delegate, without copying them. Whether the write blocks depends on the delegate's
+ * implementation of {@link WebSocketDelegate#sendFrame(WebSocketDelegate.Frame)}. Writes are
+ * serialized with writes of the adapter's output stream, so frames of their messages never
+ * interleave.
+ * <p>
+ * The channel and the adapter's input stream should not be read both at the same time, as they
+ * consume the same data. When the channel is used by a single event loop thread, it is also
+ * recommended to use {@link WebSocketAdapter.OverflowPolicy#PAUSE} policy so the thread delivering
+ * frames is never blocked by a full buffer.
+ *
+ * @author Martin Albedinsky
+ * @since 1.1
+ */
+public final class WebSocketChannel implements ByteChannel {
+
+	/*
+	 * Constants ===================================================================================
+	 */
+
+	/**
+	 * Log TAG.
+	 */
+	// private static final String TAG = "WebSocketChannel";
+
+	/*
+	 * Interface ===================================================================================
+	 */
+
+	/**
+	 * Listener which may be used to receive notifications about readiness of a {@link WebSocketChannel}.
+	 *
+	 * @author Martin Albedinsky
+	 * @since 1.1
+	 */
+	public interface OnReadableListener {
+
+		/**
+		 * Invoked whenever the specified <var>channel</var> becomes readable, that is when new data
+		 * are received while there were no data available or when the channel reaches its end.
+		 * <p>
+		 * This callback is invoked on the thread delivering received frames, so it should only
+		 * schedule reading of the channel, for example by waking up an event loop.
+		 *
+		 * @param channel The channel that has become readable.
+		 */
+		void onReadable(@Nonnull WebSocketChannel channel);
+	}
+
+	/*
+	 * Static members ==============================================================================
+	 */
+
+	/*
+	 * Members =====================================================================================
+	 */
+
+	/**
+	 * Socket of which is this channel a view.
+	 */
+	private final WebSocketAdapter socket;
+
+	/**
+	 * Stream via which is this channel sending written data.
+	 */
+	private final WebSocketOutputStream output;
+
+	/**
+	 * Stream from which is this channel reading received data.
+	 */
+	private final WebSocketInputStream input;
+
+	/**
+	 * Boolean flag indicating whether this channel is closed or not.
+	 */
+	private final AtomicBoolean closed = new AtomicBoolean(false);
+
+	/**
+	 * Listener to be notified whenever this channel becomes readable.
+	 */
+	private volatile OnReadableListener readableListener;
+
+	/*
+	 * Constructors ================================================================================
+	 */
+
+	/**
+	 * Creates a new instance of WebSocketChannel for the given <var>socket</var>.
+	 *
+	 * @param socket The socket of which should be the new channel a view.
+	 * @param input  The stream from which should the channel read received data.
+	 * @param output The stream via which should the channel send written data.
+	 */
+	WebSocketChannel(final WebSocketAdapter socket, final WebSocketInputStream input, final WebSocketOutputStream output) {
+		this.socket = socket;
+		this.input = input;
+		this.output = output;
+		this.input.setReadableCallback(this::notifyReadable);
+	}
+
+	/*
+	 * Methods =====================================================================================
+	 */
+
+	/**
+	 * Registers a listener to be notified whenever this channel becomes readable.
+	 *
+	 * @param listener The desired listener. May be {@code null} to clear the current one.
+	 */
+	public void setOnReadableListener(@Nullable final OnReadableListener listener) {
+		this.readableListener = listener;
+	}
+
+	/**
+	 * Notifies the current readable listener, if any.
+	 */
+	private void notifyReadable() {
+		final OnReadableListener listener = readableListener;
+		if (listener != null) {
+			listener.onReadable(this);
+		}
+	}
+
+	/**
+	 * Reads as many bytes as are available at this time into the given buffer. This method never
+	 * blocks.
+	 *
+	 * @return Count of bytes read, possibly {@code 0} if there are no data available at this time,
+	 * or {@code -1} if the adapted WebSocket has been disconnected and all received data have been
+	 * already read.
+	 * @throws ClosedChannelException If this channel has been closed.
+	 */
+	@Override public int read(@Nonnull final ByteBuffer buffer) throws IOException {
+		assertOpenedOrThrowException();
+		return input.readAvailable(buffer);
+	}
+
+	/**
+	 * Sends the remaining data of the given buffer as a single message. If a maximum frame size
+	 * is specified for the socket, the message is sent in fragments of that size. The buffer's
+	 * data are not copied and its position is advanced once they have been sent.
+	 * <p>
+	 * If a message written via the socket's output stream has been already partly sent, its
+	 * buffered data are sent as its final fragment before the message of this channel.
+	 *
+	 * @return Count of bytes written, which is always the count of remaining bytes of the buffer.
+	 * @throws ClosedChannelException If this channel has been closed.
+	 *
+	 * @see WebSocketAdapter#setMaxFrameSize(int)
+	 */
+	@Override public int write(@Nonnull final ByteBuffer buffer) throws IOException {
+		assertOpenedOrThrowException();
+		final int length = buffer.remaining();
+		this.output.sendMessage(buffer);
+		return length;
+	}
+
+	/**
+	 * Checks whether this channel is opened, that is neither this channel nor its socket have been
+	 * closed.
+	 */
+	@Override public boolean isOpen() {
+		return !closed.get() && !socket.isClosed();
+	}
+
+	/**
+	 * Closes this channel along with its socket.
+	 */
+	@Override public void close() throws IOException {
+		if (closed.compareAndSet(false, true)) {
+			this.input.setReadableCallback(null);
+			this.socket.close();
+		}
+	}
+
+	/**
+	 * Asserts that this channel is opened. If not an exception is thrown.
+	 *
+	 * @throws ClosedChannelException If this channel has been already closed.
+	 */
+	private void assertOpenedOrThrowException() throws ClosedChannelException {
+		if (!isOpen()) throw new ClosedChannelException();
+	}
+
+	/*
+	 * Inner classes ===============================================================================
+	 */
+}
\ No newline at end of file
@@ -20,6 +20,9 @@ package universum.studios.websocket.adapter;
 
 import java.io.IOException;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
 
 import javax.annotation.Nonnull;
 
@@ -57,6 +60,48 @@ public interface WebSocketDelegate {
 	 */
 	interface Frame {
 
+		/**
+		 * Opcode of a frame continuing a fragmented message.
+		 *
+		 * @since 1.1
+		 */
+		int OPCODE_CONTINUATION = 0x0;
+
+		/**
+		 * Opcode of a frame starting a text message, encoded in UTF-8.
+		 *
+		 * @since 1.1
+		 */
+		int OPCODE_TEXT = 0x1;
+
+		/**
+		 * Opcode of a frame starting a binary message.
+		 *
+		 * @since 1.1
+		 */
+		int OPCODE_BINARY = 0x2;
+
+		/**
+		 * Opcode of a control frame closing the connection.
+		 *
+		 * @since 1.1
+		 */
+		int OPCODE_CLOSE = 0x8;
+
+		/**
+		 * Opcode of a control frame requesting a pong from the remote side.
+		 *
+		 * @since 1.1
+		 */
+		int OPCODE_PING = 0x9;
+
+		/**
+		 * Opcode of a control frame responding to a ping.
+		 *
+		 * @since 1.1
+		 */
+		int OPCODE_PONG = 0xA;
+
 		/**
 		 * Implementation of {@link Frame} which provides empty payload.
 		 */
@@ -82,6 +127,22 @@ public interface WebSocketDelegate {
 		 */
 		@Nonnull byte[] getPayload();
 
+		/**
+		 * Returns a buffer view of the payload data of this frame. The returned buffer should not
+		 * be modified.
+		 * <p>
+		 * Implementations which store payload as a part of a larger array should return a buffer
+		 * backed by that array so the payload may be accessed without copying.
+		 * <p>
+		 * Default implementation wraps the array returned by {@link #getPayload()}.
+		 *
+		 * @return Frame's payload as buffer with position at the start of the payload data and
+		 * limit at its end.
+		 */
+		@Nonnull default ByteBuffer getPayloadBuffer() {
+			return ByteBuffer.wrap(getPayload());
+		}
+
 		/**
 		 * Returns boolean flag indicating whether this frame is a final frame.
 		 *
@@ -89,6 +150,76 @@ public interface WebSocketDelegate {
 		 * to come to properly receive all the data.
 		 */
 		boolean isFinal();
+
+		/**
+		 * Returns boolean flag indicating whether payload of the message starting with this frame
+		 * is compressed, that is whether the <b>RSV1</b> bit of this frame is set as specified by
+		 * the <a href="https://tools.ietf.org/html/rfc7692">permessage-deflate</a> extension. The
+		 * flag is relevant only for the first frame of a message.
+		 * <p>
+		 * Default implementation returns {@code false}.
+		 *
+		 * @return {@code True} if the message payload is compressed, {@code false} otherwise.
+		 *
+		 * @see PerMessageDeflate
+		 * @since 1.1
+		 */
+		default boolean isCompressed() {
+			return false;
+		}
+
+		/**
+		 * Returns the opcode of this frame as specified by <a href="https://tools.ietf.org/html/rfc6455#section-5.2">RFC 6455</a>,
+		 * that is one of {@link #OPCODE_CONTINUATION}, {@link #OPCODE_TEXT}, {@link #OPCODE_BINARY},
+		 * {@link #OPCODE_CLOSE}, {@link #OPCODE_PING} or {@link #OPCODE_PONG}.
+		 * <p>
+		 * Default implementation returns {@link #OPCODE_BINARY}, so frames of delegates which do
+		 * not support opcodes are treated as data frames.
+		 *
+		 * @return Frame's opcode.
+		 *
+		 * @see #isControl()
+		 * @since 1.1
+		 */
+		default int getOpcode() {
+			return OPCODE_BINARY;
+		}
+
+		/**
+		 * Returns boolean flag indicating whether this frame is a control frame, that is a close,
+		 * ping or pong frame. Control frames do not belong to any message and may be interleaved
+		 * with fragments of a message.
+		 *
+		 * @return {@code True} if this is a control frame, {@code false} if it is a data frame.
+		 *
+		 * @see #getOpcode()
+		 * @see OnControlFrameListener
+		 * @since 1.1
+		 */
+		default boolean isControl() {
+			return (getOpcode() & 0x8) != 0;
+		}
+
+		/**
+		 * Decodes the payload data of this frame as UTF-8 text. If the payload is backed by an
+		 * accessible array, the text is decoded directly from that array without copying the data.
+		 * Malformed input is replaced by the replacement character.
+		 * <p>
+		 * Note that a fragment of a text message may end in the middle of a multi-byte character,
+		 * so text messages split into multiple frames should be decoded only once reassembled,
+		 * for example via {@link WebSocketAdapter#receiveMessage()}.
+		 *
+		 * @return Frame's payload as text.
+		 *
+		 * @since 1.1
+		 */
+		@Nonnull default String getPayloadText() {
+			final ByteBuffer payload = getPayloadBuffer();
+			if (payload.hasArray()) {
+				return new String(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining(), StandardCharsets.UTF_8);
+			}
+			return StandardCharsets.UTF_8.decode(payload).toString();
+		}
 	}
 
 	/**
@@ -101,12 +232,42 @@ public interface WebSocketDelegate {
 
 		/**
 		 * Invoked whenever a new frame is received by the WebSocket.
+		 * <p>
+		 * Listeners may retain payload arrays of the received frame without copying them, so the
+		 * delegate should not modify nor reuse payload arrays once the frame has been delivered.
+		 * Payload backed by a buffer which is not accessible as an array, like a direct buffer,
+		 * is valid only during this callback, so the delegate may reuse such buffer afterwards.
+		 * Payload backed by a pooled buffer, see {@link WebSocketFrame#getPooledBuffer()}, is
+		 * retained by listeners which keep it, so the delegate may release its own reference to
+		 * that buffer once this callback returns.
 		 *
 		 * @param frame The received frame.
 		 */
 		void onFrameReceived(@Nonnull Frame frame);
 	}
 
+	/**
+	 * Listener which may be used to listen for callback about received WebSocket control frames.
+	 *
+	 * @author Martin Albedinsky
+	 * @since 1.1
+	 *
+	 * @see Frame#isControl()
+	 */
+	interface OnControlFrameListener {
+
+		/**
+		 * Invoked whenever a new control frame, that is a close, ping or pong frame, is received
+		 * by the WebSocket. This callback is invoked directly on the thread which has received the
+		 * frame, so it should return quickly.
+		 * <p>
+		 * Payload of the received frame is valid only during this callback.
+		 *
+		 * @param frame The received control frame.
+		 */
+		void onControlFrameReceived(@Nonnull Frame frame);
+	}
+
 	/**
 	 * Registers a listener to be invoked whenever the WebSocket connects or disconnects.
 	 *
@@ -145,6 +306,38 @@ public interface WebSocketDelegate {
 	 */
 	void unregisterOnIncomingFrameListener(@Nonnull OnIncomingFrameListener listener);
 
+	/**
+	 * Registers a listener to be invoked whenever the WebSocket receives a new control frame.
+	 * Delegates which support control frames deliver them only to these listeners and never to
+	 * the listeners registered via {@link #registerOnIncomingFrameListener(OnIncomingFrameListener)},
+	 * so control frames do not interfere with reassembly of messages.
+	 * <p>
+	 * Default implementation does nothing, as delegates do not report control frames by default.
+	 *
+	 * @param listener The desired listener to be registered.
+	 *
+	 * @see #unregisterOnControlFrameListener(OnControlFrameListener)
+	 * @since 1.1
+	 */
+	default void registerOnControlFrameListener(@Nonnull final OnControlFrameListener listener) {
+		// Control frames are not reported by default.
+	}
+
+	/**
+	 * Un-registers the specified <var>listener</var> from the registered ones, so it will no longer
+	 * receive any callbacks.
+	 * <p>
+	 * Default implementation does nothing.
+	 *
+	 * @param listener The desired listener to be un-registered.
+	 *
+	 * @see #registerOnControlFrameListener(OnControlFrameListener)
+	 * @since 1.1
+	 */
+	default void unregisterOnControlFrameListener(@Nonnull final OnControlFrameListener listener) {
+		// Control frames are not reported by default.
+	}
+
 	/**
 	 * Performs connection of the wrapped WebSocket to the specified <var>remoteAddress</var>.
 	 *
@@ -163,6 +356,20 @@ public interface WebSocketDelegate {
 
 	/**
 	 * Sends the specified <var>frame</var> via the wrapped WebSocket.
+	 * <p>
+	 * Delegates which support opcodes should send the frame with the opcode returned by
+	 * {@link Frame#getOpcode()}.
+	 * <p>
+	 * Payload of the frame is guaranteed to remain unchanged only until this method returns. The
+	 * caller may reuse the array backing the payload for other data afterwards, so delegates which
+	 * need to access the payload data later must copy them before returning from this method.
+	 * <p>
+	 * Data frames are passed to this method and to {@link #sendFrameAsync(Frame)} by one thread at
+	 * a time. Control frames however may be passed concurrently from another thread, for example
+	 * pings of a keep alive, see {@link WebSocketAdapter#setKeepAlive(long, long)}, which must not
+	 * wait for a data frame blocked by a slow peer. Delegates must therefore support concurrent
+	 * sends of control frames and must never interleave bytes of concurrently sent frames, which
+	 * WebSocket clients usually ensure by queueing outgoing frames.
 	 *
 	 * @param frame The frame to be send.
 	 * @throws IOException If some IO error occurs during send operation or if the wrapped WebSocket
@@ -170,6 +377,80 @@ public interface WebSocketDelegate {
 	 */
 	void sendFrame(@Nonnull Frame frame) throws IOException;
 
+	/**
+	 * Sends the specified <var>frame</var> via the wrapped WebSocket asynchronously.
+	 * <p>
+	 * Payload of the frame is guaranteed to remain unchanged until the returned future completes,
+	 * so delegates may access the payload data without copying them until then. Frames passed to
+	 * this method and to {@link #sendFrame(Frame)} must be sent in the order in which they have
+	 * been passed. Concurrent sends are subject to the same rules as for {@link #sendFrame(Frame)}.
+	 * <p>
+	 * Default implementation sends the frame synchronously via {@link #sendFrame(Frame)} and returns
+	 * an already completed future, so existing synchronous delegates support this method as well.
+	 *
+	 * @param frame The frame to be send.
+	 * @return Future which completes once the frame has been sent or completes exceptionally if
+	 * the send operation fails.
+	 *
+	 * @since 1.1
+	 */
+	@Nonnull default CompletableFuture<Void> sendFrameAsync(@Nonnull final Frame frame) {
+		final CompletableFuture<Void> future = new CompletableFuture<>();
+		try {
+			sendFrame(frame);
+			future.complete(null);
+		} catch (IOException | RuntimeException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/**
+	 * Requests the wrapped WebSocket to temporarily stop reading of incoming frames. This is
+	 * requested by {@link WebSocketAdapter} whenever its incoming buffer becomes full while it is
+	 * configured with {@link WebSocketAdapter.OverflowPolicy#PAUSE} policy.
+	 * <p>
+	 * Default implementation does nothing, so delegates which do not support pausing continue
+	 * delivering frames regardless of the buffer limits.
+	 *
+	 * @see #resumeReading()
+	 */
+	default void pauseReading() {
+		// Pausing is not supported by default.
+	}
+
+	/**
+	 * Requests the wrapped WebSocket to resume reading of incoming frames previously paused via
+	 * {@link #pauseReading()}.
+	 * <p>
+	 * Default implementation does nothing.
+	 *
+	 * @see #pauseReading()
+	 */
+	default void resumeReading() {
+		// Pausing is not supported by default.
+	}
+
+	/**
+	 * Returns the extensions negotiated for the wrapped WebSocket during its opening handshake,
+	 * that is the value of the <b>Sec-WebSocket-Extensions</b> header of the server's response,
+	 * for example {@code permessage-deflate; client_no_context_takeover}.
+	 * <p>
+	 * {@link WebSocketAdapter} uses the negotiated extensions to decide which frame transforms
+	 * should be applied for the current connection. Delegates which negotiate extensions should
+	 * set and read the <b>RSV</b> bits of frames accordingly, see {@link Frame#isCompressed()}.
+	 * <p>
+	 * Default implementation returns an empty string, that is no extensions.
+	 *
+	 * @return The negotiated extensions or an empty string if there are none.
+	 *
+	 * @see FrameTransform.Factory
+	 * @since 1.1
+	 */
+	@Nonnull default String getNegotiatedExtensions() {
+		return "";
+	}
+
 	/**
 	 * Closes the wrapped WebSocket.
 	 *
@@ -18,10 +18,18 @@
  */
 package universum.studios.websocket.adapter;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * Implementation of {@link WebSocketDelegate.Frame}.
+ * <p>
+ * Payload of a frame may be backed either by an array or by a {@link ByteBuffer}, which may be
+ * also a direct buffer. In both cases the payload data are accessible via {@link #getPayloadBuffer()}
+ * without copying.
  *
  * @author Martin Albedinsky
  * @since 1.0
@@ -37,6 +45,11 @@ public final class WebSocketFrame implements WebSocketDelegate.Frame {
 	 */
 	// private static final String TAG = "WebSocketFrame";
 
+	/**
+	 * Maximum length of payload of a control frame.
+	 */
+	static final int MAX_CONTROL_PAYLOAD_LENGTH = 125;
+
     /*
 	 * Interface ===================================================================================
 	 */
@@ -50,14 +63,58 @@ public final class WebSocketFrame implements WebSocketDelegate.Frame {
 	 */
 
 	/**
-	 * Payload data of this frame.
+	 * Array containing payload data of this frame. May be {@code null} if the payload is backed
+	 * by {@link #payloadBuffer}.
 	 */
 	private final byte[] payload;
 
+	/**
+	 * Buffer containing payload data of this frame, between its position and limit. Specified only
+	 * if the payload is backed by a buffer which is not accessible as an array, like direct buffer.
+	 */
+	private final ByteBuffer payloadBuffer;
+
+	/**
+	 * Offset in the {@link #payload} array at which the payload data start.
+	 */
+	private final int payloadOffset;
+
+	/**
+	 * Length of the payload data.
+	 */
+	private final int payloadLength;
+
+	/**
+	 * Copy of the payload data with exact length created lazily in case when the payload data
+	 * occupy only a part of the {@link #payload} array or are backed by {@link #payloadBuffer}.
+	 */
+	private byte[] payloadCopy;
+
+	/**
+	 * Pooled buffer owning the {@link #payload} array. May be {@code null}.
+	 */
+	private final BufferPool.Buffer pooledBuffer;
+
+	/**
+	 * Boolean flag indicating whether the {@link #payload} array is only borrowed from its owner
+	 * which reuses it once this frame has been delivered, so it must not be handed out.
+	 */
+	private final boolean payloadBorrowed;
+
 	/**
 	 * Boolean flag indicating whether this frame is a final frame.
 	 */
 	private final boolean isFinal;
+
+	/**
+	 * Boolean flag indicating whether payload of the message starting with this frame is compressed.
+	 */
+	private final boolean compressed;
+
+	/**
+	 * Opcode of this frame.
+	 */
+	private final int opcode;
 	 
 	/*
 	 * Constructors ================================================================================
@@ -71,7 +128,14 @@ public final class WebSocketFrame implements WebSocketDelegate.Frame {
 	@SuppressWarnings("WeakerAccess")
 	WebSocketFrame(final Builder builder) {
 		this.payload = builder.payload;
+		this.payloadBuffer = builder.payloadBuffer;
+		this.payloadOffset = builder.payloadOffset;
+		this.payloadLength = builder.payloadLength;
+		this.pooledBuffer = builder.pooledBuffer;
+		this.payloadBorrowed = builder.payloadBorrowed;
 		this.isFinal = builder.isFinal;
+		this.compressed = builder.compressed;
+		this.opcode = builder.opcode;
 	}
 	 
 	/*
@@ -79,9 +143,53 @@ public final class WebSocketFrame implements WebSocketDelegate.Frame {
 	 */
 
 	/**
+	 * Returns the payload data of this frame.
+	 * <p>
+	 * If the payload has been specified only as a part of a larger array, as a buffer which is
+	 * not backed by an array or as an array which is only borrowed from its owner, like a pooled
+	 * buffer or a buffer of {@link WebSocketOutputStream}, the data are copied into a new array
+	 * when this method is called for the first time. The returned array is thus never reused by
+	 * anyone else. Use {@link #getPayloadBuffer()} to access the payload data without copying.
 	 */
 	@Override @Nonnull public byte[] getPayload() {
-		return payload;
+		if (payload != null && !payloadBorrowed && payloadOffset == 0 && payloadLength == payload.length) {
+			return payload;
+		}
+		if (payloadCopy == null) {
+			if (payload == null) {
+				final byte[] copy = new byte[payloadLength];
+				payloadBuffer.duplicate().get(copy);
+				this.payloadCopy = copy;
+			} else {
+				this.payloadCopy = Arrays.copyOfRange(payload, payloadOffset, payloadOffset + payloadLength);
+			}
+		}
+		return payloadCopy;
+	}
+
+	/**
+	 * Returns a buffer view of the payload data of this frame. The returned buffer is backed by
+	 * the payload array or buffer of this frame, so no data are copied. Each call returns a new
+	 * view with independent position and limit.
+	 */
+	@Override @Nonnull public ByteBuffer getPayloadBuffer() {
+		return payload == null ? payloadBuffer.duplicate() : ByteBuffer.wrap(payload, payloadOffset, payloadLength).slice();
+	}
+
+	/**
+	 * Returns the pooled buffer which owns the payload array of this frame.
+	 * <p>
+	 * A party that wants to keep the payload data of this frame beyond the scope in which they are
+	 * valid, that is beyond {@link WebSocketDelegate#sendFrame(WebSocketDelegate.Frame)} for outgoing
+	 * frames, may {@link BufferPool.Buffer#retain() retain} this buffer instead of copying the data
+	 * and release it once it is done with them.
+	 *
+	 * @return The pooled buffer or {@code null} if the payload is not backed by a pooled buffer.
+	 *
+	 * @see Builder#payload(BufferPool.Buffer, int, int)
+	 */
+	@Nullable public BufferPool.Buffer getPooledBuffer() {
+		return pooledBuffer;
 	}
 
 	/**
@@ -90,6 +198,18 @@ public final class WebSocketFrame implements WebSocketDelegate.Frame {
 		return isFinal;
 	}
 
+	/**
+	 */
+	@Override public boolean isCompressed() {
+		return compressed;
+	}
+
+	/**
+	 */
+	@Override public int getOpcode() {
+		return opcode;
+	}
+
 	/*
 	 * Inner classes ===============================================================================
 	 */
@@ -101,7 +221,8 @@ public final class WebSocketFrame implements WebSocketDelegate.Frame {
 	 * Parameters specified below are required in order to create a new instance of {@link WebSocketFrame}
 	 * via {@link Builder#build()} successfully.
 	 * <ul>
-	 * <li>{@link #payload(byte[])}</li>
+	 * <li>{@link #payload(byte[])}, {@link #payload(byte[], int, int)}, {@link #payload(ByteBuffer)},
+	 * {@link #payload(ByteBuffer, int, int)} or {@link #payload(BufferPool.Buffer, int, int)}</li>
 	 * </ul>
 	 *
 	 * @author Martin Albedinsky
@@ -114,11 +235,46 @@ public final class WebSocketFrame implements WebSocketDelegate.Frame {
 		 */
 		byte[] payload;
 
+		/**
+		 * See {@link WebSocketFrame#payloadBuffer}.
+		 */
+		ByteBuffer payloadBuffer;
+
+		/**
+		 * See {@link WebSocketFrame#payloadOffset}.
+		 */
+		int payloadOffset;
+
+		/**
+		 * See {@link WebSocketFrame#payloadLength}.
+		 */
+		int payloadLength;
+
+		/**
+		 * See {@link WebSocketFrame#pooledBuffer}.
+		 */
+		BufferPool.Buffer pooledBuffer;
+
+		/**
+		 * See {@link WebSocketFrame#payloadBorrowed}.
+		 */
+		boolean payloadBorrowed;
+
 		/**
 		 * See {@link WebSocketFrame#isFinal}.
 		 */
 		boolean isFinal = true;
 
+		/**
+		 * See {@link WebSocketFrame#compressed}.
+		 */
+		boolean compressed;
+
+		/**
+		 * See {@link WebSocketFrame#opcode}.
+		 */
+		int opcode = OPCODE_BINARY;
+
 		/**
 		 * Specifies a payload data for the new frame.
 		 *
@@ -128,7 +284,117 @@ public final class WebSocketFrame implements WebSocketDelegate.Frame {
 		 * @see WebSocketFrame#getPayload()
 		 */
 		public Builder payload(@Nonnull final byte[] payload) {
+			return payload(payload, 0, payload.length);
+		}
+
+		/**
+		 * Specifies a payload data for the new frame as a part of the given array. The array is
+		 * not copied, so the frame will be backed by it.
+		 *
+		 * @param payload The array containing the desired payload data.
+		 * @param offset  Offset in the array at which the payload data start.
+		 * @param length  Length of the payload data.
+		 * @return This builder to allow methods chaining.
+		 * @throws IndexOutOfBoundsException If the offset and length do not specify a valid range
+		 *                                   within the given array.
+		 *
+		 * @see WebSocketFrame#getPayloadBuffer()
+		 */
+		public Builder payload(@Nonnull final byte[] payload, final int offset, final int length) {
+			if (offset < 0 || length < 0 || length > payload.length - offset) {
+				throw new IndexOutOfBoundsException();
+			}
 			this.payload = payload;
+			this.payloadBuffer = null;
+			this.payloadOffset = offset;
+			this.payloadLength = length;
+			this.pooledBuffer = null;
+			this.payloadBorrowed = false;
+			return this;
+		}
+
+		/**
+		 * Specifies a payload data for the new frame as a part of the given pooled buffer. The
+		 * buffer's array is not copied and no reference to the buffer is taken by the builder or
+		 * the frame, so the caller remains responsible for releasing the buffer once the frame
+		 * has been delivered.
+		 * <p>
+		 * Listeners that need to keep the payload data of such frame retain the buffer, so it is
+		 * returned back into its pool only after all of them are done with the data.
+		 *
+		 * @param buffer The pooled buffer containing the desired payload data.
+		 * @param offset Offset in the buffer's array at which the payload data start.
+		 * @param length Length of the payload data.
+		 * @return This builder to allow methods chaining.
+		 * @throws IndexOutOfBoundsException If the offset and length do not specify a valid range
+		 *                                   within the given buffer.
+		 *
+		 * @see WebSocketFrame#getPooledBuffer()
+		 */
+		public Builder payload(@Nonnull final BufferPool.Buffer buffer, final int offset, final int length) {
+			payload(buffer.array(), offset, length);
+			this.pooledBuffer = buffer;
+			this.payloadBorrowed = true;
+			return this;
+		}
+
+		/**
+		 * Marks the payload array specified for the new frame as borrowed, that is the array is
+		 * reused by its owner once the frame has been delivered, so {@link WebSocketFrame#getPayload()}
+		 * must always return a copy of it.
+		 *
+		 * @return This builder to allow methods chaining.
+		 */
+		Builder payloadBorrowed() {
+			this.payloadBorrowed = true;
+			return this;
+		}
+
+		/**
+		 * Specifies a payload data for the new frame as the remaining data of the given buffer,
+		 * that is data between its position and limit.
+		 *
+		 * @param payload The buffer containing the desired payload data.
+		 * @return This builder to allow methods chaining.
+		 *
+		 * @see #payload(ByteBuffer, int, int)
+		 */
+		public Builder payload(@Nonnull final ByteBuffer payload) {
+			return payload(payload, payload.position(), payload.remaining());
+		}
+
+		/**
+		 * Specifies a payload data for the new frame as a part of the given buffer, which may be
+		 * also a direct buffer. The buffer's data are not copied, so the frame will be backed by
+		 * them. Position and limit of the given buffer are not changed.
+		 * <p>
+		 * Buffers which are backed by an accessible array are treated the same way as arrays
+		 * specified via {@link #payload(byte[], int, int)}.
+		 *
+		 * @param payload The buffer containing the desired payload data.
+		 * @param offset  Absolute index in the buffer at which the payload data start.
+		 * @param length  Length of the payload data.
+		 * @return This builder to allow methods chaining.
+		 * @throws IndexOutOfBoundsException If the offset and length do not specify a valid range
+		 *                                   within the given buffer's capacity.
+		 *
+		 * @see WebSocketFrame#getPayloadBuffer()
+		 */
+		public Builder payload(@Nonnull final ByteBuffer payload, final int offset, final int length) {
+			if (offset < 0 || length < 0 || length > payload.capacity() - offset) {
+				throw new IndexOutOfBoundsException();
+			}
+			if (payload.hasArray()) {
+				return payload(payload.array(), payload.arrayOffset() + offset, length);
+			}
+			final ByteBuffer buffer = payload.duplicate();
+			buffer.limit(offset + length).position(offset);
+			this.payload = null;
+			this.payloadBuffer = buffer.slice();
+			this.payloadOffset = 0;
+			this.payloadLength = length;
+			this.pooledBuffer = null;
+			this.payloadBorrowed = false;
 			return this;
 		}
 
@@ -148,16 +414,66 @@ public final class WebSocketFrame implements WebSocketDelegate.Frame {
 			return this;
 		}
 
+		/**
+		 * Specifies a boolean flag indicating whether payload of the message starting with the new
+		 * frame is compressed.
+		 * <p>
+		 * Default value: {@code false}
+		 *
+		 * @param compressed {@code True} if the message payload is compressed, {@code false}
+		 *                   otherwise.
+		 * @return This builder to allow methods chaining.
+		 *
+		 * @see WebSocketFrame#isCompressed()
+		 * @since 1.1
+		 */
+		public Builder compressed(final boolean compressed) {
+			this.compressed = compressed;
+			return this;
+		}
+
+		/**
+		 * Specifies an opcode for the new frame.
+		 * <p>
+		 * Default value: {@link #OPCODE_BINARY}
+		 *
+		 * @param opcode One of opcodes defined by {@link WebSocketDelegate.Frame}.
+		 * @return This builder to allow methods chaining.
+		 * @throws IllegalArgumentException If the opcode is not a valid non-reserved opcode.
+		 *
+		 * @see WebSocketFrame#getOpcode()
+		 * @since 1.1
+		 */
+		public Builder opcode(final int opcode) {
+			switch (opcode) {
+				case OPCODE_CONTINUATION:
+				case OPCODE_TEXT:
+				case OPCODE_BINARY:
+				case OPCODE_CLOSE:
+				case OPCODE_PING:
+				case OPCODE_PONG:
+					this.opcode = opcode;
+					return this;
+				default:
+					throw new IllegalArgumentException("Invalid opcode(" + opcode + ").");
+			}
+		}
+
 		/**
 		 * Builds a new instance of WebSocketFrame with the data specified for this builder.
 		 *
 		 * @return WebSocketFrame instance ready to be delivered.
-		 * @throws IllegalArgumentException If some of the required parameters is missing.
+		 * @throws IllegalArgumentException If some of the required parameters is missing or if a
+		 *                                  control frame is not final, is compressed or has payload
+		 *                                  longer than 125 bytes.
 		 */
 		@Nonnull public WebSocketFrame build() {
-			if (payload == null) {
+			if (payload == null && payloadBuffer == null) {
 				throw new IllegalArgumentException("No payload specified.");
 			}
+			if ((opcode & 0x8) != 0 && (!isFinal || compressed || payloadLength > MAX_CONTROL_PAYLOAD_LENGTH)) {
+				throw new IllegalArgumentException("Control frame must be final, uncompressed and with at most " + MAX_CONTROL_PAYLOAD_LENGTH + " bytes of payload.");
+			}
 			return new WebSocketFrame(this);
 		}
 	}
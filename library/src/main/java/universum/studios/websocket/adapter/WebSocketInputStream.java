@@ -18,19 +18,33 @@
  */
 package universum.studios.websocket.adapter;
 
-import java.io.ByteArrayInputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Queue;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * An {@link InputStream} implementation used by {@link WebSocketAdapter} as its input stream.
+ * <p>
+ * If a {@link BufferPool} is specified via {@link #setBufferPool(BufferPool)}, payloads of received
+ * frames backed by pooled buffers are retained instead of being copied and payloads of fragmented
+ * messages are joined into pooled buffers. Each such buffer is released back into its pool as soon
+ * as the message has been read or discarded.
+ * <p>
+ * Besides the byte oriented read methods, whole messages may be taken from this stream via
+ * {@link #receiveMessage()} and {@link #pollMessage()}. Both approaches share the same queue of
+ * received messages, so each message is delivered only once regardless of how it is read.
  *
  * @author Martin Albedinsky
  * @since 1.0
@@ -50,9 +64,19 @@ final class WebSocketInputStream extends InputStream implements WebSocketDelegat
 	private static final String TAG = "WebSocketInputStream";
 
 	/**
-	 * Initial size for queue storing received data in buckets, that is complete payload per frame.
+	 * Initial capacity for queue storing received data in buckets, that is complete payload per message.
 	 */
-	private static final int DATA_QUEUE_INITIAL_SIZE = 5;
+	private static final int DATA_QUEUE_INITIAL_CAPACITY = 8;
+
+	/**
+	 * Default maximum count of messages that may be queued in this stream.
+	 */
+	static final int DEFAULT_MAX_QUEUED_MESSAGES = Integer.MAX_VALUE;
+
+	/**
+	 * Default maximum count of bytes that may be queued in this stream.
+	 */
+	static final int DEFAULT_MAX_QUEUED_BYTES = 8 * 1024 * 1024;
 
 	/*
 	 * Interface ===================================================================================
@@ -83,35 +107,100 @@ final class WebSocketInputStream extends InputStream implements WebSocketDelegat
 	private final WebSocketDelegate delegate;
 
 	/**
-	 * Buffer storing all data from the received frames via {@link #onFrameReceived(WebSocketDelegate.Frame)}
-	 * which were not marked as final frames.
+	 * Accumulator collecting payloads of the received frames via {@link #onFrameReceived(WebSocketDelegate.Frame)}
+	 * until a final frame is received.
 	 *
 	 * @see WebSocketDelegate.Frame#isFinal()
 	 */
-	private byte[] dataBuffer = new byte[0];
+	private final FragmentAccumulator fragments = new FragmentAccumulator();
 
 	/**
-	 * Queue used to store payload data of the received frames which are processed/read one at a time.
+	 * Queue used to store the received messages which are processed/read one at a time.
 	 *
 	 * @see WebSocketDelegate.Frame#getPayload()
 	 */
-	private final Queue<byte[]> dataQueue;
+	private final Deque<IncomingMessage> dataQueue = new ArrayDeque<>(DATA_QUEUE_INITIAL_CAPACITY);
+
+	/**
+	 * Total count of bytes of all messages stored in {@link #dataQueue}.
+	 */
+	private long queuedBytes;
+
+	/**
+	 * Maximum count of messages that may be stored in {@link #dataQueue}.
+	 */
+	private int maxQueuedMessages = DEFAULT_MAX_QUEUED_MESSAGES;
 
 	/**
-	 * Lock used for synchronized operations upon {@link #dataQueue}.
+	 * Maximum count of bytes that may be stored in {@link #dataQueue}.
 	 */
-	private final Object dataLock = new Object();
+	private int maxQueuedBytes = DEFAULT_MAX_QUEUED_BYTES;
 
 	/**
-	 * Internal stream used for reading of received data.
+	 * Policy determining how to handle received messages when {@link #dataQueue} is full.
 	 */
-	private ByteArrayInputStream stream;
+	private WebSocketAdapter.OverflowPolicy overflowPolicy = WebSocketAdapter.OverflowPolicy.BLOCK;
 
 	/**
-	 * Count down latch that is used to lock reading of this stream's data until there are some
-	 * new data to be read.
+	 * Boolean flag indicating whether reading of the delegate has been paused by this stream due
+	 * to full {@link #dataQueue}.
+	 *
+	 * @see WebSocketDelegate#pauseReading()
+	 */
+	private volatile boolean readingPaused;
+
+	/**
+	 * Lock guarding all received data of this stream. An explicit lock is used instead of an object
+	 * monitor so readers and producers blocked upon this stream do not pin virtual threads to their
+	 * carrier threads.
+	 */
+	private final ReentrantLock dataLock = new ReentrantLock();
+
+	/**
+	 * Condition upon which are parked readers waiting for new data.
+	 */
+	private final Condition dataAvailable = dataLock.newCondition();
+
+	/**
+	 * Condition upon which are parked producers waiting for space in {@link #dataQueue}.
 	 */
-	private CountDownLatch countDownLatch;
+	private final Condition spaceAvailable = dataLock.newCondition();
+
+	/**
+	 * Message which is currently being read.
+	 */
+	private IncomingMessage message;
+
+	/**
+	 * Pool from which to acquire buffers for payloads of fragmented messages. May be {@code null}.
+	 */
+	private BufferPool bufferPool;
+
+	/**
+	 * Callback to be invoked whenever this stream becomes readable. May be {@code null}.
+	 */
+	private volatile Runnable readableCallback;
+
+	/**
+	 * Metrics into which to record received frames and messages. May be {@code null}.
+	 */
+	private volatile WebSocketMetrics metrics;
+
+	/**
+	 * Count of frames of the message which is currently being received.
+	 */
+	private int messageFragments;
+
+	/**
+	 * Count of readers that are waiting for new data at this time.
+	 */
+	private int waitingReaders;
+
+	/**
+	 * Timeout in milliseconds for which may a reader wait for new data. {@code 0} means infinite
+	 * timeout.
+	 */
+	private int readTimeout;
 
 	/*
 	 * Constructors ================================================================================
@@ -129,7 +218,6 @@ final class WebSocketInputStream extends InputStream implements WebSocketDelegat
 		this.socket = socket;
 		this.delegate = delegate;
 		this.delegate.registerOnIncomingFrameListener(this);
-		this.dataQueue = new LinkedBlockingQueue<>(DATA_QUEUE_INITIAL_SIZE);
 	}
 
 	/*
@@ -137,58 +225,272 @@ final class WebSocketInputStream extends InputStream implements WebSocketDelegat
 	 */
 
 	/**
+	 * Specifies limits for the queue storing received messages that have not been read yet.
+	 * When any of the limits is reached, the received messages are handled according to the
+	 * current overflow policy. A single message is always accepted when the queue is empty,
+	 * even if it exceeds the bytes limit.
+	 *
+	 * @param maxMessages Maximum count of messages that may be queued.
+	 * @param maxBytes    Maximum count of bytes that may be queued.
+	 *
+	 * @see #setOverflowPolicy(WebSocketAdapter.OverflowPolicy)
+	 */
+	void setBufferLimits(final int maxMessages, final int maxBytes) {
+		dataLock.lock();
+		try {
+			this.maxQueuedMessages = maxMessages;
+			this.maxQueuedBytes = maxBytes;
+			this.spaceAvailable.signalAll();
+		} finally {
+			dataLock.unlock();
+		}
+	}
+
+	/**
+	 * Specifies a policy determining how to handle received messages when the queue storing them
+	 * is full.
+	 *
+	 * @param policy The desired policy.
+	 *
+	 * @see #setBufferLimits(int, int)
+	 */
+	void setOverflowPolicy(@Nonnull final WebSocketAdapter.OverflowPolicy policy) {
+		dataLock.lock();
+		try {
+			this.overflowPolicy = policy;
+			this.spaceAvailable.signalAll();
+		} finally {
+			dataLock.unlock();
+		}
+	}
+
+	/**
+	 * Specifies a timeout for which may a reader be blocked waiting for new data. If the timeout
+	 * expires, the read method throws {@link SocketTimeoutException}, but this stream remains
+	 * valid.
+	 *
+	 * @param timeout The desired timeout in milliseconds. {@code 0} is interpreted as infinite
+	 *                timeout.
+	 */
+	void setReadTimeout(final int timeout) {
+		dataLock.lock();
+		try {
+			this.readTimeout = timeout;
+		} finally {
+			dataLock.unlock();
+		}
+	}
+
+	/**
+	 * Specifies a pool from which this stream should acquire buffers for payloads of fragmented
+	 * messages.
+	 *
+	 * @param pool The desired pool. May be {@code null} to allocate the buffers.
+	 */
+	void setBufferPool(@Nullable final BufferPool pool) {
+		dataLock.lock();
+		try {
+			this.bufferPool = pool;
+		} finally {
+			dataLock.unlock();
+		}
+	}
+
+	/**
+	 * Specifies a callback to be invoked whenever this stream becomes readable, that is when
+	 * a message is received while there are no data available or when this stream is closed.
+	 * The callback is invoked on the thread delivering frames, without holding any lock.
+	 *
+	 * @param callback The desired callback. May be {@code null} to clear the current one.
+	 *
+	 * @see #readAvailable(ByteBuffer)
+	 */
+	void setReadableCallback(@Nullable final Runnable callback) {
+		this.readableCallback = callback;
+	}
+
+	/**
+	 * Specifies metrics into which should this stream record received frames and messages, depth
+	 * of its queue and time for which readers wait for data.
+	 *
+	 * @param metrics The desired metrics. May be {@code null} to not record any metrics.
+	 */
+	void setMetrics(@Nullable final WebSocketMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Checks whether there are some data available to be read at this time.
+	 * <p>
+	 * This method should be called only while holding the {@link #dataLock}.
+	 *
+	 * @return {@code True} if some data are available, {@code false} otherwise.
+	 */
+	private boolean hasData() {
+		return (message != null && message.remaining() > 0) || !dataQueue.isEmpty();
+	}
+
+	/**
+	 * Control frames are ignored, as they do not carry any message data.
 	 */
 	@Override public void onFrameReceived(@Nonnull final WebSocketDelegate.Frame frame) {
-		if (closed.get()) {
+		if (closed.get() || frame.isControl()) {
 			return;
 		}
-		synchronized (dataLock) {
-			final byte[] payload = frame.getPayload();
-			// Expand the existing buffer and write the payload data into it.
-			final byte[] newBuffer = new byte[dataBuffer.length + payload.length];
-			System.arraycopy(dataBuffer, 0, newBuffer, 0, dataBuffer.length);
-			System.arraycopy(payload, 0, newBuffer, dataBuffer.length, payload.length);
-			this.dataBuffer = newBuffer;
-			if (frame.isFinal() && dataBuffer.length > 0) {
-				addData(dataBuffer);
-				this.dataBuffer = new byte[0];
+		final boolean pauseReading;
+		final boolean becameReadable;
+		dataLock.lock();
+		try {
+			if (closed.get()) {
+				// Checked again while holding the lock so no retained buffer outlives clearData().
+				return;
+			}
+			final int previousSize = fragments.size();
+			this.fragments.append(frame);
+			this.messageFragments++;
+			final WebSocketMetrics metrics = this.metrics;
+			if (metrics != null) {
+				metrics.recordFrameIn(fragments.size() - previousSize);
 			}
+			final boolean hadData = hasData();
+			if (frame.isFinal()) {
+				final boolean hasMessage = !fragments.isEmpty();
+				if (hasMessage && metrics != null) {
+					metrics.recordMessageIn(messageFragments);
+				}
+				this.messageFragments = 0;
+				pauseReading = hasMessage && addData(fragments.drain(bufferPool));
+				if (hasMessage && metrics != null) {
+					metrics.queueDepth.record(dataQueue.size());
+				}
+			} else {
+				pauseReading = false;
+			}
+			becameReadable = !hadData && hasData();
+		} finally {
+			dataLock.unlock();
+		}
+		if (pauseReading) {
+			this.delegate.pauseReading();
+		}
+		if (becameReadable) {
+			notifyReadable();
 		}
 	}
 
 	/**
-	 * Receives the specified <var>bytes</var> to be made available for reading. If there are already
+	 * Receives the specified <var>data</var> to be made available for reading. If there are already
 	 * some data read at this time, the specified data will be queued and made available for reading
 	 * later. If there are no data read at this time the specified data will be made available for
 	 * reading instantly.
+	 * <p>
+	 * If the queue is full, the data are handled according to the current overflow policy.
+	 * <p>
+	 * This method should be called only while holding the {@link #dataLock}.
 	 *
-	 * @param bytes The bytes to be received and made available for reading via this stream.
+	 * @param data The message to be received and made available for reading via this stream.
+	 * @return {@code True} if reading of the delegate should be paused, {@code false} otherwise.
 	 */
-	private void addData(byte[] bytes) {
-		if (stream == null) {
-			this.stream = new ByteArrayInputStream(bytes);
-			if (countDownLatch != null && countDownLatch.getCount() > 0) {
-				this.countDownLatch.countDown();
-			}
-			this.countDownLatch = null;
+	private boolean addData(final IncomingMessage data) {
+		switch (overflowPolicy) {
+			case BLOCK:
+				while (isQueueFullFor(data.length) && !closed.get()) {
+					try {
+						this.spaceAvailable.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						data.release();
+						return false;
+					}
+				}
+				if (closed.get()) {
+					data.release();
+					return false;
+				}
+				break;
+			case DROP_OLDEST:
+				while (isQueueFullFor(data.length)) {
+					final IncomingMessage dropped = dataQueue.removeFirst();
+					this.queuedBytes -= dropped.length;
+					dropped.release();
+				}
+				break;
+			case PAUSE:
+			default:
+				break;
+		}
+		if (message == null && dataQueue.isEmpty()) {
+			this.message = data;
 		} else {
-			dataQueue.add(bytes);
+			this.dataQueue.addLast(data);
+			this.queuedBytes += data.length;
+		}
+		if (waitingReaders > 0) {
+			this.dataAvailable.signalAll();
+		}
+		if (overflowPolicy == WebSocketAdapter.OverflowPolicy.PAUSE && !readingPaused && isQueueFullFor(0)) {
+			this.readingPaused = true;
+			return true;
 		}
+		return false;
 	}
 
 	/**
+	 * Checks whether the queue storing received messages is full so it cannot accept a message
+	 * with the specified <var>length</var>.
+	 * <p>
+	 * This method should be called only while holding the {@link #dataLock}.
+	 *
+	 * @param length Length of the message to be queued.
+	 * @return {@code True} if the queue is full, {@code false} otherwise.
 	 */
-	@Override public synchronized int available() throws IOException {
-		assertOpenedOrThrowException();
-		return stream == null ? 0 : stream.available();
+	private boolean isQueueFullFor(final int length) {
+		return !dataQueue.isEmpty() && (dataQueue.size() >= maxQueuedMessages || queuedBytes + length > maxQueuedBytes);
+	}
+
+	/**
+	 * Resumes reading of the delegate if it has been paused by this stream and the queue storing
+	 * received messages has been drained below half of its limits.
+	 */
+	private void resumeReadingIfPossible() {
+		if (!readingPaused) {
+			return;
+		}
+		dataLock.lock();
+		try {
+			if (!readingPaused || dataQueue.size() > maxQueuedMessages / 2 || queuedBytes > maxQueuedBytes / 2) {
+				return;
+			}
+			this.readingPaused = false;
+		} finally {
+			dataLock.unlock();
+		}
+		this.delegate.resumeReading();
 	}
 
+	/**
+	 */
+	@Override public int available() throws IOException {
+		assertOpenedOrThrowException();
+		dataLock.lock();
+		try {
+			final long available = (message == null ? 0 : message.remaining()) + queuedBytes;
+			return (int) Math.min(available, Integer.MAX_VALUE);
+		} finally {
+			dataLock.unlock();
+		}
+	}
 
 	/**
 	 */
-	@Override public synchronized long skip(final long n) throws IOException {
+	@Override public long skip(final long n) throws IOException {
 		assertOpenedOrThrowException();
-		return stream == null ? 0 : stream.skip(n);
+		dataLock.lock();
+		try {
+			return advanceMessage() ? message.skip(n) : 0;
+		} finally {
+			dataLock.unlock();
+		}
 	}
 
 	/**
@@ -199,58 +501,255 @@ final class WebSocketInputStream extends InputStream implements WebSocketDelegat
 
 	/**
 	 */
-	@Override public synchronized void mark(final int i) {
-		if (stream != null) stream.mark(i);
+	@Override public void mark(final int i) {
+		dataLock.lock();
+		try {
+			if (advanceMessage()) message.mark();
+		} finally {
+			dataLock.unlock();
+		}
 	}
 
 	/**
 	 */
-	@Override public synchronized void reset() throws IOException {
-		if (stream != null) stream.reset();
+	@Override public void reset() throws IOException {
+		dataLock.lock();
+		try {
+			if (message != null) message.reset();
+		} finally {
+			dataLock.unlock();
+		}
 	}
 
 	/**
 	 */
-	@Override public synchronized int read() throws IOException {
+	@Override public int read() throws IOException {
 		assertOpenedOrThrowException();
-		if (stream != null) {
-			final int b = stream.read();
-			if (b == -1) {
-				this.stream = null;
+		final int b;
+		dataLock.lock();
+		try {
+			awaitDataOrThrowException();
+			b = message.read();
+		} finally {
+			dataLock.unlock();
+		}
+		resumeReadingIfPossible();
+		return b;
+	}
+
+	/**
+	 * Reads as many bytes as are available at this time, up to the requested <var>length</var>,
+	 * crossing boundaries of the received messages if necessary. This method blocks only if there
+	 * are no data available at all.
+	 */
+	@Override public int read(@Nonnull final byte[] buffer, final int offset, final int length) throws IOException {
+		assertOpenedOrThrowException();
+		if (offset < 0 || length < 0 || length > buffer.length - offset) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (length == 0) {
+			return 0;
+		}
+		int count = 0;
+		dataLock.lock();
+		try {
+			awaitDataOrThrowException();
+			while (count < length && advanceMessage()) {
+				count += message.read(buffer, offset + count, length - count);
 			}
-			return b;
+		} finally {
+			dataLock.unlock();
 		}
-		// No more data in the stream, check if we have some queued data.
-		synchronized (dataLock) {
-			if (dataQueue.size() > 0) {
-				this.stream = new ByteArrayInputStream(dataQueue.poll());
-			} else {
-				this.stream = null;
-				this.countDownLatch = new CountDownLatch(1);
+		resumeReadingIfPossible();
+		return count;
+	}
+
+	/**
+	 * Reads as many bytes as are available at this time into the remaining space of the given
+	 * <var>buffer</var>, crossing boundaries of the received messages if necessary. Unlike the
+	 * read methods of this stream, this method never blocks.
+	 *
+	 * @param buffer The buffer into which to read the data.
+	 * @return Count of bytes read, possibly {@code 0} if there are no data available at this time,
+	 * or {@code -1} if this stream is closed and there are no more data to be read.
+	 */
+	int readAvailable(@Nonnull final ByteBuffer buffer) {
+		int count = 0;
+		dataLock.lock();
+		try {
+			if (!advanceMessage()) {
+				return closed.get() ? -1 : 0;
 			}
+			do {
+				count += message.read(buffer);
+			} while (buffer.hasRemaining() && advanceMessage());
+		} finally {
+			dataLock.unlock();
 		}
-		if (stream == null) {
-			// We do not have any data to read from, wait for the new one.
+		resumeReadingIfPossible();
+		return count;
+	}
+
+	/**
+	 * Takes the next received message from this stream, blocking until a message is received.
+	 * If the current message has been already partly read via the read methods, only its remaining
+	 * data are returned.
+	 * <p>
+	 * The returned buffer wraps the received payload without copying, unless the payload is held
+	 * in a pooled buffer, in which case it is copied so the pooled buffer may be released.
+	 *
+	 * @return Buffer with data of the received message, positioned at its start.
+	 * @throws SocketTimeoutException If the read timeout expires while waiting.
+	 * @throws InterruptedIOException If the current thread is interrupted while waiting.
+	 * @throws IOException If this stream is closed or destroyed.
+	 *
+	 * @see #pollMessage()
+	 */
+	@Nonnull ByteBuffer receiveMessage() throws IOException {
+		assertOpenedOrThrowException();
+		final IncomingMessage data;
+		dataLock.lock();
+		try {
+			awaitDataOrThrowException();
+			data = takeMessage();
+		} finally {
+			dataLock.unlock();
+		}
+		resumeReadingIfPossible();
+		return data.detach();
+	}
+
+	/**
+	 * Takes the next received message from this stream if there is any. Unlike {@link #receiveMessage()},
+	 * this method never blocks.
+	 *
+	 * @return Buffer with data of the received message, positioned at its start, or {@code null}
+	 * if there is no message available at this time.
+	 * @throws IOException If this stream is closed or destroyed.
+	 */
+	@Nullable ByteBuffer pollMessage() throws IOException {
+		assertOpenedOrThrowException();
+		final IncomingMessage data;
+		dataLock.lock();
+		try {
+			if (!advanceMessage()) {
+				return null;
+			}
+			data = takeMessage();
+		} finally {
+			dataLock.unlock();
+		}
+		resumeReadingIfPossible();
+		return data.detach();
+	}
+
+	/**
+	 * Takes the current message out of this stream so it is no longer available for reading.
+	 * <p>
+	 * This method should be called only while holding the {@link #dataLock} and only after
+	 * {@link #advanceMessage()} returned {@code true}.
+	 *
+	 * @return The current message.
+	 */
+	private IncomingMessage takeMessage() {
+		final IncomingMessage data = message;
+		this.message = null;
+		return data;
+	}
+
+	/**
+	 * Invokes the current readable callback, if any.
+	 */
+	private void notifyReadable() {
+		final Runnable callback = readableCallback;
+		if (callback != null) {
+			callback.run();
+		}
+	}
+
+	/**
+	 * Ensures that the current message has some data to be read. If the current message has been
+	 * already fully read it is released and replaced by the next queued message, if any.
+	 * <p>
+	 * This method should be called only while holding the {@link #dataLock}.
+	 *
+	 * @return {@code True} if there are some data available in the current message, {@code false}
+	 * if there are no data to be read at this time.
+	 */
+	private boolean advanceMessage() {
+		if (message != null) {
+			if (message.remaining() > 0) {
+				return true;
+			}
+			this.message.release();
+		}
+		final IncomingMessage data = dataQueue.pollFirst();
+		this.message = data;
+		if (data == null) {
+			return false;
+		}
+		this.queuedBytes -= data.length;
+		if (overflowPolicy == WebSocketAdapter.OverflowPolicy.BLOCK) {
+			// Wake up the producer if it is waiting for space in the queue.
+			this.spaceAvailable.signalAll();
+		}
+		return true;
+	}
+
+	/**
+	 * Blocks the current thread until there are some data available to be read. The check for
+	 * available data and parking of the thread are both performed while holding the {@link #dataLock}
+	 * so no data delivered via {@link #onFrameReceived(WebSocketDelegate.Frame)} may be missed.
+	 * <p>
+	 * This method should be called only while holding the {@link #dataLock}.
+	 *
+	 * @throws SocketTimeoutException If the read timeout expires while waiting.
+	 * @throws InterruptedIOException If the current thread is interrupted while waiting.
+	 * @throws IOException If this stream is closed or destroyed while waiting.
+	 */
+	private void awaitDataOrThrowException() throws IOException {
+		final long deadline = readTimeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(readTimeout) : 0;
+		final WebSocketMetrics metrics = this.metrics;
+		boolean waited = false;
+		long waitStartTime = 0;
+		while (!advanceMessage()) {
+			if (closed.get()) {
+				throw new IOException("Unexpected end of the stream.");
+			}
+			final long remainingNanos = deadline == 0 ? 0 : deadline - System.nanoTime();
+			if (deadline != 0 && remainingNanos <= 0) {
+				throw new SocketTimeoutException("Read timed out.");
+			}
+			if (metrics != null && !waited) {
+				waited = true;
+				waitStartTime = System.nanoTime();
+			}
+			this.waitingReaders++;
 			try {
-				this.countDownLatch.await();
+				if (deadline == 0) {
+					this.dataAvailable.await();
+				} else {
+					this.dataAvailable.awaitNanos(remainingNanos);
+				}
 			} catch (InterruptedException e) {
-				e.printStackTrace();
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for data.");
+			} finally {
+				this.waitingReaders--;
 			}
 		}
-		final int b = stream == null ? -1 : stream.read();
-		if (b == -1) {
-			throw new IOException("Unexpected end of the stream.");
+		if (waited) {
+			metrics.readerWaitNanos.record(System.nanoTime() - waitStartTime);
 		}
-		return b;
 	}
 
 	/**
 	 */
-	@Override public synchronized void close() throws IOException {
-		if (!closed.get()) {
+	@Override public void close() throws IOException {
+		if (closed.compareAndSet(false, true)) {
 			this.socket.close();
-			this.stream = null;
-			this.closed.set(true);
+			clearData();
+			notifyReadable();
 		}
 	}
 
@@ -263,17 +762,54 @@ final class WebSocketInputStream extends InputStream implements WebSocketDelegat
 		if (closed.get()) throw new IOException(TAG + " has been already closed.");
 	}
 
+	/**
+	 * Discards data of the message which is currently being received, if any, as the rest of the
+	 * message will never be received. Called whenever the connection is lost while the stream
+	 * remains usable for the next connection.
+	 */
+	void discardPartialMessage() {
+		dataLock.lock();
+		try {
+			this.fragments.clear();
+			this.messageFragments = 0;
+		} finally {
+			dataLock.unlock();
+		}
+	}
+
 	/**
 	 * Destroys this stream. Destroying the stream also marks it as closed.
 	 */
 	void destroy() {
-		this.stream = null;
-		if (countDownLatch != null) {
-			this.countDownLatch.countDown();
-			this.countDownLatch = null;
-		}
-		this.delegate.unregisterOnIncomingFrameListener(this);
 		this.closed.set(true);
+		clearData();
+		this.delegate.unregisterOnIncomingFrameListener(this);
+		notifyReadable();
+	}
+
+	/**
+	 * Clears all received data that have not been read yet, releasing their pooled buffers, and
+	 * wakes up all readers and producers waiting upon this stream.
+	 */
+	private void clearData() {
+		dataLock.lock();
+		try {
+			if (message != null) {
+				this.message.release();
+				this.message = null;
+			}
+			this.fragments.clear();
+			this.messageFragments = 0;
+			IncomingMessage data;
+			while ((data = dataQueue.pollFirst()) != null) {
+				data.release();
+			}
+			this.queuedBytes = 0;
+			this.dataAvailable.signalAll();
+			this.spaceAvailable.signalAll();
+		} finally {
+			dataLock.unlock();
+		}
 	}
 
 	/*
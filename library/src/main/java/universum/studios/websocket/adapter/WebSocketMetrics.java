@@ -0,0 +1,543 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Collects metrics of one or more {@link WebSocketAdapter WebSocketAdapters}, like counts of frames
+ * and bytes sent and received, count of fragments per message, depth of the incoming queue, time
+ * spent by readers waiting for data, latency of flushes and time spent by dispatching of received
+ * frames to listeners.
+ * <p>
+ * All metrics are recorded via striped {@link LongAdder LongAdders}, so recording is cheap even
+ * under contention and does not allocate any objects, which makes the metrics suitable to be
+ * enabled in production. Metrics may be specified for an adapter via {@link WebSocketAdapter#setMetrics(WebSocketMetrics)}
+ * and for a delegate via {@link BaseWebSocketDelegate#setMetrics(WebSocketMetrics)}. An instance
+ * may be shared by multiple adapters in order to collect aggregated metrics, or each adapter may
+ * use its own instance in order to identify slow connections.
+ * <p>
+ * Recorded values may be exported at any time via {@link #exportTo(Exporter)}.
+ *
+ * @author Martin Albedinsky
+ * @since 1.1
+ */
+public final class WebSocketMetrics {
+
+	/*
+	 * Constants ===================================================================================
+	 */
+
+	/**
+	 * Log TAG.
+	 */
+	// private static final String TAG = "WebSocketMetrics";
+
+	/**
+	 * Name of the counter of received frames.
+	 */
+	public static final String FRAMES_IN = "frames.in";
+
+	/**
+	 * Name of the counter of sent frames.
+	 */
+	public static final String FRAMES_OUT = "frames.out";
+
+	/**
+	 * Name of the counter of received payload bytes.
+	 */
+	public static final String BYTES_IN = "bytes.in";
+
+	/**
+	 * Name of the counter of sent payload bytes.
+	 */
+	public static final String BYTES_OUT = "bytes.out";
+
+	/**
+	 * Name of the counter of received messages.
+	 */
+	public static final String MESSAGES_IN = "messages.in";
+
+	/**
+	 * Name of the counter of sent messages.
+	 */
+	public static final String MESSAGES_OUT = "messages.out";
+
+	/**
+	 * Name of the histogram of count of frames per received message.
+	 */
+	public static final String FRAGMENTS_PER_MESSAGE = "fragments.per.message";
+
+	/**
+	 * Name of the histogram of count of messages queued in the input stream, recorded whenever
+	 * a message is queued.
+	 */
+	public static final String QUEUE_DEPTH = "queue.depth";
+
+	/**
+	 * Name of the histogram of time in nanoseconds for which readers waited for data.
+	 */
+	public static final String READER_WAIT_NANOS = "reader.wait.nanos";
+
+	/**
+	 * Name of the histogram of time in nanoseconds spent by sending of flushed messages.
+	 */
+	public static final String FLUSH_LATENCY_NANOS = "flush.latency.nanos";
+
+	/**
+	 * Name of the histogram of time in nanoseconds spent by a listener processing a received frame.
+	 */
+	public static final String DISPATCH_NANOS = "dispatch.nanos";
+
+	/**
+	 * Name of the histogram of round trip times in nanoseconds measured by keep alive pings.
+	 */
+	public static final String ROUND_TRIP_NANOS = "round.trip.nanos";
+
+	/*
+	 * Interface ===================================================================================
+	 */
+
+	/**
+	 * Interface for exporters to which may be exported values of all metrics via {@link #exportTo(Exporter)}.
+	 * Exporters may for example publish the values into a monitoring system.
+	 *
+	 * @author Martin Albedinsky
+	 * @since 1.1
+	 */
+	public interface Exporter {
+
+		/**
+		 * Exports the current value of a counter with the specified <var>name</var>.
+		 *
+		 * @param name  Name of the counter, one of the name constants of {@link WebSocketMetrics}.
+		 * @param value Current value of the counter.
+		 */
+		void exportCounter(@Nonnull String name, long value);
+
+		/**
+		 * Exports the specified <var>histogram</var> with the specified <var>name</var>.
+		 *
+		 * @param name      Name of the histogram, one of the name constants of {@link WebSocketMetrics}.
+		 * @param histogram The histogram of which values to export. Its values may change while
+		 *                  they are being exported.
+		 */
+		void exportHistogram(@Nonnull String name, @Nonnull Histogram histogram);
+	}
+
+	/*
+	 * Static members ==============================================================================
+	 */
+
+	/*
+	 * Members =====================================================================================
+	 */
+
+	/**
+	 * Counter of received frames.
+	 */
+	final LongAdder framesIn = new LongAdder();
+
+	/**
+	 * Counter of sent frames.
+	 */
+	final LongAdder framesOut = new LongAdder();
+
+	/**
+	 * Counter of received payload bytes.
+	 */
+	final LongAdder bytesIn = new LongAdder();
+
+	/**
+	 * Counter of sent payload bytes.
+	 */
+	final LongAdder bytesOut = new LongAdder();
+
+	/**
+	 * Counter of received messages.
+	 */
+	final LongAdder messagesIn = new LongAdder();
+
+	/**
+	 * Counter of sent messages.
+	 */
+	final LongAdder messagesOut = new LongAdder();
+
+	/**
+	 * Histogram of count of frames per received message.
+	 */
+	final Histogram fragmentsPerMessage = new Histogram();
+
+	/**
+	 * Histogram of count of messages queued in the input stream.
+	 */
+	final Histogram queueDepth = new Histogram();
+
+	/**
+	 * Histogram of time in nanoseconds for which readers waited for data.
+	 */
+	final Histogram readerWaitNanos = new Histogram();
+
+	/**
+	 * Histogram of time in nanoseconds spent by sending of flushed messages.
+	 */
+	final Histogram flushLatencyNanos = new Histogram();
+
+	/**
+	 * Histogram of time in nanoseconds spent by listeners processing received frames.
+	 */
+	final Histogram dispatchNanos = new Histogram();
+
+	/**
+	 * Histogram of round trip times in nanoseconds measured by keep alive pings.
+	 */
+	final Histogram roundTripNanos = new Histogram();
+
+	/*
+	 * Constructors ================================================================================
+	 */
+
+	/*
+	 * Methods =====================================================================================
+	 */
+
+	/**
+	 * Records a received frame with the specified count of payload bytes.
+	 *
+	 * @param length Length of the frame's payload.
+	 */
+	void recordFrameIn(final int length) {
+		this.framesIn.increment();
+		this.bytesIn.add(length);
+	}
+
+	/**
+	 * Records a sent frame with the specified count of payload bytes.
+	 *
+	 * @param length  Length of the frame's payload.
+	 * @param isFinal {@code True} if the frame is the final frame of a message, {@code false}
+	 *                otherwise.
+	 */
+	void recordFrameOut(final int length, final boolean isFinal) {
+		this.framesOut.increment();
+		this.bytesOut.add(length);
+		if (isFinal) {
+			this.messagesOut.increment();
+		}
+	}
+
+	/**
+	 * Records a received message which consisted of the specified count of frames.
+	 *
+	 * @param fragments Count of frames of the message.
+	 */
+	void recordMessageIn(final int fragments) {
+		this.messagesIn.increment();
+		this.fragmentsPerMessage.record(fragments);
+	}
+
+	/**
+	 * Returns the count of received frames.
+	 *
+	 * @return Received frames count.
+	 */
+	public long getFramesIn() {
+		return framesIn.sum();
+	}
+
+	/**
+	 * Returns the count of sent frames.
+	 *
+	 * @return Sent frames count.
+	 */
+	public long getFramesOut() {
+		return framesOut.sum();
+	}
+
+	/**
+	 * Returns the count of received payload bytes.
+	 *
+	 * @return Received bytes count.
+	 */
+	public long getBytesIn() {
+		return bytesIn.sum();
+	}
+
+	/**
+	 * Returns the count of sent payload bytes.
+	 *
+	 * @return Sent bytes count.
+	 */
+	public long getBytesOut() {
+		return bytesOut.sum();
+	}
+
+	/**
+	 * Returns the count of received messages.
+	 *
+	 * @return Received messages count.
+	 */
+	public long getMessagesIn() {
+		return messagesIn.sum();
+	}
+
+	/**
+	 * Returns the count of sent messages.
+	 *
+	 * @return Sent messages count.
+	 */
+	public long getMessagesOut() {
+		return messagesOut.sum();
+	}
+
+	/**
+	 * Returns the histogram of count of frames per received message.
+	 *
+	 * @return Fragments per message histogram.
+	 */
+	@Nonnull public Histogram getFragmentsPerMessage() {
+		return fragmentsPerMessage;
+	}
+
+	/**
+	 * Returns the histogram of count of messages queued in the input stream.
+	 *
+	 * @return Queue depth histogram.
+	 */
+	@Nonnull public Histogram getQueueDepth() {
+		return queueDepth;
+	}
+
+	/**
+	 * Returns the histogram of time in nanoseconds for which readers waited for data.
+	 *
+	 * @return Reader wait time histogram.
+	 */
+	@Nonnull public Histogram getReaderWaitNanos() {
+		return readerWaitNanos;
+	}
+
+	/**
+	 * Returns the histogram of time in nanoseconds spent by sending of flushed messages.
+	 *
+	 * @return Flush latency histogram.
+	 */
+	@Nonnull public Histogram getFlushLatencyNanos() {
+		return flushLatencyNanos;
+	}
+
+	/**
+	 * Returns the histogram of time in nanoseconds spent by listeners processing received frames.
+	 *
+	 * @return Dispatch time histogram.
+	 */
+	@Nonnull public Histogram getDispatchNanos() {
+		return dispatchNanos;
+	}
+
+	/**
+	 * Returns the histogram of round trip times in nanoseconds measured by keep alive pings.
+	 *
+	 * @return Round trip time histogram.
+	 *
+	 * @see WebSocketAdapter#setKeepAlive(long, long)
+	 */
+	@Nonnull public Histogram getRoundTripNanos() {
+		return roundTripNanos;
+	}
+
+	/**
+	 * Exports values of all metrics to the specified <var>exporter</var>.
+	 *
+	 * @param exporter The exporter to which to export the values.
+	 */
+	public void exportTo(@Nonnull final Exporter exporter) {
+		exporter.exportCounter(FRAMES_IN, getFramesIn());
+		exporter.exportCounter(FRAMES_OUT, getFramesOut());
+		exporter.exportCounter(BYTES_IN, getBytesIn());
+		exporter.exportCounter(BYTES_OUT, getBytesOut());
+		exporter.exportCounter(MESSAGES_IN, getMessagesIn());
+		exporter.exportCounter(MESSAGES_OUT, getMessagesOut());
+		exporter.exportHistogram(FRAGMENTS_PER_MESSAGE, fragmentsPerMessage);
+		exporter.exportHistogram(QUEUE_DEPTH, queueDepth);
+		exporter.exportHistogram(READER_WAIT_NANOS, readerWaitNanos);
+		exporter.exportHistogram(FLUSH_LATENCY_NANOS, flushLatencyNanos);
+		exporter.exportHistogram(DISPATCH_NANOS, dispatchNanos);
+		exporter.exportHistogram(ROUND_TRIP_NANOS, roundTripNanos);
+	}
+
+	/*
+	 * Inner classes ===============================================================================
+	 */
+
+	/**
+	 * A histogram of non-negative values with buckets of exponentially growing size, where each
+	 * bucket covers values between two consecutive powers of two. Percentiles computed from such
+	 * histogram are therefore approximate, with relative error below {@code 2x}, which is enough
+	 * to distinguish slow connections from fast ones at a constant cost of recording.
+	 *
+	 * @author Martin Albedinsky
+	 * @since 1.1
+	 */
+	public static final class Histogram {
+
+		/**
+		 * Count of buckets, one for zero and one for each bit of a positive long value.
+		 */
+		static final int BUCKET_COUNT = 64;
+
+		/**
+		 * Buckets counting recorded values. Bucket at index {@code i > 0} counts values from
+		 * {@code 2^(i-1)} to {@code 2^i - 1}, bucket at index {@code 0} counts zeros.
+		 */
+		private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+
+		/**
+		 * Sum of all recorded values.
+		 */
+		private final LongAdder sum = new LongAdder();
+
+		/**
+		 * Maximum of all recorded values.
+		 */
+		private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+		/**
+		 * Creates a new empty instance of Histogram.
+		 */
+		Histogram() {
+			for (int i = 0; i < buckets.length; i++) {
+				this.buckets[i] = new LongAdder();
+			}
+		}
+
+		/**
+		 * Records the specified <var>value</var> into this histogram. Negative values are recorded
+		 * as zero.
+		 *
+		 * @param value The value to be recorded.
+		 */
+		void record(final long value) {
+			final long recorded = Math.max(0, value);
+			this.buckets[bucketIndex(recorded)].increment();
+			this.sum.add(recorded);
+			this.max.accumulate(recorded);
+		}
+
+		/**
+		 * Returns index of the bucket for the specified <var>value</var>.
+		 *
+		 * @param value The non-negative value.
+		 * @return Index of the bucket.
+		 */
+		private static int bucketIndex(final long value) {
+			return Math.min(BUCKET_COUNT - 1, Long.SIZE - Long.numberOfLeadingZeros(value));
+		}
+
+		/**
+		 * Returns the count of recorded values.
+		 *
+		 * @return Values count.
+		 */
+		public long getCount() {
+			long count = 0;
+			for (final LongAdder bucket : buckets) {
+				count += bucket.sum();
+			}
+			return count;
+		}
+
+		/**
+		 * Returns the sum of recorded values.
+		 *
+		 * @return Values sum.
+		 */
+		public long getSum() {
+			return sum.sum();
+		}
+
+		/**
+		 * Returns the maximum of recorded values.
+		 *
+		 * @return Maximum value or {@code 0} if there are no values recorded.
+		 */
+		public long getMax() {
+			return max.get();
+		}
+
+		/**
+		 * Returns the mean of recorded values.
+		 *
+		 * @return Mean value or {@code 0} if there are no values recorded.
+		 */
+		public double getMean() {
+			final long count = getCount();
+			return count == 0 ? 0 : (double) getSum() / count;
+		}
+
+		/**
+		 * Returns an approximate value at the specified <var>percentile</var> of recorded values,
+		 * that is an upper bound of the bucket in which the percentile falls, but at most the
+		 * maximum recorded value.
+		 *
+		 * @param percentile The desired percentile from range {@code [0.0, 100.0]}.
+		 * @return Approximate value at the percentile or {@code 0} if there are no values recorded.
+		 * @throws IllegalArgumentException If the percentile is out of range.
+		 */
+		public long getPercentile(final double percentile) {
+			if (percentile < 0 || percentile > 100) {
+				throw new IllegalArgumentException("Percentile must be from range [0, 100].");
+			}
+			final long[] counts = new long[BUCKET_COUNT];
+			long total = 0;
+			for (int i = 0; i < BUCKET_COUNT; i++) {
+				counts[i] = buckets[i].sum();
+				total += counts[i];
+			}
+			if (total == 0) {
+				return 0;
+			}
+			final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+			long seen = 0;
+			for (int i = 0; i < BUCKET_COUNT; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					final long upperBound = i == 0 ? 0 : (i == BUCKET_COUNT - 1 ? Long.MAX_VALUE : (1L << i) - 1);
+					return Math.min(upperBound, getMax());
+				}
+			}
+			return getMax();
+		}
+
+		/**
+		 * Returns the count of values recorded into the bucket at the specified <var>index</var>.
+		 * Bucket at index {@code i > 0} counts values from {@code 2^(i-1)} to {@code 2^i - 1},
+		 * bucket at index {@code 0} counts zeros.
+		 *
+		 * @param index Index of the desired bucket from range {@code [0, 63]}.
+		 * @return Count of values in the bucket.
+		 */
+		public long getBucketCount(final int index) {
+			return buckets[index].sum();
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,932 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A multiplexer which allows to use a single {@link WebSocketDelegate} connection for multiple
+ * logical streams, each of them adapted into a standalone {@link WebSocketAdapter} via
+ * {@link #openStream()} or, if opened by the remote side, via {@link #acceptStream()}. Opening of
+ * a stream requires no round trip, so short-lived streams do not pay for a WebSocket handshake.
+ * <p>
+ * Each frame of a logical stream is sent as a single WebSocket message which starts with a compact
+ * header, so frames of different streams may be interleaved freely:
+ * <ul>
+ * <li>
+ * <b>1 byte</b>: type of the frame in the lower bits ({@link #TYPE_DATA}, {@link #TYPE_WINDOW_UPDATE}
+ * or {@link #TYPE_CLOSE}) and {@link #FLAG_FIN} set if a data frame is the final frame of its message,
+ * </li>
+ * <li>
+ * <b>1 to 5 bytes</b>: identifier of the stream encoded as an unsigned variable length integer
+ * (7 bits per byte, least significant group first),
+ * </li>
+ * <li>
+ * <b>remaining bytes</b>: payload of a data frame or increment of the flow control window of a
+ * window update frame, encoded as a variable length integer as well.
+ * </li>
+ * </ul>
+ * Identifiers of streams are split between both sides of the connection by their role specified
+ * via {@link #WebSocketMultiplexer(WebSocketDelegate, int, boolean)}, so both sides may open streams
+ * at the same time without any coordination. The initiator of the connection opens streams with
+ * odd identifiers while the acceptor opens streams with even identifiers. The first data frame
+ * with a not yet used identifier of the remote side opens a new stream, which is then returned by
+ * {@link #acceptStream()}. Data frames for other unknown streams are answered with a close frame.
+ * <p>
+ * Each stream has its own flow control window. The sender may send only as many data bytes as
+ * the receiver has granted, starting with the initial window size, and the receiver grants more
+ * bytes via window update frames once the received data have been buffered by the stream's
+ * adapter. Stream adapters are configured with {@link WebSocketAdapter.OverflowPolicy#PAUSE}
+ * policy and incoming bytes limit equal to the initial window size, so a stream which is not being
+ * read stops granting new bytes instead of blocking delivery of frames for all other streams.
+ * <p>
+ * Close of a stream, by either side, is handled the same way as close of a WebSocket connection,
+ * so received data which have not been read from the stream yet are discarded.
+ * <p>
+ * Frames of all streams are passed to the multiplexed delegate by one thread at a time. Window
+ * update frames are sent by threads which deliver received frames, so a delegate which sends
+ * frames synchronously delays delivery of received frames while a data frame is being sent.
+ *
+ * @author Martin Albedinsky
+ * @since 1.1
+ */
+public final class WebSocketMultiplexer implements Closeable {
+
+	/*
+	 * Constants ===================================================================================
+	 */
+
+	/**
+	 * Log TAG.
+	 */
+	// private static final String TAG = "WebSocketMultiplexer";
+
+	/**
+	 * Default size of the flow control window of each stream.
+	 */
+	public static final int DEFAULT_WINDOW_SIZE = 64 * 1024;
+
+	/**
+	 * Type of a frame carrying data of a stream.
+	 */
+	public static final int TYPE_DATA = 0x00;
+
+	/**
+	 * Type of a frame increasing the flow control window of a stream.
+	 */
+	public static final int TYPE_WINDOW_UPDATE = 0x01;
+
+	/**
+	 * Type of a frame closing a stream.
+	 */
+	public static final int TYPE_CLOSE = 0x02;
+
+	/**
+	 * Flag set for a data frame which is the final frame of a message.
+	 */
+	public static final int FLAG_FIN = 0x80;
+
+	/**
+	 * Mask for the type bits of the first header byte.
+	 */
+	private static final int TYPE_MASK = 0x0f;
+
+	/**
+	 * Maximum count of bytes of an integer encoded with variable length.
+	 */
+	private static final int VARINT_MAX_LENGTH = 5;
+
+	/*
+	 * Interface ===================================================================================
+	 */
+
+	/*
+	 * Static members ==============================================================================
+	 */
+
+	/*
+	 * Members =====================================================================================
+	 */
+
+	/**
+	 * The multiplexed delegate.
+	 */
+	private final WebSocketDelegate delegate;
+
+	/**
+	 * Initial size of the flow control window of each stream.
+	 */
+	private final int initialWindowSize;
+
+	/**
+	 * Map of opened streams mapped to their identifiers.
+	 */
+	private final Map<Integer, Stream> streams = new ConcurrentHashMap<>();
+
+	/**
+	 * Lock guarding allocation of stream identifiers and streams opened by the remote side.
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * Lock guarding connection of the multiplexed delegate, so streams connecting at the same time
+	 * connect it only once. Separate from the {@link #lock}, so streams may be opened and accepted
+	 * while the connection is being established.
+	 */
+	private final ReentrantLock connectLock = new ReentrantLock();
+
+	/**
+	 * Lock held while passing a frame to the multiplexed delegate, so frames of all streams, as
+	 * well as window update and close frames sent from threads receiving data, are passed to the
+	 * delegate by one thread at a time, see {@link WebSocketDelegate#sendFrame(WebSocketDelegate.Frame)}.
+	 */
+	private final ReentrantLock sendLock = new ReentrantLock();
+
+	/**
+	 * Condition signaled whenever a stream opened by the remote side is added into {@link #acceptedStreams}
+	 * or the multiplexed delegate is disconnected or closed.
+	 */
+	private final Condition streamAccepted = lock.newCondition();
+
+	/**
+	 * Adapters of streams opened by the remote side which have not been returned by {@link #acceptStream()}
+	 * yet, in order in which they have been opened.
+	 */
+	private final ArrayDeque<WebSocketAdapter> acceptedStreams = new ArrayDeque<>();
+
+	/**
+	 * Boolean flag indicating whether this multiplexer is the initiator of the connection, so it
+	 * opens streams with odd identifiers.
+	 */
+	private final boolean initiator;
+
+	/**
+	 * Identifier to be assigned to the next opened stream.
+	 */
+	private int nextStreamId;
+
+	/**
+	 * The highest identifier of a stream opened by the remote side, {@code 0} if there is none.
+	 */
+	private int lastRemoteStreamId;
+
+	/*
+	 * Constructors ================================================================================
+	 */
+
+	/**
+	 * Same as {@link #WebSocketMultiplexer(WebSocketDelegate, int)} with {@link #DEFAULT_WINDOW_SIZE}.
+	 */
+	public WebSocketMultiplexer(@Nonnull final WebSocketDelegate delegate) {
+		this(delegate, DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Same as {@link #WebSocketMultiplexer(WebSocketDelegate, int, boolean)} for the initiator of
+	 * the connection.
+	 */
+	public WebSocketMultiplexer(@Nonnull final WebSocketDelegate delegate, final int initialWindowSize) {
+		this(delegate, initialWindowSize, true);
+	}
+
+	/**
+	 * Creates a new instance of WebSocketMultiplexer for the specified <var>delegate</var>.
+	 *
+	 * @param delegate          The delegate to be multiplexed. The multiplexer registers itself
+	 *                          as its listener, so the delegate should not be used directly.
+	 * @param initialWindowSize Initial size of the flow control window of each stream, in bytes.
+	 *                          Both sides of the connection must use the same size.
+	 * @param initiator         {@code True} if the multiplexer is used by the side which initiated
+	 *                          the connection, like a client, {@code false} if it is used by the
+	 *                          side which accepted it. Each side must have a different role.
+	 * @throws IllegalArgumentException If the window size is not positive.
+	 */
+	public WebSocketMultiplexer(@Nonnull final WebSocketDelegate delegate, final int initialWindowSize, final boolean initiator) {
+		if (initialWindowSize <= 0) {
+			throw new IllegalArgumentException("Window size must be positive.");
+		}
+		this.delegate = delegate;
+		this.initialWindowSize = initialWindowSize;
+		this.initiator = initiator;
+		this.nextStreamId = initiator ? 1 : 2;
+		this.delegate.registerOnConnectionListener(new WebSocketDelegate.OnConnectionListener() {
+
+			/**
+			 */
+			@Override public void onConnected() {
+				for (final Stream stream : streams.values()) {
+					stream.notifyConnected();
+				}
+			}
+
+			/**
+			 */
+			@Override public void onDisconnected() {
+				for (final Stream stream : new ArrayList<>(streams.values())) {
+					stream.onClosed();
+				}
+				lock.lock();
+				try {
+					acceptedStreams.clear();
+					streamAccepted.signalAll();
+				} finally {
+					lock.unlock();
+				}
+			}
+		});
+		this.delegate.registerOnIncomingFrameListener(this::onFrameReceived);
+	}
+
+	/*
+	 * Methods =====================================================================================
+	 */
+
+	/**
+	 * Returns the initial size of the flow control window of each stream.
+	 *
+	 * @return Window size in bytes.
+	 */
+	public int getInitialWindowSize() {
+		return initialWindowSize;
+	}
+
+	/**
+	 * Checks whether this multiplexer is used by the side which initiated the connection.
+	 *
+	 * @return {@code True} if this multiplexer opens streams with odd identifiers, {@code false}
+	 * if with even identifiers.
+	 */
+	public boolean isInitiator() {
+		return initiator;
+	}
+
+	/**
+	 * Opens a new logical stream over the multiplexed connection. The stream is connected whenever
+	 * the multiplexed delegate is connected.
+	 *
+	 * @return Adapter for the new stream.
+	 * @throws IOException If the multiplexed delegate is already closed or if there are no more
+	 *                     stream identifiers available.
+	 */
+	@Nonnull public WebSocketAdapter openStream() throws IOException {
+		final Stream stream;
+		lock.lock();
+		try {
+			if (delegate.isClosed()) throw new IOException("Already closed.");
+			if (nextStreamId < 0) throw new IOException("No more stream identifiers available.");
+			stream = new Stream(this, nextStreamId);
+			this.nextStreamId += 2;
+			this.streams.put(stream.id, stream);
+		} finally {
+			lock.unlock();
+		}
+		return createStreamAdapter(stream);
+	}
+
+	/**
+	 * Creates a new adapter for the specified <var>stream</var>.
+	 *
+	 * @param stream The stream to be adapted.
+	 * @return Adapter with incoming buffer limited by the flow control window.
+	 */
+	private WebSocketAdapter createStreamAdapter(final Stream stream) {
+		final WebSocketAdapter adapter = new WebSocketAdapter(stream);
+		adapter.setIncomingBufferLimits(Integer.MAX_VALUE, initialWindowSize);
+		adapter.setIncomingOverflowPolicy(WebSocketAdapter.OverflowPolicy.PAUSE);
+		return adapter;
+	}
+
+	/**
+	 * Accepts the next logical stream opened by the remote side, blocking until there is one.
+	 * Data received for the stream before it is accepted are buffered by its adapter, within its
+	 * flow control window.
+	 *
+	 * @return Adapter for the accepted stream, with its input stream already requested.
+	 * @throws InterruptedIOException If the current thread is interrupted while waiting.
+	 * @throws IOException If the multiplexed delegate is closed.
+	 */
+	@Nonnull public WebSocketAdapter acceptStream() throws IOException {
+		lock.lock();
+		try {
+			while (acceptedStreams.isEmpty()) {
+				if (delegate.isClosed()) throw new IOException("Already closed.");
+				try {
+					this.streamAccepted.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting for a stream.");
+				}
+			}
+			return acceptedStreams.removeFirst();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Opens a new stream for the specified identifier received from the remote side, if it is
+	 * a not yet used identifier of the remote side, and makes it available via {@link #acceptStream()}.
+	 *
+	 * @param streamId Identifier of the stream.
+	 * @return The opened stream or {@code null} if the identifier does not open a new stream.
+	 */
+	private Stream openRemoteStream(final int streamId) {
+		final Stream stream;
+		lock.lock();
+		try {
+			final boolean remoteStreamId = streamId != 0 && (streamId & 1) == (initiator ? 0 : 1);
+			if (!remoteStreamId || streamId <= lastRemoteStreamId || delegate.isClosed()) {
+				return null;
+			}
+			this.lastRemoteStreamId = streamId;
+			stream = new Stream(this, streamId);
+			this.streams.put(streamId, stream);
+		} finally {
+			lock.unlock();
+		}
+		final WebSocketAdapter adapter = createStreamAdapter(stream);
+		try {
+			// Requested right away, so data received before the stream is accepted are buffered.
+			adapter.getInputStream();
+		} catch (IOException e) {
+			stream.onClosed();
+			return null;
+		}
+		lock.lock();
+		try {
+			this.acceptedStreams.addLast(adapter);
+			this.streamAccepted.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		return stream;
+	}
+
+	/**
+	 * Returns the count of currently opened streams.
+	 *
+	 * @return Opened streams count.
+	 */
+	public int getStreamCount() {
+		return streams.size();
+	}
+
+	/**
+	 * Connects the multiplexed delegate if it is not connected yet.
+	 *
+	 * @see WebSocketDelegate#connect(SocketAddress, int)
+	 */
+	private void connect(final SocketAddress remoteAddress, final int timeout) throws IOException {
+		connectLock.lock();
+		try {
+			if (!delegate.isConnected()) {
+				this.delegate.connect(remoteAddress, timeout);
+			}
+		} finally {
+			connectLock.unlock();
+		}
+	}
+
+	/**
+	 * Demultiplexes the specified <var>frame</var> received by the multiplexed delegate. If the
+	 * frame is malformed, the multiplexed delegate is closed, as the connection cannot continue
+	 * in a consistent state. Control frames are ignored.
+	 *
+	 * @param frame The received frame.
+	 */
+	private void onFrameReceived(final WebSocketDelegate.Frame frame) {
+		if (frame.isControl()) {
+			return;
+		}
+		final ByteBuffer payload = frame.getPayloadBuffer().duplicate();
+		final int header = payload.hasRemaining() ? payload.get() & 0xff : -1;
+		final int streamId = readVarint(payload);
+		if (!frame.isFinal() || header == -1 || streamId == -1) {
+			closeOnProtocolError();
+			return;
+		}
+		final Stream stream = streams.get(streamId);
+		switch (header & TYPE_MASK) {
+			case TYPE_DATA:
+				final Stream dataStream = stream == null ? openRemoteStream(streamId) : stream;
+				if (dataStream == null) {
+					sendControlFrameAsync(TYPE_CLOSE, streamId, -1);
+				} else {
+					dataStream.onDataReceived(frame, payload, (header & FLAG_FIN) != 0);
+				}
+				break;
+			case TYPE_WINDOW_UPDATE:
+				final int increment = readVarint(payload);
+				if (increment == -1) {
+					closeOnProtocolError();
+				} else if (stream != null) {
+					stream.onWindowUpdate(increment);
+				}
+				break;
+			case TYPE_CLOSE:
+				if (stream != null) {
+					stream.onClosed();
+				}
+				break;
+			default:
+				closeOnProtocolError();
+		}
+	}
+
+	/**
+	 * Closes the multiplexed delegate due to a received frame which violates the multiplexing
+	 * protocol.
+	 */
+	private void closeOnProtocolError() {
+		try {
+			this.delegate.close();
+		} catch (IOException ignored) {
+			// The connection is failed anyway.
+		}
+	}
+
+	/**
+	 * Sends data of the specified <var>frame</var> for the given <var>stream</var>. Blocks while
+	 * the flow control window of the stream is exhausted. If the frame is larger than the window,
+	 * it is split into multiple data frames.
+	 *
+	 * @param stream The stream for which to send the frame.
+	 * @param frame  The frame to be sent.
+	 * @throws IOException If the stream is closed or if the multiplexed delegate fails to send
+	 *                     the data.
+	 */
+	private void sendData(final Stream stream, final WebSocketDelegate.Frame frame) throws IOException {
+		final ByteBuffer payload = frame.getPayloadBuffer().duplicate();
+		final int headerLength = 1 + varintLength(stream.id);
+		do {
+			final int length = stream.acquireSendWindow(payload.remaining());
+			final boolean fin = frame.isFinal() && length == payload.remaining();
+			final byte[] data = new byte[headerLength + length];
+			data[0] = (byte) (TYPE_DATA | (fin ? FLAG_FIN : 0));
+			writeVarint(data, 1, stream.id);
+			payload.get(data, headerLength, length);
+			sendLock.lock();
+			try {
+				this.delegate.sendFrame(new WebSocketFrame.Builder().payload(data).build());
+			} finally {
+				sendLock.unlock();
+			}
+		} while (payload.hasRemaining());
+	}
+
+	/**
+	 * Sends a control frame with the specified <var>type</var> for the given stream without
+	 * waiting for its completion. Failures are ignored, as they are reported to the streams via
+	 * disconnection of the multiplexed delegate.
+	 *
+	 * @param type     Type of the control frame.
+	 * @param streamId Identifier of the stream.
+	 * @param value    Value to be written as payload of the frame or {@code -1} for no payload.
+	 */
+	private void sendControlFrameAsync(final int type, final int streamId, final int value) {
+		final int headerLength = 1 + varintLength(streamId);
+		final byte[] data = new byte[headerLength + (value == -1 ? 0 : varintLength(value))];
+		data[0] = (byte) type;
+		writeVarint(data, 1, streamId);
+		if (value != -1) {
+			writeVarint(data, headerLength, value);
+		}
+		sendLock.lock();
+		try {
+			this.delegate.sendFrameAsync(new WebSocketFrame.Builder().payload(data).build());
+		} finally {
+			sendLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the count of bytes needed to encode the specified non-negative <var>value</var> as
+	 * a variable length integer.
+	 *
+	 * @param value The value to be encoded.
+	 * @return Encoded length from {@code 1} to {@code 5}.
+	 */
+	static int varintLength(final int value) {
+		int length = 1;
+		for (int remaining = value >>> 7; remaining != 0; remaining >>>= 7) {
+			length++;
+		}
+		return length;
+	}
+
+	/**
+	 * Writes the specified non-negative <var>value</var> into the given array as a variable length
+	 * integer.
+	 *
+	 * @param array  The array into which to write the value.
+	 * @param offset Offset in the array at which to start writing.
+	 * @param value  The value to be written.
+	 * @return Offset in the array after the written value.
+	 */
+	static int writeVarint(final byte[] array, final int offset, final int value) {
+		int position = offset;
+		int remaining = value;
+		while ((remaining & ~0x7f) != 0) {
+			array[position++] = (byte) (remaining & 0x7f | 0x80);
+			remaining >>>= 7;
+		}
+		array[position++] = (byte) remaining;
+		return position;
+	}
+
+	/**
+	 * Reads a non-negative variable length integer from the specified <var>buffer</var>.
+	 *
+	 * @param buffer The buffer from which to read the value.
+	 * @return The read value or {@code -1} if the buffer does not contain a valid value.
+	 */
+	static int readVarint(final ByteBuffer buffer) {
+		long value = 0;
+		for (int i = 0; i < VARINT_MAX_LENGTH && buffer.hasRemaining(); i++) {
+			final int current = buffer.get() & 0xff;
+			value |= (long) (current & 0x7f) << (7 * i);
+			if ((current & 0x80) == 0) {
+				return value > Integer.MAX_VALUE ? -1 : (int) value;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Closes all opened streams, including those not accepted yet, and the multiplexed delegate.
+	 * Threads waiting in {@link #acceptStream()} are woken up with an exception.
+	 *
+	 * @throws IOException If the multiplexed delegate fails to close.
+	 */
+	@Override public void close() throws IOException {
+		for (final Stream stream : new ArrayList<>(streams.values())) {
+			stream.close();
+		}
+		try {
+			this.delegate.close();
+		} finally {
+			lock.lock();
+			try {
+				this.acceptedStreams.clear();
+				this.streamAccepted.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/*
+	 * Inner classes ===============================================================================
+	 */
+
+	/**
+	 * A {@link WebSocketDelegate} representing a single logical stream of the multiplexed connection.
+	 */
+	private static final class Stream implements WebSocketDelegate {
+
+		/**
+		 * Multiplexer which owns this stream.
+		 */
+		final WebSocketMultiplexer multiplexer;
+
+		/**
+		 * Identifier of this stream.
+		 */
+		final int id;
+
+		/**
+		 * Boolean flag indicating whether this stream has been closed, either locally, by the
+		 * remote side or due to disconnection of the multiplexed delegate.
+		 */
+		private final AtomicBoolean closed = new AtomicBoolean();
+
+		/**
+		 * Lock guarding sending of data frames, so frames of a single stream are sent in order.
+		 */
+		private final ReentrantLock sendLock = new ReentrantLock();
+
+		/**
+		 * Lock guarding the flow control windows of this stream.
+		 */
+		private final ReentrantLock windowLock = new ReentrantLock();
+
+		/**
+		 * Condition signalled whenever the {@link #sendWindow} increases or this stream is closed.
+		 */
+		private final Condition sendWindowAvailable = windowLock.newCondition();
+
+		/**
+		 * Count of bytes which may be sent before the remote side grants more.
+		 */
+		private int sendWindow;
+
+		/**
+		 * Count of bytes which the remote side may send before this stream grants more.
+		 */
+		private int receiveWindow;
+
+		/**
+		 * Count of received bytes which have been already delivered, but not granted back to the
+		 * remote side yet.
+		 */
+		private int pendingWindowUpdate;
+
+		/**
+		 * Boolean flag indicating whether granting of received bytes back to the remote side is
+		 * paused.
+		 */
+		private boolean paused;
+
+		/**
+		 * List of registered connection listeners.
+		 */
+		private final List<OnConnectionListener> connectionListeners = new CopyOnWriteArrayList<>();
+
+		/**
+		 * List of registered incoming frame listeners.
+		 */
+		private final List<OnIncomingFrameListener> incomingFrameListeners = new CopyOnWriteArrayList<>();
+
+		/**
+		 * Creates a new instance of Stream with the specified <var>id</var>.
+		 *
+		 * @param multiplexer The multiplexer which owns the stream.
+		 * @param id          Identifier of the stream.
+		 */
+		Stream(final WebSocketMultiplexer multiplexer, final int id) {
+			this.multiplexer = multiplexer;
+			this.id = id;
+			this.sendWindow = multiplexer.initialWindowSize;
+			this.receiveWindow = multiplexer.initialWindowSize;
+		}
+
+		/**
+		 */
+		@Override public void registerOnConnectionListener(@Nonnull final OnConnectionListener listener) {
+			if (!connectionListeners.contains(listener)) {
+				this.connectionListeners.add(listener);
+			}
+		}
+
+		/**
+		 */
+		@Override public void unregisterOnConnectionListener(@Nonnull final OnConnectionListener listener) {
+			this.connectionListeners.remove(listener);
+		}
+
+		/**
+		 */
+		@Override public void registerOnIncomingFrameListener(@Nonnull final OnIncomingFrameListener listener) {
+			if (!incomingFrameListeners.contains(listener)) {
+				this.incomingFrameListeners.add(listener);
+			}
+		}
+
+		/**
+		 */
+		@Override public void unregisterOnIncomingFrameListener(@Nonnull final OnIncomingFrameListener listener) {
+			this.incomingFrameListeners.remove(listener);
+		}
+
+		/**
+		 * Notifies the registered connection listeners that the multiplexed delegate has connected.
+		 */
+		void notifyConnected() {
+			for (final OnConnectionListener listener : connectionListeners) {
+				listener.onConnected();
+			}
+		}
+
+		/**
+		 * Delivers the specified data received for this stream to the registered listeners and
+		 * grants the delivered bytes back to the remote side. If the remote side has sent more
+		 * bytes than it has been granted, this stream is closed.
+		 *
+		 * @param frame   The frame received by the multiplexed delegate.
+		 * @param payload Buffer with the stream data positioned after the frame header.
+		 * @param fin     {@code True} if the data are the final frame of a message.
+		 */
+		void onDataReceived(final Frame frame, final ByteBuffer payload, final boolean fin) {
+			final int length = payload.remaining();
+			final boolean windowExceeded;
+			windowLock.lock();
+			try {
+				windowExceeded = length > receiveWindow;
+				if (!windowExceeded) {
+					this.receiveWindow -= length;
+				}
+			} finally {
+				windowLock.unlock();
+			}
+			if (windowExceeded) {
+				close();
+				return;
+			}
+			final BufferPool.Buffer pooledBuffer = frame instanceof WebSocketFrame ? ((WebSocketFrame) frame).getPooledBuffer() : null;
+			final WebSocketFrame.Builder builder = new WebSocketFrame.Builder().isFinal(fin);
+			if (pooledBuffer == null) {
+				builder.payload(payload);
+			} else {
+				builder.payload(pooledBuffer, payload.arrayOffset() + payload.position(), length);
+			}
+			final WebSocketFrame streamFrame = builder.build();
+			for (final OnIncomingFrameListener listener : incomingFrameListeners) {
+				listener.onFrameReceived(streamFrame);
+			}
+			releaseReceiveWindow(length);
+		}
+
+		/**
+		 * Grants the specified count of delivered bytes back to the remote side. Window updates are
+		 * sent only while granting is not paused and only once at least half of the window has been
+		 * delivered, unless called with zero length, which grants all pending bytes.
+		 *
+		 * @param length Count of the delivered bytes.
+		 */
+		private void releaseReceiveWindow(final int length) {
+			final int increment;
+			windowLock.lock();
+			try {
+				this.pendingWindowUpdate += length;
+				final boolean thresholdReached = length == 0 || pendingWindowUpdate >= multiplexer.initialWindowSize / 2;
+				if (paused || pendingWindowUpdate == 0 || !thresholdReached) {
+					return;
+				}
+				increment = pendingWindowUpdate;
+				this.pendingWindowUpdate = 0;
+				this.receiveWindow += increment;
+			} finally {
+				windowLock.unlock();
+			}
+			if (!closed.get()) {
+				this.multiplexer.sendControlFrameAsync(TYPE_WINDOW_UPDATE, id, increment);
+			}
+		}
+
+		/**
+		 * Increases the send window of this stream by the specified <var>increment</var> granted
+		 * by the remote side.
+		 *
+		 * @param increment The granted count of bytes.
+		 */
+		void onWindowUpdate(final int increment) {
+			windowLock.lock();
+			try {
+				this.sendWindow = (int) Math.min(Integer.MAX_VALUE, (long) sendWindow + increment);
+				this.sendWindowAvailable.signalAll();
+			} finally {
+				windowLock.unlock();
+			}
+		}
+
+		/**
+		 * Acquires up to the specified count of bytes from the send window of this stream. Blocks
+		 * while the window is exhausted.
+		 *
+		 * @param length The desired count of bytes.
+		 * @return The acquired count of bytes, at least {@code 1} if the desired count is positive.
+		 * @throws IOException If this stream is closed or if the current thread is interrupted
+		 *                     while waiting.
+		 */
+		int acquireSendWindow(final int length) throws IOException {
+			windowLock.lock();
+			try {
+				while (sendWindow <= 0 && length > 0 && !closed.get()) {
+					try {
+						this.sendWindowAvailable.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException("Interrupted while waiting for flow control window.");
+					}
+				}
+				if (closed.get()) throw new IOException("Stream is closed.");
+				final int acquired = Math.min(length, sendWindow);
+				this.sendWindow -= acquired;
+				return acquired;
+			} finally {
+				windowLock.unlock();
+			}
+		}
+
+		/**
+		 */
+		@Override public void connect(@Nonnull final SocketAddress remoteAddress, final int timeout) throws IOException {
+			if (closed.get()) throw new IOException("Stream is closed.");
+			this.multiplexer.connect(remoteAddress, timeout);
+		}
+
+		/**
+		 */
+		@Override public boolean isConnected() {
+			return !closed.get() && multiplexer.delegate.isConnected();
+		}
+
+		/**
+		 */
+		@Override public void sendFrame(@Nonnull final Frame frame) throws IOException {
+			sendLock.lock();
+			try {
+				this.multiplexer.sendData(this, frame);
+			} finally {
+				sendLock.unlock();
+			}
+		}
+
+		/**
+		 * Pauses granting of received bytes back to the remote side, so it stops sending data
+		 * for this stream once it exhausts its window.
+		 */
+		@Override public void pauseReading() {
+			windowLock.lock();
+			try {
+				this.paused = true;
+			} finally {
+				windowLock.unlock();
+			}
+		}
+
+		/**
+		 * Resumes granting of received bytes back to the remote side and grants all bytes which
+		 * have been delivered while paused.
+		 */
+		@Override public void resumeReading() {
+			windowLock.lock();
+			try {
+				this.paused = false;
+			} finally {
+				windowLock.unlock();
+			}
+			releaseReceiveWindow(0);
+		}
+
+		/**
+		 * Closes this stream and notifies the remote side.
+		 */
+		@Override public void close() {
+			if (onClosed()) {
+				this.multiplexer.sendControlFrameAsync(TYPE_CLOSE, id, -1);
+			}
+		}
+
+		/**
+		 * Marks this stream as closed, wakes up all senders waiting for the send window and
+		 * notifies the registered connection listeners.
+		 *
+		 * @return {@code True} if this stream has been closed by this call, {@code false} if it
+		 * has been already closed.
+		 */
+		boolean onClosed() {
+			if (!closed.compareAndSet(false, true)) {
+				return false;
+			}
+			this.multiplexer.streams.remove(id, this);
+			windowLock.lock();
+			try {
+				this.sendWindowAvailable.signalAll();
+			} finally {
+				windowLock.unlock();
+			}
+			for (final OnConnectionListener listener : connectionListeners) {
+				listener.onDisconnected();
+			}
+			return true;
+		}
+
+		/**
+		 */
+		@Override public boolean isClosed() {
+			return closed.get();
+		}
+	}
+}
\ No newline at end of file
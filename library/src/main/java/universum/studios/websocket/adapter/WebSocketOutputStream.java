@@ -18,16 +18,45 @@
  */
 package universum.studios.websocket.adapter;
 
-import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * An {@link OutputStream} implementation used by {@link WebSocketAdapter} as its output stream.
+ * <p>
+ * All written data are stored in a buffer owned by this stream. Whenever the stream is flushed,
+ * the buffered data are sent to the delegate as a frame backed directly by that buffer, without
+ * copying them. The buffer is reused for subsequent writes as soon as the delegate returns from
+ * {@link WebSocketDelegate#sendFrame(WebSocketDelegate.Frame)}.
+ * <p>
+ * If a maximum frame size is specified via {@link #setMaxFrameSize(int)}, the buffered data are
+ * sent as a non-final frame whenever the buffer reaches that size and more data are written, so
+ * a large message is delivered in fragments and the final fragment is sent on flush.
+ * <p>
+ * If a {@link BufferPool} is specified via {@link #setBufferPool(BufferPool)}, the buffer is
+ * acquired from that pool and frames are sent backed by the pooled buffer, so the delegate may
+ * retain it instead of copying the data. In such case this stream acquires a new buffer for
+ * subsequent writes.
+ * <p>
+ * Buffered data may be also sent asynchronously via {@link #flushAsync()}, which hands the buffer
+ * over to the delegate until the send completes and continues with a new buffer, so multiple
+ * messages may be in flight at the same time, up to the limit specified via {@link #setMaxInFlightFrames(int)}.
+ * <p>
+ * If write coalescing is enabled via {@link #setWriteCoalescing(long, int)}, {@link #flush()} does
+ * not send the buffered data immediately unless they reach the coalescing threshold. Instead, the
+ * data are sent once the coalescing delay elapses, so data of all flushes requested within that
+ * delay are sent in a single frame. {@link #flushNow()} sends the buffered data immediately.
  *
  * @author Martin Albedinsky
  * @since 1.0
@@ -47,10 +76,22 @@ final class WebSocketOutputStream extends OutputStream {
 	private static final String TAG = "WebSocketOutputStream";
 
 	/**
-	 * Initial size for the buffer used by internal data stream.
+	 * Initial size for the buffer used to store written data.
 	 */
 	private static final int BUFFER_INITIAL_SIZE = 1024;
 
+	/**
+	 * Maximum size of the buffer that is retained for reuse after flush. Larger buffers are
+	 * released so a single large message does not pin its memory for the whole connection.
+	 */
+	private static final int BUFFER_MAX_RETAINED_SIZE = 64 * 1024;
+
+	/**
+	 * Default maximum count of frames sent via {@link #flushAsync()} which may be in flight at
+	 * the same time.
+	 */
+	static final int DEFAULT_MAX_IN_FLIGHT_FRAMES = 16;
+
 	/*
 	 * Interface ===================================================================================
 	 */
@@ -80,9 +121,102 @@ final class WebSocketOutputStream extends OutputStream {
 	private final AtomicBoolean closed = new AtomicBoolean(false);
 
 	/**
-	 * Internal stream used to store written data.
+	 * Buffer used to store written data.
+	 */
+	private byte[] buffer;
+
+	/**
+	 * Pool from which is the {@link #buffer} acquired. May be {@code null}.
+	 */
+	private BufferPool bufferPool;
+
+	/**
+	 * Pooled buffer owning the {@link #buffer} array, if it has been acquired from {@link #bufferPool}.
+	 */
+	private BufferPool.Buffer pooledBuffer;
+
+	/**
+	 * Count of valid bytes in the {@link #buffer}.
+	 */
+	private int count;
+
+	/**
+	 * Boolean flag indicating whether a fragmented message has been started by a non-final frame,
+	 * so the next frame should be a continuation frame.
+	 */
+	private boolean messageStarted;
+
+	/**
+	 * Maximum size of a single frame sent to the delegate. {@code 0} means unlimited size.
+	 */
+	private int maxFrameSize;
+
+	/**
+	 * Boolean flag indicating whether some non-final frames of the current message have been
+	 * already sent to the delegate, so the message needs to be terminated by a final frame.
+	 */
+	private boolean fragmenting;
+
+	/**
+	 * Lock guarding the buffered data and all other state of this stream. Held also while sending
+	 * frames to the delegate, so it is an explicit lock which does not pin virtual threads.
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * Lock guarding count of frames in flight. It is independent from the {@link #lock} of this
+	 * stream, so sends may complete while a writer is waiting for a free slot.
+	 */
+	private final ReentrantLock inFlightLock = new ReentrantLock();
+
+	/**
+	 * Condition signalled whenever a slot for a frame in flight may have become available.
+	 */
+	private final Condition inFlightSlotAvailable = inFlightLock.newCondition();
+
+	/**
+	 * Count of frames sent via {@link #flushAsync()} which have not completed yet.
+	 */
+	private int inFlightFrames;
+
+	/**
+	 * Maximum count of frames sent via {@link #flushAsync()} which may be in flight at the same time.
+	 */
+	private int maxInFlightFrames = DEFAULT_MAX_IN_FLIGHT_FRAMES;
+
+	/**
+	 * Delay in nanoseconds for which are flushes coalesced. {@code 0} means that coalescing is
+	 * disabled.
+	 */
+	private long coalescingDelay;
+
+	/**
+	 * Count of buffered bytes at which are the data sent on flush immediately even if coalescing
+	 * is enabled.
 	 */
-	private ByteArrayOutputStream stream;
+	private int coalescingThreshold;
+
+	/**
+	 * Boolean flag indicating whether a flush has been requested and the buffered data are waiting
+	 * to be sent once the coalescing delay elapses.
+	 */
+	private boolean flushPending;
+
+	/**
+	 * Timeout of the pending coalesced flush. May be {@code null}.
+	 */
+	private WebSocketTimer.Timeout flushTimeout;
+
+	/**
+	 * Error that occurred while sending the data of a coalesced flush. Reported by the next call
+	 * to a write, flush or close method.
+	 */
+	private IOException flushError;
+
+	/**
+	 * Metrics into which to record sent frames. May be {@code null}.
+	 */
+	private volatile WebSocketMetrics metrics;
 
 	/*
 	 * Constructors ================================================================================
@@ -99,45 +233,520 @@ final class WebSocketOutputStream extends OutputStream {
 		super();
 		this.socket = socket;
 		this.delegate = delegate;
-		this.stream = new ByteArrayOutputStream(BUFFER_INITIAL_SIZE);
+		this.buffer = new byte[BUFFER_INITIAL_SIZE];
 	}
 
 	/*
 	 * Methods =====================================================================================
 	 */
 
+	/**
+	 * Specifies a maximum size of a single frame that this stream sends to the delegate.
+	 *
+	 * @param maxFrameSize The desired maximum size in bytes. {@code 0} means unlimited size.
+	 */
+	void setMaxFrameSize(final int maxFrameSize) {
+		lock.lock();
+		try {
+			this.maxFrameSize = maxFrameSize;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Specifies parameters of write coalescing for this stream.
+	 *
+	 * @param delay     The delay in milliseconds for which should be flushes coalesced into a single
+	 *                  frame. {@code 0} disables coalescing.
+	 * @param threshold The count of buffered bytes at which should be the data sent on flush
+	 *                  immediately.
+	 */
+	void setWriteCoalescing(final long delay, final int threshold) {
+		lock.lock();
+		try {
+			this.coalescingDelay = TimeUnit.MILLISECONDS.toNanos(delay);
+			this.coalescingThreshold = threshold;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Specifies metrics into which should this stream record sent frames and latency of flushes.
+	 *
+	 * @param metrics The desired metrics. May be {@code null} to not record any metrics.
+	 */
+	void setMetrics(@Nullable final WebSocketMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Specifies a pool from which this stream should acquire its buffer. The current buffer is
+	 * replaced immediately if it contains no data, otherwise when it needs to grow or after the
+	 * next flush.
+	 *
+	 * @param pool The desired pool. May be {@code null} to allocate the buffer.
+	 */
+	void setBufferPool(@Nullable final BufferPool pool) {
+		lock.lock();
+		try {
+			this.bufferPool = pool;
+			if (count == 0) {
+				replaceBuffer(BUFFER_INITIAL_SIZE);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Replaces the current buffer of this stream by a new one with at least the specified
+	 * <var>capacity</var>, acquired from the current pool if any. The buffered data are copied
+	 * into the new buffer and the pooled buffer being replaced is released.
+	 *
+	 * @param capacity The desired minimum capacity of the new buffer.
+	 */
+	private void replaceBuffer(final int capacity) {
+		final BufferPool.Buffer newPooledBuffer = bufferPool == null ? null : bufferPool.acquire(capacity);
+		final byte[] newBuffer = newPooledBuffer == null ? new byte[capacity] : newPooledBuffer.array();
+		if (count > 0) {
+			System.arraycopy(buffer, 0, newBuffer, 0, count);
+		}
+		releaseBuffer();
+		this.buffer = newBuffer;
+		this.pooledBuffer = newPooledBuffer;
+	}
+
+	/**
+	 * Releases the pooled buffer of this stream, if any.
+	 */
+	private void releaseBuffer() {
+		if (pooledBuffer != null) {
+			this.pooledBuffer.release();
+			this.pooledBuffer = null;
+		}
+	}
+
+	/**
+	 * Creates a new frame backed by the buffered data. The first frame of a message is a binary
+	 * frame and all following frames of the same message are continuation frames.
+	 *
+	 * @param isFinal {@code True} if the frame should be a final frame, {@code false} otherwise.
+	 * @return Frame ready to be sent.
+	 */
+	private WebSocketFrame createFrame(final boolean isFinal) {
+		final WebSocketFrame.Builder builder = new WebSocketFrame.Builder()
+				.opcode(messageStarted ? WebSocketDelegate.Frame.OPCODE_CONTINUATION : WebSocketDelegate.Frame.OPCODE_BINARY)
+				.isFinal(isFinal);
+		this.messageStarted = !isFinal;
+		return (pooledBuffer == null ? builder.payload(buffer, 0, count).payloadBorrowed() : builder.payload(pooledBuffer, 0, count)).build();
+	}
+
+	/**
+	 * Called after a frame backed by the current buffer has been sent. If the delegate has retained
+	 * the pooled buffer, or the buffer has grown too large or does not come from the current pool,
+	 * it is replaced by a new one.
+	 */
+	private void onFrameSent() {
+		this.count = 0;
+		final boolean retained = pooledBuffer != null && pooledBuffer.refCount() > 1;
+		final boolean poolChanged = (pooledBuffer == null) != (bufferPool == null);
+		if (retained || poolChanged || buffer.length > BUFFER_MAX_RETAINED_SIZE) {
+			replaceBuffer(BUFFER_INITIAL_SIZE);
+		}
+	}
+
 	/**
 	 */
 	@Override public void write(@Nonnull final byte[] bytes, final int offset, final int length) throws IOException {
-		assertOpenedOrThrowException();
-		this.stream.write(bytes, offset, length);
+		lock.lock();
+		try {
+			assertOpenedOrThrowException();
+			throwFlushErrorIfAny();
+			if (offset < 0 || length < 0 || length > bytes.length - offset) {
+				throw new IndexOutOfBoundsException();
+			}
+			if (maxFrameSize == 0) {
+				ensureCapacity(count + length);
+				System.arraycopy(bytes, offset, buffer, count, length);
+				this.count += length;
+				return;
+			}
+			int written = 0;
+			while (written < length) {
+				if (count >= maxFrameSize) {
+					sendFragment();
+				}
+				final int chunk = Math.min(length - written, maxFrameSize - count);
+				ensureCapacity(count + chunk);
+				System.arraycopy(bytes, offset + written, buffer, count, chunk);
+				this.count += chunk;
+				written += chunk;
+			}
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	/**
 	 */
 	@Override public void write(final int b) throws IOException {
-		assertOpenedOrThrowException();
-		this.stream.write(b);
+		lock.lock();
+		try {
+			assertOpenedOrThrowException();
+			throwFlushErrorIfAny();
+			if (maxFrameSize > 0 && count >= maxFrameSize) {
+				sendFragment();
+			}
+			ensureCapacity(count + 1);
+			this.buffer[count++] = (byte) b;
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	/**
+	 * Sends all buffered data as a non-final frame to the delegate.
+	 *
+	 * @throws IOException If the delegate fails to send the frame.
 	 */
-	@Override public synchronized void flush() throws IOException {
-		assertOpenedOrThrowException();
-		if (stream.size() > 0) {
-			this.delegate.sendFrame(new WebSocketFrame.Builder().payload(stream.toByteArray()).build());
-			this.stream.reset();
+	private void sendFragment() throws IOException {
+		final int length = count;
+		this.delegate.sendFrame(createFrame(false));
+		final WebSocketMetrics metrics = this.metrics;
+		if (metrics != null) {
+			metrics.recordFrameOut(length, false);
 		}
+		onFrameSent();
+		this.fragmenting = true;
 	}
 
 	/**
+	 * Ensures that the buffer of this stream can hold at least the specified <var>capacity</var>
+	 * of bytes. If not, the buffer is grown.
+	 *
+	 * @param capacity The desired minimum capacity.
+	 * @throws IOException If the desired capacity exceeds the maximum size of an array.
 	 */
-	@Override public synchronized void close() throws IOException {
-		if (!closed.get()) {
-			this.stream.reset();
-			this.socket.close();
+	private void ensureCapacity(final int capacity) throws IOException {
+		if (capacity < 0) {
+			throw new IOException("Too much data written into " + TAG + ".");
+		}
+		if (capacity > buffer.length) {
+			final int grownCapacity = buffer.length << 1;
+			replaceBuffer(grownCapacity < capacity || grownCapacity < 0 ? capacity : grownCapacity);
+		}
+	}
+
+	/**
+	 * Sends all buffered data as a final frame to the delegate. The frame is backed directly by the
+	 * buffer of this stream, which is reused once the delegate returns.
+	 * <p>
+	 * If write coalescing is enabled and the buffered data have not reached the coalescing threshold,
+	 * the data are sent once the coalescing delay elapses.
+	 *
+	 * @see #flushNow()
+	 */
+	@Override public void flush() throws IOException {
+		lock.lock();
+		try {
+			assertOpenedOrThrowException();
+			throwFlushErrorIfAny();
+			if (coalescingDelay == 0 || count >= coalescingThreshold) {
+				sendBufferedData();
+			} else if (count > 0 || fragmenting) {
+				this.flushPending = true;
+				if (flushTimeout == null) {
+					this.flushTimeout = WebSocketTimer.shared().scheduleBlocking(this::flushCoalesced, coalescingDelay, TimeUnit.NANOSECONDS);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Sends all buffered data as a final frame to the delegate immediately, regardless of write
+	 * coalescing.
+	 *
+	 * @throws IOException If this stream is already closed or the delegate fails to send the frame.
+	 */
+	void flushNow() throws IOException {
+		lock.lock();
+		try {
+			assertOpenedOrThrowException();
+			throwFlushErrorIfAny();
+			sendBufferedData();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Sends the remaining data of the given <var>buffer</var> as a single message, directly to the
+	 * delegate without copying them. If a maximum frame size is specified, the message is sent in
+	 * fragments of that size.
+	 * <p>
+	 * This is used by {@link WebSocketChannel}, so its messages are serialized with messages of this
+	 * stream. If some fragments of a message of this stream have been already sent, the buffered
+	 * data are sent as the final fragment of that message first, so frames of both messages do not
+	 * interleave. Buffered data of a message which has not been started yet remain buffered.
+	 *
+	 * @param buffer The buffer with data of the message. Its position is advanced once they have
+	 *               been sent.
+	 * @throws IOException If this stream is already closed or the delegate fails to send some frame.
+	 */
+	void sendMessage(@Nonnull final ByteBuffer buffer) throws IOException {
+		lock.lock();
+		try {
+			assertOpenedOrThrowException();
+			throwFlushErrorIfAny();
+			if (fragmenting) {
+				sendBufferedData();
+			}
+			final int length = buffer.remaining();
+			final int frameSize = maxFrameSize == 0 ? Math.max(length, 1) : maxFrameSize;
+			final WebSocketMetrics metrics = this.metrics;
+			int written = 0;
+			do {
+				final int chunk = Math.min(frameSize, length - written);
+				final boolean isFinal = written + chunk == length;
+				this.delegate.sendFrame(new WebSocketFrame.Builder()
+						.payload(buffer, buffer.position() + written, chunk)
+						.payloadBorrowed()
+						.opcode(written == 0 ? WebSocketDelegate.Frame.OPCODE_BINARY : WebSocketDelegate.Frame.OPCODE_CONTINUATION)
+						.isFinal(isFinal)
+						.build()
+				);
+				if (metrics != null) {
+					metrics.recordFrameOut(chunk, isFinal);
+				}
+				written += chunk;
+			} while (written < length);
+			buffer.position(buffer.position() + length);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Sends data of the pending coalesced flush, if any. Invoked via the blocking executor of the
+	 * timer once the coalescing delay elapses, as it waits for the lock which may be held by
+	 * a writer blocked in the delegate and sends data via the delegate itself.
+	 */
+	private void flushCoalesced() {
+		lock.lock();
+		try {
+			this.flushTimeout = null;
+			if (flushPending && !closed.get()) {
+				try {
+					sendBufferedData();
+				} catch (IOException e) {
+					this.flushError = e;
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Cancels the pending coalesced flush, if any.
+	 */
+	private void cancelPendingFlush() {
+		this.flushPending = false;
+		if (flushTimeout != null) {
+			this.flushTimeout.cancel();
+			this.flushTimeout = null;
+		}
+	}
+
+	/**
+	 * Throws the error that occurred while sending data of a coalesced flush, if any.
+	 *
+	 * @throws IOException The error of the coalesced flush.
+	 */
+	private void throwFlushErrorIfAny() throws IOException {
+		final IOException error = flushError;
+		if (error != null) {
+			this.flushError = null;
+			throw error;
+		}
+	}
+
+	/**
+	 * Sends all buffered data as a final frame to the delegate.
+	 *
+	 * @throws IOException If the delegate fails to send the frame.
+	 */
+	private void sendBufferedData() throws IOException {
+		cancelPendingFlush();
+		if (count > 0 || fragmenting) {
+			final WebSocketMetrics metrics = this.metrics;
+			final long startTime = metrics == null ? 0 : System.nanoTime();
+			final int length = count;
+			this.delegate.sendFrame(createFrame(true));
+			if (metrics != null) {
+				metrics.recordFrameOut(length, true);
+				metrics.flushLatencyNanos.record(System.nanoTime() - startTime);
+			}
+			onFrameSent();
+			this.fragmenting = false;
+		}
+	}
+
+	/**
+	 * Specifies a maximum count of frames sent via {@link #flushAsync()} which may be in flight at
+	 * the same time. When the limit is reached, {@link #flushAsync()} blocks until some of the
+	 * frames completes.
+	 *
+	 * @param maxFrames The desired maximum count of frames.
+	 */
+	void setMaxInFlightFrames(final int maxFrames) {
+		inFlightLock.lock();
+		try {
+			this.maxInFlightFrames = maxFrames;
+			this.inFlightSlotAvailable.signalAll();
+		} finally {
+			inFlightLock.unlock();
+		}
+	}
+
+	/**
+	 * Sends all buffered data as a final frame to the delegate asynchronously via
+	 * {@link WebSocketDelegate#sendFrameAsync(WebSocketDelegate.Frame)}.
+	 * <p>
+	 * The buffer holding the data is handed over to the delegate until the send completes and this
+	 * stream continues with a new buffer, so it is recommended to specify a buffer pool via
+	 * {@link #setBufferPool(BufferPool)} in order to reuse the buffers. If the count of frames in
+	 * flight has reached its maximum, this method blocks until some of them completes.
+	 *
+	 * @return Future which completes once the frame has been sent. Already completed future if
+	 * there are no buffered data.
+	 * @throws IOException If this stream is already closed.
+	 * @throws InterruptedIOException If the current thread is interrupted while waiting
+	 *                                for a free slot.
+	 */
+	@Nonnull CompletableFuture<Void> flushAsync() throws IOException {
+		lock.lock();
+		try {
+			assertOpenedOrThrowException();
+			throwFlushErrorIfAny();
+			cancelPendingFlush();
+			if (count == 0 && !fragmenting) {
+				return CompletableFuture.completedFuture(null);
+			}
+			acquireInFlightSlot();
+			final WebSocketMetrics metrics = this.metrics;
+			final long startTime = metrics == null ? 0 : System.nanoTime();
+			if (metrics != null) {
+				metrics.recordFrameOut(count, true);
+			}
+			final WebSocketFrame frame = createFrame(true);
+			final BufferPool.Buffer sentBuffer = pooledBuffer;
+			// The buffer is owned by the delegate until the send completes, so continue with a new one.
+			this.pooledBuffer = null;
+			this.count = 0;
+			this.fragmenting = false;
+			replaceBuffer(BUFFER_INITIAL_SIZE);
+			CompletableFuture<Void> future;
+			try {
+				future = delegate.sendFrameAsync(frame);
+			} catch (RuntimeException e) {
+				future = new CompletableFuture<>();
+				future.completeExceptionally(e);
+			}
+			return future.whenComplete((result, error) -> {
+				if (sentBuffer != null) {
+					sentBuffer.release();
+				}
+				if (metrics != null) {
+					metrics.flushLatencyNanos.record(System.nanoTime() - startTime);
+				}
+				releaseInFlightSlot();
+			});
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits until count of frames in flight is below its maximum and takes a slot for a new frame.
+	 *
+	 * @throws InterruptedIOException If the current thread is interrupted while waiting.
+	 */
+	private void acquireInFlightSlot() throws InterruptedIOException {
+		inFlightLock.lock();
+		try {
+			while (inFlightFrames >= maxInFlightFrames) {
+				try {
+					this.inFlightSlotAvailable.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting for frames in flight.");
+				}
+			}
+			this.inFlightFrames++;
+		} finally {
+			inFlightLock.unlock();
+		}
+	}
+
+	/**
+	 * Releases a slot of a completed frame.
+	 */
+	private void releaseInFlightSlot() {
+		inFlightLock.lock();
+		try {
+			this.inFlightFrames--;
+			this.inFlightSlotAvailable.signalAll();
+		} finally {
+			inFlightLock.unlock();
+		}
+	}
+
+	/**
+	 * Sends data of a pending coalesced flush, if any, and closes this stream along with its socket.
+	 *
+	 * @throws IOException If sending of data of the pending coalesced flush or of a coalesced flush
+	 *                     which failed earlier without being reported has failed, so some data
+	 *                     have not been sent. The stream is closed anyway.
+	 */
+	@Override public void close() throws IOException {
+		IOException error;
+		lock.lock();
+		try {
+			if (closed.get()) {
+				return;
+			}
+			error = flushError;
+			if (flushPending && error == null) {
+				// Data of a requested flush are still expected to be sent.
+				try {
+					sendBufferedData();
+				} catch (IOException e) {
+					error = e;
+				}
+			}
+			cancelPendingFlush();
+			this.flushError = null;
+			this.count = 0;
+			this.fragmenting = false;
+			releaseBuffer();
 			this.closed.set(true);
+		} finally {
+			lock.unlock();
 		}
+		// Closing of the socket destroys this stream while holding the lock of the socket, so
+		// the lock of this stream must not be held here.
+		try {
+			this.socket.close();
+		} catch (IOException e) {
+			if (error == null) throw e;
+			error.addSuppressed(e);
+		}
+		if (error != null) throw error;
 	}
 
 	/**
@@ -153,8 +762,14 @@ final class WebSocketOutputStream extends OutputStream {
 	 * Destroys this stream. Destroying the stream also marks it as closed.
 	 */
 	void destroy() {
-		this.stream = null;
 		this.closed.set(true);
+		lock.lock();
+		try {
+			cancelPendingFlush();
+			releaseBuffer();
+		} finally {
+			lock.unlock();
+		}
 	}
 
 	/*
@@ -0,0 +1,564 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A timer shared by all {@link WebSocketAdapter WebSocketAdapters} and their streams in order to
+ * run delayed tasks, like coalesced flushes or keep alive pings, without a thread per adapter.
+ * <p>
+ * The timer is implemented as a hashed timing wheel: scheduled tasks are hashed by their deadline
+ * into a fixed count of buckets, each representing a single tick, and a single worker thread
+ * expires the bucket of the current tick whenever the tick elapses. Both scheduling and canceling
+ * of a task are O(1) operations which only enqueue the task for the worker, so the timer scales
+ * to a large count of pending tasks. Tasks may run up to one tick later than requested. While
+ * there are no pending tasks, the worker thread is parked and does not tick at all.
+ * <p>
+ * Tasks are run on the worker thread, so they should be short and must not block. Tasks which
+ * need to block, like sending of frames or closing of connections, should be scheduled via
+ * {@link #scheduleBlocking(Runnable, long, TimeUnit)} or dispatched via {@link #blockingExecutor()},
+ * so they run on a thread of a shared pool instead.
+ *
+ * @author Martin Albedinsky
+ * @since 1.1
+ */
+final class WebSocketTimer {
+
+	/*
+	 * Constants ===================================================================================
+	 */
+
+	/**
+	 * Log TAG.
+	 */
+	// private static final String TAG = "WebSocketTimer";
+
+	/**
+	 * Name of the thread running the timer tasks.
+	 */
+	private static final String THREAD_NAME = "WebSocketTimer";
+
+	/**
+	 * Name of the threads running blocking work dispatched by the timer tasks.
+	 */
+	private static final String BLOCKING_THREAD_NAME = "WebSocketTimer-Blocking";
+
+	/**
+	 * Time in seconds after which is an idle thread of the blocking executor terminated.
+	 */
+	private static final long BLOCKING_THREAD_KEEP_ALIVE = 60;
+
+	/**
+	 * Default duration of a single tick of the wheel, in nanoseconds. The worker wakes up once per
+	 * tick while there are pending tasks, so the tick is kept coarse enough to not wake up a mobile
+	 * device too often, but still far below the timeouts of keep alive and coalesced flushes.
+	 */
+	static final long DEFAULT_TICK_DURATION = TimeUnit.MILLISECONDS.toNanos(10);
+
+	/**
+	 * Default count of buckets of the wheel.
+	 */
+	static final int DEFAULT_WHEEL_SIZE = 512;
+
+	/**
+	 * Maximum count of scheduled tasks moved into the wheel during a single tick, so a burst of
+	 * scheduled tasks does not delay expiration of the current bucket for too long.
+	 */
+	private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+	/*
+	 * Interface ===================================================================================
+	 */
+
+	/**
+	 * A handle of a task scheduled via {@link #schedule(Runnable, long, TimeUnit)}.
+	 */
+	interface Timeout {
+
+		/**
+		 * Cancels the scheduled task. Has no effect if the task has already run.
+		 */
+		void cancel();
+	}
+
+	/*
+	 * Static members ==============================================================================
+	 */
+
+	/**
+	 * Shared instance of the timer.
+	 */
+	private static final WebSocketTimer SHARED = new WebSocketTimer(DEFAULT_TICK_DURATION, TimeUnit.NANOSECONDS, DEFAULT_WHEEL_SIZE);
+
+	/**
+	 * Executor running blocking work on behalf of the timer tasks. Its threads are created on
+	 * demand and terminated once idle, so it holds no threads while there is no such work.
+	 */
+	private static final Executor BLOCKING_EXECUTOR = new ThreadPoolExecutor(
+			0,
+			Integer.MAX_VALUE,
+			BLOCKING_THREAD_KEEP_ALIVE,
+			TimeUnit.SECONDS,
+			new SynchronousQueue<>(),
+			runnable -> {
+				final Thread thread = new Thread(runnable, BLOCKING_THREAD_NAME);
+				thread.setDaemon(true);
+				return thread;
+			}
+	);
+
+	/*
+	 * Members =====================================================================================
+	 */
+
+	/**
+	 * Duration of a single tick, in nanoseconds.
+	 */
+	private final long tickDuration;
+
+	/**
+	 * Buckets of the wheel. Accessed only by the worker thread.
+	 */
+	private final Bucket[] wheel;
+
+	/**
+	 * Mask used to compute index of a bucket from a tick.
+	 */
+	private final int mask;
+
+	/**
+	 * Time at which this timer has been created, as returned by {@link System#nanoTime()}. All
+	 * deadlines are relative to this time.
+	 */
+	private final long startTime;
+
+	/**
+	 * Tasks scheduled since the last tick which have not been moved into the wheel yet.
+	 */
+	private final Queue<Task> scheduledTasks = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Tasks canceled since the last tick which have not been removed from the wheel yet.
+	 */
+	private final Queue<Task> canceledTasks = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Count of tasks which have been scheduled and have neither expired nor been canceled.
+	 */
+	private final AtomicInteger pendingCount = new AtomicInteger();
+
+	/**
+	 * Boolean flag indicating whether the worker thread has been started.
+	 */
+	private final AtomicBoolean started = new AtomicBoolean();
+
+	/**
+	 * Worker thread expiring the tasks. Created lazily when the first task is scheduled.
+	 */
+	private volatile Thread worker;
+
+	/**
+	 * Boolean flag indicating whether the worker thread is parked because there are no pending
+	 * tasks.
+	 */
+	private volatile boolean idle;
+
+	/**
+	 * Boolean flag indicating whether this timer has been stopped.
+	 */
+	private volatile boolean stopped;
+
+	/**
+	 * The current tick. Accessed only by the worker thread.
+	 */
+	private long tick;
+
+	/*
+	 * Constructors ================================================================================
+	 */
+
+	/**
+	 * Creates a new instance of WebSocketTimer with the specified wheel parameters. The worker
+	 * thread is started once the first task is scheduled.
+	 *
+	 * @param tickDuration Duration of a single tick, that is the resolution of the timer.
+	 * @param unit         Unit of the tick duration.
+	 * @param wheelSize    Count of buckets of the wheel. Rounded up to a power of two.
+	 * @throws IllegalArgumentException If the tick duration or wheel size is not positive.
+	 */
+	WebSocketTimer(final long tickDuration, @Nonnull final TimeUnit unit, final int wheelSize) {
+		if (tickDuration <= 0 || wheelSize <= 0 || wheelSize > 1 << 30) {
+			throw new IllegalArgumentException("Tick duration and wheel size must be positive.");
+		}
+		this.tickDuration = unit.toNanos(tickDuration);
+		int size = 1;
+		while (size < wheelSize) {
+			size <<= 1;
+		}
+		this.wheel = new Bucket[size];
+		for (int i = 0; i < size; i++) {
+			this.wheel[i] = new Bucket();
+		}
+		this.mask = size - 1;
+		this.startTime = System.nanoTime();
+	}
+
+	/*
+	 * Methods =====================================================================================
+	 */
+
+	/**
+	 * Returns the timer shared by all adapters.
+	 *
+	 * @return The shared timer.
+	 */
+	@Nonnull static WebSocketTimer shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Schedules the specified <var>task</var> to be run once after the specified <var>delay</var>.
+	 *
+	 * @param task  The task to be run.
+	 * @param delay The delay after which to run the task.
+	 * @param unit  Unit of the delay.
+	 * @return Handle that may be used to cancel the task.
+	 * @throws IllegalStateException If this timer has been already stopped.
+	 */
+	@Nonnull Timeout schedule(@Nonnull final Runnable task, final long delay, @Nonnull final TimeUnit unit) {
+		if (stopped) throw new IllegalStateException("Timer has been already stopped.");
+		final Task scheduledTask = new Task(this, task, System.nanoTime() - startTime + Math.max(0, unit.toNanos(delay)));
+		this.pendingCount.incrementAndGet();
+		this.scheduledTasks.add(scheduledTask);
+		if (started.compareAndSet(false, true)) {
+			final Thread thread = new Thread(this::run, THREAD_NAME);
+			thread.setDaemon(true);
+			this.worker = thread;
+			thread.start();
+		} else if (idle) {
+			LockSupport.unpark(worker);
+		}
+		return scheduledTask;
+	}
+
+	/**
+	 * Same as {@link #schedule(Runnable, long, TimeUnit)}, but the specified <var>task</var> is run
+	 * via the {@link #blockingExecutor()} once the delay elapses, so it may block. Canceling of the
+	 * returned timeout has no effect once the task has been dispatched to the executor.
+	 *
+	 * @param task  The task to be run.
+	 * @param delay The delay after which to run the task.
+	 * @param unit  Unit of the delay.
+	 * @return Handle that may be used to cancel the task.
+	 * @throws IllegalStateException If this timer has been already stopped.
+	 */
+	@Nonnull Timeout scheduleBlocking(@Nonnull final Runnable task, final long delay, @Nonnull final TimeUnit unit) {
+		return schedule(() -> BLOCKING_EXECUTOR.execute(task), delay, unit);
+	}
+
+	/**
+	 * Returns the executor which should be used by timer tasks to run work which may block.
+	 *
+	 * @return The shared blocking executor.
+	 */
+	@Nonnull static Executor blockingExecutor() {
+		return BLOCKING_EXECUTOR;
+	}
+
+	/**
+	 * Returns the count of tasks which have been scheduled and have neither run nor been canceled.
+	 *
+	 * @return Pending tasks count.
+	 */
+	int getPendingCount() {
+		return pendingCount.get();
+	}
+
+	/**
+	 * Stops this timer. Pending tasks will not be run and no more tasks may be scheduled.
+	 */
+	void stop() {
+		this.stopped = true;
+		final Thread thread = worker;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+	}
+
+	/**
+	 * Runs the worker loop which expires the bucket of each elapsed tick.
+	 */
+	private void run() {
+		while (!stopped) {
+			final long currentTime = awaitNextTick();
+			if (currentTime == -1) {
+				break;
+			}
+			removeCanceledTasks();
+			transferScheduledTasks();
+			this.wheel[(int) (tick & mask)].expireTasks(currentTime);
+			this.tick++;
+		}
+	}
+
+	/**
+	 * Waits until the current tick elapses. While there are no pending tasks, parks the worker
+	 * thread until a new task is scheduled and then continues with the tick at that time.
+	 *
+	 * @return The current time relative to {@link #startTime} or {@code -1} if this timer has been
+	 * stopped while waiting.
+	 */
+	private long awaitNextTick() {
+		if (pendingCount.get() == 0) {
+			removeCanceledTasks();
+			this.idle = true;
+			while (pendingCount.get() == 0 && !stopped) {
+				LockSupport.park(this);
+			}
+			this.idle = false;
+			this.tick = Math.max(tick, (System.nanoTime() - startTime) / tickDuration);
+		}
+		final long deadline = tickDuration * (tick + 1);
+		while (!stopped) {
+			final long currentTime = System.nanoTime() - startTime;
+			if (currentTime >= deadline) {
+				return currentTime;
+			}
+			LockSupport.parkNanos(this, deadline - currentTime);
+		}
+		return -1;
+	}
+
+	/**
+	 * Moves the tasks scheduled since the last tick into the buckets of the wheel.
+	 */
+	private void transferScheduledTasks() {
+		for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+			final Task task = scheduledTasks.poll();
+			if (task == null) {
+				return;
+			}
+			if (task.state != Task.STATE_PENDING) {
+				continue;
+			}
+			final long taskTick = task.deadline / tickDuration;
+			task.remainingRounds = (taskTick - tick) / wheel.length;
+			this.wheel[(int) (Math.max(taskTick, tick) & mask)].add(task);
+		}
+	}
+
+	/**
+	 * Removes the tasks canceled since the last tick from the buckets of the wheel.
+	 */
+	private void removeCanceledTasks() {
+		Task task;
+		while ((task = canceledTasks.poll()) != null) {
+			if (task.bucket != null) {
+				task.bucket.remove(task);
+			}
+		}
+	}
+
+	/*
+	 * Inner classes ===============================================================================
+	 */
+
+	/**
+	 * A task scheduled on the timer.
+	 */
+	private static final class Task implements Timeout {
+
+		/**
+		 * State of a task which is waiting to be run.
+		 */
+		static final int STATE_PENDING = 0;
+
+		/**
+		 * State of a task which has been canceled.
+		 */
+		static final int STATE_CANCELED = 1;
+
+		/**
+		 * State of a task which has expired and has been run.
+		 */
+		static final int STATE_EXPIRED = 2;
+
+		/**
+		 * Updater used to change {@link #state} atomically without an atomic object per task.
+		 */
+		private static final AtomicIntegerFieldUpdater<Task> STATE_UPDATER = AtomicIntegerFieldUpdater.newUpdater(Task.class, "state");
+
+		/**
+		 * Timer on which is this task scheduled.
+		 */
+		final WebSocketTimer timer;
+
+		/**
+		 * The task to be run.
+		 */
+		final Runnable runnable;
+
+		/**
+		 * Time relative to the timer's start time at which should be this task run.
+		 */
+		final long deadline;
+
+		/**
+		 * Current state of this task.
+		 */
+		volatile int state;
+
+		/**
+		 * Count of wheel rounds remaining until the deadline of this task. Accessed only by
+		 * the worker thread.
+		 */
+		long remainingRounds;
+
+		/**
+		 * Bucket in which is this task stored. Accessed only by the worker thread.
+		 */
+		Bucket bucket;
+
+		/**
+		 * Previous and next task in the {@link #bucket}. Accessed only by the worker thread.
+		 */
+		Task previous, next;
+
+		/**
+		 * Creates a new instance of Task for the specified <var>runnable</var>.
+		 *
+		 * @param timer    Timer on which is the task scheduled.
+		 * @param runnable The task to be run.
+		 * @param deadline Time relative to the timer's start time at which should be the task run.
+		 */
+		Task(final WebSocketTimer timer, final Runnable runnable, final long deadline) {
+			this.timer = timer;
+			this.runnable = runnable;
+			this.deadline = deadline;
+		}
+
+		/**
+		 */
+		@Override public void cancel() {
+			if (STATE_UPDATER.compareAndSet(this, STATE_PENDING, STATE_CANCELED)) {
+				this.timer.pendingCount.decrementAndGet();
+				this.timer.canceledTasks.add(this);
+			}
+		}
+
+		/**
+		 * Runs this task unless it has been canceled. Any error thrown by the task is passed to the
+		 * uncaught exception handler of the worker thread, which keeps running.
+		 */
+		void expire() {
+			if (STATE_UPDATER.compareAndSet(this, STATE_PENDING, STATE_EXPIRED)) {
+				this.timer.pendingCount.decrementAndGet();
+				try {
+					this.runnable.run();
+				} catch (Throwable error) {
+					// A failing task must not stop the timer, so the error is only reported.
+					final Thread worker = Thread.currentThread();
+					worker.getUncaughtExceptionHandler().uncaughtException(worker, error);
+				}
+			}
+		}
+	}
+
+	/**
+	 * A bucket of the wheel holding a doubly linked list of tasks.
+	 */
+	private static final class Bucket {
+
+		/**
+		 * First and last task in this bucket.
+		 */
+		private Task head, tail;
+
+		/**
+		 * Adds the specified <var>task</var> at the end of this bucket.
+		 *
+		 * @param task The task to be added.
+		 */
+		void add(final Task task) {
+			task.bucket = this;
+			if (head == null) {
+				this.head = task;
+			} else {
+				this.tail.next = task;
+				task.previous = tail;
+			}
+			this.tail = task;
+		}
+
+		/**
+		 * Removes the specified <var>task</var> from this bucket.
+		 *
+		 * @param task The task to be removed.
+		 */
+		void remove(final Task task) {
+			if (task.previous == null) {
+				this.head = task.next;
+			} else {
+				task.previous.next = task.next;
+			}
+			if (task.next == null) {
+				this.tail = task.previous;
+			} else {
+				task.next.previous = task.previous;
+			}
+			task.previous = null;
+			task.next = null;
+			task.bucket = null;
+		}
+
+		/**
+		 * Runs all tasks of this bucket whose deadline has been reached and decrements remaining
+		 * rounds of the others.
+		 *
+		 * @param currentTime The current time relative to the timer's start time.
+		 */
+		void expireTasks(final long currentTime) {
+			Task task = head;
+			while (task != null) {
+				final Task next = task.next;
+				if (task.state != Task.STATE_PENDING) {
+					remove(task);
+				} else if (task.remainingRounds <= 0 && task.deadline <= currentTime) {
+					remove(task);
+					task.expire();
+				} else if (task.remainingRounds > 0) {
+					task.remainingRounds--;
+				}
+				task = next;
+			}
+		}
+	}
+}
\ No newline at end of file
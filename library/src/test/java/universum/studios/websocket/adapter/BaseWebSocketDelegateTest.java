@@ -22,14 +22,28 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
 
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
 
 /**
  * @author Martin Albedinsky
@@ -165,12 +179,202 @@ public final class BaseWebSocketDelegateTest {
 	    verifyNoMoreInteractions(mockListener);
 	}
 
+    @Test public void testNotifyControlFrameReceived() {
+	    // Arrange:
+	    final BaseWebSocketDelegate delegate = new TestDelegate();
+	    final WebSocketDelegate.OnIncomingFrameListener mockListener = mock(WebSocketDelegate.OnIncomingFrameListener.class);
+	    final WebSocketDelegate.OnControlFrameListener mockControlListener = mock(WebSocketDelegate.OnControlFrameListener.class);
+	    delegate.registerOnIncomingFrameListener(mockListener);
+	    delegate.registerOnControlFrameListener(mockControlListener);
+	    delegate.setDispatchExecutor(Executors.newSingleThreadExecutor());
+	    final WebSocketDelegate.Frame frame = new WebSocketFrame.Builder().payload(new byte[0]).opcode(WebSocketDelegate.Frame.OPCODE_PONG).build();
+	    // Act:
+	    delegate.notifyFrameReceived(frame);
+	    // Assert:
+	    verify(mockControlListener).onControlFrameReceived(frame);
+	    verifyZeroInteractions(mockListener);
+	    delegate.unregisterOnControlFrameListener(mockControlListener);
+	    delegate.notifyFrameReceived(frame);
+	    verifyNoMoreInteractions(mockControlListener);
+    }
+
     @Test public void testNotifyReceiveFrameWithoutRegisteredListeners() {
 	    // Act:
     	// Only ensure that the delegate does cause any troubles.
 	    new TestDelegate().notifyFrameReceived(mock(WebSocketDelegate.Frame.class));
 	}
 
+    @Test public void testUnregisterOnIncomingFrameListenerDuringDispatch() {
+	    // Arrange:
+	    final BaseWebSocketDelegate delegate = new TestDelegate();
+	    final WebSocketDelegate.OnIncomingFrameListener secondMockListener = mock(WebSocketDelegate.OnIncomingFrameListener.class);
+	    final WebSocketDelegate.OnIncomingFrameListener firstListener = new WebSocketDelegate.OnIncomingFrameListener() {
+
+		    @Override public void onFrameReceived(@Nonnull final WebSocketDelegate.Frame frame) {
+			    delegate.unregisterOnIncomingFrameListener(this);
+			    delegate.unregisterOnIncomingFrameListener(secondMockListener);
+		    }
+	    };
+	    delegate.registerOnIncomingFrameListener(firstListener);
+	    delegate.registerOnIncomingFrameListener(secondMockListener);
+	    final WebSocketDelegate.Frame mockFrame = mock(WebSocketDelegate.Frame.class);
+	    // Act:
+	    delegate.notifyFrameReceived(mockFrame);
+	    delegate.notifyFrameReceived(mockFrame);
+	    // Assert:
+	    verify(secondMockListener).onFrameReceived(mockFrame);
+	    verifyNoMoreInteractions(secondMockListener);
+	}
+
+    @Test public void testDispatchExecutor() {
+	    // Arrange:
+	    final BaseWebSocketDelegate delegate = new TestDelegate();
+	    final Executor executor = Runnable::run;
+	    // Act + Assert:
+	    assertThat(delegate.getDispatchExecutor(), is(nullValue()));
+	    assertThat(delegate.getDispatchQueueCapacity(), is(BaseWebSocketDelegate.DEFAULT_DISPATCH_QUEUE_CAPACITY));
+	    delegate.setDispatchExecutor(executor);
+	    delegate.setDispatchQueueCapacity(16);
+	    assertThat(delegate.getDispatchExecutor(), is(executor));
+	    assertThat(delegate.getDispatchQueueCapacity(), is(16));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDispatchQueueCapacityNotPositive() {
+	    // Act:
+	    new TestDelegate().setDispatchQueueCapacity(0);
+    }
+
+    @Test public void testNotifyFrameReceivedViaExecutor() throws Exception {
+	    // Arrange:
+	    final BaseWebSocketDelegate delegate = new TestDelegate();
+	    final ExecutorService executor = Executors.newFixedThreadPool(4);
+	    final int framesCount = 1000;
+	    final List<Integer> firstReceived = Collections.synchronizedList(new ArrayList<>());
+	    final List<Integer> secondReceived = Collections.synchronizedList(new ArrayList<>());
+	    final CountDownLatch latch = new CountDownLatch(framesCount * 2);
+	    delegate.registerOnIncomingFrameListener(frame -> {
+		    firstReceived.add((int) frame.getPayload()[0] & 0xff | (frame.getPayload()[1] & 0xff) << 8);
+		    latch.countDown();
+	    });
+	    delegate.setDispatchExecutor(executor);
+	    delegate.setDispatchQueueCapacity(8);
+	    delegate.registerOnIncomingFrameListener(frame -> {
+		    secondReceived.add((int) frame.getPayload()[0] & 0xff | (frame.getPayload()[1] & 0xff) << 8);
+		    latch.countDown();
+	    });
+	    // Act:
+	    for (int i = 0; i < framesCount; i++) {
+		    delegate.notifyFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{(byte) i, (byte) (i >> 8)}).build());
+	    }
+	    // Assert:
+	    assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+	    executor.shutdown();
+	    for (int i = 0; i < framesCount; i++) {
+		    assertThat(firstReceived.get(i), is(i));
+		    assertThat(secondReceived.get(i), is(i));
+	    }
+    }
+
+    @Test public void testNotifyFrameReceivedRecordsDispatchTime() throws Exception {
+	    // Arrange:
+	    final BaseWebSocketDelegate delegate = new TestDelegate();
+	    final WebSocketMetrics metrics = new WebSocketMetrics();
+	    final ExecutorService executor = Executors.newSingleThreadExecutor();
+	    final CountDownLatch latch = new CountDownLatch(1);
+	    delegate.setMetrics(metrics);
+	    delegate.registerOnIncomingFrameListener(mock(WebSocketDelegate.OnIncomingFrameListener.class));
+	    delegate.setDispatchExecutor(executor);
+	    delegate.registerOnIncomingFrameListener(frame -> latch.countDown());
+	    // Act:
+	    delegate.notifyFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{1}).build());
+	    // Assert:
+	    assertThat(delegate.getMetrics(), is(metrics));
+	    assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+	    executor.shutdown();
+	    assertThat(executor.awaitTermination(5, TimeUnit.SECONDS), is(true));
+	    assertThat(metrics.getDispatchNanos().getCount(), is(2L));
+    }
+
+    @Test public void testNotifyFrameReceivedViaExecutorBlocksWhenQueueIsFull() throws Exception {
+	    // Arrange:
+	    final BaseWebSocketDelegate delegate = new TestDelegate();
+	    final List<Runnable> tasks = new ArrayList<>();
+	    delegate.setDispatchExecutor(tasks::add);
+	    delegate.setDispatchQueueCapacity(1);
+	    final WebSocketDelegate.OnIncomingFrameListener mockListener = mock(WebSocketDelegate.OnIncomingFrameListener.class);
+	    delegate.registerOnIncomingFrameListener(mockListener);
+	    final WebSocketDelegate.Frame mockFrame = mock(WebSocketDelegate.Frame.class);
+	    when(mockFrame.getPayloadBuffer()).thenReturn(ByteBuffer.allocate(0));
+	    delegate.notifyFrameReceived(mockFrame);
+	    final Thread producer = new Thread(() -> delegate.notifyFrameReceived(mockFrame));
+	    // Act:
+	    producer.start();
+	    // Assert:
+	    final long deadline = System.currentTimeMillis() + 5000;
+	    while (producer.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+		    Thread.sleep(1);
+	    }
+	    assertThat(producer.getState(), is(Thread.State.WAITING));
+	    verifyZeroInteractions(mockListener);
+	    assertThat(tasks.size(), is(1));
+	    tasks.get(0).run();
+	    producer.join(5000);
+	    assertThat(producer.isAlive(), is(false));
+	    // The second frame may have been queued after the first run has drained the queue.
+	    for (int i = 1; i < tasks.size(); i++) {
+		    tasks.get(i).run();
+	    }
+	    verify(mockListener, times(2)).onFrameReceived(mockFrame);
+    }
+
+    @Test public void testNotifyFrameReceivedViaExecutorCopiesDirectPayload() {
+	    // Arrange:
+	    final BaseWebSocketDelegate delegate = new TestDelegate();
+	    final List<Runnable> tasks = new ArrayList<>();
+	    final List<byte[]> payloads = new ArrayList<>();
+	    delegate.setDispatchExecutor(tasks::add);
+	    delegate.registerOnIncomingFrameListener(frame -> payloads.add(frame.getPayload()));
+	    final ByteBuffer direct = ByteBuffer.allocateDirect(2);
+	    direct.put(new byte[]{1, 2}).flip();
+	    // Act:
+	    delegate.notifyFrameReceived(new WebSocketFrame.Builder().payload(direct).build());
+	    direct.put(0, (byte) 9);
+	    tasks.get(0).run();
+	    // Assert:
+	    assertThat(payloads.get(0), is(new byte[]{1, 2}));
+    }
+
+    @Test public void testNotifyFrameReceivedViaExecutorRetainsPooledPayload() {
+	    // Arrange:
+	    final BaseWebSocketDelegate delegate = new TestDelegate();
+	    final List<Runnable> tasks = new ArrayList<>();
+	    delegate.setDispatchExecutor(tasks::add);
+	    delegate.registerOnIncomingFrameListener(mock(WebSocketDelegate.OnIncomingFrameListener.class));
+	    final BufferPool.Buffer buffer = new BufferPool().acquire(1);
+	    // Act:
+	    delegate.notifyFrameReceived(new WebSocketFrame.Builder().payload(buffer, 0, 1).build());
+	    buffer.release();
+	    // Assert:
+	    assertThat(buffer.refCount(), is(1));
+	    tasks.get(0).run();
+	    assertThat(buffer.refCount(), is(0));
+    }
+
+    @Test public void testUnregisterOnIncomingFrameListenerWithExecutor() {
+	    // Arrange:
+	    final BaseWebSocketDelegate delegate = new TestDelegate();
+	    delegate.setDispatchExecutor(Runnable::run);
+	    final WebSocketDelegate.OnIncomingFrameListener mockListener = mock(WebSocketDelegate.OnIncomingFrameListener.class);
+	    delegate.registerOnIncomingFrameListener(mockListener);
+	    delegate.registerOnIncomingFrameListener(mockListener);
+	    // Act:
+	    delegate.unregisterOnIncomingFrameListener(mockListener);
+	    // Assert:
+	    delegate.notifyFrameReceived(new WebSocketFrame.Builder().payload(new byte[0]).build());
+	    verifyZeroInteractions(mockListener);
+    }
+
 	private static class TestDelegate extends BaseWebSocketDelegate {
 
 		@Override public void connect(@Nonnull SocketAddress remoteAddress, int timeout) throws IOException {}
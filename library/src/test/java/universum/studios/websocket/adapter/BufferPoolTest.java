@@ -0,0 +1,157 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.IsSame.sameInstance;
+
+/**
+ * @author Martin Albedinsky
+ */
+public final class BufferPoolTest {
+
+	@Test public void testAcquire() {
+		// Arrange:
+		final BufferPool pool = new BufferPool(16, 64, 2);
+		// Act + Assert:
+		assertThat(pool.acquire(0).capacity(), is(16));
+		assertThat(pool.acquire(16).capacity(), is(16));
+		assertThat(pool.acquire(17).capacity(), is(32));
+		assertThat(pool.acquire(64).capacity(), is(64));
+		assertThat(pool.acquire(65).capacity(), is(65));
+		assertThat(pool.acquire(1).refCount(), is(1));
+	}
+
+	@Test public void testSizesRoundedUpToPowerOfTwo() {
+		// Arrange:
+		final BufferPool pool = new BufferPool(10, 100, 1);
+		// Act + Assert:
+		assertThat(pool.acquire(1).capacity(), is(16));
+		assertThat(pool.acquire(100).capacity(), is(128));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInstantiationWithInvalidSizes() {
+		// Act:
+		new BufferPool(64, 16, 1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAcquireNegativeCapacity() {
+		// Act:
+		new BufferPool().acquire(-1);
+	}
+
+	@Test public void testReleaseReturnsBufferIntoPool() {
+		// Arrange:
+		final BufferPool pool = new BufferPool(16, 64, 2);
+		final BufferPool.Buffer buffer = pool.acquire(20);
+		// Act:
+		final boolean released = buffer.release();
+		// Assert:
+		assertThat(released, is(true));
+		assertThat(pool.getPooledCount(), is(1));
+		assertThat(pool.acquire(32), is(sameInstance(buffer)));
+		assertThat(buffer.refCount(), is(1));
+		assertThat(pool.getPooledCount(), is(0));
+	}
+
+	@Test public void testReleaseUnpooledBuffer() {
+		// Arrange:
+		final BufferPool pool = new BufferPool(16, 64, 2);
+		final BufferPool.Buffer buffer = pool.acquire(100);
+		// Act:
+		buffer.release();
+		// Assert:
+		assertThat(pool.getPooledCount(), is(0));
+		assertThat(pool.acquire(100), is(not(sameInstance(buffer))));
+	}
+
+	@Test public void testPoolRetainsBoundedCountOfBuffers() {
+		// Arrange:
+		final BufferPool pool = new BufferPool(16, 64, 2);
+		final BufferPool.Buffer first = pool.acquire(16);
+		final BufferPool.Buffer second = pool.acquire(16);
+		final BufferPool.Buffer third = pool.acquire(16);
+		// Act:
+		first.release();
+		second.release();
+		third.release();
+		// Assert:
+		assertThat(pool.getPooledCount(), is(2));
+	}
+
+	@Test public void testRetainAndRelease() {
+		// Arrange:
+		final BufferPool pool = new BufferPool();
+		final BufferPool.Buffer buffer = pool.acquire(1);
+		// Act + Assert:
+		assertThat(buffer.retain(), is(sameInstance(buffer)));
+		assertThat(buffer.refCount(), is(2));
+		assertThat(buffer.release(), is(false));
+		assertThat(pool.getPooledCount(), is(0));
+		assertThat(buffer.release(), is(true));
+		assertThat(pool.getPooledCount(), is(1));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testReleaseWhenAlreadyReleased() {
+		// Arrange:
+		final BufferPool.Buffer buffer = new BufferPool().acquire(1);
+		buffer.release();
+		// Act:
+		buffer.release();
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRetainWhenAlreadyReleased() {
+		// Arrange:
+		final BufferPool.Buffer buffer = new BufferPool().acquire(1);
+		buffer.release();
+		// Act:
+		buffer.retain();
+	}
+
+	@Test public void testLeakDetection() throws Exception {
+		// Arrange:
+		final BufferPool pool = new BufferPool();
+		final List<Throwable> traces = new ArrayList<>();
+		pool.setLeakDetectionEnabled(true);
+		pool.setOnLeakListener((capacity, acquireTrace) -> traces.add(acquireTrace));
+		pool.acquire(1).release();
+		// Act:
+		pool.acquire(1);
+		for (int i = 0; i < 50 && pool.getLeakCount() == 0; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		// Assert:
+		assertThat(pool.isLeakDetectionEnabled(), is(true));
+		assertThat(pool.getLeakCount(), is(1L));
+		assertThat(traces.size(), is(1));
+	}
+}
\ No newline at end of file
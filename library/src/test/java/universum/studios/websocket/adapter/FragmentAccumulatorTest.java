@@ -0,0 +1,182 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+
+/**
+ * @author Martin Albedinsky
+ */
+public final class FragmentAccumulatorTest {
+
+	@Test public void testInstantiation() {
+		// Act:
+		final FragmentAccumulator accumulator = new FragmentAccumulator();
+		// Assert:
+		assertThat(accumulator.isEmpty(), is(true));
+		assertThat(accumulator.size(), is(0));
+	}
+
+	@Test public void testAppend() {
+		// Arrange:
+		final FragmentAccumulator accumulator = new FragmentAccumulator();
+		// Act:
+		accumulator.append(new byte[]{0, 1});
+		accumulator.append(new byte[0]);
+		accumulator.append(new byte[]{1, 0, 1});
+		// Assert:
+		assertThat(accumulator.isEmpty(), is(false));
+		assertThat(accumulator.size(), is(5));
+	}
+
+	@Test public void testDrainSingleChunk() {
+		// Arrange:
+		final FragmentAccumulator accumulator = new FragmentAccumulator();
+		final byte[] payload = new byte[]{0, 1, 0, 1};
+		accumulator.append(payload);
+		// Act:
+		final IncomingMessage message = accumulator.drain(null);
+		// Assert:
+		assertThat(message.data, is(sameInstance(payload)));
+		assertThat(message.length, is(payload.length));
+		assertThat(accumulator.isEmpty(), is(true));
+	}
+
+	@Test public void testDrainMultipleChunks() {
+		// Arrange:
+		final FragmentAccumulator accumulator = new FragmentAccumulator();
+		final byte[] expected = new byte[100];
+		for (int i = 0; i < expected.length; i++) {
+			expected[i] = (byte) i;
+		}
+		// Append more chunks than the initial capacity so the chunks array needs to grow.
+		for (int i = 0; i < expected.length; i += 10) {
+			final byte[] chunk = new byte[10];
+			System.arraycopy(expected, i, chunk, 0, chunk.length);
+			accumulator.append(chunk);
+		}
+		// Act:
+		final IncomingMessage message = accumulator.drain(null);
+		// Assert:
+		assertThat(toArray(message), is(expected));
+		assertThat(accumulator.isEmpty(), is(true));
+		assertThat(accumulator.size(), is(0));
+	}
+
+	@Test public void testAppendBuffer() {
+		// Arrange:
+		final FragmentAccumulator accumulator = new FragmentAccumulator();
+		final byte[] array = new byte[]{0, 1};
+		final ByteBuffer direct = ByteBuffer.allocateDirect(3);
+		direct.put(new byte[]{2, 3, 4}).flip();
+		// Act:
+		accumulator.append(ByteBuffer.wrap(array));
+		accumulator.append(direct);
+		accumulator.append(ByteBuffer.wrap(new byte[]{9, 5, 9}, 1, 1));
+		// Assert:
+		assertThat(direct.position(), is(0));
+		assertThat(accumulator.size(), is(6));
+		assertThat(toArray(accumulator.drain(null)), is(new byte[]{0, 1, 2, 3, 4, 5}));
+	}
+
+	@Test public void testAppendWholeArrayBufferWithoutCopy() {
+		// Arrange:
+		final FragmentAccumulator accumulator = new FragmentAccumulator();
+		final byte[] array = new byte[]{0, 1};
+		// Act:
+		accumulator.append(ByteBuffer.wrap(array));
+		// Assert:
+		assertThat(accumulator.drain(null).data, is(sameInstance(array)));
+	}
+
+	@Test public void testDrainWhenEmpty() {
+		// Act + Assert:
+		assertThat(new FragmentAccumulator().drain(null).length, is(0));
+	}
+
+	@Test public void testClear() {
+		// Arrange:
+		final FragmentAccumulator accumulator = new FragmentAccumulator();
+		accumulator.append(new byte[]{0, 1});
+		accumulator.append(new byte[]{0, 1});
+		// Act:
+		accumulator.clear();
+		// Assert:
+		assertThat(accumulator.isEmpty(), is(true));
+		assertThat(accumulator.drain(null).length, is(0));
+	}
+
+	@Test public void testAppendPooledFrame() {
+		// Arrange:
+		final BufferPool pool = new BufferPool();
+		final BufferPool.Buffer buffer = pool.acquire(4);
+		System.arraycopy(new byte[]{0, 1, 2, 3}, 0, buffer.array(), 0, 4);
+		final FragmentAccumulator accumulator = new FragmentAccumulator();
+		// Act:
+		accumulator.append(new WebSocketFrame.Builder().payload(buffer, 1, 2).build());
+		buffer.release();
+		// Assert:
+		assertThat(buffer.refCount(), is(1));
+		final IncomingMessage message = accumulator.drain(pool);
+		assertThat(message.data, is(sameInstance(buffer.array())));
+		assertThat(toArray(message), is(new byte[]{1, 2}));
+		message.release();
+		assertThat(buffer.refCount(), is(0));
+	}
+
+	@Test public void testDrainMultipleChunksIntoPooledBuffer() {
+		// Arrange:
+		final BufferPool pool = new BufferPool();
+		final BufferPool.Buffer buffer = pool.acquire(4);
+		System.arraycopy(new byte[]{0, 1, 2, 3}, 0, buffer.array(), 0, 4);
+		final FragmentAccumulator accumulator = new FragmentAccumulator();
+		accumulator.append(new WebSocketFrame.Builder().payload(buffer, 0, 2).build());
+		accumulator.append(new byte[]{4, 5});
+		buffer.release();
+		// Act:
+		final IncomingMessage message = accumulator.drain(pool);
+		// Assert:
+		assertThat(buffer.refCount(), is(0));
+		assertThat(toArray(message), is(new byte[]{0, 1, 4, 5}));
+		assertThat(message.data.length, is(BufferPool.DEFAULT_MIN_BUFFER_SIZE));
+		message.release();
+	}
+
+	@Test public void testClearReleasesPooledBuffers() {
+		// Arrange:
+		final BufferPool.Buffer buffer = new BufferPool().acquire(4);
+		final FragmentAccumulator accumulator = new FragmentAccumulator();
+		accumulator.append(new WebSocketFrame.Builder().payload(buffer, 0, 4).build());
+		// Act:
+		accumulator.clear();
+		// Assert:
+		assertThat(buffer.refCount(), is(1));
+	}
+
+	private static byte[] toArray(final IncomingMessage message) {
+		return Arrays.copyOfRange(message.data, message.offset, message.offset + message.length);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,181 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * @author Martin Albedinsky
+ */
+public final class KeepAliveTest {
+
+	@Test public void testPingPong() throws Exception {
+		// Arrange:
+		final PingDelegate delegate = new PingDelegate(true);
+		final WebSocketAdapter adapter = new WebSocketAdapter(delegate);
+		final WebSocketMetrics metrics = new WebSocketMetrics();
+		adapter.setMetrics(metrics);
+		final KeepAlive keepAlive = new KeepAlive(adapter, delegate, 10, 1000, TimeUnit.MILLISECONDS);
+		// Act:
+		keepAlive.start();
+		// Assert:
+		final WebSocketDelegate.Frame first = delegate.pings.poll(5, TimeUnit.SECONDS);
+		final WebSocketDelegate.Frame second = delegate.pings.poll(5, TimeUnit.SECONDS);
+		keepAlive.stop();
+		assertThat(first.getOpcode(), is(WebSocketDelegate.Frame.OPCODE_PING));
+		assertThat(first.getPayloadBuffer().getLong(), is(1L));
+		assertThat(second.getPayloadBuffer().getLong(), is(2L));
+		assertThat(adapter.getRoundTripNanos() >= 0, is(true));
+		assertThat(metrics.getRoundTripNanos().getCount() >= 1, is(true));
+		assertThat(delegate.closed, is(false));
+	}
+
+	@Test public void testPongTimeoutClosesAdapter() throws Exception {
+		// Arrange:
+		final PingDelegate delegate = new PingDelegate(false);
+		final WebSocketAdapter adapter = new WebSocketAdapter(delegate);
+		final InputStream input = adapter.getInputStream();
+		final CountDownLatch readerWoken = new CountDownLatch(1);
+		final Thread reader = new Thread(() -> {
+			try {
+				input.read();
+			} catch (IOException ignored) {
+				// Expected when the stream is destroyed while reading.
+			}
+			readerWoken.countDown();
+		});
+		reader.start();
+		final KeepAlive keepAlive = new KeepAlive(adapter, delegate, 10, 50, TimeUnit.MILLISECONDS);
+		// Act:
+		keepAlive.start();
+		// Assert:
+		assertThat(readerWoken.await(5, TimeUnit.SECONDS), is(true));
+		assertThat(delegate.closed, is(true));
+		assertThat(delegate.pings.size(), is(1));
+		assertThat(adapter.getRoundTripNanos(), is(-1L));
+	}
+
+	@Test public void testUnmatchedPongIsIgnored() throws Exception {
+		// Arrange:
+		final PingDelegate delegate = new PingDelegate(false);
+		final WebSocketAdapter adapter = new WebSocketAdapter(delegate);
+		final KeepAlive keepAlive = new KeepAlive(adapter, delegate, 10, 5000, TimeUnit.MILLISECONDS);
+		keepAlive.start();
+		delegate.pings.poll(5, TimeUnit.SECONDS);
+		// Act:
+		delegate.notifyFrameReceived(new WebSocketFrame.Builder()
+				.payload(new byte[]{0, 0, 0, 0, 0, 0, 0, 9})
+				.opcode(WebSocketDelegate.Frame.OPCODE_PONG)
+				.build()
+		);
+		// Assert:
+		assertThat(adapter.getRoundTripNanos(), is(-1L));
+		keepAlive.stop();
+		assertThat(delegate.closed, is(false));
+	}
+
+	@Test public void testStop() throws Exception {
+		// Arrange:
+		final PingDelegate delegate = new PingDelegate(true);
+		final KeepAlive keepAlive = new KeepAlive(new WebSocketAdapter(delegate), delegate, 10, 50, TimeUnit.MILLISECONDS);
+		keepAlive.start();
+		// Act:
+		keepAlive.stop();
+		// Assert:
+		assertThat(delegate.pings.poll(100, TimeUnit.MILLISECONDS) == null, is(true));
+	}
+
+	@Test public void testBlockedPingDoesNotBlockTimer() throws Exception {
+		// Arrange:
+		final CountDownLatch sendReleased = new CountDownLatch(1);
+		final PingDelegate delegate = new PingDelegate(false) {
+
+			@Override public void sendFrame(@Nonnull Frame frame) {
+				super.sendFrame(frame);
+				try {
+					sendReleased.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		final KeepAlive keepAlive = new KeepAlive(new WebSocketAdapter(delegate), delegate, 10, 5000, TimeUnit.MILLISECONDS);
+		keepAlive.start();
+		delegate.pings.poll(5, TimeUnit.SECONDS);
+		final CountDownLatch timerTaskRun = new CountDownLatch(1);
+		// Act:
+		WebSocketTimer.shared().schedule(timerTaskRun::countDown, 10, TimeUnit.MILLISECONDS);
+		// Assert:
+		assertThat(timerTaskRun.await(5, TimeUnit.SECONDS), is(true));
+		sendReleased.countDown();
+		keepAlive.stop();
+	}
+
+	static class PingDelegate extends BaseWebSocketDelegate {
+
+		final BlockingQueue<WebSocketDelegate.Frame> pings = new LinkedBlockingQueue<>();
+		final boolean answerPings;
+		volatile boolean closed;
+
+		PingDelegate(final boolean answerPings) {
+			this.answerPings = answerPings;
+		}
+
+		@Override public void connect(@Nonnull SocketAddress remoteAddress, int timeout) {}
+
+		@Override public boolean isConnected() {
+			return !closed;
+		}
+
+		@Override public void sendFrame(@Nonnull Frame frame) {
+			if (frame.getOpcode() == Frame.OPCODE_PING) {
+				this.pings.add(frame);
+				if (answerPings) {
+					notifyFrameReceived(new WebSocketFrame.Builder()
+							.payload(frame.getPayload())
+							.opcode(Frame.OPCODE_PONG)
+							.build()
+					);
+				}
+			}
+		}
+
+		@Override public void close() {
+			this.closed = true;
+			notifyDisconnected();
+		}
+
+		@Override public boolean isClosed() {
+			return closed;
+		}
+	}
+}
\ No newline at end of file
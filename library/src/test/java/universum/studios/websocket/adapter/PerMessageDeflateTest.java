@@ -0,0 +1,251 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Martin Albedinsky
+ */
+public final class PerMessageDeflateTest {
+
+	private static final byte[] JSON = (
+			"{\"type\":\"update\",\"items\":[" +
+					"{\"id\":1,\"name\":\"first\",\"value\":42}," +
+					"{\"id\":2,\"name\":\"second\",\"value\":42}," +
+					"{\"id\":3,\"name\":\"third\",\"value\":42}" +
+					"]}"
+	).getBytes(StandardCharsets.UTF_8);
+
+	@Test public void testTransformIncomingExampleFromSpecification() throws IOException {
+		// Arrange:
+		final PerMessageDeflate transform = new PerMessageDeflate(Deflater.DEFAULT_COMPRESSION, true, true, true);
+		final byte[] compressed = new byte[]{(byte) 0xf2, 0x48, (byte) 0xcd, (byte) 0xc9, (byte) 0xc9, 0x07, 0x00};
+		// Act:
+		final WebSocketDelegate.Frame frame = transform.transformIncoming(
+				new WebSocketFrame.Builder().payload(compressed).compressed(true).build()
+		);
+		// Assert:
+		assertThat(new String(frame.getPayload(), StandardCharsets.UTF_8), is("Hello"));
+		assertThat(frame.isFinal(), is(true));
+		assertThat(frame.isCompressed(), is(false));
+	}
+
+	@Test public void testTransformIncomingFragmentedExampleFromSpecification() throws IOException {
+		// Arrange:
+		final PerMessageDeflate transform = new PerMessageDeflate(Deflater.DEFAULT_COMPRESSION, true, true, true);
+		// Act:
+		final WebSocketDelegate.Frame first = transform.transformIncoming(
+				new WebSocketFrame.Builder().payload(new byte[]{(byte) 0xf2, 0x48, (byte) 0xcd}).isFinal(false).compressed(true).build()
+		);
+		final WebSocketDelegate.Frame second = transform.transformIncoming(
+				new WebSocketFrame.Builder().payload(new byte[]{(byte) 0xc9, (byte) 0xc9, 0x07, 0x00}).build()
+		);
+		// Assert:
+		final String text = new String(first.getPayload(), StandardCharsets.UTF_8) + new String(second.getPayload(), StandardCharsets.UTF_8);
+		assertThat(text, is("Hello"));
+	}
+
+	@Test public void testTransformIncomingUncompressed() throws IOException {
+		// Arrange:
+		final PerMessageDeflate transform = new PerMessageDeflate(Deflater.DEFAULT_COMPRESSION, true, true, true);
+		final WebSocketDelegate.Frame frame = new WebSocketFrame.Builder().payload(JSON).build();
+		// Act + Assert:
+		assertThat(transform.transformIncoming(frame), is(sameInstance(frame)));
+	}
+
+	@Test(expected = IOException.class)
+	public void testTransformIncomingCorrupted() throws IOException {
+		// Arrange:
+		final PerMessageDeflate transform = new PerMessageDeflate(Deflater.DEFAULT_COMPRESSION, true, true, true);
+		// Act:
+		transform.transformIncoming(new WebSocketFrame.Builder().payload(new byte[]{(byte) 0xff, (byte) 0xff, 0x01}).compressed(true).build());
+	}
+
+	@Test public void testRoundTripWithContextTakeover() throws IOException {
+		// Arrange:
+		final PerMessageDeflate sender = new PerMessageDeflate(Deflater.DEFAULT_COMPRESSION, true, true, true);
+		final PerMessageDeflate receiver = new PerMessageDeflate(Deflater.DEFAULT_COMPRESSION, true, true, true);
+		// Act:
+		final WebSocketDelegate.Frame first = sender.transformOutgoing(new WebSocketFrame.Builder().payload(JSON).build());
+		final WebSocketDelegate.Frame second = sender.transformOutgoing(new WebSocketFrame.Builder().payload(JSON).build());
+		// Assert:
+		assertThat(first.isCompressed(), is(true));
+		assertThat(first.getPayload().length < JSON.length, is(true));
+		// The second message refers to the first one via the taken over context.
+		assertThat(second.getPayload().length < first.getPayload().length, is(true));
+		assertThat(receiver.transformIncoming(first).getPayload(), is(JSON));
+		assertThat(receiver.transformIncoming(second).getPayload(), is(JSON));
+	}
+
+	@Test public void testRoundTripWithoutContextTakeover() throws IOException {
+		// Arrange:
+		final PerMessageDeflate sender = new PerMessageDeflate(Deflater.DEFAULT_COMPRESSION, true, false, true);
+		final PerMessageDeflate receiver = new PerMessageDeflate(Deflater.DEFAULT_COMPRESSION, true, true, false);
+		// Act:
+		final WebSocketDelegate.Frame first = sender.transformOutgoing(new WebSocketFrame.Builder().payload(JSON).build());
+		final WebSocketDelegate.Frame second = sender.transformOutgoing(new WebSocketFrame.Builder().payload(JSON).build());
+		// Assert:
+		assertThat(second.getPayload(), is(first.getPayload()));
+		assertThat(receiver.transformIncoming(first).getPayload(), is(JSON));
+		assertThat(receiver.transformIncoming(second).getPayload(), is(JSON));
+	}
+
+	@Test public void testRoundTripFragmented() throws IOException {
+		// Arrange:
+		final PerMessageDeflate sender = new PerMessageDeflate(Deflater.DEFAULT_COMPRESSION, true, true, true);
+		final PerMessageDeflate receiver = new PerMessageDeflate(Deflater.DEFAULT_COMPRESSION, true, true, true);
+		final byte[] large = new byte[64 * 1024];
+		for (int i = 0; i < large.length; i++) {
+			large[i] = JSON[i % JSON.length];
+		}
+		// Act:
+		final WebSocketDelegate.Frame first = sender.transformOutgoing(new WebSocketFrame.Builder().payload(large, 0, 1000).isFinal(false).build());
+		final WebSocketDelegate.Frame second = sender.transformOutgoing(new WebSocketFrame.Builder().payload(large, 1000, large.length - 1000).build());
+		// Assert:
+		assertThat(first.isCompressed(), is(true));
+		assertThat(first.isFinal(), is(false));
+		assertThat(second.isCompressed(), is(false));
+		final byte[] firstData = receiver.transformIncoming(first).getPayload();
+		final byte[] secondData = receiver.transformIncoming(second).getPayload();
+		final byte[] data = new byte[firstData.length + secondData.length];
+		System.arraycopy(firstData, 0, data, 0, firstData.length);
+		System.arraycopy(secondData, 0, data, firstData.length, secondData.length);
+		assertThat(data, is(large));
+	}
+
+	@Test public void testTransformOutgoingWithoutCompression() {
+		// Arrange:
+		final PerMessageDeflate transform = new PerMessageDeflate(Deflater.DEFAULT_COMPRESSION, false, true, true);
+		final WebSocketDelegate.Frame frame = new WebSocketFrame.Builder().payload(JSON).build();
+		// Act + Assert:
+		assertThat(transform.transformOutgoing(frame), is(sameInstance(frame)));
+	}
+
+	@Test public void testTransformIncomingWithinMaxMessageSize() throws IOException {
+		// Arrange:
+		final PerMessageDeflate sender = new PerMessageDeflate(Deflater.DEFAULT_COMPRESSION, true, true, true);
+		final PerMessageDeflate receiver = new PerMessageDeflate(Deflater.DEFAULT_COMPRESSION, true, true, true);
+		receiver.setMaxMessageSize(256 * 1024);
+		final byte[] large = new byte[256 * 1024];
+		// Act:
+		final WebSocketDelegate.Frame frame = receiver.transformIncoming(sender.transformOutgoing(new WebSocketFrame.Builder().payload(large).build()));
+		// Assert:
+		assertThat(frame.getPayload(), is(large));
+	}
+
+	@Test(expected = IOException.class)
+	public void testTransformIncomingExceedingMaxMessageSize() throws IOException {
+		// Arrange:
+		final PerMessageDeflate sender = new PerMessageDeflate(Deflater.DEFAULT_COMPRESSION, true, true, true);
+		final PerMessageDeflate receiver = new PerMessageDeflate(Deflater.DEFAULT_COMPRESSION, true, true, true);
+		receiver.setMaxMessageSize(256 * 1024 - 1);
+		final WebSocketDelegate.Frame frame = sender.transformOutgoing(new WebSocketFrame.Builder().payload(new byte[256 * 1024]).build());
+		// Act:
+		receiver.transformIncoming(frame);
+	}
+
+	@Test public void testTransformIncomingFragmentedExceedingMaxMessageSize() throws IOException {
+		// Arrange:
+		final PerMessageDeflate sender = new PerMessageDeflate(Deflater.DEFAULT_COMPRESSION, true, true, true);
+		final PerMessageDeflate receiver = new PerMessageDeflate(Deflater.DEFAULT_COMPRESSION, true, true, true);
+		receiver.setMaxMessageSize(1500);
+		final byte[] data = new byte[2000];
+		final WebSocketDelegate.Frame first = sender.transformOutgoing(new WebSocketFrame.Builder().payload(data, 0, 1000).isFinal(false).build());
+		final WebSocketDelegate.Frame second = sender.transformOutgoing(new WebSocketFrame.Builder().payload(data, 1000, 1000).build());
+		assertThat(receiver.transformIncoming(first).getPayload().length <= 1000, is(true));
+		// Act:
+		try {
+			receiver.transformIncoming(second);
+			fail("Expected IOException.");
+		} catch (IOException expected) {
+			// Assert:
+			assertThat(expected.getMessage(), is("Decompressed message exceeds the maximum size(1500)."));
+		}
+	}
+
+	@Test public void testDefaultMaxMessageSize() {
+		// Arrange:
+		final PerMessageDeflate transform = new PerMessageDeflate(Deflater.DEFAULT_COMPRESSION, true, true, true);
+		// Act + Assert:
+		assertThat(transform.getMaxMessageSize(), is(0));
+		transform.setDefaultMaxMessageSize(1024);
+		assertThat(transform.getMaxMessageSize(), is(1024));
+		transform.setMaxMessageSize(2048);
+		transform.setDefaultMaxMessageSize(1024);
+		assertThat(transform.getMaxMessageSize(), is(2048));
+	}
+
+	@Test public void testFactoryCreate() {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final PerMessageDeflate.Factory factory = new PerMessageDeflate.Factory();
+		// Act + Assert:
+		when(mockDelegate.getNegotiatedExtensions()).thenReturn("");
+		assertThat(factory.create(mockDelegate), is(nullValue()));
+		when(mockDelegate.getNegotiatedExtensions()).thenReturn("x-custom, permessage-deflate; client_no_context_takeover");
+		assertThat(factory.create(mockDelegate), is(notNullValue()));
+	}
+
+	@Test public void testFactoryCreateWithLimitedClientWindow() throws IOException {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		when(mockDelegate.getNegotiatedExtensions()).thenReturn("permessage-deflate; client_max_window_bits=10");
+		final FrameTransform transform = new PerMessageDeflate.Factory().create(mockDelegate);
+		final WebSocketDelegate.Frame frame = new WebSocketFrame.Builder().payload(JSON).build();
+		// Act + Assert:
+		assertThat(transform, is(notNullValue()));
+		assertThat(transform.transformOutgoing(frame), is(sameInstance(frame)));
+	}
+
+	@Test public void testFactoryCreateWithMaxMessageSize() {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		when(mockDelegate.getNegotiatedExtensions()).thenReturn("permessage-deflate");
+		// Act:
+		final PerMessageDeflate transform = (PerMessageDeflate) new PerMessageDeflate.Factory(Deflater.DEFAULT_COMPRESSION, 1024).create(mockDelegate);
+		// Assert:
+		assertThat(transform.getMaxMessageSize(), is(1024));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testFactoryWithNegativeMaxMessageSize() {
+		// Act:
+		new PerMessageDeflate.Factory(Deflater.DEFAULT_COMPRESSION, -1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testFactoryWithInvalidCompressionLevel() {
+		// Act:
+		new PerMessageDeflate.Factory(10);
+	}
+}
\ No newline at end of file
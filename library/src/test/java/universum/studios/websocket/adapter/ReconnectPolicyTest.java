@@ -0,0 +1,117 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * @author Martin Albedinsky
+ */
+public final class ReconnectPolicyTest {
+
+	@Test public void testDefaults() {
+		// Act:
+		final ReconnectPolicy policy = new ReconnectPolicy.Builder().build();
+		// Assert:
+		assertThat(policy.getInitialDelay(), is(500L));
+		assertThat(policy.getMaxDelay(), is(30000L));
+		assertThat(policy.getMultiplier(), is(2.0));
+		assertThat(policy.getJitter(), is(0.2));
+		assertThat(policy.getMaxAttempts(), is(0));
+		assertThat(policy.getMaxRetainedMessages(), is(256));
+		assertThat(policy.getMaxRetainedBytes(), is(1024 * 1024));
+	}
+
+	@Test public void testBuilder() {
+		// Act:
+		final ReconnectPolicy policy = new ReconnectPolicy.Builder()
+				.backoff(10, 100, 3)
+				.jitter(0.5)
+				.maxAttempts(4)
+				.retransmitBuffer(8, 1024)
+				.build();
+		// Assert:
+		assertThat(policy.getInitialDelay(), is(10L));
+		assertThat(policy.getMaxDelay(), is(100L));
+		assertThat(policy.getMultiplier(), is(3.0));
+		assertThat(policy.getJitter(), is(0.5));
+		assertThat(policy.getMaxAttempts(), is(4));
+		assertThat(policy.getMaxRetainedMessages(), is(8));
+		assertThat(policy.getMaxRetainedBytes(), is(1024));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBackoffWithMaxDelaySmallerThanInitialDelay() {
+		// Act:
+		new ReconnectPolicy.Builder().backoff(100, 10, 2);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBackoffWithMultiplierSmallerThanOne() {
+		// Act:
+		new ReconnectPolicy.Builder().backoff(10, 100, 0.5);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testJitterOutOfRange() {
+		// Act:
+		new ReconnectPolicy.Builder().jitter(1.5);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeMaxAttempts() {
+		// Act:
+		new ReconnectPolicy.Builder().maxAttempts(-1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRetransmitBufferWithoutSpace() {
+		// Act:
+		new ReconnectPolicy.Builder().retransmitBuffer(0, 1024);
+	}
+
+	@Test public void testComputeDelayWithoutJitter() {
+		// Arrange:
+		final ReconnectPolicy policy = new ReconnectPolicy.Builder().backoff(10, 100, 2).jitter(0).build();
+		final Random random = new Random(1);
+		// Act + Assert:
+		assertThat(policy.computeDelay(0, random), is(10L));
+		assertThat(policy.computeDelay(1, random), is(20L));
+		assertThat(policy.computeDelay(2, random), is(40L));
+		assertThat(policy.computeDelay(3, random), is(80L));
+		assertThat(policy.computeDelay(4, random), is(100L));
+		assertThat(policy.computeDelay(100, random), is(100L));
+	}
+
+	@Test public void testComputeDelayWithJitter() {
+		// Arrange:
+		final ReconnectPolicy policy = new ReconnectPolicy.Builder().backoff(100, 1000, 2).jitter(0.5).build();
+		final Random random = new Random(1);
+		// Act + Assert:
+		for (int i = 0; i < 100; i++) {
+			final long delay = policy.computeDelay(1, random);
+			assertThat(delay >= 100 && delay <= 200, is(true));
+		}
+	}
+}
\ No newline at end of file
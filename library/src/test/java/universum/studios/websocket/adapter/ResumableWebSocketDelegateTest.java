@@ -0,0 +1,442 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * @author Martin Albedinsky
+ */
+public final class ResumableWebSocketDelegateTest {
+
+	private static final ReconnectPolicy POLICY = new ReconnectPolicy.Builder().retransmitBuffer(2, 1024).build();
+	private static final ReconnectPolicy SMALL_POLICY = new ReconnectPolicy.Builder().retransmitBuffer(2, 2).build();
+
+	@Test public void testSendFrameWhileConnected() throws IOException {
+		// Arrange:
+		final RecordingDelegate connection = new RecordingDelegate();
+		final ResumableWebSocketDelegate delegate = new ResumableWebSocketDelegate(connection, POLICY);
+		delegate.resume(connection);
+		// Act:
+		delegate.sendFrame(createFrame(1, true));
+		// Assert:
+		assertThat(connection.sentFrames.size(), is(1));
+		assertThat(delegate.getRetainedMessageCount(), is(1));
+	}
+
+	@Test public void testSendFrameWhenSendFails() throws IOException {
+		// Arrange:
+		final RecordingDelegate connection = new RecordingDelegate();
+		final ResumableWebSocketDelegate delegate = new ResumableWebSocketDelegate(connection, POLICY);
+		delegate.resume(connection);
+		connection.failSends = true;
+		// Act:
+		delegate.sendFrame(createFrame(1, true));
+		// Assert:
+		assertThat(delegate.getRetainedMessageCount(), is(1));
+	}
+
+	@Test public void testSendFrameAsyncWhileSuspended() throws Exception {
+		// Arrange:
+		final ResumableWebSocketDelegate delegate = new ResumableWebSocketDelegate(new RecordingDelegate(), POLICY);
+		// Act:
+		delegate.sendFrameAsync(createFrame(1, true)).get();
+		// Assert:
+		assertThat(delegate.getRetainedMessageCount(), is(1));
+	}
+
+	@Test(expected = IOException.class)
+	public void testSendControlFrameWhileSuspended() throws IOException {
+		// Arrange:
+		final ResumableWebSocketDelegate delegate = new ResumableWebSocketDelegate(new RecordingDelegate(), POLICY);
+		// Act:
+		delegate.sendFrame(new WebSocketFrame.Builder().payload(new byte[0]).opcode(WebSocketDelegate.Frame.OPCODE_PING).build());
+	}
+
+	@Test public void testSendControlFrameIsNotRetained() throws IOException {
+		// Arrange:
+		final RecordingDelegate connection = new RecordingDelegate();
+		final ResumableWebSocketDelegate delegate = new ResumableWebSocketDelegate(connection, POLICY);
+		delegate.resume(connection);
+		// Act:
+		delegate.sendFrame(new WebSocketFrame.Builder().payload(new byte[0]).opcode(WebSocketDelegate.Frame.OPCODE_PING).build());
+		// Assert:
+		assertThat(connection.sentFrames.size(), is(1));
+		assertThat(delegate.getRetainedMessageCount(), is(0));
+	}
+
+	@Test public void testRetainedFrameIsCopy() throws IOException {
+		// Arrange:
+		final RecordingDelegate connection = new RecordingDelegate();
+		final ResumableWebSocketDelegate delegate = new ResumableWebSocketDelegate(connection, POLICY);
+		final byte[] payload = {1, 2, 3};
+		delegate.sendFrame(new WebSocketFrame.Builder().payload(payload).build());
+		payload[0] = 9;
+		// Act:
+		delegate.resume(connection);
+		// Assert:
+		assertThat(connection.sentFrames.get(0).getPayload()[0], is((byte) 1));
+	}
+
+	@Test public void testResumeReplaysRetainedFramesInOrder() throws IOException {
+		// Arrange:
+		final RecordingDelegate connection = new RecordingDelegate();
+		final ResumableWebSocketDelegate delegate = new ResumableWebSocketDelegate(connection, POLICY);
+		delegate.sendFrame(createFrame(1, false));
+		delegate.sendFrame(createFrame(2, true));
+		delegate.sendFrame(createFrame(3, false));
+		// Act:
+		delegate.resume(connection);
+		// Assert:
+		assertThat(delegate.isSuspended(), is(false));
+		assertThat(connection.sentFrames.size(), is(3));
+		assertThat(connection.sentFrames.get(0).getPayload()[0], is((byte) 1));
+		assertThat(connection.sentFrames.get(0).isFinal(), is(false));
+		assertThat(connection.sentFrames.get(1).getPayload()[0], is((byte) 2));
+		assertThat(connection.sentFrames.get(1).isFinal(), is(true));
+		assertThat(connection.sentFrames.get(2).getPayload()[0], is((byte) 3));
+		assertThat(delegate.getRetainedMessageCount(), is(1));
+	}
+
+	@Test public void testSuspend() throws IOException {
+		// Arrange:
+		final RecordingDelegate connection = new RecordingDelegate();
+		final ResumableWebSocketDelegate delegate = new ResumableWebSocketDelegate(connection, POLICY);
+		delegate.resume(connection);
+		// Act:
+		final WebSocketDelegate detached = delegate.suspend();
+		delegate.sendFrame(createFrame(1, true));
+		// Assert:
+		assertThat(detached == connection, is(true));
+		assertThat(delegate.isSuspended(), is(true));
+		assertThat(connection.sentFrames.isEmpty(), is(true));
+		assertThat(delegate.getRetainedMessageCount(), is(1));
+	}
+
+	@Test public void testAcknowledge() throws IOException {
+		// Arrange:
+		final RecordingDelegate connection = new RecordingDelegate();
+		final ResumableWebSocketDelegate delegate = new ResumableWebSocketDelegate(connection, POLICY);
+		delegate.sendFrame(createFrame(1, true));
+		delegate.sendFrame(createFrame(2, true));
+		// Act:
+		delegate.acknowledge(1);
+		// Assert:
+		assertThat(delegate.getRetainedMessageCount(), is(1));
+		delegate.resume(connection);
+		assertThat(connection.sentFrames.size(), is(1));
+		assertThat(connection.sentFrames.get(0).getPayload()[0], is((byte) 2));
+		delegate.acknowledge(10);
+		assertThat(delegate.getRetainedMessageCount(), is(0));
+	}
+
+	@Test public void testAcknowledgeIsCumulative() throws IOException {
+		// Arrange:
+		final ResumableWebSocketDelegate delegate = new ResumableWebSocketDelegate(new RecordingDelegate(), POLICY);
+		delegate.sendFrame(createFrame(1, true));
+		delegate.sendFrame(createFrame(2, true));
+		// Act:
+		delegate.acknowledge(2);
+		delegate.acknowledge(1);
+		// Assert:
+		assertThat(delegate.getRetainedMessageCount(), is(0));
+		assertThat(delegate.getMessageSequence(), is(2L));
+	}
+
+	@Test public void testAcknowledgeAfterDroppedMessage() throws IOException {
+		// Arrange:
+		final RecordingDelegate connection = new RecordingDelegate();
+		final ResumableWebSocketDelegate delegate = new ResumableWebSocketDelegate(connection, POLICY);
+		delegate.resume(connection);
+		delegate.sendFrame(createFrame(1, true));
+		delegate.sendFrame(createFrame(2, true));
+		delegate.sendFrame(createFrame(3, true));
+		// Act:
+		delegate.acknowledge(1);
+		// Assert:
+		assertThat(delegate.getRetainedMessageCount(), is(2));
+		delegate.acknowledge(2);
+		assertThat(delegate.getRetainedMessageCount(), is(1));
+		delegate.suspend();
+		connection.sentFrames.clear();
+		delegate.resume(connection);
+		assertThat(connection.sentFrames.size(), is(1));
+		assertThat(connection.sentFrames.get(0).getPayload()[0], is((byte) 3));
+	}
+
+	@Test public void testMessageSequence() throws IOException {
+		// Arrange:
+		final ResumableWebSocketDelegate delegate = new ResumableWebSocketDelegate(new RecordingDelegate(), POLICY);
+		// Act + Assert:
+		assertThat(delegate.getMessageSequence(), is(0L));
+		delegate.sendFrame(createFrame(1, false));
+		assertThat(delegate.getMessageSequence(), is(0L));
+		delegate.sendFrame(createFrame(2, true));
+		assertThat(delegate.getMessageSequence(), is(1L));
+	}
+
+	@Test public void testSuspendIsNotBlockedBySend() throws Exception {
+		// Arrange:
+		final CountDownLatch sendStarted = new CountDownLatch(1);
+		final CountDownLatch sendReleased = new CountDownLatch(1);
+		final RecordingDelegate connection = new RecordingDelegate() {
+
+			@Override public void sendFrame(@Nonnull Frame frame) throws IOException {
+				sendStarted.countDown();
+				try {
+					sendReleased.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				super.sendFrame(frame);
+			}
+		};
+		final ResumableWebSocketDelegate delegate = new ResumableWebSocketDelegate(connection, POLICY);
+		delegate.resume(connection);
+		final Thread sender = new Thread(() -> {
+			try {
+				delegate.sendFrame(createFrame(1, true));
+			} catch (IOException ignored) {
+				// Not expected.
+			}
+		});
+		sender.start();
+		assertThat(sendStarted.await(5, TimeUnit.SECONDS), is(true));
+		final CountDownLatch suspended = new CountDownLatch(1);
+		// Act:
+		new Thread(() -> {
+			delegate.suspend();
+			suspended.countDown();
+		}).start();
+		// Assert:
+		assertThat(suspended.await(5, TimeUnit.SECONDS), is(true));
+		assertThat(delegate.isSuspended(), is(true));
+		sendReleased.countDown();
+		sender.join(5000);
+		assertThat(delegate.getRetainedMessageCount(), is(1));
+	}
+
+	@Test public void testOldestMessageIsDroppedWhenFullWhileConnected() throws IOException {
+		// Arrange:
+		final RecordingDelegate connection = new RecordingDelegate();
+		final ResumableWebSocketDelegate delegate = new ResumableWebSocketDelegate(connection, POLICY);
+		delegate.resume(connection);
+		delegate.sendFrame(createFrame(1, true));
+		delegate.sendFrame(createFrame(2, true));
+		// Act:
+		delegate.sendFrame(createFrame(3, true));
+		// Assert:
+		assertThat(delegate.getRetainedMessageCount(), is(2));
+		delegate.suspend();
+		connection.sentFrames.clear();
+		delegate.resume(connection);
+		assertThat(connection.sentFrames.get(0).getPayload()[0], is((byte) 2));
+		assertThat(connection.sentFrames.get(1).getPayload()[0], is((byte) 3));
+	}
+
+	@Test public void testSendFrameBlocksWhenFullWhileSuspended() throws Exception {
+		// Arrange:
+		final RecordingDelegate connection = new RecordingDelegate();
+		final ResumableWebSocketDelegate delegate = new ResumableWebSocketDelegate(connection, POLICY);
+		delegate.sendFrame(createFrame(1, true));
+		delegate.sendFrame(createFrame(2, true));
+		final CountDownLatch sent = new CountDownLatch(1);
+		final Thread sender = new Thread(() -> {
+			try {
+				delegate.sendFrame(createFrame(3, true));
+				sent.countDown();
+			} catch (IOException ignored) {
+				// Not expected.
+			}
+		});
+		// Act:
+		sender.start();
+		// Assert:
+		assertThat(sent.await(50, TimeUnit.MILLISECONDS), is(false));
+		delegate.resume(connection);
+		assertThat(sent.await(5, TimeUnit.SECONDS), is(true));
+		assertThat(connection.sentFrames.size(), is(3));
+	}
+
+	@Test public void testSendFrameOfPartialMessageBlocksWhenFullWhileSuspended() throws Exception {
+		// Arrange:
+		final RecordingDelegate connection = new RecordingDelegate();
+		final ResumableWebSocketDelegate delegate = new ResumableWebSocketDelegate(connection, SMALL_POLICY);
+		delegate.sendFrame(createFrame(1, false));
+		delegate.sendFrame(createFrame(2, false));
+		final CountDownLatch sent = new CountDownLatch(1);
+		final Thread sender = new Thread(() -> {
+			try {
+				delegate.sendFrame(createFrame(3, false));
+				sent.countDown();
+			} catch (IOException ignored) {
+				// Not expected.
+			}
+		});
+		// Act:
+		sender.start();
+		// Assert:
+		assertThat(sent.await(50, TimeUnit.MILLISECONDS), is(false));
+		delegate.resume(connection);
+		assertThat(sent.await(5, TimeUnit.SECONDS), is(true));
+		assertThat(connection.sentFrames.size(), is(3));
+		assertThat(connection.sentFrames.get(2).getPayload()[0], is((byte) 3));
+	}
+
+	@Test public void testLargeMessageIsDroppedWhenFullWhileConnected() throws IOException {
+		// Arrange:
+		final RecordingDelegate connection = new RecordingDelegate();
+		final ResumableWebSocketDelegate delegate = new ResumableWebSocketDelegate(connection, SMALL_POLICY);
+		delegate.resume(connection);
+		// Act:
+		delegate.sendFrame(createFrame(1, false));
+		delegate.sendFrame(createFrame(2, false));
+		delegate.sendFrame(createFrame(3, false));
+		delegate.sendFrame(createFrame(4, true));
+		// Assert:
+		assertThat(connection.sentFrames.size(), is(4));
+		assertThat(delegate.getRetainedMessageCount(), is(0));
+		assertThat(delegate.getMessageSequence(), is(1L));
+		delegate.suspend();
+		connection.sentFrames.clear();
+		delegate.resume(connection);
+		assertThat(connection.sentFrames.size(), is(0));
+	}
+
+	@Test public void testDroppedMessageIsNotSentViaNewConnection() throws IOException {
+		// Arrange:
+		final RecordingDelegate connection = new RecordingDelegate();
+		final ResumableWebSocketDelegate delegate = new ResumableWebSocketDelegate(connection, SMALL_POLICY);
+		delegate.resume(connection);
+		delegate.sendFrame(createFrame(1, false));
+		delegate.sendFrame(createFrame(2, false));
+		delegate.sendFrame(createFrame(3, false));
+		delegate.suspend();
+		// Act:
+		delegate.sendFrame(createFrame(4, true));
+		final RecordingDelegate newConnection = new RecordingDelegate();
+		delegate.resume(newConnection);
+		delegate.sendFrame(createFrame(5, true));
+		// Assert:
+		assertThat(connection.sentFrames.size(), is(3));
+		assertThat(newConnection.sentFrames.size(), is(1));
+		assertThat(newConnection.sentFrames.get(0).getPayload()[0], is((byte) 5));
+		assertThat(delegate.getRetainedMessageCount(), is(1));
+		assertThat(delegate.getMessageSequence(), is(2L));
+	}
+
+	@Test public void testReleaseWakesUpBlockedSender() throws Exception {
+		// Arrange:
+		final ResumableWebSocketDelegate delegate = new ResumableWebSocketDelegate(new RecordingDelegate(), POLICY);
+		delegate.sendFrame(createFrame(1, true));
+		delegate.sendFrame(createFrame(2, true));
+		final CountDownLatch failed = new CountDownLatch(1);
+		final Thread sender = new Thread(() -> {
+			try {
+				delegate.sendFrame(createFrame(3, true));
+			} catch (IOException e) {
+				failed.countDown();
+			}
+		});
+		sender.start();
+		// Act:
+		Thread.sleep(20);
+		delegate.release();
+		// Assert:
+		assertThat(failed.await(5, TimeUnit.SECONDS), is(true));
+		assertThat(delegate.isSuspended(), is(false));
+		assertThat(delegate.resume(new RecordingDelegate()), is(false));
+	}
+
+	@Test public void testIncomingFramesOfCurrentConnection() {
+		// Arrange:
+		final RecordingDelegate connection = new RecordingDelegate();
+		final ResumableWebSocketDelegate delegate = new ResumableWebSocketDelegate(connection, POLICY);
+		final List<WebSocketDelegate.Frame> received = new CopyOnWriteArrayList<>();
+		delegate.registerOnIncomingFrameListener(received::add);
+		delegate.resume(connection);
+		// Act:
+		connection.notifyFrameReceived(createFrame(1, true));
+		delegate.suspend();
+		connection.notifyFrameReceived(createFrame(2, true));
+		// Assert:
+		assertThat(received.size(), is(1));
+	}
+
+	@Test public void testPausedReadingIsAppliedToNewConnection() {
+		// Arrange:
+		final RecordingDelegate connection = new RecordingDelegate();
+		final ResumableWebSocketDelegate delegate = new ResumableWebSocketDelegate(connection, POLICY);
+		delegate.pauseReading();
+		// Act:
+		delegate.resume(connection);
+		// Assert:
+		assertThat(connection.readingPaused, is(true));
+		delegate.resumeReading();
+		assertThat(connection.readingPaused, is(false));
+	}
+
+	private static WebSocketFrame createFrame(final int data, final boolean isFinal) {
+		return new WebSocketFrame.Builder().payload(new byte[]{(byte) data}).isFinal(isFinal).build();
+	}
+
+	private static class RecordingDelegate extends BaseWebSocketDelegate {
+
+		final List<Frame> sentFrames = new CopyOnWriteArrayList<>();
+		volatile boolean failSends;
+		volatile boolean readingPaused;
+
+		@Override public void connect(@Nonnull SocketAddress remoteAddress, int timeout) {}
+
+		@Override public boolean isConnected() {
+			return true;
+		}
+
+		@Override public void sendFrame(@Nonnull Frame frame) throws IOException {
+			if (failSends) throw new IOException("Send failed.");
+			this.sentFrames.add(frame);
+		}
+
+		@Override public void pauseReading() {
+			this.readingPaused = true;
+		}
+
+		@Override public void resumeReading() {
+			this.readingPaused = false;
+		}
+
+		@Override public void close() {}
+
+		@Override public boolean isClosed() {
+			return false;
+		}
+	}
+}
\ No newline at end of file
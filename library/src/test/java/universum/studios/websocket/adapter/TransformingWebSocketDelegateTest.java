@@ -0,0 +1,180 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import javax.annotation.Nonnull;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Martin Albedinsky
+ */
+public final class TransformingWebSocketDelegateTest {
+
+	@Test public void testInstantiation() {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		// Act:
+		final TransformingWebSocketDelegate delegate = new TransformingWebSocketDelegate(mockDelegate, new FrameTransform[0]);
+		// Assert:
+		verify(mockDelegate).registerOnIncomingFrameListener(delegate);
+	}
+
+	@Test public void testSendFrame() throws IOException {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final List<byte[]> payloads = new ArrayList<>();
+		doAnswer(invocation -> {
+			payloads.add(invocation.<WebSocketDelegate.Frame>getArgument(0).getPayload());
+			return null;
+		}).when(mockDelegate).sendFrame(any(WebSocketDelegate.Frame.class));
+		final TransformingWebSocketDelegate delegate = new TransformingWebSocketDelegate(
+				mockDelegate,
+				new FrameTransform[]{new AddingTransform(1), new AddingTransform(10)}
+		);
+		// Act:
+		delegate.sendFrame(new WebSocketFrame.Builder().payload(new byte[]{0, 1}).build());
+		// Assert:
+		assertThat(payloads.size(), is(1));
+		assertThat(payloads.get(0), is(new byte[]{11, 12}));
+	}
+
+	@Test public void testSendFrameAsync() {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		when(mockDelegate.sendFrameAsync(any(WebSocketDelegate.Frame.class))).thenReturn(CompletableFuture.completedFuture(null));
+		final TransformingWebSocketDelegate delegate = new TransformingWebSocketDelegate(mockDelegate, new FrameTransform[]{new AddingTransform(1)});
+		// Act:
+		final CompletableFuture<Void> future = delegate.sendFrameAsync(new WebSocketFrame.Builder().payload(new byte[]{0}).build());
+		// Assert:
+		assertThat(future.isDone(), is(true));
+		verify(mockDelegate).sendFrameAsync(any(WebSocketDelegate.Frame.class));
+	}
+
+	@Test public void testOnFrameReceived() {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final TransformingWebSocketDelegate delegate = new TransformingWebSocketDelegate(
+				mockDelegate,
+				new FrameTransform[]{new AddingTransform(1), new AddingTransform(10)}
+		);
+		final List<byte[]> payloads = new ArrayList<>();
+		delegate.registerOnIncomingFrameListener(frame -> payloads.add(frame.getPayload()));
+		// Act:
+		delegate.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{11, 12}).build());
+		// Assert:
+		assertThat(payloads.size(), is(1));
+		assertThat(payloads.get(0), is(new byte[]{0, 1}));
+	}
+
+	@Test public void testControlFramesAreNotTransformed() throws IOException {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final TransformingWebSocketDelegate delegate = new TransformingWebSocketDelegate(mockDelegate, new FrameTransform[]{new AddingTransform(1)});
+		final List<byte[]> payloads = new ArrayList<>();
+		delegate.registerOnIncomingFrameListener(frame -> payloads.add(frame.getPayload()));
+		final WebSocketDelegate.OnControlFrameListener mockListener = mock(WebSocketDelegate.OnControlFrameListener.class);
+		final WebSocketDelegate.Frame frame = new WebSocketFrame.Builder().payload(new byte[]{1}).opcode(WebSocketDelegate.Frame.OPCODE_PING).build();
+		// Act:
+		delegate.registerOnControlFrameListener(mockListener);
+		delegate.sendFrame(frame);
+		delegate.onFrameReceived(frame);
+		// Assert:
+		verify(mockDelegate).registerOnControlFrameListener(mockListener);
+		verify(mockDelegate).sendFrame(frame);
+		assertThat(payloads.get(0), is(new byte[]{1}));
+	}
+
+	@Test public void testOnFrameReceivedWhenTransformFails() throws IOException {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final FrameTransform failingTransform = new AddingTransform(0) {
+
+			@Override @Nonnull public WebSocketDelegate.Frame transformIncoming(@Nonnull final WebSocketDelegate.Frame frame) throws IOException {
+				throw new IOException();
+			}
+		};
+		final TransformingWebSocketDelegate delegate = new TransformingWebSocketDelegate(mockDelegate, new FrameTransform[]{failingTransform});
+		final WebSocketDelegate.OnIncomingFrameListener mockListener = mock(WebSocketDelegate.OnIncomingFrameListener.class);
+		delegate.registerOnIncomingFrameListener(mockListener);
+		// Act:
+		delegate.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{0}).build());
+		// Assert:
+		verify(mockDelegate).close();
+		verifyZeroInteractions(mockListener);
+	}
+
+	@Test public void testRelease() {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final AddingTransform transform = new AddingTransform(1);
+		final TransformingWebSocketDelegate delegate = new TransformingWebSocketDelegate(mockDelegate, new FrameTransform[]{transform});
+		// Act:
+		delegate.release();
+		delegate.release();
+		// Assert:
+		verify(mockDelegate).unregisterOnIncomingFrameListener(delegate);
+		assertThat(transform.releaseCount, is(1));
+		assertThat(delegate.sendFrameAsync(WebSocketDelegate.Frame.EMPTY).isCompletedExceptionally(), is(true));
+	}
+
+	private static class AddingTransform implements FrameTransform {
+
+		final int delta;
+		int releaseCount;
+
+		AddingTransform(final int delta) {
+			this.delta = delta;
+		}
+
+		@Override @Nonnull public WebSocketDelegate.Frame transformOutgoing(@Nonnull final WebSocketDelegate.Frame frame) {
+			return add(frame, delta);
+		}
+
+		@Override @Nonnull public WebSocketDelegate.Frame transformIncoming(@Nonnull final WebSocketDelegate.Frame frame) throws IOException {
+			return add(frame, -delta);
+		}
+
+		private static WebSocketDelegate.Frame add(final WebSocketDelegate.Frame frame, final int delta) {
+			final byte[] payload = frame.getPayload().clone();
+			for (int i = 0; i < payload.length; i++) {
+				payload[i] += delta;
+			}
+			return new WebSocketFrame.Builder().payload(payload).isFinal(frame.isFinal()).build();
+		}
+
+		@Override public void release() {
+			this.releaseCount++;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,400 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import javax.annotation.Nonnull;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Martin Albedinsky
+ */
+public final class WebSocketAdapterPoolTest {
+
+	private static final SocketAddress ENDPOINT = InetSocketAddress.createUnresolved("localhost", 8080);
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBuildWithMinIdleGreaterThanMaxTotal() {
+		// Act:
+		new WebSocketAdapterPool.Builder(new TestFactory()).minIdle(3).maxTotal(2).build();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBuildWithNegativeMinIdle() {
+		// Act:
+		new WebSocketAdapterPool.Builder(new TestFactory()).minIdle(-1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBuildWithoutMaxTotal() {
+		// Act:
+		new WebSocketAdapterPool.Builder(new TestFactory()).maxTotal(0);
+	}
+
+	@Test public void testLease() throws IOException {
+		// Arrange:
+		final TestFactory factory = new TestFactory();
+		final WebSocketAdapterPool pool = createPool(factory, 0, 2);
+		// Act:
+		final WebSocketAdapter adapter = pool.lease(ENDPOINT);
+		// Assert:
+		assertThat(adapter.isConnected(), is(true));
+		assertThat(factory.delegates.size(), is(1));
+		assertThat(pool.getTotalCount(ENDPOINT), is(1));
+		assertThat(pool.getIdleCount(ENDPOINT), is(0));
+		pool.close();
+	}
+
+	@Test public void testReleaseAndLeaseAgain() throws IOException {
+		// Arrange:
+		final TestFactory factory = new TestFactory();
+		final WebSocketAdapterPool pool = createPool(factory, 0, 2);
+		final WebSocketAdapter adapter = pool.lease(ENDPOINT);
+		// Act:
+		pool.release(adapter);
+		// Assert:
+		assertThat(pool.getIdleCount(ENDPOINT), is(1));
+		assertThat(pool.lease(ENDPOINT), is(adapter));
+		assertThat(factory.delegates.size(), is(1));
+		pool.close();
+	}
+
+	@Test public void testReleaseDisconnectedAdapter() throws IOException {
+		// Arrange:
+		final TestFactory factory = new TestFactory();
+		final WebSocketAdapterPool pool = createPool(factory, 0, 2);
+		final WebSocketAdapter adapter = pool.lease(ENDPOINT);
+		factory.delegates.get(0).drop();
+		// Act:
+		pool.release(adapter);
+		// Assert:
+		assertThat(pool.getIdleCount(ENDPOINT), is(0));
+		assertThat(pool.getTotalCount(ENDPOINT), is(0));
+		assertThat(pool.lease(ENDPOINT), is(not(adapter)));
+		pool.close();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testReleaseAdapterNotLeased() {
+		// Arrange:
+		final WebSocketAdapterPool pool = createPool(new TestFactory(), 0, 2);
+		// Act:
+		pool.release(new WebSocketAdapter(new PoolDelegate()));
+	}
+
+	@Test public void testInvalidate() throws IOException {
+		// Arrange:
+		final TestFactory factory = new TestFactory();
+		final WebSocketAdapterPool pool = createPool(factory, 0, 2);
+		final WebSocketAdapter adapter = pool.lease(ENDPOINT);
+		// Act:
+		pool.invalidate(adapter);
+		// Assert:
+		assertThat(adapter.isClosed(), is(true));
+		assertThat(pool.getTotalCount(ENDPOINT), is(0));
+		pool.close();
+	}
+
+	@Test public void testLeaseSkipsUnhealthyIdleAdapter() throws IOException {
+		// Arrange:
+		final TestFactory factory = new TestFactory();
+		final WebSocketAdapterPool pool = createPool(factory, 0, 2);
+		final WebSocketAdapter adapter = pool.lease(ENDPOINT);
+		pool.release(adapter);
+		factory.delegates.get(0).drop();
+		// Act:
+		final WebSocketAdapter leased = pool.lease(ENDPOINT);
+		// Assert:
+		assertThat(leased, is(not(adapter)));
+		assertThat(pool.getTotalCount(ENDPOINT), is(1));
+		pool.close();
+	}
+
+	@Test public void testLeaseTimesOutWhenMaxTotalReached() throws IOException {
+		// Arrange:
+		final WebSocketAdapterPool pool = new WebSocketAdapterPool.Builder(new TestFactory())
+				.maxTotal(1)
+				.leaseTimeout(20)
+				.healthCheckInterval(0)
+				.build();
+		pool.lease(ENDPOINT);
+		// Act:
+		try {
+			pool.lease(ENDPOINT);
+			fail("Expected SocketTimeoutException.");
+		} catch (SocketTimeoutException expected) {
+			// Assert:
+			assertThat(pool.getTotalCount(ENDPOINT), is(1));
+		}
+		pool.close();
+	}
+
+	@Test public void testLeaseWaitsForReleasedAdapter() throws Exception {
+		// Arrange:
+		final WebSocketAdapterPool pool = createPool(new TestFactory(), 0, 1);
+		final WebSocketAdapter adapter = pool.lease(ENDPOINT);
+		final List<WebSocketAdapter> leased = new CopyOnWriteArrayList<>();
+		final Thread leaser = new Thread(() -> {
+			try {
+				leased.add(pool.lease(ENDPOINT));
+			} catch (IOException ignored) {
+				// Not expected.
+			}
+		});
+		leaser.start();
+		Thread.sleep(20);
+		// Act:
+		pool.release(adapter);
+		// Assert:
+		leaser.join(5000);
+		assertThat(leased.size(), is(1));
+		assertThat(leased.get(0), is(adapter));
+		pool.close();
+	}
+
+	@Test public void testLeaseFailsWhenConnectFails() {
+		// Arrange:
+		final TestFactory factory = new TestFactory();
+		factory.refuseConnections.set(true);
+		final WebSocketAdapterPool pool = createPool(factory, 0, 1);
+		// Act:
+		try {
+			pool.lease(ENDPOINT);
+			fail("Expected IOException.");
+		} catch (IOException expected) {
+			// Assert:
+			assertThat(pool.getTotalCount(ENDPOINT), is(0));
+		}
+		pool.close();
+	}
+
+	@Test public void testFailedLeaseDoesNotCancelWarmUp() throws Exception {
+		// Arrange:
+		final TestFactory factory = new TestFactory();
+		final CountDownLatch connectGate = new CountDownLatch(1);
+		factory.connectGate = connectGate;
+		final WebSocketAdapterPool pool = createPool(factory, 1, 3);
+		final Thread warmUp = new Thread(() -> {
+			try {
+				pool.warmUp(ENDPOINT);
+			} catch (IOException ignored) {
+				// Checked by the idle count below.
+			}
+		});
+		warmUp.start();
+		assertThat(await(() -> factory.delegates.size() == 1), is(true));
+		factory.connectGate = null;
+		factory.refuseConnections.set(true);
+		try {
+			pool.lease(ENDPOINT);
+			fail("Expected IOException.");
+		} catch (IOException expected) {
+			// Expected as the connection is refused.
+		}
+		factory.refuseConnections.set(false);
+		// Act:
+		pool.checkHealth();
+		// Assert:
+		assertThat(pool.getTotalCount(ENDPOINT), is(1));
+		connectGate.countDown();
+		warmUp.join(5000);
+		assertThat(pool.getIdleCount(ENDPOINT), is(1));
+		assertThat(factory.delegates.size(), is(2));
+		pool.close();
+	}
+
+	@Test public void testWarmUp() throws IOException {
+		// Arrange:
+		final TestFactory factory = new TestFactory();
+		final WebSocketAdapterPool pool = createPool(factory, 3, 4);
+		// Act:
+		pool.warmUp(ENDPOINT);
+		// Assert:
+		assertThat(pool.getIdleCount(ENDPOINT), is(3));
+		assertThat(pool.getTotalCount(ENDPOINT), is(3));
+		pool.close();
+	}
+
+	@Test public void testLeaseReplenishesIdleAdapters() throws Exception {
+		// Arrange:
+		final TestFactory factory = new TestFactory();
+		final WebSocketAdapterPool pool = createPool(factory, 2, 4);
+		pool.warmUp(ENDPOINT);
+		// Act:
+		pool.lease(ENDPOINT);
+		// Assert:
+		assertThat(await(() -> pool.getIdleCount(ENDPOINT) == 2), is(true));
+		assertThat(pool.getTotalCount(ENDPOINT), is(3));
+		pool.close();
+	}
+
+	@Test public void testCheckHealthEvictsStaleAndUnhealthyAdapters() throws Exception {
+		// Arrange:
+		final TestFactory factory = new TestFactory();
+		final WebSocketAdapterPool pool = new WebSocketAdapterPool.Builder(factory)
+				.minIdle(1)
+				.maxTotal(4)
+				.maxIdleTime(10)
+				.healthCheckInterval(0)
+				.build();
+		final WebSocketAdapter first = pool.lease(ENDPOINT);
+		final WebSocketAdapter second = pool.lease(ENDPOINT);
+		final WebSocketAdapter third = pool.lease(ENDPOINT);
+		assertThat(await(() -> pool.getIdleCount(ENDPOINT) == 1), is(true));
+		pool.release(first);
+		pool.release(second);
+		pool.release(third);
+		factory.delegates.get(factory.delegates.size() - 1).drop();
+		Thread.sleep(20);
+		// Act:
+		pool.checkHealth();
+		// Assert:
+		assertThat(await(() -> pool.getIdleCount(ENDPOINT) == 1 && pool.getTotalCount(ENDPOINT) == 1), is(true));
+		assertThat(first.isClosed() || second.isClosed() || third.isClosed(), is(true));
+		pool.close();
+	}
+
+	@Test public void testCheckHealthReplenishesIdleAdapters() throws Exception {
+		// Arrange:
+		final TestFactory factory = new TestFactory();
+		final WebSocketAdapterPool pool = createPool(factory, 2, 4);
+		pool.warmUp(ENDPOINT);
+		factory.delegates.get(0).drop();
+		// Act:
+		pool.checkHealth();
+		// Assert:
+		assertThat(await(() -> pool.getIdleCount(ENDPOINT) == 2), is(true));
+		assertThat(factory.delegates.size(), is(3));
+		pool.close();
+	}
+
+	@Test public void testClose() throws IOException {
+		// Arrange:
+		final TestFactory factory = new TestFactory();
+		final WebSocketAdapterPool pool = createPool(factory, 0, 2);
+		final WebSocketAdapter idle = pool.lease(ENDPOINT);
+		final WebSocketAdapter leased = pool.lease(ENDPOINT);
+		pool.release(idle);
+		// Act:
+		pool.close();
+		// Assert:
+		assertThat(idle.isClosed(), is(true));
+		assertThat(leased.isClosed(), is(false));
+		pool.release(leased);
+		assertThat(leased.isClosed(), is(true));
+		assertThat(pool.getTotalCount(ENDPOINT), is(0));
+	}
+
+	@Test(expected = IOException.class)
+	public void testLeaseWhenClosed() throws IOException {
+		// Arrange:
+		final WebSocketAdapterPool pool = createPool(new TestFactory(), 0, 2);
+		pool.close();
+		// Act:
+		pool.lease(ENDPOINT);
+	}
+
+	private static WebSocketAdapterPool createPool(final TestFactory factory, final int minIdle, final int maxTotal) {
+		return new WebSocketAdapterPool.Builder(factory)
+				.minIdle(minIdle)
+				.maxTotal(maxTotal)
+				.healthCheckInterval(0)
+				.build();
+	}
+
+	private static boolean await(final BooleanSupplier condition) throws InterruptedException {
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		return condition.getAsBoolean();
+	}
+
+	private static final class TestFactory implements WebSocketAdapterPool.Factory {
+
+		final List<PoolDelegate> delegates = new CopyOnWriteArrayList<>();
+		final AtomicBoolean refuseConnections = new AtomicBoolean();
+		volatile CountDownLatch connectGate;
+
+		@Override @Nonnull public WebSocketAdapter createAdapter(@Nonnull SocketAddress endpoint) {
+			final PoolDelegate delegate = new PoolDelegate();
+			delegate.refuseConnections = refuseConnections.get();
+			delegate.connectGate = connectGate;
+			this.delegates.add(delegate);
+			return new WebSocketAdapter(delegate);
+		}
+	}
+
+	private static final class PoolDelegate extends BaseWebSocketDelegate {
+
+		volatile boolean refuseConnections;
+		volatile CountDownLatch connectGate;
+		volatile boolean connected;
+		volatile boolean closed;
+
+		@Override public void connect(@Nonnull SocketAddress remoteAddress, int timeout) throws IOException {
+			if (refuseConnections) throw new IOException("Connection refused.");
+			if (connectGate != null) {
+				try {
+					connectGate.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			this.connected = true;
+			notifyConnected();
+		}
+
+		@Override public boolean isConnected() {
+			return connected;
+		}
+
+		@Override public void sendFrame(@Nonnull Frame frame) {}
+
+		void drop() {
+			this.connected = false;
+			notifyDisconnected();
+		}
+
+		@Override public void close() {
+			this.closed = true;
+			drop();
+		}
+
+		@Override public boolean isClosed() {
+			return closed;
+		}
+	}
+}
\ No newline at end of file
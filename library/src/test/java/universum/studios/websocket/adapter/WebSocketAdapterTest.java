@@ -19,11 +19,22 @@
 package universum.studios.websocket.adapter;
 
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
 
 import javax.annotation.Nonnull;
 
@@ -32,6 +43,10 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsNot.not;
 import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -42,6 +57,8 @@ import static org.mockito.Mockito.when;
  */
 public class WebSocketAdapterTest {
 
+	private static final SocketAddress ENDPOINT = InetSocketAddress.createUnresolved("localhost", 8080);
+
 	@Test public void testOnConnectionListenerOnConnected() throws IOException {
 		// Arrange:
 		final TestDelegate delegate = new TestDelegate();
@@ -106,6 +123,303 @@ public class WebSocketAdapterTest {
 		verify(mockDelegate, times(2)).isConnected();
 	}
 
+	@Test public void testIncomingBufferLimits() throws IOException {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketAdapter adapter = new WebSocketAdapter(mockDelegate);
+		// Act:
+		adapter.setIncomingBufferLimits(10, 2048);
+		// Assert:
+		assertThat(adapter.getMaxIncomingMessages(), is(10));
+		assertThat(adapter.getMaxIncomingBytes(), is(2048));
+	}
+
+	@Test public void testMetrics() throws IOException {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketAdapter adapter = new WebSocketAdapter(mockDelegate);
+		final WebSocketMetrics metrics = new WebSocketMetrics();
+		when(mockDelegate.isConnected()).thenReturn(true);
+		// Act:
+		adapter.setMetrics(metrics);
+		final OutputStream outputStream = adapter.getOutputStream();
+		outputStream.write(new byte[]{0, 1});
+		outputStream.flush();
+		// Assert:
+		assertThat(adapter.getMetrics(), is(metrics));
+		assertThat(metrics.getFramesOut(), is(1L));
+		assertThat(metrics.getBytesOut(), is(2L));
+	}
+
+	@Test public void testKeepAlive() throws Exception {
+		// Arrange:
+		final KeepAliveTest.PingDelegate delegate = new KeepAliveTest.PingDelegate(true);
+		final WebSocketAdapter adapter = new WebSocketAdapter(delegate);
+		// Act:
+		adapter.setKeepAlive(10, 1000);
+		// Assert:
+		assertThat(adapter.getKeepAliveInterval(), is(10L));
+		assertThat(adapter.getKeepAliveTimeout(), is(1000L));
+		assertThat(delegate.pings.poll(5, TimeUnit.SECONDS) != null, is(true));
+		adapter.close();
+		Thread.sleep(20);
+		delegate.pings.clear();
+		Thread.sleep(50);
+		assertThat(delegate.pings.isEmpty(), is(true));
+	}
+
+	@Test public void testKeepAliveDefault() {
+		// Arrange:
+		final WebSocketAdapter adapter = new WebSocketAdapter(mock(WebSocketDelegate.class));
+		// Act + Assert:
+		assertThat(adapter.getKeepAliveInterval(), is(0L));
+		assertThat(adapter.getKeepAliveTimeout(), is(0L));
+		assertThat(adapter.getRoundTripNanos(), is(-1L));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testKeepAliveWithoutTimeout() {
+		// Act:
+		new WebSocketAdapter(mock(WebSocketDelegate.class)).setKeepAlive(1000, 0);
+	}
+
+	@Test public void testIncomingBufferLimitsDefault() {
+		// Arrange:
+		final WebSocketAdapter adapter = new WebSocketAdapter(mock(WebSocketDelegate.class));
+		// Act + Assert:
+		assertThat(adapter.getMaxIncomingMessages(), is(WebSocketInputStream.DEFAULT_MAX_QUEUED_MESSAGES));
+		assertThat(adapter.getMaxIncomingBytes(), is(WebSocketInputStream.DEFAULT_MAX_QUEUED_BYTES));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testIncomingBufferLimitsInvalid() {
+		// Act:
+		new WebSocketAdapter(mock(WebSocketDelegate.class)).setIncomingBufferLimits(0, 1024);
+	}
+
+	@Test public void testIncomingOverflowPolicy() throws IOException {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketAdapter adapter = new WebSocketAdapter(mockDelegate);
+		when(mockDelegate.isConnected()).thenReturn(true);
+		when(mockDelegate.isClosed()).thenReturn(false);
+		adapter.getInputStream();
+		// Act + Assert:
+		assertThat(adapter.getIncomingOverflowPolicy(), is(WebSocketAdapter.OverflowPolicy.BLOCK));
+		adapter.setIncomingOverflowPolicy(WebSocketAdapter.OverflowPolicy.DROP_OLDEST);
+		assertThat(adapter.getIncomingOverflowPolicy(), is(WebSocketAdapter.OverflowPolicy.DROP_OLDEST));
+	}
+
+	@Test public void testSoTimeout() throws IOException {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketAdapter adapter = new WebSocketAdapter(mockDelegate);
+		when(mockDelegate.isConnected()).thenReturn(true);
+		when(mockDelegate.isClosed()).thenReturn(false);
+		final InputStream inputStream = adapter.getInputStream();
+		// Act:
+		adapter.setSoTimeout(20);
+		// Assert:
+		assertThat(adapter.getSoTimeout(), is(20));
+		try {
+			inputStream.read();
+			fail("Read should time out.");
+		} catch (SocketTimeoutException e) {
+			// Expected.
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSoTimeoutNegative() throws SocketException {
+		// Act:
+		new WebSocketAdapter(mock(WebSocketDelegate.class)).setSoTimeout(-1);
+	}
+
+	@Test(expected = SocketException.class)
+	public void testSoTimeoutWhenAlreadyClosed() throws SocketException {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketAdapter adapter = new WebSocketAdapter(mockDelegate);
+		when(mockDelegate.isClosed()).thenReturn(true);
+		// Act:
+		adapter.setSoTimeout(100);
+	}
+
+	@Test public void testMaxFrameSize() {
+		// Arrange:
+		final WebSocketAdapter adapter = new WebSocketAdapter(mock(WebSocketDelegate.class));
+		// Act + Assert:
+		assertThat(adapter.getMaxFrameSize(), is(0));
+		adapter.setMaxFrameSize(16 * 1024);
+		assertThat(adapter.getMaxFrameSize(), is(16 * 1024));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMaxFrameSizeNegative() {
+		// Act:
+		new WebSocketAdapter(mock(WebSocketDelegate.class)).setMaxFrameSize(-1);
+	}
+
+	@Test public void testMaxInFlightFrames() {
+		// Arrange:
+		final WebSocketAdapter adapter = new WebSocketAdapter(mock(WebSocketDelegate.class));
+		// Act + Assert:
+		assertThat(adapter.getMaxInFlightFrames(), is(16));
+		adapter.setMaxInFlightFrames(4);
+		assertThat(adapter.getMaxInFlightFrames(), is(4));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMaxInFlightFramesNotPositive() {
+		// Act:
+		new WebSocketAdapter(mock(WebSocketDelegate.class)).setMaxInFlightFrames(0);
+	}
+
+	@Test public void testWriteCoalescing() {
+		// Arrange:
+		final WebSocketAdapter adapter = new WebSocketAdapter(mock(WebSocketDelegate.class));
+		// Act + Assert:
+		assertThat(adapter.getWriteCoalescingDelay(), is(0L));
+		assertThat(adapter.getWriteCoalescingThreshold(), is(0));
+		adapter.setWriteCoalescing(10, 512);
+		assertThat(adapter.getWriteCoalescingDelay(), is(10L));
+		assertThat(adapter.getWriteCoalescingThreshold(), is(512));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWriteCoalescingNegativeDelay() {
+		// Act:
+		new WebSocketAdapter(mock(WebSocketDelegate.class)).setWriteCoalescing(-1, 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWriteCoalescingZeroThreshold() {
+		// Act:
+		new WebSocketAdapter(mock(WebSocketDelegate.class)).setWriteCoalescing(10, 0);
+	}
+
+	@Test public void testFlushNow() throws IOException {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		when(mockDelegate.isConnected()).thenReturn(true);
+		when(mockDelegate.isClosed()).thenReturn(false);
+		final WebSocketAdapter adapter = new WebSocketAdapter(mockDelegate);
+		adapter.setWriteCoalescing(60000, 1024);
+		adapter.getOutputStream().write(1);
+		adapter.getOutputStream().flush();
+		verify(mockDelegate, times(0)).sendFrame(any(WebSocketDelegate.Frame.class));
+		// Act:
+		adapter.flushNow();
+		// Assert:
+		verify(mockDelegate).sendFrame(any(WebSocketDelegate.Frame.class));
+	}
+
+	@Test public void testFlushAsync() throws IOException {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		when(mockDelegate.isConnected()).thenReturn(true);
+		when(mockDelegate.isClosed()).thenReturn(false);
+		when(mockDelegate.sendFrameAsync(any(WebSocketDelegate.Frame.class))).thenReturn(CompletableFuture.completedFuture(null));
+		final WebSocketAdapter adapter = new WebSocketAdapter(mockDelegate);
+		adapter.getOutputStream().write(1);
+		// Act:
+		final CompletableFuture<Void> future = adapter.flushAsync();
+		// Assert:
+		assertThat(future.isDone(), is(true));
+		verify(mockDelegate).sendFrameAsync(any(WebSocketDelegate.Frame.class));
+	}
+
+	@Test public void testReceiveMessage() throws IOException {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		when(mockDelegate.isConnected()).thenReturn(true);
+		when(mockDelegate.isClosed()).thenReturn(false);
+		final WebSocketAdapter adapter = new WebSocketAdapter(mockDelegate);
+		final WebSocketInputStream input = (WebSocketInputStream) adapter.getInputStream();
+		input.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{1, 2}).build());
+		input.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{3}).build());
+		// Act + Assert:
+		assertThat(adapter.receiveMessage().remaining(), is(2));
+		assertThat(adapter.pollMessage().remaining(), is(1));
+		assertThat(adapter.pollMessage(), is(nullValue()));
+	}
+
+	@Test public void testFrameTransform() throws IOException {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		when(mockDelegate.isConnected()).thenReturn(true);
+		when(mockDelegate.isClosed()).thenReturn(false);
+		when(mockDelegate.getNegotiatedExtensions()).thenReturn("permessage-deflate");
+		final List<WebSocketDelegate.Frame> frames = new ArrayList<>();
+		doAnswer(invocation -> frames.add(invocation.getArgument(0))).when(mockDelegate).sendFrame(any(WebSocketDelegate.Frame.class));
+		final WebSocketAdapter adapter = new WebSocketAdapter(mockDelegate);
+		adapter.addFrameTransform(new PerMessageDeflate.Factory());
+		adapter.setSoTimeout(5000);
+		adapter.getInputStream();
+		final byte[] data = new byte[1024];
+		// Act:
+		adapter.getOutputStream().write(data);
+		adapter.getOutputStream().flush();
+		// Assert:
+		assertThat(frames.size(), is(1));
+		assertThat(frames.get(0).isCompressed(), is(true));
+		assertThat(frames.get(0).getPayload().length < data.length, is(true));
+		final ArgumentCaptor<WebSocketDelegate.OnIncomingFrameListener> captor = ArgumentCaptor.forClass(WebSocketDelegate.OnIncomingFrameListener.class);
+		verify(mockDelegate).registerOnIncomingFrameListener(captor.capture());
+		captor.getValue().onFrameReceived(frames.get(0));
+		assertThat(adapter.receiveMessage().remaining(), is(data.length));
+	}
+
+	@Test public void testFrameTransformExceedingIncomingBytesLimitFailsConnection() throws IOException {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		when(mockDelegate.isConnected()).thenReturn(true);
+		when(mockDelegate.isClosed()).thenReturn(false);
+		when(mockDelegate.getNegotiatedExtensions()).thenReturn("permessage-deflate");
+		final WebSocketAdapter adapter = new WebSocketAdapter(mockDelegate);
+		adapter.addFrameTransform(new PerMessageDeflate.Factory());
+		adapter.setIncomingBufferLimits(10, 512);
+		adapter.getInputStream();
+		final WebSocketDelegate.Frame frame = new PerMessageDeflate(Deflater.DEFAULT_COMPRESSION, true, true, true).transformOutgoing(
+				new WebSocketFrame.Builder().payload(new byte[1024]).build()
+		);
+		final ArgumentCaptor<WebSocketDelegate.OnIncomingFrameListener> captor = ArgumentCaptor.forClass(WebSocketDelegate.OnIncomingFrameListener.class);
+		verify(mockDelegate).registerOnIncomingFrameListener(captor.capture());
+		// Act:
+		captor.getValue().onFrameReceived(frame);
+		// Assert:
+		verify(mockDelegate).close();
+	}
+
+	@Test public void testFrameTransformNotNegotiated() throws IOException {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		when(mockDelegate.isConnected()).thenReturn(true);
+		when(mockDelegate.isClosed()).thenReturn(false);
+		when(mockDelegate.getNegotiatedExtensions()).thenReturn("");
+		final WebSocketAdapter adapter = new WebSocketAdapter(mockDelegate);
+		final PerMessageDeflate.Factory factory = new PerMessageDeflate.Factory();
+		adapter.addFrameTransform(factory);
+		adapter.removeFrameTransform(factory);
+		adapter.addFrameTransform(factory);
+		// Act:
+		final InputStream input = adapter.getInputStream();
+		// Assert:
+		verify(mockDelegate).registerOnIncomingFrameListener((WebSocketDelegate.OnIncomingFrameListener) input);
+	}
+
+	@Test public void testBufferPool() {
+		// Arrange:
+		final WebSocketAdapter adapter = new WebSocketAdapter(mock(WebSocketDelegate.class));
+		final BufferPool pool = new BufferPool();
+		// Act + Assert:
+		assertThat(adapter.getBufferPool(), is(nullValue()));
+		adapter.setBufferPool(pool);
+		assertThat(adapter.getBufferPool(), is(pool));
+		adapter.setBufferPool(null);
+		assertThat(adapter.getBufferPool(), is(nullValue()));
+	}
+
 	@Test public void testGetInputStream() throws IOException {
 		// Arrange:
 		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
@@ -128,6 +442,25 @@ public class WebSocketAdapterTest {
 		assertThat(adapter.getOutputStream(), is(adapter.getOutputStream()));
 	}
 
+	@Test public void testGetWebSocketChannel() throws IOException {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketAdapter adapter = new WebSocketAdapter(mockDelegate);
+		when(mockDelegate.isConnected()).thenReturn(true);
+		when(mockDelegate.isClosed()).thenReturn(false);
+		// Act + Assert:
+		final WebSocketChannel channel = adapter.getWebSocketChannel();
+		assertThat(channel, is(notNullValue()));
+		assertThat(adapter.getWebSocketChannel(), is(channel));
+		assertThat(channel.isOpen(), is(true));
+	}
+
+	@Test(expected = IOException.class)
+	public void testGetWebSocketChannelWhenNotOpened() throws IOException  {
+		// Act:
+		new WebSocketAdapter(mock(WebSocketDelegate.class)).getWebSocketChannel();
+	}
+
 	@Test(expected = IOException.class)
 	public void testGetInputStreamWhenNotOpened() throws IOException  {
 		// Act:
@@ -205,6 +538,189 @@ public class WebSocketAdapterTest {
 		new WebSocketAdapter(mock(WebSocketDelegate.class)).destroyStreams();
 	}
 
+	@Test public void testReconnectPolicy() {
+		// Arrange:
+		final WebSocketAdapter adapter = new WebSocketAdapter(mock(WebSocketDelegate.class));
+		final ReconnectPolicy policy = new ReconnectPolicy.Builder().build();
+		// Act + Assert:
+		assertThat(adapter.getReconnectPolicy(), is(nullValue()));
+		adapter.setReconnectPolicy(policy);
+		assertThat(adapter.getReconnectPolicy(), is(policy));
+		adapter.setReconnectPolicy(null);
+		assertThat(adapter.getReconnectPolicy(), is(nullValue()));
+	}
+
+	@Test public void testStreamsAreDestroyedOnDisconnectWithoutReconnectPolicy() throws IOException {
+		// Arrange:
+		final FlakyDelegate delegate = new FlakyDelegate();
+		final WebSocketAdapter adapter = new WebSocketAdapter(delegate);
+		adapter.connect(ENDPOINT);
+		final OutputStream outputStream = adapter.getOutputStream();
+		// Act:
+		delegate.drop();
+		// Assert:
+		assertThat(adapter.isReconnecting(), is(false));
+		assertThat(adapter.isClosed(), is(true));
+		try {
+			outputStream.write(1);
+			fail("Expected IOException.");
+		} catch (IOException expected) {
+			// Stream has been destroyed.
+		}
+	}
+
+	@Test public void testReconnectKeepsStreamsAndReplaysUnacknowledgedMessages() throws Exception {
+		// Arrange:
+		final FlakyDelegate delegate = new FlakyDelegate();
+		final WebSocketAdapter adapter = new WebSocketAdapter(delegate);
+		adapter.setReconnectPolicy(new ReconnectPolicy.Builder().backoff(200, 1000, 2).jitter(0).build());
+		adapter.connect(ENDPOINT);
+		final InputStream inputStream = adapter.getInputStream();
+		final OutputStream outputStream = adapter.getOutputStream();
+		outputStream.write(1);
+		outputStream.flush();
+		outputStream.write(2);
+		outputStream.flush();
+		adapter.acknowledgeMessages(1);
+		// Act:
+		delegate.drop();
+		// Assert:
+		assertThat(adapter.isReconnecting(), is(true));
+		assertThat(adapter.isConnected(), is(false));
+		assertThat(adapter.isClosed(), is(false));
+		outputStream.write(3);
+		outputStream.flush();
+		assertThat(delegate.sentPayloads.size(), is(2));
+		assertThat(awaitConnected(adapter), is(true));
+		assertThat(adapter.getInputStream(), is(inputStream));
+		assertThat(adapter.getOutputStream(), is(outputStream));
+		assertThat(delegate.sentPayloads.size(), is(4));
+		assertThat(delegate.sentPayloads.get(2)[0], is((byte) 2));
+		assertThat(delegate.sentPayloads.get(3)[0], is((byte) 3));
+		assertThat(adapter.getUnacknowledgedMessageCount(), is(2));
+		assertThat(adapter.getLastMessageSequence(), is(3L));
+		adapter.acknowledgeMessages(2);
+		assertThat(adapter.getUnacknowledgedMessageCount(), is(1));
+		delegate.notifyFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{7}).build());
+		assertThat(inputStream.read(), is(7));
+		adapter.close();
+	}
+
+	@Test public void testReconnectDiscardsPartiallyReceivedMessage() throws Exception {
+		// Arrange:
+		final FlakyDelegate delegate = new FlakyDelegate();
+		final WebSocketAdapter adapter = new WebSocketAdapter(delegate);
+		adapter.setReconnectPolicy(new ReconnectPolicy.Builder().backoff(1, 10, 2).build());
+		adapter.connect(ENDPOINT);
+		final InputStream inputStream = adapter.getInputStream();
+		delegate.notifyFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{1}).isFinal(false).build());
+		// Act:
+		delegate.drop();
+		// Assert:
+		assertThat(awaitConnected(adapter), is(true));
+		delegate.notifyFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{2}).build());
+		assertThat(inputStream.read(), is(2));
+		assertThat(inputStream.available(), is(0));
+		adapter.close();
+	}
+
+	@Test public void testReconnectWithBackoffUntilConnected() throws Exception {
+		// Arrange:
+		final FlakyDelegate delegate = new FlakyDelegate();
+		final WebSocketAdapter adapter = new WebSocketAdapter(delegate);
+		adapter.setReconnectPolicy(new ReconnectPolicy.Builder().backoff(1, 10, 2).build());
+		adapter.connect(ENDPOINT);
+		delegate.refusedConnections.set(3);
+		// Act:
+		delegate.drop();
+		// Assert:
+		assertThat(awaitConnected(adapter), is(true));
+		assertThat(delegate.connects.get(), is(5));
+		assertThat(adapter.isReconnecting(), is(false));
+		adapter.close();
+	}
+
+	@Test public void testReconnectGivesUpAfterMaxAttempts() throws Exception {
+		// Arrange:
+		final FlakyDelegate delegate = new FlakyDelegate();
+		final WebSocketAdapter adapter = new WebSocketAdapter(delegate);
+		adapter.setReconnectPolicy(new ReconnectPolicy.Builder().backoff(1, 10, 2).maxAttempts(2).build());
+		adapter.connect(ENDPOINT);
+		final OutputStream outputStream = adapter.getOutputStream();
+		delegate.refusedConnections.set(Integer.MAX_VALUE);
+		// Act:
+		delegate.drop();
+		// Assert:
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!adapter.isClosed() && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		assertThat(adapter.isClosed(), is(true));
+		assertThat(delegate.connects.get(), is(3));
+		try {
+			outputStream.write(1);
+			fail("Expected IOException.");
+		} catch (IOException expected) {
+			// Stream has been destroyed.
+		}
+	}
+
+	@Test public void testCloseStopsReconnecting() throws Exception {
+		// Arrange:
+		final FlakyDelegate delegate = new FlakyDelegate();
+		final WebSocketAdapter adapter = new WebSocketAdapter(delegate);
+		adapter.setReconnectPolicy(new ReconnectPolicy.Builder().backoff(50, 100, 2).build());
+		adapter.connect(ENDPOINT);
+		delegate.drop();
+		// Act:
+		adapter.close();
+		// Assert:
+		assertThat(adapter.isReconnecting(), is(false));
+		assertThat(adapter.isClosed(), is(true));
+		Thread.sleep(100);
+		assertThat(delegate.connects.get(), is(1));
+	}
+
+	@Test public void testCloseDoesNotReconnect() throws Exception {
+		// Arrange:
+		final FlakyDelegate delegate = new FlakyDelegate();
+		final WebSocketAdapter adapter = new WebSocketAdapter(delegate);
+		adapter.setReconnectPolicy(new ReconnectPolicy.Builder().backoff(1, 10, 2).build());
+		adapter.connect(ENDPOINT);
+		// Act:
+		adapter.close();
+		// Assert:
+		assertThat(adapter.isReconnecting(), is(false));
+		assertThat(adapter.isClosed(), is(true));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAcknowledgeNegativeSequence() {
+		// Act:
+		new WebSocketAdapter(mock(WebSocketDelegate.class)).acknowledgeMessages(-1);
+	}
+
+	@Test public void testAcknowledgeWithoutReconnectPolicy() throws IOException {
+		// Arrange:
+		final FlakyDelegate delegate = new FlakyDelegate();
+		final WebSocketAdapter adapter = new WebSocketAdapter(delegate);
+		adapter.connect(ENDPOINT);
+		adapter.getOutputStream().write(1);
+		adapter.getOutputStream().flush();
+		// Act:
+		adapter.acknowledgeMessages(1);
+		// Assert:
+		assertThat(adapter.getUnacknowledgedMessageCount(), is(0));
+	}
+
+	private static boolean awaitConnected(final WebSocketAdapter adapter) throws InterruptedException {
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!(adapter.isConnected() && !adapter.isReconnecting()) && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		return adapter.isConnected();
+	}
+
 	private static class TestDelegate extends BaseWebSocketDelegate {
 
 		private boolean connected;
@@ -232,4 +748,43 @@ public class WebSocketAdapterTest {
 			return closed;
 		}
 	}
+
+	private static final class FlakyDelegate extends BaseWebSocketDelegate {
+
+		final List<byte[]> sentPayloads = new CopyOnWriteArrayList<>();
+		final AtomicInteger connects = new AtomicInteger();
+		final AtomicInteger refusedConnections = new AtomicInteger();
+		volatile boolean connected;
+
+		@Override public void connect(@Nonnull SocketAddress remoteAddress, int timeout) throws IOException {
+			this.connects.incrementAndGet();
+			if (refusedConnections.getAndDecrement() > 0) throw new IOException("Connection refused.");
+			this.connected = true;
+			notifyConnected();
+		}
+
+		@Override public boolean isConnected() {
+			return connected;
+		}
+
+		@Override public void sendFrame(@Nonnull Frame frame) throws IOException {
+			if (!connected) throw new IOException("Not connected.");
+			this.sentPayloads.add(frame.getPayload());
+		}
+
+		void drop() {
+			this.connected = false;
+			notifyDisconnected();
+		}
+
+		@Override public void close() {
+			if (connected) {
+				drop();
+			}
+		}
+
+		@Override public boolean isClosed() {
+			return !connected;
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,250 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Martin Albedinsky
+ */
+public final class WebSocketChannelTest {
+
+	private static WebSocketDelegate createConnectedMockDelegate() {
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		when(mockDelegate.isConnected()).thenReturn(true);
+		when(mockDelegate.isClosed()).thenReturn(false);
+		return mockDelegate;
+	}
+
+	@Test public void testRead() throws IOException {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = createConnectedMockDelegate();
+		final WebSocketAdapter adapter = new WebSocketAdapter(mockDelegate);
+		final WebSocketChannel channel = adapter.getWebSocketChannel();
+		final WebSocketInputStream input = (WebSocketInputStream) adapter.getInputStream();
+		final ByteBuffer buffer = ByteBuffer.allocate(4);
+		// Act + Assert:
+		assertThat(channel.read(buffer), is(0));
+		input.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{1, 2, 3}).build());
+		input.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{4, 5}).build());
+		assertThat(channel.read(buffer), is(4));
+		assertThat(buffer.array(), is(new byte[]{1, 2, 3, 4}));
+		buffer.clear();
+		assertThat(channel.read(buffer), is(1));
+		assertThat(buffer.get(0), is((byte) 5));
+		assertThat(channel.read(buffer), is(0));
+	}
+
+	@Test public void testReadWhenDisconnected() throws IOException {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = createConnectedMockDelegate();
+		final WebSocketAdapter adapter = new WebSocketAdapter(mockDelegate);
+		final WebSocketChannel channel = adapter.getWebSocketChannel();
+		// Act:
+		adapter.destroyStreams();
+		// Assert:
+		assertThat(channel.read(ByteBuffer.allocate(1)), is(-1));
+	}
+
+	@Test public void testOnReadableListener() throws IOException {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = createConnectedMockDelegate();
+		final WebSocketAdapter adapter = new WebSocketAdapter(mockDelegate);
+		final WebSocketChannel channel = adapter.getWebSocketChannel();
+		final WebSocketInputStream input = (WebSocketInputStream) adapter.getInputStream();
+		final WebSocketChannel.OnReadableListener mockListener = mock(WebSocketChannel.OnReadableListener.class);
+		channel.setOnReadableListener(mockListener);
+		// Act + Assert:
+		input.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{1}).build());
+		input.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{2}).build());
+		verify(mockListener).onReadable(channel);
+		channel.read(ByteBuffer.allocate(2));
+		input.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{3}).isFinal(false).build());
+		verify(mockListener).onReadable(channel);
+		input.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{4}).build());
+		verify(mockListener, times(2)).onReadable(channel);
+		adapter.destroyStreams();
+		verify(mockListener, times(3)).onReadable(channel);
+	}
+
+	@Test public void testWrite() throws IOException {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = createConnectedMockDelegate();
+		final List<byte[]> payloads = new ArrayList<>();
+		final List<Boolean> finals = new ArrayList<>();
+		doAnswer(invocation -> {
+			final WebSocketDelegate.Frame frame = invocation.getArgument(0);
+			payloads.add(frame.getPayload().clone());
+			finals.add(frame.isFinal());
+			return null;
+		}).when(mockDelegate).sendFrame(any(WebSocketDelegate.Frame.class));
+		final WebSocketAdapter adapter = new WebSocketAdapter(mockDelegate);
+		final WebSocketChannel channel = adapter.getWebSocketChannel();
+		final ByteBuffer buffer = ByteBuffer.wrap(new byte[]{9, 1, 2, 3});
+		buffer.position(1);
+		// Act:
+		final int written = channel.write(buffer);
+		// Assert:
+		assertThat(written, is(3));
+		assertThat(buffer.hasRemaining(), is(false));
+		assertThat(payloads.size(), is(1));
+		assertThat(payloads.get(0), is(new byte[]{1, 2, 3}));
+		assertThat(finals.get(0), is(true));
+	}
+
+	@Test public void testWriteWithMaxFrameSize() throws IOException {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = createConnectedMockDelegate();
+		final List<byte[]> payloads = new ArrayList<>();
+		final List<Boolean> finals = new ArrayList<>();
+		final List<Integer> opcodes = new ArrayList<>();
+		doAnswer(invocation -> {
+			final WebSocketDelegate.Frame frame = invocation.getArgument(0);
+			payloads.add(frame.getPayload().clone());
+			finals.add(frame.isFinal());
+			opcodes.add(frame.getOpcode());
+			return null;
+		}).when(mockDelegate).sendFrame(any(WebSocketDelegate.Frame.class));
+		final WebSocketAdapter adapter = new WebSocketAdapter(mockDelegate);
+		adapter.setMaxFrameSize(2);
+		final WebSocketChannel channel = adapter.getWebSocketChannel();
+		// Act:
+		channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5}));
+		// Assert:
+		assertThat(payloads.size(), is(3));
+		assertThat(payloads.get(0), is(new byte[]{1, 2}));
+		assertThat(payloads.get(2), is(new byte[]{5}));
+		assertThat(finals.get(0), is(false));
+		assertThat(finals.get(1), is(false));
+		assertThat(finals.get(2), is(true));
+		assertThat(opcodes.get(0), is(WebSocketDelegate.Frame.OPCODE_BINARY));
+		assertThat(opcodes.get(1), is(WebSocketDelegate.Frame.OPCODE_CONTINUATION));
+		assertThat(opcodes.get(2), is(WebSocketDelegate.Frame.OPCODE_CONTINUATION));
+	}
+
+	@Test public void testWriteCompletesFragmentedMessageOfOutputStream() throws IOException {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = createConnectedMockDelegate();
+		final List<byte[]> payloads = new ArrayList<>();
+		final List<Boolean> finals = new ArrayList<>();
+		final List<Integer> opcodes = new ArrayList<>();
+		doAnswer(invocation -> {
+			final WebSocketDelegate.Frame frame = invocation.getArgument(0);
+			payloads.add(frame.getPayload().clone());
+			finals.add(frame.isFinal());
+			opcodes.add(frame.getOpcode());
+			return null;
+		}).when(mockDelegate).sendFrame(any(WebSocketDelegate.Frame.class));
+		final WebSocketAdapter adapter = new WebSocketAdapter(mockDelegate);
+		adapter.setMaxFrameSize(2);
+		final OutputStream output = adapter.getOutputStream();
+		final WebSocketChannel channel = adapter.getWebSocketChannel();
+		output.write(new byte[]{1, 2, 3});
+		// Act:
+		channel.write(ByteBuffer.wrap(new byte[]{9}));
+		// Assert:
+		assertThat(payloads.size(), is(3));
+		assertThat(payloads.get(0), is(new byte[]{1, 2}));
+		assertThat(payloads.get(1), is(new byte[]{3}));
+		assertThat(payloads.get(2), is(new byte[]{9}));
+		assertThat(finals.get(0), is(false));
+		assertThat(finals.get(1), is(true));
+		assertThat(finals.get(2), is(true));
+		assertThat(opcodes.get(1), is(WebSocketDelegate.Frame.OPCODE_CONTINUATION));
+		assertThat(opcodes.get(2), is(WebSocketDelegate.Frame.OPCODE_BINARY));
+	}
+
+	@Test public void testWriteKeepsUnstartedMessageOfOutputStreamBuffered() throws IOException {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = createConnectedMockDelegate();
+		final List<byte[]> payloads = new ArrayList<>();
+		doAnswer(invocation -> {
+			payloads.add(((WebSocketDelegate.Frame) invocation.getArgument(0)).getPayload().clone());
+			return null;
+		}).when(mockDelegate).sendFrame(any(WebSocketDelegate.Frame.class));
+		final WebSocketAdapter adapter = new WebSocketAdapter(mockDelegate);
+		final OutputStream output = adapter.getOutputStream();
+		final WebSocketChannel channel = adapter.getWebSocketChannel();
+		output.write(new byte[]{1, 2});
+		// Act:
+		channel.write(ByteBuffer.wrap(new byte[]{9}));
+		output.flush();
+		// Assert:
+		assertThat(payloads.size(), is(2));
+		assertThat(payloads.get(0), is(new byte[]{9}));
+		assertThat(payloads.get(1), is(new byte[]{1, 2}));
+	}
+
+	@Test public void testWriteEmptyBuffer() throws IOException {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = createConnectedMockDelegate();
+		final WebSocketChannel channel = new WebSocketAdapter(mockDelegate).getWebSocketChannel();
+		// Act:
+		final int written = channel.write(ByteBuffer.allocate(0));
+		// Assert:
+		assertThat(written, is(0));
+		verify(mockDelegate).sendFrame(any(WebSocketDelegate.Frame.class));
+	}
+
+	@Test public void testClose() throws IOException {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = createConnectedMockDelegate();
+		final WebSocketChannel channel = new WebSocketAdapter(mockDelegate).getWebSocketChannel();
+		// Act:
+		channel.close();
+		// Assert:
+		assertThat(channel.isOpen(), is(false));
+		verify(mockDelegate).close();
+	}
+
+	@Test(expected = ClosedChannelException.class)
+	public void testReadWhenClosed() throws IOException {
+		// Arrange:
+		final WebSocketChannel channel = new WebSocketAdapter(createConnectedMockDelegate()).getWebSocketChannel();
+		channel.close();
+		// Act:
+		channel.read(ByteBuffer.allocate(1));
+	}
+
+	@Test(expected = ClosedChannelException.class)
+	public void testWriteWhenClosed() throws IOException {
+		// Arrange:
+		final WebSocketChannel channel = new WebSocketAdapter(createConnectedMockDelegate()).getWebSocketChannel();
+		channel.close();
+		// Act:
+		channel.write(ByteBuffer.allocate(1));
+	}
+}
\ No newline at end of file
@@ -20,6 +20,12 @@ package universum.studios.websocket.adapter;
 
 import org.junit.Test;
 
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.concurrent.CompletableFuture;
+
+import javax.annotation.Nonnull;
+
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsNull.notNullValue;
@@ -34,5 +40,53 @@ public final class WebSocketDelegateTest {
 	    assertThat(WebSocketDelegate.Frame.EMPTY, is(notNullValue()));
 	    assertThat(WebSocketDelegate.Frame.EMPTY.getPayload(), is(new byte[0]));
 	    assertThat(WebSocketDelegate.Frame.EMPTY.isFinal(), is(true));
+	    assertThat(WebSocketDelegate.Frame.EMPTY.getPayloadBuffer().remaining(), is(0));
+	}
+
+	@Test public void testSendFrameAsync() {
+		// Arrange:
+		final TestDelegate delegate = new TestDelegate(null);
+		// Act:
+		final CompletableFuture<Void> future = delegate.sendFrameAsync(WebSocketDelegate.Frame.EMPTY);
+		// Assert:
+		assertThat(delegate.sentFrame, is(WebSocketDelegate.Frame.EMPTY));
+		assertThat(future.isDone(), is(true));
+		assertThat(future.isCompletedExceptionally(), is(false));
+	}
+
+	@Test public void testSendFrameAsyncFailure() {
+		// Arrange:
+		final TestDelegate delegate = new TestDelegate(new IOException());
+		// Act:
+		final CompletableFuture<Void> future = delegate.sendFrameAsync(WebSocketDelegate.Frame.EMPTY);
+		// Assert:
+		assertThat(future.isCompletedExceptionally(), is(true));
+	}
+
+	private static final class TestDelegate extends BaseWebSocketDelegate {
+
+		final IOException sendError;
+		Frame sentFrame;
+
+		TestDelegate(final IOException sendError) {
+			this.sendError = sendError;
+		}
+
+		@Override public void connect(@Nonnull SocketAddress remoteAddress, int timeout) throws IOException {}
+
+		@Override public boolean isConnected() {
+			return true;
+		}
+
+		@Override public void sendFrame(@Nonnull Frame frame) throws IOException {
+			if (sendError != null) throw sendError;
+			this.sentFrame = frame;
+		}
+
+		@Override public void close() throws IOException {}
+
+		@Override public boolean isClosed() {
+			return false;
+		}
 	}
 }
\ No newline at end of file
@@ -20,10 +20,16 @@ package universum.studios.websocket.adapter;
 
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
 import static org.hamcrest.core.IsNull.notNullValue;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
 
 /**
  * @author Martin Albedinsky
@@ -52,9 +58,157 @@ public final class WebSocketFrameTest {
 	    assertThat(frame.isFinal(), is(false));
 	}
 
+    @Test public void testInstantiationWithPayloadRange() {
+	    // Arrange:
+	    final byte[] payload = new byte[]{0, 1, 2, 3, 4};
+	    // Act:
+	    final WebSocketFrame frame = new WebSocketFrame.Builder().payload(payload, 1, 3).build();
+	    // Assert:
+	    assertThat(frame.getPayload(), is(new byte[]{1, 2, 3}));
+	    assertThat(frame.getPayload(), is(sameInstance(frame.getPayload())));
+	}
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testInstantiationWithInvalidPayloadRange() {
+	    // Act:
+	    new WebSocketFrame.Builder().payload(new byte[4], 2, 3);
+    }
+
+    @Test public void testGetPayloadBuffer() {
+	    // Arrange:
+	    final byte[] payload = new byte[]{0, 1, 2, 3, 4};
+	    final WebSocketFrame frame = new WebSocketFrame.Builder().payload(payload, 1, 3).build();
+	    // Act:
+	    final ByteBuffer buffer = frame.getPayloadBuffer();
+	    // Assert:
+	    assertThat(buffer.remaining(), is(3));
+	    assertThat(buffer.array(), is(sameInstance(payload)));
+	    assertThat(buffer.arrayOffset(), is(1));
+	    assertThat(buffer.get(0), is((byte) 1));
+	    assertThat(buffer.get(2), is((byte) 3));
+	}
+
+    @Test public void testInstantiationWithDirectBuffer() {
+	    // Arrange:
+	    final ByteBuffer payload = ByteBuffer.allocateDirect(8);
+	    payload.put(new byte[]{0, 1, 2, 3, 4, 5, 6, 7}).flip();
+	    payload.position(2).limit(6);
+	    // Act:
+	    final WebSocketFrame frame = new WebSocketFrame.Builder().payload(payload).build();
+	    // Assert:
+	    assertThat(payload.position(), is(2));
+	    assertThat(payload.limit(), is(6));
+	    final ByteBuffer buffer = frame.getPayloadBuffer();
+	    assertThat(buffer.isDirect(), is(true));
+	    assertThat(buffer.remaining(), is(4));
+	    assertThat(buffer.get(0), is((byte) 2));
+	    assertThat(frame.getPayload(), is(new byte[]{2, 3, 4, 5}));
+	    // Each buffer view should be independent.
+	    buffer.get();
+	    assertThat(frame.getPayloadBuffer().position(), is(0));
+	}
+
+    @Test public void testInstantiationWithDirectBufferRange() {
+	    // Arrange:
+	    final ByteBuffer payload = ByteBuffer.allocateDirect(8);
+	    payload.put(new byte[]{0, 1, 2, 3, 4, 5, 6, 7});
+	    // Act:
+	    final WebSocketFrame frame = new WebSocketFrame.Builder().payload(payload, 5, 3).build();
+	    // Assert:
+	    assertThat(frame.getPayload(), is(new byte[]{5, 6, 7}));
+	}
+
+    @Test public void testInstantiationWithHeapBuffer() {
+	    // Arrange:
+	    final byte[] array = new byte[]{0, 1, 2, 3};
+	    // Act:
+	    final WebSocketFrame frame = new WebSocketFrame.Builder().payload(ByteBuffer.wrap(array, 1, 2)).build();
+	    // Assert:
+	    assertThat(frame.getPayloadBuffer().array(), is(sameInstance(array)));
+	    assertThat(frame.getPayload(), is(new byte[]{1, 2}));
+	}
+
+    @Test public void testInstantiationWithPooledBuffer() {
+	    // Arrange:
+	    final BufferPool.Buffer buffer = new BufferPool().acquire(4);
+	    // Act:
+	    final WebSocketFrame frame = new WebSocketFrame.Builder().payload(buffer, 1, 2).build();
+	    // Assert:
+	    assertThat(frame.getPooledBuffer(), is(sameInstance(buffer)));
+	    assertThat(frame.getPayloadBuffer().array(), is(sameInstance(buffer.array())));
+	    assertThat(frame.getPayloadBuffer().remaining(), is(2));
+	    assertThat(buffer.refCount(), is(1));
+	    assertThat(new WebSocketFrame.Builder().payload(new byte[0]).build().getPooledBuffer(), is(nullValue()));
+	}
+
+    @Test public void testGetPayloadOfBorrowedArray() {
+	    // Arrange:
+	    final byte[] payload = new byte[]{0, 1, 2, 3};
+	    final BufferPool.Buffer buffer = new BufferPool().acquire(4);
+	    // Act:
+	    final WebSocketFrame frame = new WebSocketFrame.Builder().payload(payload).payloadBorrowed().build();
+	    final WebSocketFrame pooledFrame = new WebSocketFrame.Builder().payload(buffer, 0, buffer.array().length).build();
+	    // Assert:
+	    assertThat(frame.getPayload(), is(payload));
+	    assertThat(frame.getPayload(), is(not(sameInstance(payload))));
+	    assertThat(frame.getPayloadBuffer().array(), is(sameInstance(payload)));
+	    assertThat(pooledFrame.getPayload(), is(not(sameInstance(buffer.array()))));
+	    assertThat(new WebSocketFrame.Builder().payload(payload).build().getPayload(), is(sameInstance(payload)));
+	}
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testInstantiationWithInvalidBufferRange() {
+	    // Act:
+	    new WebSocketFrame.Builder().payload(ByteBuffer.allocateDirect(4), 3, 2);
+    }
+
     @Test(expected = IllegalArgumentException.class)
 	public void testInstantiationWithoutPayload() {
 	    // Act:
     	new WebSocketFrame.Builder().build();
 	}
+
+    @Test public void testInstantiationWithOpcode() {
+	    // Act:
+	    final WebSocketFrame frame = new WebSocketFrame.Builder().payload(new byte[]{1}).opcode(WebSocketDelegate.Frame.OPCODE_PING).build();
+	    // Assert:
+	    assertThat(frame.getOpcode(), is(WebSocketDelegate.Frame.OPCODE_PING));
+	    assertThat(frame.isControl(), is(true));
+    }
+
+    @Test public void testInstantiationWithDefaultOpcode() {
+	    // Act:
+	    final WebSocketFrame frame = new WebSocketFrame.Builder().payload(new byte[0]).build();
+	    // Assert:
+	    assertThat(frame.getOpcode(), is(WebSocketDelegate.Frame.OPCODE_BINARY));
+	    assertThat(frame.isControl(), is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInstantiationWithReservedOpcode() {
+	    // Act:
+	    new WebSocketFrame.Builder().opcode(0x3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInstantiationWithFragmentedControlFrame() {
+	    // Act:
+	    new WebSocketFrame.Builder().payload(new byte[0]).opcode(WebSocketDelegate.Frame.OPCODE_PONG).isFinal(false).build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInstantiationWithTooLargeControlFrame() {
+	    // Act:
+	    new WebSocketFrame.Builder().payload(new byte[126]).opcode(WebSocketDelegate.Frame.OPCODE_CLOSE).build();
+    }
+
+    @Test public void testGetPayloadText() {
+	    // Arrange:
+	    final byte[] data = "_h\u00e9llo_".getBytes(StandardCharsets.UTF_8);
+	    final ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+	    direct.put(data).flip();
+	    // Act + Assert:
+	    assertThat(new WebSocketFrame.Builder().payload(data, 1, data.length - 2).build().getPayloadText(), is("h\u00e9llo"));
+	    assertThat(new WebSocketFrame.Builder().payload(direct).build().getPayloadText(), is("_h\u00e9llo_"));
+    }
 }
\ No newline at end of file
@@ -22,10 +22,18 @@ import org.junit.Test;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -79,6 +87,98 @@ public class WebSocketInputStreamTest {
 		assertThat(stream.available(), is(8));
 	}
 
+	@Test public void testOnFrameReceivedFragmented() throws IOException {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketInputStream stream = new WebSocketInputStream(mockSocket, mockDelegate);
+		// Act:
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{0, 1}).isFinal(false).build());
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{2, 3}).isFinal(false).build());
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{4}).isFinal(true).build());
+		// Assert:
+		assertThat(stream.available(), is(5));
+		for (int i = 0; i < 5; i++) {
+			assertThat(stream.read(), is(i));
+		}
+	}
+
+	@Test public void testOnFrameReceivedWithDirectBuffer() throws IOException {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketInputStream stream = new WebSocketInputStream(mockSocket, mockDelegate);
+		final ByteBuffer payload = ByteBuffer.allocateDirect(4);
+		payload.put(new byte[]{0, 1, 2, 3}).flip();
+		// Act:
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(payload).build());
+		// Delegate may reuse the direct buffer once the frame has been delivered.
+		payload.clear();
+		payload.put(new byte[]{9, 9, 9, 9});
+		// Assert:
+		final byte[] buffer = new byte[4];
+		assertThat(stream.read(buffer, 0, buffer.length), is(4));
+		assertThat(buffer, is(new byte[]{0, 1, 2, 3}));
+	}
+
+	@Test public void testOnFrameReceivedWithPooledBuffer() throws IOException {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketInputStream stream = new WebSocketInputStream(mockSocket, mockDelegate);
+		final BufferPool pool = new BufferPool();
+		final BufferPool.Buffer buffer = pool.acquire(3);
+		System.arraycopy(new byte[]{1, 2, 3}, 0, buffer.array(), 0, 3);
+		// Act:
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(buffer, 0, 3).build());
+		buffer.release();
+		// Assert:
+		assertThat(buffer.refCount(), is(1));
+		assertThat(stream.available(), is(3));
+		final byte[] data = new byte[3];
+		assertThat(stream.read(data, 0, 3), is(3));
+		assertThat(data, is(new byte[]{1, 2, 3}));
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{4}).build());
+		assertThat(stream.read(), is(4));
+		assertThat(buffer.refCount(), is(0));
+		assertThat(pool.getPooledCount(), is(1));
+	}
+
+	@Test public void testOnFrameReceivedFragmentedWithBufferPool() throws IOException {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketInputStream stream = new WebSocketInputStream(mockSocket, mockDelegate);
+		final BufferPool pool = new BufferPool();
+		stream.setBufferPool(pool);
+		// Act:
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{1, 2}).isFinal(false).build());
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{3}).build());
+		// Assert:
+		final byte[] data = new byte[3];
+		assertThat(stream.read(data, 0, 3), is(3));
+		assertThat(data, is(new byte[]{1, 2, 3}));
+		assertThat(pool.getPooledCount(), is(0));
+		stream.destroy();
+		assertThat(pool.getPooledCount(), is(1));
+	}
+
+	@Test public void testDestroyReleasesPooledBuffers() {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketInputStream stream = new WebSocketInputStream(mockSocket, mockDelegate);
+		final BufferPool.Buffer first = new BufferPool().acquire(1);
+		final BufferPool.Buffer second = new BufferPool().acquire(1);
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(first, 0, 1).build());
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(second, 0, 1).build());
+		// Act:
+		stream.destroy();
+		// Assert:
+		assertThat(first.refCount(), is(1));
+		assertThat(second.refCount(), is(1));
+	}
+
 	@Test public void testOnFrameReceivedWhenAlreadyClosed() throws IOException {
 		// Arrange:
 		final Closeable mockSocket = mock(Closeable.class);
@@ -89,6 +189,114 @@ public class WebSocketInputStreamTest {
 		stream.onFrameReceived(mock(WebSocketDelegate.Frame.class));
 	}
 
+	@Test public void testOnFrameReceivedBeyondDefaultQueueCapacity() throws IOException {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketInputStream stream = new WebSocketInputStream(mockSocket, mockDelegate);
+		// Act:
+		for (int i = 0; i < 20; i++) {
+			stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{(byte) i}).build());
+		}
+		// Assert:
+		for (int i = 0; i < 20; i++) {
+			assertThat(stream.read(), is(i));
+		}
+	}
+
+	@Test public void testOverflowPolicyDropOldest() throws IOException {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketInputStream stream = new WebSocketInputStream(mockSocket, mockDelegate);
+		stream.setBufferLimits(2, 1024);
+		stream.setOverflowPolicy(WebSocketAdapter.OverflowPolicy.DROP_OLDEST);
+		// Act:
+		// First message is made available for reading instantly, the others are queued.
+		for (int i = 0; i < 5; i++) {
+			stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{(byte) i}).build());
+		}
+		// Assert:
+		final byte[] buffer = new byte[5];
+		assertThat(stream.read(buffer, 0, buffer.length), is(3));
+		assertThat(buffer, is(new byte[]{0, 3, 4, 0, 0}));
+	}
+
+	@Test public void testOverflowPolicyDropOldestByBytes() throws IOException {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketInputStream stream = new WebSocketInputStream(mockSocket, mockDelegate);
+		stream.setBufferLimits(10, 4);
+		stream.setOverflowPolicy(WebSocketAdapter.OverflowPolicy.DROP_OLDEST);
+		// Act:
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{0}).build());
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{1, 1, 1}).build());
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{2, 2}).build());
+		// Assert:
+		final byte[] buffer = new byte[5];
+		assertThat(stream.read(buffer, 0, buffer.length), is(3));
+		assertThat(buffer, is(new byte[]{0, 2, 2, 0, 0}));
+	}
+
+	@Test public void testOverflowPolicyPause() throws IOException {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketInputStream stream = new WebSocketInputStream(mockSocket, mockDelegate);
+		stream.setBufferLimits(2, 1024);
+		stream.setOverflowPolicy(WebSocketAdapter.OverflowPolicy.PAUSE);
+		// Act + Assert:
+		for (int i = 0; i < 4; i++) {
+			stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{(byte) i}).build());
+		}
+		verify(mockDelegate).pauseReading();
+		final byte[] buffer = new byte[4];
+		assertThat(stream.read(buffer, 0, buffer.length), is(4));
+		assertThat(buffer, is(new byte[]{0, 1, 2, 3}));
+		verify(mockDelegate).resumeReading();
+	}
+
+	@Test public void testOverflowPolicyBlock() throws Exception {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketInputStream stream = new WebSocketInputStream(mockSocket, mockDelegate);
+		stream.setBufferLimits(1, 1024);
+		stream.setOverflowPolicy(WebSocketAdapter.OverflowPolicy.BLOCK);
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{0}).build());
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{1}).build());
+		final Thread producer = new Thread(() -> stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{2}).build()));
+		// Act:
+		producer.start();
+		producer.join(100);
+		// Assert:
+		assertThat(producer.isAlive(), is(true));
+		assertThat(stream.read(), is(0));
+		assertThat(stream.read(), is(1));
+		producer.join(1000);
+		assertThat(producer.isAlive(), is(false));
+		assertThat(stream.read(), is(2));
+	}
+
+	@Test public void testOverflowPolicyBlockReleasedOnDestroy() throws Exception {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketInputStream stream = new WebSocketInputStream(mockSocket, mockDelegate);
+		stream.setBufferLimits(1, 1024);
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{0}).build());
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{1}).build());
+		final Thread producer = new Thread(() -> stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{2}).build()));
+		producer.start();
+		producer.join(100);
+		// Act:
+		stream.destroy();
+		// Assert:
+		producer.join(1000);
+		assertThat(producer.isAlive(), is(false));
+	}
+
 	@Test public void testAvailable() throws IOException {
 		// Arrange:
 		final Closeable mockSocket = mock(Closeable.class);
@@ -189,6 +397,253 @@ public class WebSocketInputStreamTest {
 		new WebSocketInputStream(mock(Closeable.class),  mock(WebSocketDelegate.class)).mark(0);
 	}
 
+	@Test public void testReadAcrossMessages() throws IOException {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketInputStream stream = new WebSocketInputStream(mockSocket, mockDelegate);
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{0, 1}).build());
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{2}).build());
+		// Act + Assert:
+		assertThat(stream.read(), is(0));
+		assertThat(stream.read(), is(1));
+		assertThat(stream.read(), is(2));
+	}
+
+	@Test public void testReadBytes() throws IOException {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketInputStream stream = new WebSocketInputStream(mockSocket, mockDelegate);
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{0, 1, 2}).build());
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{3, 4}).build());
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{5, 6, 7}).build());
+		final byte[] buffer = new byte[10];
+		// Act + Assert:
+		assertThat(stream.read(buffer, 0, 1), is(1));
+		assertThat(stream.read(buffer, 1, 6), is(6));
+		assertThat(stream.read(buffer, 7, 3), is(1));
+		assertThat(buffer, is(new byte[]{0, 1, 2, 3, 4, 5, 6, 7, 0, 0}));
+	}
+
+	@Test public void testReadBytesWithZeroLength() throws IOException {
+		// Arrange:
+		final WebSocketInputStream stream = new WebSocketInputStream(mock(Closeable.class), mock(WebSocketDelegate.class));
+		// Act + Assert:
+		assertThat(stream.read(new byte[1], 0, 0), is(0));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testReadBytesOutOfBounds() throws IOException {
+		// Arrange:
+		final WebSocketInputStream stream = new WebSocketInputStream(mock(Closeable.class), mock(WebSocketDelegate.class));
+		// Act:
+		stream.read(new byte[1], 1, 1);
+	}
+
+	@Test public void testReadBytesBlocksUntilDataReceived() throws Exception {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketInputStream stream = new WebSocketInputStream(mockSocket, mockDelegate);
+		final Thread thread = new Thread(() -> {
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException e) {
+				// Silently ignore.
+			}
+			stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{1, 2}).build());
+		});
+		thread.start();
+		final byte[] buffer = new byte[4];
+		// Act:
+		final int count = stream.read(buffer, 0, buffer.length);
+		// Assert:
+		assertThat(count, is(2));
+		assertThat(buffer, is(new byte[]{1, 2, 0, 0}));
+		thread.join();
+	}
+
+	@Test public void testReadInterruptedWhileWaiting() throws Exception {
+		// Arrange:
+		final WebSocketInputStream stream = new WebSocketInputStream(mock(Closeable.class), mock(WebSocketDelegate.class));
+		final AtomicReference<Throwable> error = new AtomicReference<>();
+		final Thread reader = new Thread(() -> {
+			try {
+				stream.read();
+			} catch (IOException e) {
+				error.set(e);
+			}
+		});
+		reader.start();
+		// Act:
+		reader.interrupt();
+		reader.join(5000);
+		// Assert:
+		assertThat(reader.isAlive(), is(false));
+		assertThat(error.get() instanceof InterruptedIOException, is(true));
+	}
+
+	@Test public void testReadWithTimeout() throws IOException {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketInputStream stream = new WebSocketInputStream(mockSocket, mockDelegate);
+		stream.setReadTimeout(50);
+		final long start = System.nanoTime();
+		// Act:
+		try {
+			stream.read();
+			fail("Read should time out.");
+		} catch (SocketTimeoutException e) {
+			// Assert:
+			assertThat(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50), is(true));
+		}
+		// Stream should remain valid after timeout.
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{1}).build());
+		assertThat(stream.read(), is(1));
+	}
+
+	@Test public void testReadBytesWithTimeout() throws IOException {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketInputStream stream = new WebSocketInputStream(mockSocket, mockDelegate);
+		stream.setReadTimeout(20);
+		// Act + Assert:
+		try {
+			stream.read(new byte[4], 0, 4);
+			fail("Read should time out.");
+		} catch (SocketTimeoutException e) {
+			// Expected.
+		}
+	}
+
+	@Test public void testMetrics() throws IOException {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketInputStream stream = new WebSocketInputStream(mockSocket, mockDelegate);
+		final WebSocketMetrics metrics = new WebSocketMetrics();
+		stream.setMetrics(metrics);
+		// Act:
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{0, 1}).isFinal(false).build());
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{2}).build());
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{3}).build());
+		stream.read(new byte[4], 0, 4);
+		// Assert:
+		assertThat(metrics.getFramesIn(), is(3L));
+		assertThat(metrics.getBytesIn(), is(4L));
+		assertThat(metrics.getMessagesIn(), is(2L));
+		assertThat(metrics.getFragmentsPerMessage().getMax(), is(2L));
+		assertThat(metrics.getQueueDepth().getCount(), is(2L));
+		assertThat(metrics.getReaderWaitNanos().getCount(), is(0L));
+	}
+
+	@Test public void testOnFrameReceivedIgnoresControlFrames() throws IOException {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketInputStream stream = new WebSocketInputStream(mockSocket, mockDelegate);
+		// Act:
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{0, 1}).isFinal(false).build());
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{9}).opcode(WebSocketDelegate.Frame.OPCODE_PING).build());
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{2}).opcode(WebSocketDelegate.Frame.OPCODE_CONTINUATION).build());
+		// Assert:
+		assertThat(stream.available(), is(3));
+		final byte[] data = new byte[3];
+		assertThat(stream.read(data, 0, 3), is(3));
+		assertThat(data, is(new byte[]{0, 1, 2}));
+	}
+
+	@Test public void testReceiveMessage() throws IOException {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketInputStream stream = new WebSocketInputStream(mockSocket, mockDelegate);
+		final byte[] payload = new byte[]{0, 1, 2};
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(payload).build());
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{3, 4}).build());
+		// Act:
+		final ByteBuffer first = stream.receiveMessage();
+		final ByteBuffer second = stream.receiveMessage();
+		// Assert:
+		assertThat(first.array(), is(sameInstance(payload)));
+		assertThat(first.remaining(), is(3));
+		assertThat(second.remaining(), is(2));
+		assertThat(second.get(1), is((byte) 4));
+		assertThat(stream.available(), is(0));
+	}
+
+	@Test public void testReceiveMessageAfterPartialRead() throws IOException {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketInputStream stream = new WebSocketInputStream(mockSocket, mockDelegate);
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{0, 1, 2}).build());
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{3}).build());
+		assertThat(stream.read(), is(0));
+		// Act:
+		final ByteBuffer message = stream.receiveMessage();
+		// Assert:
+		assertThat(message.remaining(), is(2));
+		assertThat(message.get(0), is((byte) 1));
+		assertThat(stream.read(), is(3));
+	}
+
+	@Test public void testReceiveMessageWithPooledBuffer() throws IOException {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketInputStream stream = new WebSocketInputStream(mockSocket, mockDelegate);
+		final BufferPool.Buffer buffer = new BufferPool().acquire(2);
+		System.arraycopy(new byte[]{1, 2}, 0, buffer.array(), 0, 2);
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(buffer, 0, 2).build());
+		buffer.release();
+		// Act:
+		final ByteBuffer message = stream.receiveMessage();
+		// Assert:
+		assertThat(buffer.refCount(), is(0));
+		assertThat(message.remaining(), is(2));
+		assertThat(message.get(1), is((byte) 2));
+	}
+
+	@Test public void testReceiveMessageWithTimeout() throws IOException {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketInputStream stream = new WebSocketInputStream(mockSocket, mockDelegate);
+		stream.setReadTimeout(20);
+		// Act + Assert:
+		try {
+			stream.receiveMessage();
+			fail("Receive should time out.");
+		} catch (SocketTimeoutException e) {
+			// Expected.
+		}
+	}
+
+	@Test public void testPollMessage() throws IOException {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketInputStream stream = new WebSocketInputStream(mockSocket, mockDelegate);
+		// Act + Assert:
+		assertThat(stream.pollMessage(), is(nullValue()));
+		stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{1}).build());
+		assertThat(stream.pollMessage().remaining(), is(1));
+		assertThat(stream.pollMessage(), is(nullValue()));
+	}
+
+	@Test(expected = IOException.class)
+	public void testPollMessageWhenAlreadyClosed() throws IOException {
+		// Arrange:
+		final WebSocketInputStream stream = new WebSocketInputStream(mock(Closeable.class), mock(WebSocketDelegate.class));
+		stream.close();
+		// Act:
+		stream.pollMessage();
+	}
+
 	@Test(expected = IOException.class)
 	@SuppressWarnings("ResultOfMethodCallIgnored")
 	public void testReadWhenAlreadyClosed() throws IOException {
@@ -245,5 +700,30 @@ public class WebSocketInputStreamTest {
 		Thread.sleep(100);
 		// Act:
 		stream.destroy();
+		// Assert:
+		thread.join(1000);
+		assertThat(thread.isAlive(), is(false));
+	}
+
+	@Test public void testReadConcurrentlyWithReceiving() throws Exception {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketInputStream stream = new WebSocketInputStream(mockSocket, mockDelegate);
+		stream.setBufferLimits(4, 1024);
+		final int messagesCount = 10000;
+		final Thread producer = new Thread(() -> {
+			for (int i = 0; i < messagesCount; i++) {
+				stream.onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{(byte) i}).build());
+			}
+		});
+		// Act:
+		producer.start();
+		// Assert:
+		for (int i = 0; i < messagesCount; i++) {
+			assertThat(stream.read(), is(i & 0xFF));
+		}
+		producer.join(1000);
+		assertThat(producer.isAlive(), is(false));
 	}
 }
\ No newline at end of file
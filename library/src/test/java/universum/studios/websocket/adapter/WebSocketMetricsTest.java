@@ -0,0 +1,124 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * @author Martin Albedinsky
+ */
+public final class WebSocketMetricsTest {
+
+	@Test public void testInstantiation() {
+		// Act:
+		final WebSocketMetrics metrics = new WebSocketMetrics();
+		// Assert:
+		assertThat(metrics.getFramesIn(), is(0L));
+		assertThat(metrics.getFramesOut(), is(0L));
+		assertThat(metrics.getBytesIn(), is(0L));
+		assertThat(metrics.getBytesOut(), is(0L));
+		assertThat(metrics.getMessagesIn(), is(0L));
+		assertThat(metrics.getMessagesOut(), is(0L));
+		assertThat(metrics.getFlushLatencyNanos().getCount(), is(0L));
+	}
+
+	@Test public void testRecordFrames() {
+		// Arrange:
+		final WebSocketMetrics metrics = new WebSocketMetrics();
+		// Act:
+		metrics.recordFrameIn(10);
+		metrics.recordFrameIn(5);
+		metrics.recordMessageIn(2);
+		metrics.recordFrameOut(7, false);
+		metrics.recordFrameOut(3, true);
+		// Assert:
+		assertThat(metrics.getFramesIn(), is(2L));
+		assertThat(metrics.getBytesIn(), is(15L));
+		assertThat(metrics.getMessagesIn(), is(1L));
+		assertThat(metrics.getFragmentsPerMessage().getMax(), is(2L));
+		assertThat(metrics.getFramesOut(), is(2L));
+		assertThat(metrics.getBytesOut(), is(10L));
+		assertThat(metrics.getMessagesOut(), is(1L));
+	}
+
+	@Test public void testHistogram() {
+		// Arrange:
+		final WebSocketMetrics.Histogram histogram = new WebSocketMetrics().getReaderWaitNanos();
+		// Act:
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i);
+		}
+		histogram.record(-1);
+		// Assert:
+		assertThat(histogram.getCount(), is(101L));
+		assertThat(histogram.getSum(), is(5050L));
+		assertThat(histogram.getMax(), is(100L));
+		assertThat(histogram.getBucketCount(0), is(1L));
+		assertThat(histogram.getBucketCount(1), is(1L));
+		assertThat(histogram.getBucketCount(7), is(37L));
+		assertThat(histogram.getPercentile(0), is(0L));
+		assertThat(histogram.getPercentile(50), is(63L));
+		assertThat(histogram.getPercentile(100), is(100L));
+	}
+
+	@Test public void testHistogramWhenEmpty() {
+		// Arrange:
+		final WebSocketMetrics.Histogram histogram = new WebSocketMetrics().getDispatchNanos();
+		// Act + Assert:
+		assertThat(histogram.getMean(), is(0.0));
+		assertThat(histogram.getPercentile(99), is(0L));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testHistogramPercentileOutOfRange() {
+		// Act:
+		new WebSocketMetrics().getQueueDepth().getPercentile(101);
+	}
+
+	@Test public void testExportTo() {
+		// Arrange:
+		final WebSocketMetrics metrics = new WebSocketMetrics();
+		metrics.recordFrameIn(4);
+		final List<String> exported = new ArrayList<>();
+		// Act:
+		metrics.exportTo(new WebSocketMetrics.Exporter() {
+
+			@Override public void exportCounter(@Nonnull final String name, final long value) {
+				exported.add(name + "=" + value);
+			}
+
+			@Override public void exportHistogram(@Nonnull final String name, @Nonnull final WebSocketMetrics.Histogram histogram) {
+				exported.add(name + "#" + histogram.getCount());
+			}
+		});
+		// Assert:
+		assertThat(exported.size(), is(12));
+		assertThat(exported.contains(WebSocketMetrics.FRAMES_IN + "=1"), is(true));
+		assertThat(exported.contains(WebSocketMetrics.BYTES_IN + "=4"), is(true));
+		assertThat(exported.contains(WebSocketMetrics.DISPATCH_NANOS + "#0"), is(true));
+	}
+}
\ No newline at end of file
@@ -0,0 +1,569 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+/**
+ * @author Martin Albedinsky
+ */
+public final class WebSocketMultiplexerTest {
+
+	@Test public void testInstantiation() {
+		// Act:
+		final WebSocketMultiplexer multiplexer = new WebSocketMultiplexer(new PeerDelegate());
+		// Assert:
+		assertThat(multiplexer.getInitialWindowSize(), is(WebSocketMultiplexer.DEFAULT_WINDOW_SIZE));
+		assertThat(multiplexer.getStreamCount(), is(0));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInstantiationWithInvalidWindowSize() {
+		// Act:
+		new WebSocketMultiplexer(new PeerDelegate(), 0);
+	}
+
+	@Test public void testVarint() {
+		// Arrange:
+		final int[] values = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE};
+		for (final int value : values) {
+			final byte[] data = new byte[5];
+			// Act:
+			final int length = WebSocketMultiplexer.writeVarint(data, 0, value);
+			// Assert:
+			assertThat(length, is(WebSocketMultiplexer.varintLength(value)));
+			assertThat(WebSocketMultiplexer.readVarint(ByteBuffer.wrap(data, 0, length)), is(value));
+		}
+		assertThat(WebSocketMultiplexer.readVarint(ByteBuffer.wrap(new byte[]{(byte) 0x80})), is(-1));
+		assertThat(WebSocketMultiplexer.readVarint(ByteBuffer.wrap(new byte[]{-1, -1, -1, -1, 0x7f})), is(-1));
+	}
+
+	@Test public void testOpenStream() throws IOException {
+		// Arrange:
+		final WebSocketMultiplexer multiplexer = new WebSocketMultiplexer(new PeerDelegate());
+		// Act:
+		final WebSocketAdapter first = multiplexer.openStream();
+		final WebSocketAdapter second = multiplexer.openStream();
+		// Assert:
+		assertThat(multiplexer.getStreamCount(), is(2));
+		assertThat(first.isConnected(), is(true));
+		assertThat(second.isClosed(), is(false));
+		assertThat(first.getIncomingOverflowPolicy(), is(WebSocketAdapter.OverflowPolicy.PAUSE));
+		assertThat(first.getMaxIncomingBytes(), is(WebSocketMultiplexer.DEFAULT_WINDOW_SIZE));
+	}
+
+	@Test(expected = IOException.class)
+	public void testOpenStreamWhenClosed() throws IOException {
+		// Arrange:
+		final PeerDelegate peer = new PeerDelegate();
+		final WebSocketMultiplexer multiplexer = new WebSocketMultiplexer(peer);
+		peer.close();
+		// Act:
+		multiplexer.openStream();
+	}
+
+	@Test public void testSend() throws Exception {
+		// Arrange:
+		final PeerDelegate peer = new PeerDelegate();
+		final WebSocketMultiplexer multiplexer = new WebSocketMultiplexer(peer);
+		multiplexer.openStream();
+		final OutputStream output = multiplexer.openStream().getOutputStream();
+		// Act:
+		output.write(new byte[]{1, 2, 3});
+		output.flush();
+		// Assert:
+		assertThat(peer.sent.poll(), is(new byte[]{(byte) WebSocketMultiplexer.FLAG_FIN, 3, 1, 2, 3}));
+	}
+
+	@Test public void testSendBlocksWhenWindowIsExhausted() throws Exception {
+		// Arrange:
+		final PeerDelegate peer = new PeerDelegate();
+		final WebSocketMultiplexer multiplexer = new WebSocketMultiplexer(peer, 4);
+		final OutputStream output = multiplexer.openStream().getOutputStream();
+		final CountDownLatch sent = new CountDownLatch(1);
+		final Thread writer = new Thread(() -> {
+			try {
+				output.write(new byte[]{1, 2, 3, 4, 5, 6});
+				output.flush();
+				sent.countDown();
+			} catch (IOException ignored) {}
+		});
+		// Act:
+		writer.start();
+		// Assert:
+		assertThat(peer.sent.poll(5, TimeUnit.SECONDS), is(new byte[]{WebSocketMultiplexer.TYPE_DATA, 1, 1, 2, 3, 4}));
+		assertThat(sent.await(100, TimeUnit.MILLISECONDS), is(false));
+		peer.receive(WebSocketMultiplexer.TYPE_WINDOW_UPDATE, 1, 2);
+		assertThat(sent.await(5, TimeUnit.SECONDS), is(true));
+		assertThat(peer.sent.poll(), is(new byte[]{(byte) WebSocketMultiplexer.FLAG_FIN, 1, 5, 6}));
+	}
+
+	@Test public void testSendsOfStreamsAreSerialized() throws Exception {
+		// Arrange:
+		final PeerDelegate peer = new PeerDelegate();
+		peer.sendDelayMillis = 1;
+		final WebSocketMultiplexer multiplexer = new WebSocketMultiplexer(peer);
+		final OutputStream[] outputs = {multiplexer.openStream().getOutputStream(), multiplexer.openStream().getOutputStream()};
+		final CountDownLatch written = new CountDownLatch(outputs.length);
+		// Act:
+		for (final OutputStream output : outputs) {
+			new Thread(() -> {
+				try {
+					for (int i = 0; i < 20; i++) {
+						output.write(i);
+						output.flush();
+					}
+					written.countDown();
+				} catch (IOException ignored) {}
+			}).start();
+		}
+		// Assert:
+		assertThat(written.await(5, TimeUnit.SECONDS), is(true));
+		assertThat(peer.sent.size(), is(40));
+		assertThat(peer.concurrentSend, is(false));
+	}
+
+	@Test public void testConnectDoesNotBlockOpenStream() throws Exception {
+		// Arrange:
+		final PeerDelegate peer = new PeerDelegate();
+		peer.connectGate = new CountDownLatch(1);
+		peer.connected = false;
+		final WebSocketMultiplexer multiplexer = new WebSocketMultiplexer(peer);
+		final WebSocketAdapter stream = multiplexer.openStream();
+		final Thread connector = new Thread(() -> {
+			try {
+				stream.connect(InetSocketAddress.createUnresolved("localhost", 8080));
+			} catch (IOException ignored) {}
+		});
+		connector.start();
+		assertThat(peer.connectEntered.await(5, TimeUnit.SECONDS), is(true));
+		final CountDownLatch opened = new CountDownLatch(1);
+		// Act:
+		new Thread(() -> {
+			try {
+				multiplexer.openStream();
+				opened.countDown();
+			} catch (IOException ignored) {}
+		}).start();
+		// Assert:
+		assertThat(opened.await(5, TimeUnit.SECONDS), is(true));
+		peer.connectGate.countDown();
+		connector.join(5000);
+		assertThat(multiplexer.getStreamCount(), is(2));
+	}
+
+	@Test public void testReceive() throws Exception {
+		// Arrange:
+		final PeerDelegate peer = new PeerDelegate();
+		final WebSocketMultiplexer multiplexer = new WebSocketMultiplexer(peer, 4);
+		final WebSocketAdapter first = multiplexer.openStream();
+		final WebSocketAdapter second = multiplexer.openStream();
+		final InputStream firstInput = first.getInputStream();
+		final InputStream secondInput = second.getInputStream();
+		// Act:
+		peer.receive(WebSocketMultiplexer.TYPE_DATA, 3, 5, 6);
+		peer.receive(WebSocketMultiplexer.TYPE_DATA, 1, 1);
+		peer.receive(WebSocketMultiplexer.FLAG_FIN, 1, 2);
+		peer.receive(WebSocketMultiplexer.FLAG_FIN, 3, 7);
+		// Assert:
+		final byte[] data = new byte[3];
+		assertThat(firstInput.read(data), is(2));
+		assertThat(Arrays.copyOf(data, 2), is(new byte[]{1, 2}));
+		assertThat(secondInput.read(data), is(3));
+		assertThat(data, is(new byte[]{5, 6, 7}));
+		assertThat(peer.sent.poll(), is(new byte[]{WebSocketMultiplexer.TYPE_WINDOW_UPDATE, 3, 2}));
+		assertThat(peer.sent.poll(), is(new byte[]{WebSocketMultiplexer.TYPE_WINDOW_UPDATE, 1, 2}));
+		assertThat(peer.sent.poll(), is(nullValue()));
+	}
+
+	@Test public void testReceiveWhenPausedWithholdsWindowUpdate() throws Exception {
+		// Arrange:
+		final PeerDelegate peer = new PeerDelegate();
+		final WebSocketMultiplexer multiplexer = new WebSocketMultiplexer(peer, 4);
+		final WebSocketAdapter stream = multiplexer.openStream();
+		stream.getInputStream();
+		peer.receive(WebSocketMultiplexer.FLAG_FIN, 1, 1, 2);
+		peer.receive(WebSocketMultiplexer.FLAG_FIN, 1, 3, 4, 5);
+		// Act:
+		peer.receive(WebSocketMultiplexer.FLAG_FIN, 1, 6, 7);
+		// Assert:
+		assertThat(peer.sent.poll(), is(new byte[]{WebSocketMultiplexer.TYPE_WINDOW_UPDATE, 1, 2}));
+		assertThat(peer.sent.poll(), is(new byte[]{WebSocketMultiplexer.TYPE_WINDOW_UPDATE, 1, 3}));
+		assertThat(peer.sent.poll(), is(nullValue()));
+		assertThat(stream.receiveMessage().remaining(), is(2));
+		assertThat(stream.receiveMessage().remaining(), is(3));
+		assertThat(peer.sent.poll(), is(new byte[]{WebSocketMultiplexer.TYPE_WINDOW_UPDATE, 1, 2}));
+	}
+
+	@Test public void testReceiveBeyondWindowClosesStream() throws IOException {
+		// Arrange:
+		final PeerDelegate peer = new PeerDelegate();
+		final WebSocketMultiplexer multiplexer = new WebSocketMultiplexer(peer, 2);
+		final WebSocketAdapter stream = multiplexer.openStream();
+		// Act:
+		peer.receive(WebSocketMultiplexer.FLAG_FIN, 1, 1, 2, 3);
+		// Assert:
+		assertThat(stream.isClosed(), is(true));
+		assertThat(multiplexer.getStreamCount(), is(0));
+		assertThat(peer.sent.poll(), is(new byte[]{WebSocketMultiplexer.TYPE_CLOSE, 1}));
+	}
+
+	@Test public void testReceiveForUnknownStream() {
+		// Arrange:
+		final PeerDelegate peer = new PeerDelegate();
+		new WebSocketMultiplexer(peer);
+		// Act:
+		peer.receive(WebSocketMultiplexer.FLAG_FIN, 7, 1);
+		// Assert:
+		assertThat(peer.sent.poll(), is(new byte[]{WebSocketMultiplexer.TYPE_CLOSE, 7}));
+		assertThat(peer.isClosed(), is(false));
+	}
+
+	@Test public void testReceiveMalformedFrameClosesConnection() {
+		// Arrange:
+		final PeerDelegate peer = new PeerDelegate();
+		new WebSocketMultiplexer(peer);
+		// Act:
+		peer.notifyFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{0x0f, 1}).build());
+		// Assert:
+		assertThat(peer.isClosed(), is(true));
+	}
+
+	@Test public void testReceiveControlFrame() {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		new WebSocketMultiplexer(mockDelegate);
+		final ArgumentCaptor<WebSocketDelegate.OnIncomingFrameListener> listenerCaptor = ArgumentCaptor.forClass(WebSocketDelegate.OnIncomingFrameListener.class);
+		verify(mockDelegate).registerOnIncomingFrameListener(listenerCaptor.capture());
+		// Act:
+		listenerCaptor.getValue().onFrameReceived(new WebSocketFrame.Builder().payload(new byte[]{0x0f}).opcode(WebSocketDelegate.Frame.OPCODE_PING).build());
+		// Assert:
+		verify(mockDelegate).registerOnConnectionListener(any(WebSocketDelegate.OnConnectionListener.class));
+		verifyNoMoreInteractions(mockDelegate);
+	}
+
+	@Test public void testRemoteClose() throws IOException {
+		// Arrange:
+		final PeerDelegate peer = new PeerDelegate();
+		final WebSocketMultiplexer multiplexer = new WebSocketMultiplexer(peer);
+		final WebSocketAdapter stream = multiplexer.openStream();
+		// Act:
+		peer.receive(WebSocketMultiplexer.TYPE_CLOSE, 1);
+		// Assert:
+		assertThat(stream.isClosed(), is(true));
+		assertThat(stream.isConnected(), is(false));
+		assertThat(multiplexer.getStreamCount(), is(0));
+		assertThat(peer.sent.poll(), is(nullValue()));
+	}
+
+	@Test public void testCloseStream() throws IOException {
+		// Arrange:
+		final PeerDelegate peer = new PeerDelegate();
+		final WebSocketMultiplexer multiplexer = new WebSocketMultiplexer(peer);
+		final WebSocketAdapter stream = multiplexer.openStream();
+		// Act:
+		stream.close();
+		// Assert:
+		assertThat(stream.isClosed(), is(true));
+		assertThat(multiplexer.getStreamCount(), is(0));
+		assertThat(peer.isClosed(), is(false));
+		assertThat(peer.sent.poll(), is(new byte[]{WebSocketMultiplexer.TYPE_CLOSE, 1}));
+	}
+
+	@Test public void testDisconnectClosesStreams() throws IOException {
+		// Arrange:
+		final PeerDelegate peer = new PeerDelegate();
+		final WebSocketMultiplexer multiplexer = new WebSocketMultiplexer(peer);
+		final WebSocketAdapter stream = multiplexer.openStream();
+		// Act:
+		peer.close();
+		// Assert:
+		assertThat(stream.isClosed(), is(true));
+		assertThat(multiplexer.getStreamCount(), is(0));
+	}
+
+	@Test public void testClose() throws IOException {
+		// Arrange:
+		final PeerDelegate peer = new PeerDelegate();
+		final WebSocketMultiplexer multiplexer = new WebSocketMultiplexer(peer);
+		final WebSocketAdapter stream = multiplexer.openStream();
+		// Act:
+		multiplexer.close();
+		// Assert:
+		assertThat(stream.isClosed(), is(true));
+		assertThat(peer.isClosed(), is(true));
+	}
+
+	@Test public void testOpenStreamAsAcceptor() throws IOException {
+		// Arrange:
+		final PeerDelegate peer = new PeerDelegate();
+		final WebSocketMultiplexer multiplexer = new WebSocketMultiplexer(peer, WebSocketMultiplexer.DEFAULT_WINDOW_SIZE, false);
+		// Act:
+		final WebSocketAdapter first = multiplexer.openStream();
+		final WebSocketAdapter second = multiplexer.openStream();
+		first.getOutputStream().write(1);
+		first.getOutputStream().flush();
+		second.getOutputStream().write(2);
+		second.getOutputStream().flush();
+		// Assert:
+		assertThat(multiplexer.isInitiator(), is(false));
+		assertThat(peer.sent.poll(), is(new byte[]{(byte) WebSocketMultiplexer.FLAG_FIN, 2, 1}));
+		assertThat(peer.sent.poll(), is(new byte[]{(byte) WebSocketMultiplexer.FLAG_FIN, 4, 2}));
+	}
+
+	@Test public void testAcceptStream() throws Exception {
+		// Arrange:
+		final PeerDelegate peer = new PeerDelegate();
+		final WebSocketMultiplexer multiplexer = new WebSocketMultiplexer(peer);
+		// Act:
+		peer.receive(WebSocketMultiplexer.FLAG_FIN, 2, 5, 6);
+		// Assert:
+		final WebSocketAdapter stream = multiplexer.acceptStream();
+		assertThat(multiplexer.getStreamCount(), is(1));
+		final byte[] data = new byte[2];
+		assertThat(stream.getInputStream().read(data), is(2));
+		assertThat(data, is(new byte[]{5, 6}));
+		stream.getOutputStream().write(7);
+		stream.getOutputStream().flush();
+		assertThat(peer.sent.poll(), is(new byte[]{(byte) WebSocketMultiplexer.FLAG_FIN, 2, 7}));
+	}
+
+	@Test public void testReceiveForClosedRemoteStreamDoesNotReopenIt() throws IOException {
+		// Arrange:
+		final PeerDelegate peer = new PeerDelegate();
+		final WebSocketMultiplexer multiplexer = new WebSocketMultiplexer(peer);
+		peer.receive(WebSocketMultiplexer.FLAG_FIN, 2, 1);
+		multiplexer.acceptStream().close();
+		peer.sent.clear();
+		// Act:
+		peer.receive(WebSocketMultiplexer.FLAG_FIN, 2, 2);
+		// Assert:
+		assertThat(multiplexer.getStreamCount(), is(0));
+		assertThat(peer.sent.poll(), is(new byte[]{WebSocketMultiplexer.TYPE_CLOSE, 2}));
+	}
+
+	@Test public void testAcceptStreamWhenClosed() throws Exception {
+		// Arrange:
+		final PeerDelegate peer = new PeerDelegate();
+		final WebSocketMultiplexer multiplexer = new WebSocketMultiplexer(peer);
+		final CountDownLatch failed = new CountDownLatch(1);
+		new Thread(() -> {
+			try {
+				multiplexer.acceptStream();
+			} catch (IOException e) {
+				failed.countDown();
+			}
+		}).start();
+		// Act:
+		Thread.sleep(20);
+		multiplexer.close();
+		// Assert:
+		assertThat(failed.await(5, TimeUnit.SECONDS), is(true));
+	}
+
+	@Test public void testLoopback() throws Exception {
+		// Arrange:
+		final LoopbackDelegate clientDelegate = new LoopbackDelegate();
+		final LoopbackDelegate serverDelegate = new LoopbackDelegate();
+		clientDelegate.peer = serverDelegate;
+		serverDelegate.peer = clientDelegate;
+		final WebSocketMultiplexer client = new WebSocketMultiplexer(clientDelegate, 16, true);
+		final WebSocketMultiplexer server = new WebSocketMultiplexer(serverDelegate, 16, false);
+		final byte[] request = new byte[100];
+		for (int i = 0; i < request.length; i++) {
+			request[i] = (byte) i;
+		}
+		// Act:
+		final WebSocketAdapter clientStream = client.openStream();
+		clientStream.setSoTimeout(5000);
+		final InputStream clientInput = clientStream.getInputStream();
+		clientStream.getOutputStream().write(request);
+		clientStream.getOutputStream().flush();
+		final WebSocketAdapter serverPush = server.openStream();
+		serverPush.getOutputStream().write(new byte[]{9});
+		serverPush.getOutputStream().flush();
+		// Assert:
+		final WebSocketAdapter acceptedByServer = server.acceptStream();
+		acceptedByServer.setSoTimeout(5000);
+		final byte[] received = new byte[request.length];
+		new DataInputStream(acceptedByServer.getInputStream()).readFully(received);
+		assertThat(received, is(request));
+		acceptedByServer.getOutputStream().write(new byte[]{1, 2});
+		acceptedByServer.getOutputStream().flush();
+		final byte[] response = new byte[2];
+		new DataInputStream(clientInput).readFully(response);
+		assertThat(response, is(new byte[]{1, 2}));
+		final WebSocketAdapter acceptedByClient = client.acceptStream();
+		acceptedByClient.setSoTimeout(5000);
+		assertThat(acceptedByClient.getInputStream().read(), is(9));
+		clientStream.close();
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!acceptedByServer.isClosed() && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		assertThat(acceptedByServer.isClosed(), is(true));
+		client.close();
+		server.close();
+	}
+
+	private static final class LoopbackDelegate extends BaseWebSocketDelegate {
+
+		final BlockingQueue<byte[]> queue = new LinkedBlockingQueue<>();
+		volatile LoopbackDelegate peer;
+		volatile boolean closed;
+
+		LoopbackDelegate() {
+			final Thread thread = new Thread(() -> {
+				try {
+					while (!closed) {
+						final byte[] data = queue.poll(10, TimeUnit.MILLISECONDS);
+						if (data != null) {
+							notifyFrameReceived(new WebSocketFrame.Builder().payload(data).build());
+						}
+					}
+				} catch (InterruptedException ignored) {
+					// Delivery is finished.
+				}
+			});
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		@Override public void connect(@Nonnull SocketAddress remoteAddress, int timeout) {}
+
+		@Override public boolean isConnected() {
+			return !closed;
+		}
+
+		@Override public void sendFrame(@Nonnull Frame frame) throws IOException {
+			if (closed) throw new IOException("Closed.");
+			final ByteBuffer payload = frame.getPayloadBuffer();
+			final byte[] data = new byte[payload.remaining()];
+			payload.duplicate().get(data);
+			this.peer.queue.add(data);
+		}
+
+		@Override public void close() {
+			if (!closed) {
+				this.closed = true;
+				notifyDisconnected();
+			}
+		}
+
+		@Override public boolean isClosed() {
+			return closed;
+		}
+	}
+
+	private static final class PeerDelegate extends BaseWebSocketDelegate {
+
+		final BlockingQueue<byte[]> sent = new LinkedBlockingQueue<>();
+		final CountDownLatch connectEntered = new CountDownLatch(1);
+		final AtomicInteger activeSends = new AtomicInteger();
+		volatile CountDownLatch connectGate;
+		volatile long sendDelayMillis;
+		volatile boolean concurrentSend;
+		volatile boolean connected = true;
+		volatile boolean closed;
+
+		void receive(final int header, final int streamId, final int... data) {
+			final byte[] payload = new byte[2 + data.length];
+			payload[0] = (byte) header;
+			payload[1] = (byte) streamId;
+			for (int i = 0; i < data.length; i++) {
+				payload[2 + i] = (byte) data[i];
+			}
+			notifyFrameReceived(new WebSocketFrame.Builder().payload(payload).build());
+		}
+
+		@Override public void connect(@Nonnull SocketAddress remoteAddress, int timeout) throws IOException {
+			this.connectEntered.countDown();
+			final CountDownLatch gate = connectGate;
+			if (gate != null) {
+				try {
+					gate.await();
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+			}
+			this.connected = true;
+		}
+
+		@Override public boolean isConnected() {
+			return connected && !closed;
+		}
+
+		@Override public void sendFrame(@Nonnull Frame frame) throws IOException {
+			if (closed) throw new IOException("Closed.");
+			if (activeSends.incrementAndGet() > 1) {
+				this.concurrentSend = true;
+			}
+			try {
+				if (sendDelayMillis > 0) {
+					Thread.sleep(sendDelayMillis);
+				}
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException();
+			} finally {
+				activeSends.decrementAndGet();
+			}
+			final ByteBuffer payload = frame.getPayloadBuffer();
+			final byte[] data = new byte[payload.remaining()];
+			payload.duplicate().get(data);
+			this.sent.add(data);
+		}
+
+		@Override public void close() {
+			if (!closed) {
+				this.closed = true;
+				notifyDisconnected();
+			}
+		}
+
+		@Override public boolean isClosed() {
+			return closed;
+		}
+	}
+}
\ No newline at end of file
@@ -22,13 +22,28 @@ import org.junit.Test;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
 
 /**
  * @author Martin Albedinsky
@@ -101,6 +116,425 @@ public class WebSocketOutputStreamTest {
 		verifyZeroInteractions(mockSocket);
 	}
 
+	@Test public void testFlushReusesBuffer() throws Exception {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final List<byte[]> payloads = new ArrayList<>();
+		final List<byte[]> arrays = new ArrayList<>();
+		doAnswer(invocation -> {
+			final WebSocketDelegate.Frame frame = invocation.getArgument(0);
+			payloads.add(frame.getPayload().clone());
+			arrays.add(frame.getPayloadBuffer().array());
+			return null;
+		}).when(mockDelegate).sendFrame(any(WebSocketDelegate.Frame.class));
+		final WebSocketOutputStream stream = new WebSocketOutputStream(mockSocket, mockDelegate);
+		// Act:
+		stream.write(new byte[]{1, 2, 3}, 0, 3);
+		stream.flush();
+		stream.write(4);
+		stream.flush();
+		// Assert:
+		assertThat(payloads.size(), is(2));
+		assertThat(payloads.get(0), is(new byte[]{1, 2, 3}));
+		assertThat(payloads.get(1), is(new byte[]{4}));
+		assertThat(arrays.get(0) == arrays.get(1), is(true));
+	}
+
+	@Test public void testFlushDoesNotHandOutBuffer() throws Exception {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final List<byte[]> payloads = new ArrayList<>();
+		doAnswer(invocation -> {
+			payloads.add(invocation.<WebSocketDelegate.Frame>getArgument(0).getPayload());
+			return null;
+		}).when(mockDelegate).sendFrame(any(WebSocketDelegate.Frame.class));
+		final WebSocketOutputStream stream = new WebSocketOutputStream(mockSocket, mockDelegate);
+		final byte[] first = new byte[5000];
+		final byte[] second = new byte[5000];
+		Arrays.fill(first, (byte) 'A');
+		Arrays.fill(second, (byte) 'B');
+		// Act:
+		stream.write(first);
+		stream.flush();
+		stream.write(second);
+		stream.flush();
+		// Assert:
+		assertThat(payloads.size(), is(2));
+		assertThat(payloads.get(0), is(first));
+		assertThat(payloads.get(1), is(second));
+		assertThat(payloads.get(0) == payloads.get(1), is(false));
+	}
+
+	@Test public void testFlushWithBufferPool() throws Exception {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final BufferPool pool = new BufferPool();
+		final List<BufferPool.Buffer> buffers = new ArrayList<>();
+		doAnswer(invocation -> {
+			final WebSocketFrame frame = invocation.getArgument(0);
+			buffers.add(frame.getPooledBuffer());
+			return null;
+		}).when(mockDelegate).sendFrame(any(WebSocketDelegate.Frame.class));
+		final WebSocketOutputStream stream = new WebSocketOutputStream(mockSocket, mockDelegate);
+		stream.setBufferPool(pool);
+		// Act:
+		stream.write(new byte[]{1, 2, 3}, 0, 3);
+		stream.flush();
+		stream.write(4);
+		stream.flush();
+		// Assert:
+		assertThat(buffers.size(), is(2));
+		assertThat(buffers.get(0) == buffers.get(1), is(true));
+		assertThat(buffers.get(0).refCount(), is(1));
+		stream.close();
+		assertThat(buffers.get(0).refCount(), is(0));
+		assertThat(pool.getPooledCount(), is(1));
+	}
+
+	@Test public void testFlushWithBufferRetainedByDelegate() throws Exception {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final List<BufferPool.Buffer> buffers = new ArrayList<>();
+		doAnswer(invocation -> {
+			final WebSocketFrame frame = invocation.getArgument(0);
+			buffers.add(frame.getPooledBuffer().retain());
+			return null;
+		}).when(mockDelegate).sendFrame(any(WebSocketDelegate.Frame.class));
+		final WebSocketOutputStream stream = new WebSocketOutputStream(mockSocket, mockDelegate);
+		stream.setBufferPool(new BufferPool());
+		// Act:
+		stream.write(1);
+		stream.flush();
+		stream.write(2);
+		stream.flush();
+		// Assert:
+		assertThat(buffers.size(), is(2));
+		assertThat(buffers.get(0) == buffers.get(1), is(false));
+		assertThat(buffers.get(0).refCount(), is(1));
+		assertThat(buffers.get(0).array()[0], is((byte) 1));
+	}
+
+	@Test public void testFlushAsync() throws Exception {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final List<WebSocketDelegate.Frame> frames = new ArrayList<>();
+		final List<CompletableFuture<Void>> futures = new ArrayList<>();
+		when(mockDelegate.sendFrameAsync(any(WebSocketDelegate.Frame.class))).thenAnswer(invocation -> {
+			frames.add(invocation.getArgument(0));
+			final CompletableFuture<Void> future = new CompletableFuture<>();
+			futures.add(future);
+			return future;
+		});
+		final WebSocketOutputStream stream = new WebSocketOutputStream(mockSocket, mockDelegate);
+		// Act:
+		stream.write(new byte[]{1, 2}, 0, 2);
+		final CompletableFuture<Void> first = stream.flushAsync();
+		stream.write(3);
+		final CompletableFuture<Void> second = stream.flushAsync();
+		// Assert:
+		assertThat(frames.size(), is(2));
+		assertThat(frames.get(0).getPayload(), is(new byte[]{1, 2}));
+		assertThat(frames.get(1).getPayload(), is(new byte[]{3}));
+		assertThat(first.isDone(), is(false));
+		futures.get(0).complete(null);
+		assertThat(first.isDone(), is(true));
+		assertThat(second.isDone(), is(false));
+		verify(mockDelegate, times(0)).sendFrame(any(WebSocketDelegate.Frame.class));
+	}
+
+	@Test public void testFlushAsyncWithoutBytesWritten() throws Exception {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketOutputStream stream = new WebSocketOutputStream(mock(Closeable.class), mockDelegate);
+		// Act:
+		final CompletableFuture<Void> future = stream.flushAsync();
+		// Assert:
+		assertThat(future.isDone(), is(true));
+		verifyZeroInteractions(mockDelegate);
+	}
+
+	@Test public void testFlushAsyncBlocksWhenWindowIsFull() throws Exception {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final List<CompletableFuture<Void>> futures = new CopyOnWriteArrayList<>();
+		when(mockDelegate.sendFrameAsync(any(WebSocketDelegate.Frame.class))).thenAnswer(invocation -> {
+			final CompletableFuture<Void> future = new CompletableFuture<>();
+			futures.add(future);
+			return future;
+		});
+		final WebSocketOutputStream stream = new WebSocketOutputStream(mock(Closeable.class), mockDelegate);
+		stream.setMaxInFlightFrames(1);
+		stream.write(1);
+		stream.flushAsync();
+		final Thread writer = new Thread(() -> {
+			try {
+				stream.write(2);
+				stream.flushAsync();
+			} catch (IOException e) {
+				throw new AssertionError(e);
+			}
+		});
+		// Act:
+		writer.start();
+		// Assert:
+		final long deadline = System.currentTimeMillis() + 5000;
+		while (writer.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+		assertThat(writer.getState(), is(Thread.State.WAITING));
+		assertThat(futures.size(), is(1));
+		futures.get(0).complete(null);
+		writer.join(5000);
+		assertThat(writer.isAlive(), is(false));
+		assertThat(futures.size(), is(2));
+	}
+
+	@Test public void testFlushAsyncReleasesPooledBufferOnCompletion() throws Exception {
+		// Arrange:
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final List<WebSocketFrame> frames = new ArrayList<>();
+		final CompletableFuture<Void> future = new CompletableFuture<>();
+		when(mockDelegate.sendFrameAsync(any(WebSocketDelegate.Frame.class))).thenAnswer(invocation -> {
+			frames.add(invocation.getArgument(0));
+			return future;
+		});
+		final BufferPool pool = new BufferPool();
+		final WebSocketOutputStream stream = new WebSocketOutputStream(mock(Closeable.class), mockDelegate);
+		stream.setBufferPool(pool);
+		stream.write(1);
+		// Act:
+		stream.flushAsync();
+		stream.write(2);
+		// Assert:
+		final BufferPool.Buffer sentBuffer = frames.get(0).getPooledBuffer();
+		assertThat(sentBuffer.refCount(), is(1));
+		assertThat(sentBuffer.array()[0], is((byte) 1));
+		future.complete(null);
+		assertThat(sentBuffer.refCount(), is(0));
+	}
+
+	@Test public void testFlushWithWriteCoalescing() throws Exception {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final List<byte[]> payloads = new CopyOnWriteArrayList<>();
+		doAnswer(invocation -> {
+			payloads.add(invocation.<WebSocketDelegate.Frame>getArgument(0).getPayload().clone());
+			return null;
+		}).when(mockDelegate).sendFrame(any(WebSocketDelegate.Frame.class));
+		final WebSocketOutputStream stream = new WebSocketOutputStream(mockSocket, mockDelegate);
+		stream.setWriteCoalescing(50, 1024);
+		// Act:
+		stream.write(new byte[]{1, 2}, 0, 2);
+		stream.flush();
+		stream.write(3);
+		stream.flush();
+		// Assert:
+		assertThat(payloads.isEmpty(), is(true));
+		final long deadline = System.currentTimeMillis() + 5000;
+		while (payloads.isEmpty() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertThat(payloads.size(), is(1));
+		assertThat(payloads.get(0), is(new byte[]{1, 2, 3}));
+	}
+
+	@Test public void testFlushWithWriteCoalescingThresholdReached() throws Exception {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketOutputStream stream = new WebSocketOutputStream(mockSocket, mockDelegate);
+		stream.setWriteCoalescing(60000, 2);
+		// Act + Assert:
+		stream.write(1);
+		stream.flush();
+		verifyZeroInteractions(mockDelegate);
+		stream.write(2);
+		stream.flush();
+		verify(mockDelegate).sendFrame(any(WebSocketDelegate.Frame.class));
+	}
+
+	@Test public void testFlushNow() throws Exception {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketOutputStream stream = new WebSocketOutputStream(mockSocket, mockDelegate);
+		stream.setWriteCoalescing(60000, 1024);
+		stream.write(1);
+		stream.flush();
+		// Act:
+		stream.flushNow();
+		stream.flushNow();
+		// Assert:
+		verify(mockDelegate).sendFrame(any(WebSocketDelegate.Frame.class));
+	}
+
+	@Test public void testCloseSendsDataOfPendingCoalescedFlush() throws Exception {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketOutputStream stream = new WebSocketOutputStream(mockSocket, mockDelegate);
+		stream.setWriteCoalescing(60000, 1024);
+		stream.write(1);
+		stream.flush();
+		// Act:
+		stream.close();
+		// Assert:
+		verify(mockDelegate).sendFrame(any(WebSocketDelegate.Frame.class));
+		verify(mockSocket).close();
+	}
+
+	@Test public void testCloseThrowsErrorOfPendingCoalescedFlush() throws Exception {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final IOException error = new IOException();
+		doThrow(error).when(mockDelegate).sendFrame(any(WebSocketDelegate.Frame.class));
+		final WebSocketOutputStream stream = new WebSocketOutputStream(mockSocket, mockDelegate);
+		stream.setWriteCoalescing(60000, 1024);
+		stream.write(1);
+		stream.flush();
+		// Act + Assert:
+		try {
+			stream.close();
+			fail("IOException expected.");
+		} catch (IOException e) {
+			assertThat(e, is(sameInstance(error)));
+		}
+		verify(mockSocket).close();
+		stream.close();
+	}
+
+	@Test public void testCloseThrowsErrorOfFailedCoalescedFlush() throws Exception {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final IOException error = new IOException();
+		doThrow(error).when(mockDelegate).sendFrame(any(WebSocketDelegate.Frame.class));
+		final WebSocketOutputStream stream = new WebSocketOutputStream(mockSocket, mockDelegate);
+		stream.setWriteCoalescing(1, 1024);
+		stream.write(1);
+		stream.flush();
+		verify(mockDelegate, timeout(5000)).sendFrame(any(WebSocketDelegate.Frame.class));
+		// Act + Assert:
+		try {
+			stream.close();
+			fail("IOException expected.");
+		} catch (IOException e) {
+			assertThat(e, is(sameInstance(error)));
+		}
+		verify(mockSocket).close();
+		verify(mockDelegate).sendFrame(any(WebSocketDelegate.Frame.class));
+	}
+
+	@Test public void testMetrics() throws Exception {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketOutputStream stream = new WebSocketOutputStream(mockSocket, mockDelegate);
+		final WebSocketMetrics metrics = new WebSocketMetrics();
+		stream.setMetrics(metrics);
+		stream.setMaxFrameSize(2);
+		// Act:
+		stream.write(new byte[]{1, 2, 3}, 0, 3);
+		stream.flush();
+		// Assert:
+		assertThat(metrics.getFramesOut(), is(2L));
+		assertThat(metrics.getBytesOut(), is(3L));
+		assertThat(metrics.getMessagesOut(), is(1L));
+		assertThat(metrics.getFlushLatencyNanos().getCount(), is(1L));
+	}
+
+	@Test public void testWriteBeyondInitialBufferSize() throws Exception {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final List<byte[]> payloads = new ArrayList<>();
+		doAnswer(invocation -> {
+			payloads.add(((WebSocketDelegate.Frame) invocation.getArgument(0)).getPayload().clone());
+			return null;
+		}).when(mockDelegate).sendFrame(any(WebSocketDelegate.Frame.class));
+		final WebSocketOutputStream stream = new WebSocketOutputStream(mockSocket, mockDelegate);
+		final byte[] data = new byte[5000];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = (byte) i;
+		}
+		// Act:
+		stream.write(data, 0, 3000);
+		stream.write(data, 3000, 2000);
+		stream.flush();
+		// Assert:
+		assertThat(payloads.size(), is(1));
+		assertThat(payloads.get(0), is(data));
+	}
+
+	@Test public void testWriteWithMaxFrameSize() throws Exception {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final List<byte[]> payloads = new ArrayList<>();
+		final List<Boolean> finals = new ArrayList<>();
+		final List<Integer> opcodes = new ArrayList<>();
+		doAnswer(invocation -> {
+			final WebSocketDelegate.Frame frame = invocation.getArgument(0);
+			payloads.add(frame.getPayload().clone());
+			finals.add(frame.isFinal());
+			opcodes.add(frame.getOpcode());
+			return null;
+		}).when(mockDelegate).sendFrame(any(WebSocketDelegate.Frame.class));
+		final WebSocketOutputStream stream = new WebSocketOutputStream(mockSocket, mockDelegate);
+		stream.setMaxFrameSize(4);
+		// Act:
+		stream.write(new byte[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9}, 0, 10);
+		stream.write(10);
+		// Assert:
+		assertThat(payloads.size(), is(2));
+		assertThat(payloads.get(0), is(new byte[]{0, 1, 2, 3}));
+		assertThat(payloads.get(1), is(new byte[]{4, 5, 6, 7}));
+		assertThat(finals.get(0), is(false));
+		assertThat(finals.get(1), is(false));
+		stream.flush();
+		assertThat(payloads.size(), is(3));
+		assertThat(payloads.get(2), is(new byte[]{8, 9, 10}));
+		assertThat(finals.get(2), is(true));
+		assertThat(opcodes.get(0), is(WebSocketDelegate.Frame.OPCODE_BINARY));
+		assertThat(opcodes.get(1), is(WebSocketDelegate.Frame.OPCODE_CONTINUATION));
+		assertThat(opcodes.get(2), is(WebSocketDelegate.Frame.OPCODE_CONTINUATION));
+		stream.write(11);
+		stream.flush();
+		assertThat(opcodes.get(3), is(WebSocketDelegate.Frame.OPCODE_BINARY));
+	}
+
+	@Test public void testFlushWithMaxFrameSizeReachedExactly() throws Exception {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final List<byte[]> payloads = new ArrayList<>();
+		final List<Boolean> finals = new ArrayList<>();
+		doAnswer(invocation -> {
+			final WebSocketDelegate.Frame frame = invocation.getArgument(0);
+			payloads.add(frame.getPayload().clone());
+			finals.add(frame.isFinal());
+			return null;
+		}).when(mockDelegate).sendFrame(any(WebSocketDelegate.Frame.class));
+		final WebSocketOutputStream stream = new WebSocketOutputStream(mockSocket, mockDelegate);
+		stream.setMaxFrameSize(2);
+		// Act:
+		stream.write(new byte[]{0, 1, 2, 3}, 0, 4);
+		stream.flush();
+		// Assert:
+		assertThat(payloads.size(), is(2));
+		assertThat(payloads.get(0), is(new byte[]{0, 1}));
+		assertThat(finals.get(0), is(false));
+		assertThat(payloads.get(1), is(new byte[]{2, 3}));
+		assertThat(finals.get(1), is(true));
+	}
+
 	@Test public void testFlushWithoutBytesWritten() throws Exception {
 		// Arrange:
 		final Closeable mockSocket = mock(Closeable.class);
@@ -140,6 +574,28 @@ public class WebSocketOutputStreamTest {
 		verifyZeroInteractions(mockDelegate);
 	}
 
+	@Test public void testCloseDoesNotHoldLockWhileClosingSocket() throws Exception {
+		// Arrange:
+		final Closeable mockSocket = mock(Closeable.class);
+		final WebSocketDelegate mockDelegate = mock(WebSocketDelegate.class);
+		final WebSocketOutputStream stream = new WebSocketOutputStream(mockSocket, mockDelegate);
+		final CountDownLatch destroyed = new CountDownLatch(1);
+		doAnswer(invocation -> {
+			// Closing of the adapter destroys the stream from a thread holding the adapter lock.
+			final Thread thread = new Thread(() -> {
+				stream.destroy();
+				destroyed.countDown();
+			});
+			thread.start();
+			thread.join(5000);
+			return null;
+		}).when(mockSocket).close();
+		// Act:
+		stream.close();
+		// Assert:
+		assertThat(destroyed.getCount(), is(0L));
+	}
+
 	@Test(expected = IOException.class)
 	public void testDestroy() throws Exception {
 		// Arrange:
@@ -0,0 +1,203 @@
+/*
+ * *************************************************************************************************
+ *                                 Copyright 2018 Universum Studios
+ * *************************************************************************************************
+ *                  Licensed under the Apache License, Version 2.0 (the "License")
+ * -------------------------------------------------------------------------------------------------
+ * You may not use this file except in compliance with the License. You may obtain a copy of the
+ * License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the License.
+ * *************************************************************************************************
+ */
+package universum.studios.websocket.adapter;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * @author Martin Albedinsky
+ */
+public final class WebSocketTimerTest {
+
+	@Test public void testShared() {
+		// Act + Assert:
+		assertThat(WebSocketTimer.shared(), is(WebSocketTimer.shared()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInstantiationWithInvalidTickDuration() {
+		// Act:
+		new WebSocketTimer(0, TimeUnit.MILLISECONDS, 8);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInstantiationWithInvalidWheelSize() {
+		// Act:
+		new WebSocketTimer(1, TimeUnit.MILLISECONDS, 0);
+	}
+
+	@Test public void testSchedule() throws Exception {
+		// Arrange:
+		final WebSocketTimer timer = new WebSocketTimer(1, TimeUnit.MILLISECONDS, 8);
+		final CountDownLatch latch = new CountDownLatch(1);
+		final long startTime = System.nanoTime();
+		// Act:
+		timer.schedule(latch::countDown, 20, TimeUnit.MILLISECONDS);
+		// Assert:
+		assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+		assertThat(System.nanoTime() - startTime >= TimeUnit.MILLISECONDS.toNanos(20), is(true));
+		assertThat(timer.getPendingCount(), is(0));
+		timer.stop();
+	}
+
+	@Test public void testScheduleWithoutDelay() throws Exception {
+		// Arrange:
+		final WebSocketTimer timer = new WebSocketTimer(1, TimeUnit.MILLISECONDS, 8);
+		final CountDownLatch latch = new CountDownLatch(1);
+		// Act:
+		timer.schedule(latch::countDown, 0, TimeUnit.MILLISECONDS);
+		// Assert:
+		assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+		timer.stop();
+	}
+
+	@Test public void testScheduleDelaySpanningMultipleRounds() throws Exception {
+		// Arrange:
+		final WebSocketTimer timer = new WebSocketTimer(1, TimeUnit.MILLISECONDS, 4);
+		final CountDownLatch latch = new CountDownLatch(1);
+		final long startTime = System.nanoTime();
+		// Act:
+		timer.schedule(latch::countDown, 30, TimeUnit.MILLISECONDS);
+		// Assert:
+		assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+		assertThat(System.nanoTime() - startTime >= TimeUnit.MILLISECONDS.toNanos(30), is(true));
+		timer.stop();
+	}
+
+	@Test public void testScheduleRunsTasksInDeadlineOrder() throws Exception {
+		// Arrange:
+		final WebSocketTimer timer = new WebSocketTimer(1, TimeUnit.MILLISECONDS, 8);
+		final List<Integer> order = new CopyOnWriteArrayList<>();
+		final CountDownLatch latch = new CountDownLatch(3);
+		// Act:
+		timer.schedule(() -> { order.add(3); latch.countDown(); }, 60, TimeUnit.MILLISECONDS);
+		timer.schedule(() -> { order.add(1); latch.countDown(); }, 10, TimeUnit.MILLISECONDS);
+		timer.schedule(() -> { order.add(2); latch.countDown(); }, 35, TimeUnit.MILLISECONDS);
+		// Assert:
+		assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+		assertThat(order.get(0), is(1));
+		assertThat(order.get(1), is(2));
+		assertThat(order.get(2), is(3));
+		timer.stop();
+	}
+
+	@Test public void testScheduleAfterIdle() throws Exception {
+		// Arrange:
+		final WebSocketTimer timer = new WebSocketTimer(1, TimeUnit.MILLISECONDS, 8);
+		final CountDownLatch first = new CountDownLatch(1);
+		final CountDownLatch second = new CountDownLatch(1);
+		timer.schedule(first::countDown, 1, TimeUnit.MILLISECONDS);
+		assertThat(first.await(5, TimeUnit.SECONDS), is(true));
+		Thread.sleep(20);
+		// Act:
+		timer.schedule(second::countDown, 5, TimeUnit.MILLISECONDS);
+		// Assert:
+		assertThat(second.await(5, TimeUnit.SECONDS), is(true));
+		timer.stop();
+	}
+
+	@Test public void testFailingTaskDoesNotStopTimer() throws Exception {
+		// Arrange:
+		final WebSocketTimer timer = new WebSocketTimer(1, TimeUnit.MILLISECONDS, 8);
+		final CountDownLatch latch = new CountDownLatch(1);
+		// Act:
+		timer.schedule(() -> { throw new IllegalStateException(); }, 1, TimeUnit.MILLISECONDS);
+		timer.schedule(latch::countDown, 10, TimeUnit.MILLISECONDS);
+		// Assert:
+		assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+		timer.stop();
+	}
+
+	@Test public void testTaskThrowingErrorDoesNotStopTimer() throws Exception {
+		// Arrange:
+		final WebSocketTimer timer = new WebSocketTimer(1, TimeUnit.MILLISECONDS, 8);
+		final CountDownLatch latch = new CountDownLatch(1);
+		// Act:
+		timer.schedule(() -> { throw new AssertionError("Expected by test."); }, 1, TimeUnit.MILLISECONDS);
+		timer.schedule(latch::countDown, 10, TimeUnit.MILLISECONDS);
+		// Assert:
+		assertThat(latch.await(5, TimeUnit.SECONDS), is(true));
+		timer.stop();
+	}
+
+	@Test public void testCancel() throws Exception {
+		// Arrange:
+		final WebSocketTimer timer = new WebSocketTimer(1, TimeUnit.MILLISECONDS, 8);
+		final CountDownLatch canceled = new CountDownLatch(1);
+		final CountDownLatch other = new CountDownLatch(1);
+		final WebSocketTimer.Timeout timeout = timer.schedule(canceled::countDown, 10, TimeUnit.MILLISECONDS);
+		timer.schedule(other::countDown, 30, TimeUnit.MILLISECONDS);
+		// Act:
+		timeout.cancel();
+		timeout.cancel();
+		// Assert:
+		assertThat(timer.getPendingCount(), is(1));
+		assertThat(other.await(5, TimeUnit.SECONDS), is(true));
+		assertThat(canceled.getCount(), is(1L));
+		assertThat(timer.getPendingCount(), is(0));
+		timer.stop();
+	}
+
+	@Test public void testCancelMany() throws Exception {
+		// Arrange:
+		final WebSocketTimer timer = new WebSocketTimer(1, TimeUnit.MILLISECONDS, 8);
+		final CountDownLatch canceled = new CountDownLatch(1);
+		final WebSocketTimer.Timeout[] timeouts = new WebSocketTimer.Timeout[1000];
+		for (int i = 0; i < timeouts.length; i++) {
+			timeouts[i] = timer.schedule(canceled::countDown, 200 + i % 50, TimeUnit.MILLISECONDS);
+		}
+		// Act:
+		for (final WebSocketTimer.Timeout timeout : timeouts) {
+			timeout.cancel();
+		}
+		// Assert:
+		assertThat(timer.getPendingCount(), is(0));
+		Thread.sleep(300);
+		assertThat(canceled.getCount(), is(1L));
+		timer.stop();
+	}
+
+	@Test public void testStop() throws Exception {
+		// Arrange:
+		final WebSocketTimer timer = new WebSocketTimer(1, TimeUnit.MILLISECONDS, 8);
+		final CountDownLatch latch = new CountDownLatch(1);
+		timer.schedule(latch::countDown, 20, TimeUnit.MILLISECONDS);
+		// Act:
+		timer.stop();
+		// Assert:
+		assertThat(latch.await(60, TimeUnit.MILLISECONDS), is(false));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testScheduleOnStoppedTimer() {
+		// Arrange:
+		final WebSocketTimer timer = new WebSocketTimer(1, TimeUnit.MILLISECONDS, 8);
+		timer.stop();
+		// Act:
+		timer.schedule(() -> {}, 1, TimeUnit.MILLISECONDS);
+	}
+}
\ No newline at end of file
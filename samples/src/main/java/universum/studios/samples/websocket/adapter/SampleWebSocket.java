@@ -30,6 +30,7 @@ import com.neovisionaries.ws.client.WebSocketListener;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
 
@@ -58,8 +59,10 @@ public final class SampleWebSocket extends universum.studios.websocket.adapter.W
 
 			@Override public void onFrame(@Nonnull final WebSocket websocket, @Nonnull final WebSocketFrame frame) throws Exception {
 				notifyFrameReceived(new universum.studios.websocket.adapter.WebSocketFrame.Builder()
-						.payload(frame.getPayload())
+						.payload(frame.hasPayload() ? frame.getPayload() : new byte[0])
+						.opcode(frame.getOpcode())
 						.isFinal(frame.getFin())
+						.compressed(frame.getRsv1())
 						.build()
 				);
 			}
@@ -124,7 +127,18 @@ public final class SampleWebSocket extends universum.studios.websocket.adapter.W
 		}
 
 		@Override public void sendFrame(@Nonnull final Frame frame) throws IOException {
-			if (webSocket != null) webSocket.sendBinary(frame.getPayload());
+			if (webSocket == null) return;
+			// Frames are sent asynchronously by the web socket, but the payload stays unchanged
+			// only until this method returns, so it needs to be copied.
+			final ByteBuffer buffer = frame.getPayloadBuffer();
+			final byte[] payload = new byte[buffer.remaining()];
+			buffer.get(payload);
+			webSocket.sendFrame(new WebSocketFrame()
+					.setOpcode(frame.getOpcode())
+					.setFin(frame.isFinal())
+					.setRsv1(frame.isCompressed())
+					.setPayload(payload)
+			);
 		}
 
 		@Override public void close() throws IOException {